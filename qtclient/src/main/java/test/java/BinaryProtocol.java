@@ -0,0 +1,409 @@
+package test.java;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Protocollo binario a frame, basato su {@link DataInputStream} e {@link DataOutputStream}.
+ * <p>
+ * All'apertura il client invia il saluto {@code MAGIC} con la versione più alta
+ * che supporta e il server risponde con la versione scelta. In seguito ogni
+ * messaggio è preceduto dalla sua lunghezza:
+ * </p>
+ * <pre>
+ * richiesta := byte command, parametri (String = int length + UTF-8, Double = 8 byte, Integer = 4 byte, Long = 8 byte,
+ *              byte[] = int length + byte)
+ * risposta  := byte status, int count, item[count]
+ * item      := byte tag ('I' int, 'L' long, 'D' double, 'S' stringa), valore
+ * </pre>
+ * <p>
+ * Dalla versione 2 la rappresentazione dei cluster arriva in frame
+ * {@code CHUNK} successivi alla risposta {@code OK}, chiusi da un frame
+ * {@code END}: ogni blocco viene consegnato al chiamante appena ricevuto.
+ * Dalla versione 3 il client può chiedere la compressione delle risposte:
+ * i frame compressi hanno il bit {@code 0x80} dell'esito impostato e sono
+ * seguiti dalla loro lunghezza non compressa e dal corpo compresso con Deflate.
+ * Dalla versione 4 ogni richiesta è preceduta da un identificativo, che il server
+ * riporta subito dopo la lunghezza di ogni frame della risposta: questo client
+ * invia una richiesta alla volta e verifica che ogni frame ricevuto appartenga
+ * alla richiesta in corso.
+ * </p>
+ */
+public class BinaryProtocol implements ClientProtocol {
+
+    /** Identificativo del protocollo binario ({@code "QTMB"}). */
+    private static final int MAGIC = 0x51544D42;
+
+    /** Versione più recente del protocollo supportata dal client. */
+    private static final int VERSION = 4;
+
+    /** Prima versione del protocollo che invia i cluster a blocchi. */
+    private static final int STREAMING_VERSION = 2;
+
+    /** Prima versione del protocollo che supporta la compressione delle risposte. */
+    private static final int COMPRESSION_VERSION = 3;
+
+    /** Prima versione del protocollo che multiplexa le richieste tramite identificativo. */
+    private static final int MULTIPLEX_VERSION = 4;
+
+    /** Bit dell'esito che segnala un frame compresso. */
+    private static final int COMPRESSED_FLAG = 0x80;
+
+    /** Esito di una risposta eseguita con successo. */
+    private static final int STATUS_OK = 0;
+
+    /** Esito di una risposta di server sovraccarico. */
+    private static final int STATUS_BUSY = 2;
+
+    /** Esito di un frame che contiene un blocco di testo. */
+    private static final int STATUS_CHUNK = 3;
+
+    /** Esito del frame che chiude una risposta inviata a blocchi. */
+    private static final int STATUS_END = 4;
+
+    /** Stream di output verso il server. */
+    private final DataOutputStream out;
+
+    /** Stream di input dal server. */
+    private final DataInputStream in;
+
+    /** Versione del protocollo negoziata con il server. */
+    private final int version;
+
+    /** Decompressore dei frame compressi, riutilizzato per tutta la connessione. */
+    private final Inflater inflater = new Inflater();
+
+    /** Identificativo dell'ultima richiesta inviata. */
+    private int requestId;
+
+    /**
+     * Costruisce il protocollo sulla socket indicata e negozia la versione con il server.
+     *
+     * @param socket la socket già connessa al server
+     * @throws IOException se fallisce la comunicazione o il server non supporta il protocollo
+     */
+    public BinaryProtocol(Socket socket) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+
+        if (in.readInt() != MAGIC)
+            throw new ProtocolException("Il server non supporta il protocollo binario.");
+
+        version = in.readInt();
+        if (version == 0)
+            throw new ProtocolException("Versione del protocollo binario non supportata dal server.");
+    }
+
+    /**
+     * Restituisce la versione del protocollo negoziata con il server.
+     *
+     * @return la versione negoziata
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public void loadTable(String tableName, Consumer<String> output) throws ServerException, IOException {
+        send(0, tableName);
+        output.accept((String) readResponse()[0]);
+    }
+
+    @Override
+    public void computeFromDb(double radius, IntConsumer clusterCount, Consumer<String> output)
+            throws ServerException, IOException {
+        send(1, radius);
+        Object[] items = readResponse();
+        clusterCount.accept((Integer) items[0]);
+        readText(items, 1, output);
+    }
+
+    @Override
+    public void saveToFile() throws ServerException, IOException {
+        send(2);
+        readResponse();
+    }
+
+    @Override
+    public void computeFromFile(String tableName, double radius, Consumer<String> output)
+            throws ServerException, IOException {
+        send(3, tableName, radius);
+        readText(readResponse(), 0, output);
+    }
+
+    @Override
+    public Object[] clusterSummary() throws ServerException, IOException {
+        send(4);
+        return readResponse();
+    }
+
+    @Override
+    public Object[] clusterMembers(int cluster, int offset, int limit) throws ServerException, IOException {
+        send(5, cluster, offset, limit);
+        return readResponse();
+    }
+
+    @Override
+    public Object[] topClusters(int k) throws ServerException, IOException {
+        send(6, k);
+        return readResponse();
+    }
+
+    @Override
+    public int setCompression(int level) throws ServerException, IOException {
+        if (version < COMPRESSION_VERSION)
+            throw new ServerException("ERROR: Compressione non supportata dal server (protocollo v" + version + ").");
+
+        send(7, level);
+        return (Integer) readResponse()[0];
+    }
+
+    @Override
+    public long submitJob(double radius) throws ServerException, IOException {
+        send(8, radius);
+        return (Long) readResponse()[0];
+    }
+
+    @Override
+    public Object[] jobStatus(long jobId) throws ServerException, IOException {
+        send(9, jobId);
+        return readResponse();
+    }
+
+    @Override
+    public Object[] jobResult(long jobId, int offset, int limit) throws ServerException, IOException {
+        send(10, jobId, offset, limit);
+        return readResponse();
+    }
+
+    @Override
+    public String cancelJob(long jobId) throws ServerException, IOException {
+        send(11, jobId);
+        return (String) readResponse()[0];
+    }
+
+    @Override
+    public void beginIngest(String name, String[] columns, boolean[] continuous)
+            throws ServerException, IOException {
+        send(12, name, IngestEncoder.schema(columns, continuous));
+        readResponse();
+    }
+
+    @Override
+    public int ingestBatch(Object[][] rows) throws ServerException, IOException {
+        send(13, IngestEncoder.batch(rows));
+        return (Integer) readResponse()[0];
+    }
+
+    @Override
+    public int endIngest() throws ServerException, IOException {
+        send(14);
+        return (Integer) readResponse()[0];
+    }
+
+    @Override
+    public Object[] computeRadii(String radii) throws ServerException, IOException {
+        send(15, radii);
+        return readResponse();
+    }
+
+    @Override
+    public Object[] suggestRadius(int steps) throws ServerException, IOException {
+        send(16, steps);
+        return readResponse();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        in.close();
+        inflater.end();
+    }
+
+    /**
+     * Invia al server un frame di richiesta.
+     *
+     * @param command   il codice del comando
+     * @param arguments i parametri del comando ({@link String}, {@link Double}, {@link Integer}, {@link Long} o {@code byte[]})
+     * @throws IOException se fallisce l'invio
+     */
+    private void send(int command, Object... arguments) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(buffer);
+
+        if (version >= MULTIPLEX_VERSION)
+            body.writeInt(++requestId);
+        body.writeByte(command);
+        for (Object argument : arguments) {
+            if (argument instanceof Double) {
+                body.writeDouble((Double) argument);
+            } else if (argument instanceof Integer) {
+                body.writeInt((Integer) argument);
+            } else if (argument instanceof Long) {
+                body.writeLong((Long) argument);
+            } else if (argument instanceof byte[]) {
+                body.writeInt(((byte[]) argument).length);
+                body.write((byte[]) argument);
+            } else {
+                byte[] bytes = argument.toString().getBytes(StandardCharsets.UTF_8);
+                body.writeInt(bytes.length);
+                body.write(bytes);
+            }
+        }
+
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Consegna al consumatore la rappresentazione testuale che segue una risposta "OK".
+     * <p>
+     * Con la versione 1 il testo è l'elemento indicato della risposta; dalla
+     * versione 2 arriva nei frame {@code CHUNK} successivi, fino al frame {@code END}.
+     * </p>
+     *
+     * @param items  gli elementi della risposta "OK"
+     * @param index  la posizione del testo negli elementi, per la versione 1
+     * @param output il consumatore del testo
+     * @throws ServerException se il server interrompe l'invio con un errore
+     * @throws IOException     se fallisce la lettura o la risposta non è valida
+     */
+    private void readText(Object[] items, int index, Consumer<String> output)
+            throws ServerException, IOException {
+        if (version < STREAMING_VERSION) {
+            output.accept((String) items[index]);
+            return;
+        }
+
+        while (true) {
+            Object[] chunk = readFrame();
+            int status = (Integer) chunk[0];
+            if (status == STATUS_END)
+                return;
+            if (status != STATUS_CHUNK)
+                throw new ServerException("ERROR: " + chunk[1]);
+            output.accept((String) chunk[1]);
+        }
+    }
+
+    /**
+     * Legge un frame di risposta e ne restituisce gli elementi.
+     *
+     * @return gli elementi della risposta in caso di esito "OK"
+     * @throws ServerException se il server restituisce un errore o è sovraccarico
+     * @throws IOException     se fallisce la lettura o la risposta non è valida
+     */
+    private Object[] readResponse() throws ServerException, IOException {
+        Object[] frame = readFrame();
+        int status = (Integer) frame[0];
+        Object[] items = new Object[frame.length - 1];
+        System.arraycopy(frame, 1, items, 0, items.length);
+
+        if (status == STATUS_OK)
+            return items;
+
+        String prefix = (status == STATUS_BUSY) ? "BUSY: " : "ERROR: ";
+        throw new ServerException(prefix + items[0]);
+    }
+
+    /**
+     * Legge un frame di risposta qualsiasi.
+     *
+     * @return l'esito del frame seguito dai suoi elementi
+     * @throws IOException se fallisce la lettura, il frame non è valido o non appartiene alla richiesta in corso
+     */
+    private Object[] readFrame() throws IOException {
+        int length = in.readInt();
+        if (version >= MULTIPLEX_VERSION) {
+            int id = in.readInt();
+            if (id != requestId)
+                throw new ProtocolException("Risposta inattesa per la richiesta " + id + ".");
+            length -= Integer.BYTES;
+        }
+        int status = in.readByte() & 0xFF;
+        DataInputStream body = in;
+
+        if ((status & COMPRESSED_FLAG) != 0) {
+            status &= ~COMPRESSED_FLAG;
+            int rawLength = in.readInt();
+            byte[] compressed = new byte[length - 1 - Integer.BYTES];
+            in.readFully(compressed);
+            body = new DataInputStream(new ByteArrayInputStream(inflate(compressed, rawLength)));
+        }
+
+        Object[] frame = new Object[1 + body.readInt()];
+        frame[0] = status;
+
+        for (int i = 1; i < frame.length; i++)
+            frame[i] = readItem(body);
+
+        return frame;
+    }
+
+    /**
+     * Decomprime il corpo di un frame compresso.
+     *
+     * @param compressed il corpo compresso
+     * @param rawLength  la lunghezza del corpo non compresso
+     * @return il corpo non compresso
+     * @throws ProtocolException se il corpo non è un flusso Deflate valido della lunghezza attesa
+     */
+    private byte[] inflate(byte[] compressed, int rawLength) throws ProtocolException {
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int produced = 0;
+            while (produced < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, produced, rawLength - produced);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                produced += n;
+            }
+            if (produced != rawLength)
+                throw new ProtocolException("Frame compresso troncato.");
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Frame compresso non valido: " + e.getMessage());
+        }
+        return raw;
+    }
+
+    /**
+     * Legge un elemento marcato di una risposta.
+     *
+     * @param body lo stream da cui leggere il corpo del frame
+     * @return l'elemento letto
+     * @throws IOException se fallisce la lettura o il tag non è riconosciuto
+     */
+    private Object readItem(DataInputStream body) throws IOException {
+        byte tag = body.readByte();
+        switch (tag) {
+            case 'I': return body.readInt();
+            case 'L': return body.readLong();
+            case 'D': return body.readDouble();
+            case 'S':
+                byte[] bytes = new byte[body.readInt()];
+                body.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            default:
+                throw new ProtocolException("Elemento di risposta non riconosciuto: " + tag);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package test.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Protocollo con cui il client comunica con il server.
+ * <p>
+ * Ogni metodo corrisponde a uno dei comandi del server e ne restituisce
+ * l'esito; le rappresentazioni testuali prodotte dal server vengono
+ * consegnate al consumatore indicato, eventualmente in più parti.
+ * </p>
+ *
+ * @see LegacyProtocol
+ * @see BinaryProtocol
+ */
+public interface ClientProtocol extends Closeable {
+
+    /**
+     * Comando 0 — Carica una tabella dal database.
+     *
+     * @param tableName il nome della tabella
+     * @param output    il consumatore della rappresentazione testuale della tabella
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    void loadTable(String tableName, Consumer<String> output) throws ServerException, IOException;
+
+    /**
+     * Comando 1 — Computa i cluster sulla tabella caricata.
+     *
+     * Il numero di cluster viene consegnato prima della loro rappresentazione,
+     * così che il chiamante possa mostrarlo mentre il resto è ancora in arrivo.
+     *
+     * @param radius       il raggio di clustering
+     * @param clusterCount il consumatore del numero di cluster prodotti
+     * @param output       il consumatore della rappresentazione testuale dei cluster
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    void computeFromDb(double radius, IntConsumer clusterCount, Consumer<String> output)
+            throws ServerException, IOException;
+
+    /**
+     * Comando 2 — Salva su file i cluster calcolati.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    void saveToFile() throws ServerException, IOException;
+
+    /**
+     * Comando 3 — Carica da file i cluster salvati.
+     *
+     * @param tableName il nome della tabella
+     * @param radius    il raggio usato per il clustering salvato
+     * @param output    il consumatore della rappresentazione testuale dei cluster
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    void computeFromFile(String tableName, double radius, Consumer<String> output)
+            throws ServerException, IOException;
+
+    /**
+     * Comando 4 — Richiede il riepilogo dei cluster correnti.
+     *
+     * @return il numero {@code n} di cluster seguito, per ciascuno, da indice ({@link Integer}),
+     *         valori del centroide ({@link String}), dimensione ({@link Integer})
+     *         e distanza media, minima e massima dal centroide ({@link Double})
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] clusterSummary() throws ServerException, IOException;
+
+    /**
+     * Comando 5 — Richiede una pagina degli esempi di un cluster.
+     *
+     * @param cluster la posizione del cluster, come nel riepilogo
+     * @param offset  il numero di esempi da saltare
+     * @param limit   il numero massimo di esempi da restituire
+     * @return la dimensione del cluster e il numero {@code m} di esempi restituiti, seguiti,
+     *         per ciascuno, da indice ({@link Integer}), valori ({@link String})
+     *         e distanza dal centroide ({@link Double})
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] clusterMembers(int cluster, int offset, int limit) throws ServerException, IOException;
+
+    /**
+     * Comando 6 — Richiede il riepilogo dei {@code k} cluster più popolosi.
+     *
+     * @param k il numero di cluster richiesti
+     * @return lo stesso formato di {@link #clusterSummary()}, dal cluster più grande al più piccolo
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] topClusters(int k) throws ServerException, IOException;
+
+    /**
+     * Comando 7 — Chiede al server di comprimere le risposte successive.
+     *
+     * @param level il livello di compressione (da 1 a 9); {@code 0} disattiva la compressione
+     * @return il livello adottato dal server
+     * @throws ServerException se il server non supporta la compressione su questa connessione
+     * @throws IOException     se fallisce la comunicazione
+     */
+    int setCompression(int level) throws ServerException, IOException;
+
+    /**
+     * Comando 8 — Avvia un job di clustering asincrono sulla tabella caricata.
+     *
+     * @param radius il raggio di clustering
+     * @return l'identificativo del job
+     * @throws ServerException se il server restituisce un errore o è sovraccarico
+     * @throws IOException     se fallisce la comunicazione
+     */
+    long submitJob(double radius) throws ServerException, IOException;
+
+    /**
+     * Comando 9 — Richiede stato e avanzamento di un job.
+     *
+     * @param jobId l'identificativo del job
+     * @return stato ({@link String}), tuple già assegnate e tuple totali ({@link Integer}),
+     *         cluster prodotti finora ({@link Integer}) e messaggio di errore ({@link String})
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] jobStatus(long jobId) throws ServerException, IOException;
+
+    /**
+     * Comando 10 — Richiede una pagina dei cluster prodotti da un job terminato.
+     *
+     * @param jobId  l'identificativo del job
+     * @param offset il numero di cluster da saltare
+     * @param limit  il numero massimo di cluster da restituire
+     * @return il numero totale di cluster, seguito dallo stesso formato di {@link #clusterSummary()}
+     * @throws ServerException se il server restituisce un errore o il job non è terminato
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] jobResult(long jobId, int offset, int limit) throws ServerException, IOException;
+
+    /**
+     * Comando 11 — Richiede l'annullamento di un job.
+     *
+     * @param jobId l'identificativo del job
+     * @return lo stato del job dopo la richiesta
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    String cancelJob(long jobId) throws ServerException, IOException;
+
+    /**
+     * Comando 12 — Inizia l'invio al server di un dataset, dichiarandone lo schema.
+     *
+     * @param name       il nome del dataset
+     * @param columns    i nomi delle colonne
+     * @param continuous per ogni colonna, {@code true} se è continua
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    void beginIngest(String name, String[] columns, boolean[] continuous) throws ServerException, IOException;
+
+    /**
+     * Comando 13 — Invia un blocco di esempi del dataset in corso di invio.
+     * <p>
+     * I valori delle colonne continue devono essere numerici ({@link Number});
+     * con il protocollo binario un blocco codificato non può superare 1 MB.
+     * </p>
+     *
+     * @param rows gli esempi, con i valori nell'ordine dello schema
+     * @return il numero di esempi ricevuti finora dal server
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    int ingestBatch(Object[][] rows) throws ServerException, IOException;
+
+    /**
+     * Comando 14 — Conclude l'invio, rendendo il dataset quello caricato nella sessione.
+     *
+     * @return il numero di esempi distinti del dataset
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    int endIngest() throws ServerException, IOException;
+
+    /**
+     * Comando 15 — Richiede il clustering della tabella caricata con più raggi,
+     * senza cambiare il clustering corrente.
+     *
+     * @param radii i raggi, separati da spazi o virgole
+     * @return il numero di raggi seguito, per ciascuno, da raggio ({@link Double}),
+     *         numero di cluster ({@link Integer}), dimensione del cluster più grande
+     *         ({@link Integer}) e distanza media dal centroide ({@link Double})
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] computeRadii(String radii) throws ServerException, IOException;
+
+    /**
+     * Comando 16 — Richiede una stima, su campioni della tabella caricata, dell'effetto
+     * di più raggi presi dalla distribuzione delle distanze.
+     *
+     * @param steps il numero di raggi da valutare
+     * @return il raggio suggerito ({@link Double}, {@code NaN} se nessuno) e il numero di raggi,
+     *         poi per ciascuno il raggio e le stime, con estremo inferiore e superiore, del
+     *         numero di cluster e della dimensione del cluster più grande (tutti {@link Double})
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    Object[] suggestRadius(int steps) throws ServerException, IOException;
+}
@@ -0,0 +1,105 @@
+package test.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codifica binaria dello schema e dei blocchi di esempi inviati al server
+ * con i comandi 12 e 13.
+ * <pre>
+ * schema  := int count, (string name, byte type ('C' continua, 'D' discreta))[count]
+ * blocco  := int rows, valori di ogni colonna nell'ordine dello schema
+ * valori  := double[rows] per una colonna continua, string[rows] per una discreta
+ * string  := int length, byte[length] UTF-8
+ * </pre>
+ */
+final class IngestEncoder {
+
+    /**
+     * Costruttore privato per impedire l'istanza della classe di utilità.
+     */
+    private IngestEncoder() { }
+
+    /**
+     * Codifica lo schema di un dataset.
+     *
+     * @param columns    i nomi delle colonne
+     * @param continuous per ogni colonna, {@code true} se è continua
+     * @return lo schema codificato
+     * @throws IllegalArgumentException se i due array hanno lunghezze diverse
+     */
+    static byte[] schema(String[] columns, boolean[] continuous) {
+        if (columns.length != continuous.length)
+            throw new IllegalArgumentException("Numero di tipi diverso dal numero di colonne.");
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            out.writeInt(columns.length);
+            for (int j = 0; j < columns.length; j++) {
+                writeString(out, columns[j]);
+                out.writeByte(continuous[j] ? 'C' : 'D');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Codifica un blocco di esempi per colonne.
+     * <p>
+     * Il tipo di ogni colonna è dedotto dai valori: numerici ({@link Number})
+     * per le colonne continue, qualsiasi altro oggetto, inviato come stringa,
+     * per le discrete.
+     * </p>
+     *
+     * @param rows gli esempi, tutti con lo stesso numero di valori
+     * @return il blocco codificato
+     * @throws IllegalArgumentException se gli esempi hanno lunghezze diverse o una
+     *                                  colonna mescola valori numerici e non numerici
+     */
+    static byte[] batch(Object[][] rows) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            out.writeInt(rows.length);
+            int columns = (rows.length > 0) ? rows[0].length : 0;
+            for (Object[] row : rows) {
+                if (row.length != columns)
+                    throw new IllegalArgumentException("Esempi con un numero di valori diverso.");
+            }
+
+            for (int j = 0; j < columns; j++) {
+                boolean numeric = rows[0][j] instanceof Number;
+                for (Object[] row : rows) {
+                    if ((row[j] instanceof Number) != numeric)
+                        throw new IllegalArgumentException("Valori di tipo diverso nella colonna " + (j + 1) + ".");
+                    if (numeric)
+                        out.writeDouble(((Number) row[j]).doubleValue());
+                    else
+                        writeString(out, String.valueOf(row[j]));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Scrive una stringa preceduta dalla sua lunghezza in byte.
+     *
+     * @param out   lo stream su cui scrivere
+     * @param value la stringa
+     * @throws IOException se fallisce la scrittura
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,224 @@
+package test.java;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Protocollo storico basato su serializzazione Java.
+ * <p>
+ * Comandi, parametri e risposte vengono scambiati come oggetti tramite
+ * {@link ObjectOutputStream} e {@link ObjectInputStream}.
+ * </p>
+ */
+public class LegacyProtocol implements ClientProtocol {
+
+    /** Stream di output verso il server. */
+    private final ObjectOutputStream out;
+
+    /** Stream di input dal server. */
+    private final ObjectInputStream in;
+
+    /**
+     * Costruisce il protocollo sulla socket indicata.
+     *
+     * @param socket la socket già connessa al server
+     * @throws IOException se fallisce la creazione degli stream
+     */
+    public LegacyProtocol(Socket socket) throws IOException {
+        out = new ObjectOutputStream(socket.getOutputStream());
+        in = new ObjectInputStream(socket.getInputStream());
+    }
+
+    @Override
+    public void loadTable(String tableName, Consumer<String> output) throws ServerException, IOException {
+        send(0, tableName);
+        expectOK();
+        output.accept((String) read());
+    }
+
+    @Override
+    public void computeFromDb(double radius, IntConsumer clusterCount, Consumer<String> output)
+            throws ServerException, IOException {
+        send(1, radius);
+        expectOK();
+        clusterCount.accept((Integer) read());
+        output.accept((String) read());
+    }
+
+    @Override
+    public void saveToFile() throws ServerException, IOException {
+        send(2);
+        expectOK();
+    }
+
+    @Override
+    public void computeFromFile(String tableName, double radius, Consumer<String> output)
+            throws ServerException, IOException {
+        send(3, tableName, radius);
+        expectOK();
+        output.accept((String) read());
+    }
+
+    @Override
+    public Object[] clusterSummary() throws ServerException, IOException {
+        send(4);
+        expectOK();
+        return readRows(1, 6);
+    }
+
+    @Override
+    public Object[] clusterMembers(int cluster, int offset, int limit) throws ServerException, IOException {
+        send(5, cluster, offset, limit);
+        expectOK();
+        return readRows(2, 3);
+    }
+
+    @Override
+    public Object[] topClusters(int k) throws ServerException, IOException {
+        send(6, k);
+        expectOK();
+        return readRows(1, 6);
+    }
+
+    @Override
+    public int setCompression(int level) throws ServerException, IOException {
+        send(7, level);
+        expectOK();
+        return (Integer) read();
+    }
+
+    @Override
+    public long submitJob(double radius) throws ServerException, IOException {
+        send(8, radius);
+        expectOK();
+        return (Long) read();
+    }
+
+    @Override
+    public Object[] jobStatus(long jobId) throws ServerException, IOException {
+        send(9, jobId);
+        expectOK();
+        return new Object[] { read(), read(), read(), read(), read() };
+    }
+
+    @Override
+    public Object[] jobResult(long jobId, int offset, int limit) throws ServerException, IOException {
+        send(10, jobId, offset, limit);
+        expectOK();
+        return readRows(2, 6);
+    }
+
+    @Override
+    public String cancelJob(long jobId) throws ServerException, IOException {
+        send(11, jobId);
+        expectOK();
+        return (String) read();
+    }
+
+    @Override
+    public void beginIngest(String name, String[] columns, boolean[] continuous)
+            throws ServerException, IOException {
+        send(12, name, IngestEncoder.schema(columns, continuous));
+        expectOK();
+    }
+
+    @Override
+    public int ingestBatch(Object[][] rows) throws ServerException, IOException {
+        send(13, IngestEncoder.batch(rows));
+        expectOK();
+        return (Integer) read();
+    }
+
+    @Override
+    public int endIngest() throws ServerException, IOException {
+        send(14);
+        expectOK();
+        return (Integer) read();
+    }
+
+    @Override
+    public Object[] computeRadii(String radii) throws ServerException, IOException {
+        send(15, radii);
+        expectOK();
+        return readRows(1, 4);
+    }
+
+    @Override
+    public Object[] suggestRadius(int steps) throws ServerException, IOException {
+        send(16, steps);
+        expectOK();
+        return readRows(2, 7);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        in.close();
+    }
+
+    /**
+     * Invia al server gli oggetti indicati e azzera lo stream, così che la
+     * tabella degli oggetti già trasmessi non cresca durante la sessione.
+     *
+     * @param objects gli oggetti da inviare
+     * @throws IOException se fallisce l'invio
+     */
+    private void send(Object... objects) throws IOException {
+        for (Object o : objects)
+            out.writeObject(o);
+        out.reset();
+        out.flush();
+    }
+
+    /**
+     * Legge l'esito della richiesta e solleva un'eccezione se diverso da "OK".
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la lettura
+     */
+    private void expectOK() throws ServerException, IOException {
+        String result = (String) read();
+        if (!result.equals("OK"))
+            throw new ServerException(result);
+    }
+
+    /**
+     * Legge una risposta tabellare: alcuni valori di intestazione, l'ultimo dei quali
+     * indica il numero di righe, seguiti dalle righe stesse.
+     *
+     * @param headerSize il numero di valori di intestazione
+     * @param rowSize    il numero di valori di ciascuna riga
+     * @return l'intestazione seguita dai valori di tutte le righe
+     * @throws IOException se fallisce la lettura
+     */
+    private Object[] readRows(int headerSize, int rowSize) throws IOException {
+        Object[] header = new Object[headerSize];
+        for (int i = 0; i < headerSize; i++)
+            header[i] = read();
+
+        Object[] items = new Object[headerSize + (Integer) header[headerSize - 1] * rowSize];
+        System.arraycopy(header, 0, items, 0, headerSize);
+        for (int i = headerSize; i < items.length; i++)
+            items[i] = read();
+
+        return items;
+    }
+
+    /**
+     * Legge il prossimo oggetto inviato dal server.
+     *
+     * @return l'oggetto letto
+     * @throws IOException se fallisce la lettura o l'oggetto non è deserializzabile
+     */
+    private Object read() throws IOException {
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Risposta del server non valida: " + e.getMessage(), e);
+        }
+    }
+}
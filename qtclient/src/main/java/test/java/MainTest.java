@@ -2,10 +2,8 @@ package test.java;
 
 import java.net.Socket;
 import java.net.InetAddress;
-import java.net.SocketException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import keyboardinput.Keyboard;
 
 /**
@@ -20,60 +18,61 @@ import keyboardinput.Keyboard;
  *   <li>Computare i cluster da file</li>
  * </ul>
  * <p>
- * La comunicazione avviene tramite {@link ObjectInputStream} e {@link ObjectOutputStream}.
+ * La comunicazione avviene tramite un {@link ClientProtocol}: di default il
+ * protocollo binario a frame ({@link BinaryProtocol}), oppure il protocollo
+ * storico basato su serializzazione Java ({@link LegacyProtocol}).
  * </p>
  */
 public class MainTest {
 
-    /** Stream di output verso il server. */
-    private ObjectOutputStream out;
-
-    /** Stream di input dal server. */
-    private ObjectInputStream in;
+    /** Protocollo di comunicazione con il server. */
+    private final ClientProtocol protocol;
 
     /**
      * Costruisce il client e apre una connessione verso il server specificato.
      *
-     * @param ip   l’indirizzo IP del server
-     * @param port la porta su cui il server è in ascolto
-     * @throws IOException se fallisce la connessione o la creazione degli stream
+     * @param ip     l’indirizzo IP del server
+     * @param port   la porta su cui il server è in ascolto
+     * @param binary {@code true} per usare il protocollo binario, {@code false} per quello storico
+     * @throws IOException se fallisce la connessione o la negoziazione del protocollo
      */
-    public MainTest(String ip, int port) throws IOException {
+    public MainTest(String ip, int port, boolean binary) throws IOException {
         InetAddress addr = InetAddress.getByName(ip);
         System.out.println("addr = " + addr);
 
         Socket socket = new Socket(addr, port);
         System.out.println(socket);
 
-        out = new ObjectOutputStream(socket.getOutputStream());
-        in = new ObjectInputStream(socket.getInputStream());
+        protocol = binary ? new BinaryProtocol(socket) : new LegacyProtocol(socket);
     }
 
     /**
-     * Mostra il menu delle operazioni disponibili e invia al server la scelta effettuata dall’utente.
+     * Mostra il menu delle operazioni disponibili e legge la scelta effettuata dall’utente.
      *
-     * @return un intero compreso tra 0 e 3 che rappresenta la scelta effettuata
+     * @return un intero compreso tra 0 e 12 che rappresenta la scelta effettuata
      */
     private int menu() {
-        int answer = 1;
+        int answer;
 
-        try {
-            do {
-                System.out.println("\n---MENU ---");
-                System.out.println("(0) Carica tabella dal database");
-                System.out.println("(1) Computa cluster dal database");
-                System.out.println("(2) Salva cluster su file");
-                System.out.println("(3) Computa cluster da file");
-                System.out.print("Scelta (0/1/2/3): ");
-
-                answer = Keyboard.readInt();
-            } while (answer < 0 || answer > 3);
-
-            out.writeObject(answer);
-            out.flush();
-        } catch (IOException exception) {
-            System.err.println("Errore menu: " + exception.getMessage());
-        }
+        do {
+            System.out.println("\n---MENU ---");
+            System.out.println("(0) Carica tabella dal database");
+            System.out.println("(1) Computa cluster dal database");
+            System.out.println("(2) Salva cluster su file");
+            System.out.println("(3) Computa cluster da file");
+            System.out.println("(4) Riepilogo dei cluster");
+            System.out.println("(5) Esempi di un cluster");
+            System.out.println("(6) Cluster più popolosi");
+            System.out.println("(7) Avvia job di clustering");
+            System.out.println("(8) Stato di un job");
+            System.out.println("(9) Risultati di un job");
+            System.out.println("(10) Annulla un job");
+            System.out.println("(11) Confronta più raggi");
+            System.out.println("(12) Suggerisci un raggio");
+            System.out.print("Scelta (0-12): ");
+
+            answer = Keyboard.readInt();
+        } while (answer < 0 || answer > 12);
 
         return answer;
     }
@@ -81,115 +80,278 @@ public class MainTest {
     /**
      * Opzione (0): Carica una tabella dal database tramite nome tabella.
      *
-     * @throws SocketException        se si verifica un errore di rete
-     * @throws ServerException        se il server restituisce un errore
-     * @throws IOException            se fallisce la comunicazione
-     * @throws ClassNotFoundException se la risposta non è deserializzabile
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
      */
-    private void storeTableFromDb()
-            throws SocketException, ServerException, IOException, ClassNotFoundException {
+    private void storeTableFromDb() throws ServerException, IOException {
         System.out.print("Nome tabella: ");
         String tabName = Keyboard.readString();
-        out.writeObject(tabName);
-        out.flush();
-
-        String result = (String) in.readObject();
-        if (!result.equals("OK"))
-            throw new ServerException(result);
 
-        System.out.println((String) in.readObject());
+        protocol.loadTable(tabName, System.out::println);
     }
 
     /**
-     * Opzione (1): Computa i cluster leggendo i dati dal database.
+     * Opzione (1): Computa i cluster leggendo i dati dal database e li stampa.
      *
-     * @return una stringa contenente il {@code ClusterSet} prodotto
-     * @throws SocketException        se si verifica un errore di rete
-     * @throws ServerException        se il server restituisce un errore
-     * @throws IOException            se fallisce la comunicazione
-     * @throws ClassNotFoundException se la risposta non è deserializzabile
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
      */
-    private String learningFromDbTable()
-            throws SocketException, ServerException, IOException, ClassNotFoundException {
+    private void learningFromDbTable() throws ServerException, IOException {
         double r;
         do {
             System.out.print("Radius: ");
             r = Keyboard.readDouble();
         } while (r <= 0);
 
-        out.writeObject(r);
-        out.flush();
-
-        String result = (String) in.readObject();
-        if (result.equals("OK")) {
-            System.out.println("Number of Clusters: " + in.readObject());
-            return (String) in.readObject();
-        } else
-            throw new ServerException(result);
+        protocol.computeFromDb(r,
+                numClusters -> System.out.println("Number of Clusters: " + numClusters),
+                System.out::print);
+        System.out.println();
     }
 
     /**
      * Opzione (2): Salva i cluster su file.
      *
-     * @throws SocketException        se si verifica un errore di rete
-     * @throws ServerException        se il server restituisce un errore
-     * @throws IOException            se fallisce la comunicazione
-     * @throws ClassNotFoundException se la risposta non è deserializzabile
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
      */
-    private void storeClusterInFile()
-            throws SocketException, ServerException, IOException, ClassNotFoundException {
-        String result = (String) in.readObject();
-        if (!result.equals("OK"))
-            throw new ServerException(result);
+    private void storeClusterInFile() throws ServerException, IOException {
+        protocol.saveToFile();
     }
 
     /**
-     * Opzione (3): Computa i cluster leggendo i dati da file.
+     * Opzione (3): Computa i cluster leggendo i dati da file e li stampa.
      *
-     * @return una stringa contenente il {@code ClusterSet} prodotto
-     * @throws SocketException        se si verifica un errore di rete
-     * @throws ServerException        se il server restituisce un errore
-     * @throws IOException            se fallisce la comunicazione
-     * @throws ClassNotFoundException se la risposta non è deserializzabile
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
      */
-    private String learningfromFile()
-            throws SocketException, ServerException, IOException, ClassNotFoundException {
+    private void learningfromFile() throws ServerException, IOException {
         System.out.print("Nome tabella: ");
-        out.writeObject(Keyboard.readString());
+        String tabName = Keyboard.readString();
 
         System.out.print("Raggio: ");
-        out.writeObject(Keyboard.readDouble());
-        out.flush();
+        double r = Keyboard.readDouble();
 
-        String result = (String) in.readObject();
-        if (result.equals("OK"))
-            return (String) in.readObject();
-        else
-            throw new ServerException(result);
+        protocol.computeFromFile(tabName, r, System.out::print);
+        System.out.println();
+    }
+
+    /**
+     * Opzione (4): Stampa il riepilogo dei cluster correnti.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void printSummary() throws ServerException, IOException {
+        printSummaryRows(protocol.clusterSummary());
+    }
+
+    /**
+     * Opzione (5): Stampa una pagina degli esempi di un cluster.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void printMembers() throws ServerException, IOException {
+        System.out.print("Cluster: ");
+        int cluster = Keyboard.readInt();
+
+        System.out.print("Offset: ");
+        int offset = Keyboard.readInt();
+
+        System.out.print("Limite: ");
+        int limit = Keyboard.readInt();
+
+        Object[] items = protocol.clusterMembers(cluster, offset, limit);
+        int count = (Integer) items[1];
+
+        System.out.println("Size=" + items[0] + " (esempi " + offset + "-" + (offset + count) + ")");
+        for (int i = 0; i < count; i++) {
+            int row = 2 + i * 3;
+            System.out.println(items[row] + ": [" + items[row + 1] + "] dist=" + items[row + 2]);
+        }
+    }
+
+    /**
+     * Opzione (6): Stampa il riepilogo dei cluster più popolosi.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void printTopClusters() throws ServerException, IOException {
+        int k;
+        do {
+            System.out.print("Numero di cluster: ");
+            k = Keyboard.readInt();
+        } while (k <= 0);
+
+        printSummaryRows(protocol.topClusters(k));
+    }
+
+    /**
+     * Opzione (7): Avvia un job di clustering asincrono sulla tabella caricata.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void submitJob() throws ServerException, IOException {
+        double r;
+        do {
+            System.out.print("Radius: ");
+            r = Keyboard.readDouble();
+        } while (r <= 0);
+
+        System.out.println("Job avviato: " + protocol.submitJob(r));
+    }
+
+    /**
+     * Opzione (8): Stampa stato e avanzamento di un job.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void printJobStatus() throws ServerException, IOException {
+        System.out.print("Job: ");
+        long jobId = Keyboard.readInt();
+
+        Object[] status = protocol.jobStatus(jobId);
+        System.out.println("Stato: " + status[0] + " - tuple assegnate " + status[1] + "/" + status[2]
+                + ", cluster " + status[3]);
+        if (!((String) status[4]).isEmpty())
+            System.out.println("Errore: " + status[4]);
+    }
+
+    /**
+     * Opzione (9): Stampa una pagina dei cluster prodotti da un job terminato.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void printJobResult() throws ServerException, IOException {
+        System.out.print("Job: ");
+        long jobId = Keyboard.readInt();
+
+        System.out.print("Offset: ");
+        int offset = Keyboard.readInt();
+
+        System.out.print("Limite: ");
+        int limit = Keyboard.readInt();
+
+        Object[] items = protocol.jobResult(jobId, offset, limit);
+        System.out.println("Number of Clusters: " + items[0]);
+        printSummaryRows(Arrays.copyOfRange(items, 1, items.length));
+    }
+
+    /**
+     * Opzione (10): Annulla un job.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void cancelJob() throws ServerException, IOException {
+        System.out.print("Job: ");
+        long jobId = Keyboard.readInt();
+
+        System.out.println("Annullamento richiesto, stato: " + protocol.cancelJob(jobId));
+    }
+
+    /**
+     * Opzione (11): Confronta il clustering della tabella caricata con più raggi.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void compareRadii() throws ServerException, IOException {
+        System.out.print("Raggi (separati da spazi): ");
+        Object[] items = protocol.computeRadii(Keyboard.readString());
+
+        int count = (Integer) items[0];
+        for (int i = 0; i < count; i++) {
+            int row = 1 + i * 4;
+            System.out.println("Radius=" + items[row] + " Clusters=" + items[row + 1] + " MaxSize=" + items[row + 2]
+                    + " AvgDistance=" + items[row + 3]);
+        }
+    }
+
+    /**
+     * Opzione (12): Stima l'effetto di più raggi sulla tabella caricata e suggerisce quale usare.
+     *
+     * @throws ServerException se il server restituisce un errore
+     * @throws IOException     se fallisce la comunicazione
+     */
+    private void suggestRadius() throws ServerException, IOException {
+        int steps;
+        do {
+            System.out.print("Numero di raggi da valutare: ");
+            steps = Keyboard.readInt();
+        } while (steps <= 0);
+
+        Object[] items = protocol.suggestRadius(steps);
+        int count = (Integer) items[1];
+        for (int i = 0; i < count; i++) {
+            int row = 2 + i * 7;
+            System.out.println(String.format("Radius=%.4f Clusters=%.0f [%.0f, %.0f] MaxSize=%.0f [%.0f, %.0f]",
+                    items[row], items[row + 1], items[row + 2], items[row + 3],
+                    items[row + 4], items[row + 5], items[row + 6]));
+        }
+
+        double suggested = (Double) items[0];
+        System.out.println(Double.isNaN(suggested) ? "Nessun raggio suggerito"
+                                                   : String.format("Raggio suggerito: %.4f", suggested));
+    }
+
+    /**
+     * Stampa un riepilogo di cluster restituito dai comandi 4 e 6.
+     *
+     * @param items il numero di cluster seguito da indice, centroide, dimensione
+     *              e distanza media, minima e massima di ciascuno
+     */
+    private void printSummaryRows(Object[] items) {
+        int count = (Integer) items[0];
+        for (int i = 0; i < count; i++) {
+            int row = 1 + i * 6;
+            System.out.println(items[row] + ": Centroid=(" + items[row + 1] + ") Size=" + items[row + 2]
+                    + " AvgDistance=" + items[row + 3] + " MinDistance=" + items[row + 4]
+                    + " MaxDistance=" + items[row + 5]);
+        }
     }
 
     /**
      * Avvia il client e gestisce il flusso delle richieste verso il server.
      *
-     * @param args i parametri da linea di comando: indirizzo IP e porta
+     * @param args i parametri da linea di comando: indirizzo IP, porta e,
+     *             opzionalmente, il protocollo ({@code binary} o {@code legacy})
+     *             e il livello di compressione delle risposte
      */
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("Uso: <ip> <porta>");
+            System.out.println("Uso: <ip> <porta> [binary|legacy] [livello compressione 0-9]");
             return;
         }
 
         String ip = args[0];
         int port = Integer.parseInt(args[1]);
+        boolean binary = args.length < 3 || !args[2].equalsIgnoreCase("legacy");
         MainTest main = null;
 
         try {
-            main = new MainTest(ip, port);
+            main = new MainTest(ip, port, binary);
         } catch (IOException exception) {
             System.err.println(exception.getMessage());
             return;
         }
 
+        if (args.length > 3) {
+            try {
+                int level = main.protocol.setCompression(Integer.parseInt(args[3]));
+                System.out.println("Compressione delle risposte: livello " + level);
+            } catch (NumberFormatException e) {
+                System.err.println("Livello di compressione non valido: " + args[3]);
+            } catch (ServerException | IOException e) {
+                System.err.println("Compressione non attivata: " + e.getMessage());
+            }
+        }
+
         do {
             int menuAnswer = main.menu();
             try {
@@ -199,7 +361,7 @@ public class MainTest {
                         break;
                     case 1:
                         System.out.println("Cluster dal database:");
-                        System.out.println(main.learningFromDbTable());
+                        main.learningFromDbTable();
                         break;
                     case 2:
                         main.storeClusterInFile();
@@ -207,7 +369,34 @@ public class MainTest {
                         break;
                     case 3:
                         System.out.println("Cluster dal file:");
-                        System.out.println(main.learningfromFile());
+                        main.learningfromFile();
+                        break;
+                    case 4:
+                        main.printSummary();
+                        break;
+                    case 5:
+                        main.printMembers();
+                        break;
+                    case 6:
+                        main.printTopClusters();
+                        break;
+                    case 7:
+                        main.submitJob();
+                        break;
+                    case 8:
+                        main.printJobStatus();
+                        break;
+                    case 9:
+                        main.printJobResult();
+                        break;
+                    case 10:
+                        main.cancelJob();
+                        break;
+                    case 11:
+                        main.compareRadii();
+                        break;
+                    case 12:
+                        main.suggestRadius();
                         break;
                     default:
                         System.out.println("Opzione non valida!");
@@ -222,10 +411,9 @@ public class MainTest {
         } while (true);
 
         try {
-            main.out.close();
-            main.in.close();
+            main.protocol.close();
         } catch (IOException e) {
             System.err.println("Errore chiusura connessione: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
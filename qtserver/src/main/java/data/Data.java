@@ -2,6 +2,7 @@ package data;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -24,6 +25,17 @@ import exceptions.NoValueException;
  * ottenere tuple di {@link Item}, consentendo così successive elaborazioni
  * (es. clustering).
  * </p>
+ * <p>
+ * Un dataset può anche essere costruito a partire da colonne già memorizzate
+ * altrove ({@link DataColumn}), ad esempio il dataset incluso in un clustering
+ * salvato su file, senza accedere al database.
+ * </p>
+ * <p>
+ * Un dataset letto indicando una colonna di modifica (una chiave progressiva o
+ * l'istante di inserimento delle righe) può essere aggiornato con {@link #refresh()},
+ * che legge solo le righe aggiunte dopo l'ultima lettura invece di rieseguire
+ * tutte le query del costruttore.
+ * </p>
  */
 public class Data {
 
@@ -36,6 +48,18 @@ public class Data {
     /** Numero totale di esempi nel dataset. */
     private int numberOfExamples;
 
+    /** Colonne del dataset, se non proviene dal database; {@code null} altrimenti. */
+    private final DataColumn[] columns;
+
+    /** Tabella da cui è stato letto il dataset; {@code null} se non proviene dal database. */
+    private final String tableName;
+
+    /** Colonna di modifica della tabella; {@code null} se il dataset non può essere aggiornato. */
+    private final String changeColumn;
+
+    /** Valore della colonna di modifica fino al quale sono state lette le righe. */
+    private Object highWaterMark;
+
     /**
      * Costruisce un dataset a partire dal contenuto di una tabella del database.
      *
@@ -46,18 +70,53 @@ public class Data {
      */
     public Data(String tableName)
             throws DatabaseConnectionException, EmptyDatasetException, SQLException {
+        this(tableName, null);
+    }
+
+    /**
+     * Costruisce un dataset a partire dal contenuto di una tabella del database,
+     * ricordando fino a quale valore della colonna di modifica sono state lette le righe.
+     * <p>
+     * La colonna di modifica non fa parte dello schema del dataset e deve crescere a
+     * ogni riga aggiunta: le righe aggiunte successivamente possono essere lette con
+     * {@link #refresh()}.
+     * </p>
+     *
+     * @param tableName    il nome della tabella da cui leggere i dati
+     * @param changeColumn il nome della colonna di modifica; {@code null} se il dataset non va aggiornato
+     * @throws DatabaseConnectionException se non è possibile stabilire la connessione al database
+     * @throws EmptyDatasetException       se la tabella non contiene alcuna riga
+     * @throws SQLException                se si verificano errori SQL durante lettura o chiusura connessione
+     * @throws IllegalArgumentException    se il nome della colonna di modifica non è un nome semplice
+     */
+    public Data(String tableName, String changeColumn)
+            throws DatabaseConnectionException, EmptyDatasetException, SQLException {
 
+        if (changeColumn != null && !changeColumn.matches("[\\w$]+"))
+            throw new IllegalArgumentException("Colonna di modifica non valida: " + changeColumn);
+
+        this.columns = null;
+        this.tableName = tableName;
+        this.changeColumn = changeColumn;
         DBAccess databaseAccess = new DBAccess();
 
         try {
             databaseAccess.initConnection();
 
-            TableSchema tableSchema = new TableSchema(databaseAccess, tableName);
+            TableSchema tableSchema = new TableSchema(databaseAccess, tableName, changeColumn);
             createAttributesFromTableSchema(tableName, databaseAccess, tableSchema);
 
             TableData tableData = new TableData(databaseAccess);
             try {
-                List<Example> transactions = tableData.getDistinctTransactions(tableName);
+                List<Example> transactions;
+                if (changeColumn == null) {
+                    transactions = tableData.getDistinctTransactions(tableName);
+                } else {
+                    // Le righe aggiunte durante la lettura verranno lette dal primo aggiornamento.
+                    highWaterMark = tableData.getMaxValue(tableName, changeColumn);
+                    transactions = (highWaterMark == null) ? List.of()
+                            : tableData.getDistinctTransactions(tableName, tableSchema, changeColumn, null, highWaterMark);
+                }
 
                 if (transactions.isEmpty())
                     throw new EmptyDatasetException("La tabella " + tableName + " è vuota.");
@@ -78,6 +137,129 @@ public class Data {
         }
     }
 
+    /**
+     * Costruisce un dataset a partire da colonne già memorizzate, senza accedere al database.
+     *
+     * @param schema           lo schema degli attributi
+     * @param columns          le colonne, una per attributo e nello stesso ordine
+     * @param numberOfExamples il numero di esempi di ogni colonna
+     * @throws IllegalArgumentException se il numero di colonne non corrisponde allo schema
+     *                                  o se {@code numberOfExamples} è negativo
+     */
+    public Data(Attribute[] schema, DataColumn[] columns, int numberOfExamples) {
+        if (schema.length != columns.length)
+            throw new IllegalArgumentException("Il numero di colonne non corrisponde allo schema.");
+        if (numberOfExamples < 0)
+            throw new IllegalArgumentException("Numero di esempi negativo.");
+
+        this.attributeSet.addAll(List.of(schema));
+        this.columns = columns.clone();
+        this.numberOfExamples = numberOfExamples;
+        this.tableName = null;
+        this.changeColumn = null;
+    }
+
+    /**
+     * Indica se il dataset può essere aggiornato con {@link #refresh()}.
+     *
+     * @return {@code true} se il dataset è stato letto dal database con una colonna di modifica
+     */
+    public boolean isRefreshable() {
+        return changeColumn != null;
+    }
+
+    /**
+     * Aggiunge al dataset le righe della tabella aggiunte dopo l'ultima lettura,
+     * riconosciute dal valore della colonna di modifica.
+     * <p>
+     * Vengono lette solo le righe con un valore maggiore di quello raggiunto
+     * dall'ultima lettura e diverse dagli esempi già presenti; gli esempi aggiunti
+     * occupano le posizioni successive a quelle esistenti, che non cambiano. Minimo e
+     * massimo degli attributi continui e valori degli attributi discreti vengono
+     * estesi ai nuovi esempi: le tuple ottenute prima dell'aggiornamento conservano
+     * gli attributi e quindi la scala precedenti.
+     * </p>
+     * <p>
+     * Il dataset viene modificato: l'aggiornamento non deve essere eseguito mentre
+     * il dataset è in uso da altri thread, ad esempio da una computazione.
+     * </p>
+     *
+     * @return il resoconto dell'aggiornamento
+     * @throws DatabaseConnectionException se non è possibile stabilire la connessione al database
+     * @throws SQLException                se le query falliscono o lo schema della tabella è cambiato
+     * @throws IllegalStateException       se il dataset non ha una colonna di modifica
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public synchronized RefreshReport refresh() throws DatabaseConnectionException, SQLException {
+        if (changeColumn == null)
+            throw new IllegalStateException("Il dataset non ha una colonna di modifica.");
+
+        int firstNew = numberOfExamples;
+        List<Example> transactions = List.of();
+        Object upTo;
+
+        DBAccess databaseAccess = new DBAccess();
+        try {
+            databaseAccess.initConnection();
+
+            TableSchema tableSchema = new TableSchema(databaseAccess, tableName, changeColumn);
+            if (tableSchema.getNumberOfAttributes() != attributeSet.size())
+                throw new SQLException("Lo schema della tabella " + tableName + " è cambiato.");
+
+            TableData tableData = new TableData(databaseAccess);
+            upTo = tableData.getMaxValue(tableName, changeColumn);
+            if (upTo != null && (highWaterMark == null || ((Comparable) upTo).compareTo(highWaterMark) > 0))
+                transactions = tableData.getDistinctTransactions(tableName, tableSchema, changeColumn,
+                                                                 highWaterMark, upTo);
+            else
+                upTo = highWaterMark;
+        }
+        finally {
+            try {
+                databaseAccess.closeConnection();
+            } catch (SQLException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+
+        List<String> rescaled = new ArrayList<>();
+        List<String> extended = new ArrayList<>();
+        for (int j = 0; j < attributeSet.size() && !transactions.isEmpty(); j++) {
+            Attribute attribute = attributeSet.get(j);
+            if (attribute instanceof ContinuousAttribute) {
+                ContinuousAttribute continuous = (ContinuousAttribute) attribute;
+                double min = continuous.getMin();
+                double max = continuous.getMax();
+                for (Example example : transactions) {
+                    double value = (Double) example.get(j);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                if (min != continuous.getMin() || max != continuous.getMax()) {
+                    attributeSet.set(j, new ContinuousAttribute(attribute.getName(), attribute.getIndex(), min, max));
+                    rescaled.add(attribute.getName());
+                }
+            } else {
+                Set<String> values = new HashSet<>();
+                for (String value : (DiscreteAttribute) attribute)
+                    values.add(value);
+                boolean grown = false;
+                for (Example example : transactions)
+                    grown |= values.add(example.get(j).toString());
+                if (grown) {
+                    attributeSet.set(j, new DiscreteAttribute(attribute.getName(), attribute.getIndex(),
+                                                              values.toArray(new String[0])));
+                    extended.add(attribute.getName());
+                }
+            }
+        }
+
+        data.addAll(transactions);
+        numberOfExamples = data.size();
+        highWaterMark = upTo;
+        return new RefreshReport(firstNew, transactions.size(), rescaled, extended, upTo);
+    }
+
     /**
      * Restituisce il numero di esempi presenti nel dataset.
      *
@@ -119,7 +301,7 @@ public class Data {
             attributeIndex < 0 || attributeIndex >= attributeSet.size()) {
             throw new ArrayIndexOutOfBoundsException("Indici fuori dai limiti.");
         }
-        return data.get(exampleIndex).get(attributeIndex);
+        return (columns != null) ? columns[attributeIndex].get(exampleIndex) : data.get(exampleIndex).get(attributeIndex);
     }
 
     /**
@@ -133,7 +315,7 @@ public class Data {
         Tuple tuple = new Tuple(attributeSet.size());
         for (int i = 0; i < attributeSet.size(); i++) {
             Attribute a = attributeSet.get(i);
-            Object v = data.get(index).get(i);
+            Object v = getValue(index, i);
 
             if (a instanceof ContinuousAttribute)
                 tuple.add(new ContinuousItem(a, ((Number) v).doubleValue()), i);
@@ -143,6 +325,33 @@ public class Data {
         return tuple;
     }
 
+    /**
+     * Restituisce il dataset formato dagli esempi indicati, nell'ordine indicato.
+     * <p>
+     * Il sottoinsieme ha lo stesso schema, e quindi le stesse scale delle distanze,
+     * e legge i valori da questo dataset senza copiarli: serve, ad esempio, per
+     * eseguire il clustering su un campione.
+     * </p>
+     *
+     * @param rows gli indici degli esempi
+     * @return il sottoinsieme
+     * @throws ArrayIndexOutOfBoundsException se un indice non è valido
+     */
+    public Data subset(int[] rows) {
+        int[] selected = rows.clone();
+        for (int row : selected) {
+            if (row < 0 || row >= numberOfExamples)
+                throw new ArrayIndexOutOfBoundsException("Indici fuori dai limiti.");
+        }
+
+        DataColumn[] subsetColumns = new DataColumn[attributeSet.size()];
+        for (int k = 0; k < subsetColumns.length; k++) {
+            int attribute = k;
+            subsetColumns[k] = i -> getValue(selected[i], attribute);
+        }
+        return new Data(getAttributeSchema(), subsetColumns, selected.length);
+    }
+
     /**
      * Restituisce una rappresentazione testuale del dataset, comprensiva
      * dell’intestazione e di tutte le righe di dati.
@@ -161,7 +370,7 @@ public class Data {
         for (int i = 0; i < numberOfExamples; i++) {
             sb.append(i).append(": ");
             for (int j = 0; j < attributeSet.size(); j++)
-                sb.append(data.get(i).get(j)).append(", ");
+                sb.append(getValue(i, j)).append(", ");
             sb.setLength(sb.length() - 2);
             sb.append("\n");
         }
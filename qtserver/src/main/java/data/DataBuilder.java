@@ -0,0 +1,318 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import exceptions.DataSourceException;
+import exceptions.EmptyDatasetException;
+
+/**
+ * Costruzione incrementale di un {@link Data} a partire da esempi forniti una
+ * riga alla volta, al di fuori del database.
+ * <p>
+ * I valori vengono accumulati in buffer primitivi per colonna: un array di
+ * {@code double} per ogni colonna continua, un array di codici con un dizionario
+ * locale per ogni colonna discreta. Più costruttori con lo stesso schema, riempiti
+ * ad esempio da thread diversi, possono essere uniti da {@link #build(List)}.
+ * Il dataset prodotto ha lo stesso schema del caricamento dal database: dizionari
+ * ordinati, minimo e massimo di ogni attributo continuo calcolati sui valori ed
+ * esempi duplicati scartati mantenendo il primo.
+ * </p>
+ * <p>
+ * Un costruttore non è thread-safe.
+ * </p>
+ *
+ * @see DelimitedFileSource
+ */
+public final class DataBuilder {
+
+    /** Capacità iniziale (in esempi) dei buffer delle colonne. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Nomi delle colonne. */
+    private final String[] names;
+
+    /** Per ogni colonna, {@code true} se è continua. */
+    private final boolean[] continuous;
+
+    /** Valori delle colonne continue, {@code null} per le discrete. */
+    private final double[][] numbers;
+
+    /** Codici locali delle colonne discrete, {@code null} per le continue. */
+    private final int[][] codes;
+
+    /** Dizionari locali delle colonne discrete: codice di ogni valore. */
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+
+    /** Numero di esempi completati. */
+    private int rows;
+
+    /**
+     * Costruisce un costruttore vuoto con lo schema indicato.
+     *
+     * @param names      i nomi delle colonne
+     * @param continuous per ogni colonna, {@code true} se è continua
+     * @throws IllegalArgumentException se non ci sono colonne o i due array hanno lunghezze diverse
+     */
+    public DataBuilder(String[] names, boolean[] continuous) {
+        if (names.length == 0 || names.length != continuous.length)
+            throw new IllegalArgumentException("Schema non valido.");
+
+        this.names = names.clone();
+        this.continuous = continuous.clone();
+        numbers = new double[names.length][];
+        codes = new int[names.length][];
+        for (int j = 0; j < names.length; j++) {
+            if (continuous[j])
+                numbers[j] = new double[INITIAL_CAPACITY];
+            else
+                codes[j] = new int[INITIAL_CAPACITY];
+            dictionaries.add(continuous[j] ? null : new HashMap<>());
+        }
+    }
+
+    /**
+     * Restituisce il numero di colonne.
+     *
+     * @return il numero di colonne
+     */
+    public int getNumberOfColumns() {
+        return names.length;
+    }
+
+    /**
+     * Indica se una colonna è continua.
+     *
+     * @param column la posizione della colonna
+     * @return {@code true} se la colonna è continua, {@code false} se è discreta
+     */
+    public boolean isContinuous(int column) {
+        return continuous[column];
+    }
+
+    /**
+     * Restituisce il numero di esempi completati, duplicati compresi.
+     *
+     * @return il numero di esempi
+     */
+    public int getNumberOfRows() {
+        return rows;
+    }
+
+    /**
+     * Imposta il valore di una colonna continua nell'esempio in costruzione.
+     *
+     * @param column la posizione della colonna
+     * @param value  il valore
+     * @throws IllegalArgumentException se la colonna non è continua o il valore non è un numero finito
+     */
+    public void setNumber(int column, double value) {
+        if (!continuous[column] || !Double.isFinite(value))
+            throw new IllegalArgumentException("Valore non valido per la colonna " + names[column] + ": " + value);
+        numbers[column][rows] = value;
+    }
+
+    /**
+     * Imposta il valore di una colonna discreta nell'esempio in costruzione.
+     *
+     * @param column la posizione della colonna
+     * @param value  il valore
+     * @throws IllegalArgumentException se la colonna non è discreta o il valore è {@code null}
+     */
+    public void setValue(int column, String value) {
+        if (continuous[column] || value == null)
+            throw new IllegalArgumentException("Valore non valido per la colonna " + names[column] + ": " + value);
+        Map<String, Integer> dictionary = dictionaries.get(column);
+        codes[column][rows] = dictionary.computeIfAbsent(value, v -> dictionary.size());
+    }
+
+    /**
+     * Completa l'esempio in costruzione, di cui devono essere stati impostati
+     * i valori di tutte le colonne, e ne inizia uno nuovo.
+     */
+    public void nextRow() {
+        rows++;
+        for (int j = 0; j < names.length; j++) {
+            if (numbers[j] != null && numbers[j].length == rows)
+                numbers[j] = Arrays.copyOf(numbers[j], rows * 2);
+            else if (codes[j] != null && codes[j].length == rows)
+                codes[j] = Arrays.copyOf(codes[j], rows * 2);
+        }
+    }
+
+    /**
+     * Costruisce il dataset degli esempi completati.
+     *
+     * @return il dataset
+     * @throws DataSourceException   se una colonna continua non ha almeno due valori distinti
+     * @throws EmptyDatasetException se non è stato completato alcun esempio
+     */
+    public Data build() throws DataSourceException, EmptyDatasetException {
+        return build(List.of(this));
+    }
+
+    /**
+     * Costruisce il dataset degli esempi completati da più costruttori con lo stesso
+     * schema, nell'ordine in cui sono elencati, scartando gli esempi duplicati.
+     *
+     * @param parts i costruttori, con lo schema del primo
+     * @return il dataset
+     * @throws DataSourceException      se una colonna continua non ha almeno due valori distinti
+     * @throws EmptyDatasetException    se non è stato completato alcun esempio
+     * @throws IllegalArgumentException se l'elenco è vuoto o i costruttori hanno schemi diversi
+     */
+    public static Data build(List<DataBuilder> parts) throws DataSourceException, EmptyDatasetException {
+        if (parts.isEmpty())
+            throw new IllegalArgumentException("Nessun costruttore da unire.");
+
+        DataBuilder first = parts.get(0);
+        int total = 0;
+        for (DataBuilder part : parts) {
+            if (!Arrays.equals(part.names, first.names) || !Arrays.equals(part.continuous, first.continuous))
+                throw new IllegalArgumentException("Costruttori con schemi diversi.");
+            total = Math.addExact(total, part.rows);
+        }
+        if (total == 0)
+            throw new EmptyDatasetException("Nessun esempio da caricare.");
+
+        int columns = first.names.length;
+        double[][] numbers = new double[columns][];
+        int[][] codes = new int[columns][];
+        String[][] dictionaries = new String[columns][];
+
+        for (int j = 0; j < columns; j++) {
+            if (first.continuous[j]) {
+                numbers[j] = new double[total];
+                int row = 0;
+                for (DataBuilder part : parts) {
+                    System.arraycopy(part.numbers[j], 0, numbers[j], row, part.rows);
+                    row += part.rows;
+                }
+            } else {
+                TreeSet<String> values = new TreeSet<>();
+                for (DataBuilder part : parts)
+                    values.addAll(part.dictionaries.get(j).keySet());
+                dictionaries[j] = values.toArray(new String[0]);
+
+                Map<String, Integer> global = new HashMap<>();
+                for (String value : dictionaries[j])
+                    global.put(value, global.size());
+
+                codes[j] = new int[total];
+                int row = 0;
+                for (DataBuilder part : parts) {
+                    int[] remap = new int[part.dictionaries.get(j).size()];
+                    for (Map.Entry<String, Integer> entry : part.dictionaries.get(j).entrySet())
+                        remap[entry.getValue()] = global.get(entry.getKey());
+                    for (int i = 0; i < part.rows; i++)
+                        codes[j][row++] = remap[part.codes[j][i]];
+                }
+            }
+        }
+
+        int n = distinctRows(numbers, codes, total);
+
+        Attribute[] schema = new Attribute[columns];
+        DataColumn[] dataColumns = new DataColumn[columns];
+        for (int j = 0; j < columns; j++) {
+            try {
+                if (first.continuous[j]) {
+                    double[] values = Arrays.copyOf(numbers[j], n);
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (double value : values) {
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                    }
+                    schema[j] = new ContinuousAttribute(first.names[j], j, min, max);
+                    dataColumns[j] = i -> values[i];
+                } else {
+                    int[] values = Arrays.copyOf(codes[j], n);
+                    String[] dictionary = dictionaries[j];
+                    schema[j] = new DiscreteAttribute(first.names[j], j, dictionary);
+                    dataColumns[j] = i -> dictionary[values[i]];
+                }
+            } catch (IllegalArgumentException e) {
+                throw new DataSourceException("Colonna " + first.names[j] + " non valida: " + e.getMessage(), e);
+            }
+        }
+
+        return new Data(schema, dataColumns, n);
+    }
+
+    /**
+     * Compatta le colonne mantenendo solo la prima occorrenza di ogni esempio.
+     *
+     * @param numbers i valori delle colonne continue ({@code null} per le discrete)
+     * @param codes   i codici delle colonne discrete ({@code null} per le continue)
+     * @param total   il numero di esempi letti
+     * @return il numero di esempi distinti, nelle prime posizioni delle colonne
+     */
+    private static int distinctRows(double[][] numbers, int[][] codes, int total) {
+        int capacity = Integer.highestOneBit(Math.max(2, total) * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+
+        int n = 0;
+        for (int i = 0; i < total; i++) {
+            int slot = (int) (rowHash(numbers, codes, i) & (capacity - 1));
+            boolean duplicate = false;
+            while (table[slot] >= 0) {
+                if (sameRow(numbers, codes, table[slot], i)) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (duplicate)
+                continue;
+
+            for (int j = 0; j < numbers.length; j++) {
+                if (numbers[j] != null)
+                    numbers[j][n] = numbers[j][i];
+                else
+                    codes[j][n] = codes[j][i];
+            }
+            table[slot] = n++;
+        }
+        return n;
+    }
+
+    /**
+     * Calcola l'hash di un esempio.
+     *
+     * @param numbers i valori delle colonne continue
+     * @param codes   i codici delle colonne discrete
+     * @param row     l'esempio
+     * @return l'hash dell'esempio
+     */
+    private static long rowHash(double[][] numbers, int[][] codes, int row) {
+        long hash = 0;
+        for (int j = 0; j < numbers.length; j++) {
+            long value = (numbers[j] != null) ? Double.doubleToLongBits(numbers[j][row] + 0.0) : codes[j][row];
+            hash = (hash + value) * 0x9E3779B97F4A7C15L;
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Confronta due esempi.
+     *
+     * @param numbers i valori delle colonne continue
+     * @param codes   i codici delle colonne discrete
+     * @param a       il primo esempio
+     * @param b       il secondo esempio
+     * @return {@code true} se i due esempi hanno gli stessi valori
+     */
+    private static boolean sameRow(double[][] numbers, int[][] codes, int a, int b) {
+        for (int j = 0; j < numbers.length; j++) {
+            if (numbers[j] != null ? numbers[j][a] != numbers[j][b] : codes[j][a] != codes[j][b])
+                return false;
+        }
+        return true;
+    }
+}
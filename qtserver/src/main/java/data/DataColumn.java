@@ -0,0 +1,22 @@
+package data;
+
+/**
+ * Colonna di un dataset memorizzata in forma compatta, al di fuori del database
+ * (ad esempio in un file mappato in memoria).
+ * <p>
+ * I valori restituiti hanno lo stesso tipo di quelli letti dal database:
+ * {@link Double} per gli attributi continui, {@link String} per quelli discreti.
+ * </p>
+ *
+ * @see Data#Data(Attribute[], DataColumn[], int)
+ */
+public interface DataColumn {
+
+    /**
+     * Restituisce il valore della colonna per l'esempio indicato.
+     *
+     * @param exampleIndex l'indice dell'esempio (riga)
+     * @return il valore grezzo dell'esempio
+     */
+    Object get(int exampleIndex);
+}
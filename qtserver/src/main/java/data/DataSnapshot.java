@@ -0,0 +1,464 @@
+package data;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Copia binaria per colonne di un {@link Data}, salvata in una directory e
+ * ricaricata mappando in memoria i file delle colonne.
+ * <p>
+ * La directory contiene un file di metadati ({@value #SCHEMA_FILE}: numero di
+ * esempi e schema degli attributi, con minimo e massimo degli attributi continui)
+ * e, per ogni attributo {@code j}, il file {@code j.col} con i valori della
+ * colonna: un {@code double} per ogni esempio se l'attributo è continuo, il
+ * codice del valore su 1, 2 o 4 byte se è discreto. Il dizionario di un attributo
+ * discreto, cioè i suoi valori ordinati indicizzati per codice, è nel file
+ * {@code j.dict}. Tutti i valori sono big-endian; le stringhe sono precedute
+ * dalla loro lunghezza in byte (UTF-8).
+ * </p>
+ * <p>
+ * Il caricamento legge solo metadati e dizionari: le colonne vengono mappate
+ * in sola lettura con {@link FileChannel#map}, così che ricaricare un dataset
+ * costi solo gli accessi alle pagine effettivamente lette e che più processi
+ * sullo stesso host condividano le stesse pagine fisiche.
+ * </p>
+ * <p>
+ * Una copia viene scritta in una directory temporanea e poi rinominata
+ * atomicamente sul nome definitivo: una copia presente è sempre completa.
+ * </p>
+ *
+ * @see Data#Data(Attribute[], DataColumn[], int)
+ */
+public final class DataSnapshot {
+
+    /** Identificativo del formato ({@code "QTDS"}), all'inizio del file dei metadati. */
+    public static final int MAGIC = 0x51544453;
+
+    /** Versione corrente del formato. */
+    public static final short VERSION = 1;
+
+    /** Nome del file dei metadati. */
+    public static final String SCHEMA_FILE = "schema.bin";
+
+    /** Tipo di un attributo continuo nei metadati. */
+    private static final byte CONTINUOUS = 0;
+
+    /** Tipo di un attributo discreto nei metadati. */
+    private static final byte DISCRETE = 1;
+
+    /** Dimensione del buffer di scrittura delle colonne. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Costruttore privato: la classe espone solo metodi statici.
+     */
+    private DataSnapshot() { }
+
+    /**
+     * Indica se la directory contiene una copia di un dataset.
+     *
+     * @param directory la directory della copia
+     * @return {@code true} se il file dei metadati è presente
+     */
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(SCHEMA_FILE));
+    }
+
+    /**
+     * Salva una copia per colonne del dataset nella directory indicata.
+     * <p>
+     * Se la directory esiste già la copia non viene sostituita: le colonne
+     * esistenti potrebbero essere mappate in memoria da altri processi.
+     * </p>
+     *
+     * @param data      il dataset da salvare
+     * @param directory la directory della copia
+     * @return {@code true} se la copia è stata scritta, {@code false} se esisteva già
+     * @throws IOException              se la scrittura fallisce
+     * @throws IllegalArgumentException se un valore discreto non appartiene allo schema
+     */
+    public static boolean write(Data data, Path directory) throws IOException {
+        Path target = directory.toAbsolutePath();
+        if (exists(target))
+            return false;
+
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempDirectory(target.getParent(), target.getFileName() + ".");
+
+        try {
+            Attribute[] schema = data.getAttributeSchema();
+            int n = data.getNumberOfExamples();
+
+            try (FileChannel channel = FileChannel.open(tmp.resolve(SCHEMA_FILE),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                Output out = new Output(channel);
+                out.putInt(MAGIC);
+                out.putShort(VERSION);
+                out.putInt(n);
+                out.putInt(schema.length);
+                for (Attribute attribute : schema) {
+                    out.put((attribute instanceof ContinuousAttribute) ? CONTINUOUS : DISCRETE);
+                    out.putString(attribute.getName());
+                    out.putInt(attribute.getIndex());
+                    if (attribute instanceof ContinuousAttribute) {
+                        out.putDouble(((ContinuousAttribute) attribute).getMin());
+                        out.putDouble(((ContinuousAttribute) attribute).getMax());
+                    } else {
+                        out.putInt(((DiscreteAttribute) attribute).getNumberOfDistinctValues());
+                    }
+                }
+                out.flush();
+            }
+
+            for (int j = 0; j < schema.length; j++) {
+                if (schema[j] instanceof DiscreteAttribute)
+                    writeDiscrete(data, j, (DiscreteAttribute) schema[j], tmp);
+                else
+                    writeContinuous(data, j, tmp);
+            }
+
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (IOException e) {
+                // Un'altra sessione o un altro processo ha salvato la stessa copia nel frattempo.
+                if (exists(target))
+                    return false;
+                throw e;
+            }
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    /**
+     * Carica una copia per colonne di un dataset, mappandone in memoria le colonne.
+     *
+     * @param directory la directory della copia
+     * @return il dataset
+     * @throws IOException se la copia non può essere letta o non è valida
+     */
+    public static Data load(Path directory) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(SCHEMA_FILE)));
+
+        try {
+            if (in.getInt() != MAGIC)
+                throw new StreamCorruptedException("Il file non contiene i metadati di un dataset.");
+            short version = in.getShort();
+            if (version != VERSION)
+                throw new StreamCorruptedException("Versione del formato non supportata: " + version);
+
+            int n = in.getInt();
+            int attributeCount = in.getInt();
+            if (n < 0 || attributeCount < 0)
+                throw new StreamCorruptedException("Metadati del dataset non validi.");
+
+            Attribute[] schema = new Attribute[attributeCount];
+            DataColumn[] columns = new DataColumn[attributeCount];
+            for (int j = 0; j < attributeCount; j++) {
+                byte type = in.get();
+                String name = getString(in);
+                int index = in.getInt();
+
+                if (type == CONTINUOUS) {
+                    schema[j] = new ContinuousAttribute(name, index, in.getDouble(), in.getDouble());
+                    columns[j] = new DoubleColumn(map(directory.resolve(j + ".col"), (long) n * Double.BYTES), n);
+                } else if (type == DISCRETE) {
+                    String[] values = readDictionary(directory.resolve(j + ".dict"), in.getInt());
+                    DiscreteAttribute attribute = new DiscreteAttribute(name, index, values);
+                    if (attribute.getNumberOfDistinctValues() != values.length)
+                        throw new StreamCorruptedException("Dizionario della colonna " + j + " non valido.");
+
+                    int width = codeWidth(values.length);
+                    schema[j] = attribute;
+                    columns[j] = new CodeColumn(map(directory.resolve(j + ".col"), (long) n * width), n, width, values);
+                } else {
+                    throw new StreamCorruptedException("Tipo di attributo non valido: " + type);
+                }
+            }
+
+            return new Data(schema, columns, n);
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Copia del dataset non valida: " + e);
+        }
+    }
+
+    /**
+     * Scrive la colonna di un attributo continuo.
+     *
+     * @param data il dataset
+     * @param j    l'indice dell'attributo
+     * @param dir  la directory della copia
+     * @throws IOException se la scrittura fallisce
+     */
+    private static void writeContinuous(Data data, int j, Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(j + ".col"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            for (int i = 0; i < data.getNumberOfExamples(); i++)
+                out.putDouble(((Number) data.getValue(i, j)).doubleValue());
+            out.flush();
+        }
+    }
+
+    /**
+     * Scrive la colonna e il dizionario di un attributo discreto.
+     *
+     * @param data      il dataset
+     * @param j         l'indice dell'attributo
+     * @param attribute l'attributo
+     * @param dir       la directory della copia
+     * @throws IOException se la scrittura fallisce
+     */
+    private static void writeDiscrete(Data data, int j, DiscreteAttribute attribute, Path dir) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(dir.resolve(j + ".dict"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            for (String value : attribute) {
+                codes.put(value, codes.size());
+                out.putString(value);
+            }
+            out.flush();
+        }
+
+        int width = codeWidth(codes.size());
+        try (FileChannel channel = FileChannel.open(dir.resolve(j + ".col"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            for (int i = 0; i < data.getNumberOfExamples(); i++) {
+                Object value = data.getValue(i, j);
+                Integer code = codes.get(String.valueOf(value));
+                if (code == null)
+                    throw new IllegalArgumentException("Valore non presente nello schema: " + value);
+
+                switch (width) {
+                    case 1:
+                        out.put((byte) (int) code);
+                        break;
+                    case 2:
+                        out.putShort((short) (int) code);
+                        break;
+                    default:
+                        out.putInt(code);
+                        break;
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Legge il dizionario di un attributo discreto.
+     *
+     * @param file  il file del dizionario
+     * @param count il numero di valori
+     * @return i valori, indicizzati per codice
+     * @throws IOException se la lettura fallisce
+     */
+    private static String[] readDictionary(Path file, int count) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        String[] values = new String[count];
+        for (int v = 0; v < count; v++)
+            values[v] = getString(in);
+        return values;
+    }
+
+    /**
+     * Mappa in memoria, in sola lettura, il file di una colonna.
+     *
+     * @param file   il file della colonna
+     * @param length la lunghezza attesa (in byte)
+     * @return il contenuto del file
+     * @throws IOException se il file non può essere mappato o non ha la lunghezza attesa
+     */
+    private static MappedByteBuffer map(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != length)
+                throw new StreamCorruptedException("Lunghezza non valida della colonna " + file.getFileName());
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Colonna troppo grande per essere mappata: " + file.getFileName());
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    /**
+     * Restituisce la larghezza (in byte) dei codici di un attributo discreto.
+     *
+     * @param distinctValues il numero di valori distinti dell'attributo
+     * @return 1, 2 o 4
+     */
+    private static int codeWidth(int distinctValues) {
+        if (distinctValues <= 1 << Byte.SIZE)
+            return 1;
+        return (distinctValues <= 1 << Short.SIZE) ? 2 : 4;
+    }
+
+    /**
+     * Legge una stringa UTF-8 preceduta dalla sua lunghezza.
+     *
+     * @param in il buffer da cui leggere
+     * @return la stringa letta
+     */
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Elimina una directory temporanea e il suo contenuto, se esiste ancora.
+     *
+     * @param dir la directory
+     * @throws IOException se l'eliminazione fallisce
+     */
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir))
+            return;
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Colonna di un attributo continuo mappata in memoria.
+     */
+    private static final class DoubleColumn implements DataColumn {
+
+        /** Valori della colonna. */
+        private final MappedByteBuffer values;
+
+        /** Numero di esempi. */
+        private final int size;
+
+        DoubleColumn(MappedByteBuffer values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        public Object get(int exampleIndex) {
+            return values.getDouble(Objects.checkIndex(exampleIndex, size) * Double.BYTES);
+        }
+    }
+
+    /**
+     * Colonna di un attributo discreto mappata in memoria, codificata con il dizionario dell'attributo.
+     */
+    private static final class CodeColumn implements DataColumn {
+
+        /** Codici della colonna. */
+        private final MappedByteBuffer codes;
+
+        /** Numero di esempi. */
+        private final int size;
+
+        /** Larghezza (in byte) di un codice. */
+        private final int width;
+
+        /** Dizionario dell'attributo, indicizzato per codice. */
+        private final String[] values;
+
+        CodeColumn(MappedByteBuffer codes, int size, int width, String[] values) {
+            this.codes = codes;
+            this.size = size;
+            this.width = width;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int exampleIndex) {
+            int offset = Objects.checkIndex(exampleIndex, size) * width;
+            switch (width) {
+                case 1:
+                    return values[codes.get(offset) & 0xFF];
+                case 2:
+                    return values[codes.getShort(offset) & 0xFFFF];
+                default:
+                    return values[codes.getInt(offset)];
+            }
+        }
+    }
+
+    /**
+     * Scrittura bufferizzata su un {@link FileChannel}.
+     */
+    private static final class Output {
+
+        /** Canale di destinazione. */
+        private final FileChannel channel;
+
+        /** Buffer di scrittura. */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1).put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(Short.BYTES).putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES).putInt(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES).putDouble(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                int n = Math.min(bytes.length - offset, ensure(1).remaining());
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        /**
+         * Svuota il buffer se non ha lo spazio richiesto.
+         *
+         * @param bytes lo spazio richiesto
+         * @return il buffer
+         * @throws IOException se la scrittura fallisce
+         */
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+            return buffer;
+        }
+
+        /**
+         * Trasferisce il contenuto del buffer sul canale.
+         *
+         * @throws IOException se la scrittura fallisce
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
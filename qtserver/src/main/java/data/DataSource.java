@@ -0,0 +1,28 @@
+package data;
+
+import exceptions.DataSourceException;
+import exceptions.EmptyDatasetException;
+
+/**
+ * Sorgente da cui può essere letto un {@link Data}.
+ * <p>
+ * Qualunque sia la sorgente, il dataset prodotto ha lo stesso schema del
+ * caricamento dal database: un {@link ContinuousAttribute} per ogni colonna
+ * numerica e un {@link DiscreteAttribute} per ogni altra colonna, con esempi
+ * distinti.
+ * </p>
+ *
+ * @see DatabaseSource
+ * @see DelimitedFileSource
+ */
+public interface DataSource {
+
+    /**
+     * Legge il dataset dalla sorgente.
+     *
+     * @return il dataset letto
+     * @throws DataSourceException   se la sorgente non può essere letta
+     * @throws EmptyDatasetException se la sorgente non contiene alcun esempio
+     */
+    Data load() throws DataSourceException, EmptyDatasetException;
+}
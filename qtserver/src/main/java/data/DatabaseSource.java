@@ -0,0 +1,36 @@
+package data;
+
+import java.sql.SQLException;
+
+import exceptions.DataSourceException;
+import exceptions.DatabaseConnectionException;
+import exceptions.EmptyDatasetException;
+
+/**
+ * Sorgente che legge un dataset da una tabella del database.
+ *
+ * @see Data#Data(String)
+ */
+public class DatabaseSource implements DataSource {
+
+    /** Nome della tabella. */
+    private final String tableName;
+
+    /**
+     * Costruisce la sorgente della tabella indicata.
+     *
+     * @param tableName il nome della tabella
+     */
+    public DatabaseSource(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public Data load() throws DataSourceException, EmptyDatasetException {
+        try {
+            return new Data(tableName);
+        } catch (DatabaseConnectionException | SQLException e) {
+            throw new DataSourceException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import exceptions.DataSourceException;
+import exceptions.EmptyDatasetException;
+
+/**
+ * Sorgente che legge un dataset da un file di testo delimitato (CSV, TSV, ...),
+ * senza accedere al database.
+ * <p>
+ * La prima riga contiene i nomi delle colonne. Il file viene mappato in memoria
+ * e suddiviso in blocchi che terminano a fine riga, analizzati in parallelo
+ * ciascuno in un proprio {@link DataBuilder}; i blocchi vengono poi uniti
+ * nell'ordine del file.
+ * </p>
+ * <p>
+ * Il tipo di ogni colonna può essere dichiarato con {@link #declare(String, boolean)};
+ * altrimenti viene dedotto con una prima lettura, anch'essa parallela: una colonna
+ * è continua se tutti i suoi valori sono numeri finiti. Come nel caricamento dal
+ * database, gli esempi duplicati vengono scartati mantenendo il primo.
+ * </p>
+ * <p>
+ * I campi possono essere racchiusi tra doppi apici, con {@code ""} per un apice
+ * nel valore; un campo non può contenere un'interruzione di riga.
+ * </p>
+ *
+ * @see DataSource
+ */
+public class DelimitedFileSource implements DataSource {
+
+    /** Dimensione minima (in byte) di un blocco analizzato da un singolo thread. */
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+
+    /** Dimensione massima (in byte) di un blocco analizzato da un singolo thread. */
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+
+    /** Dimensione delle letture usate per trovare la fine di una riga. */
+    private static final int SCAN_SIZE = 64 * 1024;
+
+    /** File da leggere. */
+    private final Path file;
+
+    /** Separatore dei campi. */
+    private final byte delimiter;
+
+    /** Numero di thread usati per l'analisi. */
+    private final int threads;
+
+    /** Tipi dichiarati delle colonne, per nome: {@code true} se continua. */
+    private final Map<String, Boolean> declared = new HashMap<>();
+
+    /**
+     * Costruisce la sorgente del file indicato, con un thread di analisi per core.
+     *
+     * @param file      il file da leggere
+     * @param delimiter il separatore dei campi; deve essere un carattere ASCII
+     * @throws IllegalArgumentException se il separatore non è un carattere ASCII valido
+     */
+    public DelimitedFileSource(Path file, char delimiter) {
+        this(file, delimiter, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Costruisce la sorgente del file indicato con il numero di thread di analisi specificato.
+     *
+     * @param file      il file da leggere
+     * @param delimiter il separatore dei campi; deve essere un carattere ASCII
+     * @param threads   il numero di thread di analisi; deve essere positivo
+     * @throws IllegalArgumentException se il separatore non è un carattere ASCII valido
+     *                                  o se {@code threads <= 0}
+     */
+    public DelimitedFileSource(Path file, char delimiter, int threads) {
+        if (delimiter >= 0x80 || delimiter == '"' || delimiter == '\n' || delimiter == '\r')
+            throw new IllegalArgumentException("Separatore non valido: " + delimiter);
+        if (threads <= 0)
+            throw new IllegalArgumentException("Il numero di thread deve essere positivo.");
+
+        this.file = file;
+        this.delimiter = (byte) delimiter;
+        this.threads = threads;
+    }
+
+    /**
+     * Dichiara il tipo di una colonna, che non viene quindi dedotto dai valori.
+     *
+     * @param column     il nome della colonna
+     * @param continuous {@code true} se la colonna è continua, {@code false} se è discreta
+     * @return questa sorgente
+     */
+    public DelimitedFileSource declare(String column, boolean continuous) {
+        declared.put(column, continuous);
+        return this;
+    }
+
+    @Override
+    public Data load() throws DataSourceException, EmptyDatasetException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = endOfLine(channel, 0, size);
+            String[] names = header(channel, dataStart);
+
+            List<long[]> chunks = split(channel, dataStart, size);
+            if (chunks.isEmpty())
+                throw new EmptyDatasetException("Il file " + file.getFileName() + " non contiene esempi.");
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks.size()));
+            try {
+                boolean[] continuous = inferTypes(pool, channel, chunks, names);
+
+                List<Callable<DataBuilder>> tasks = new ArrayList<>();
+                for (long[] chunk : chunks)
+                    tasks.add(() -> parse(map(channel, chunk), chunk[0], names, continuous));
+
+                List<DataBuilder> parsed = new ArrayList<>();
+                for (Future<DataBuilder> result : pool.invokeAll(tasks))
+                    parsed.add(get(result));
+
+                return DataBuilder.build(parsed);
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (IOException e) {
+            throw new DataSourceException("Impossibile leggere il file " + file.getFileName() + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceException("Lettura del file " + file.getFileName() + " interrotta.", e);
+        }
+    }
+
+    /**
+     * Legge i nomi delle colonne dalla prima riga del file.
+     *
+     * @param channel il canale del file
+     * @param end     la fine della prima riga
+     * @return i nomi delle colonne
+     * @throws IOException         se la lettura fallisce
+     * @throws DataSourceException se l'intestazione è vuota o contiene nomi ripetuti
+     */
+    private String[] header(FileChannel channel, long end) throws IOException, DataSourceException {
+        if (end > MAX_CHUNK_SIZE)
+            throw new DataSourceException("Intestazione del file " + file.getFileName() + " troppo lunga.");
+
+        Tokenizer tokenizer = new Tokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, end), 0);
+        List<String> fields = new ArrayList<>();
+        if (!tokenizer.next(fields) || fields.isEmpty())
+            throw new DataSourceException("Il file " + file.getFileName() + " non ha un'intestazione.");
+
+        // Un eventuale byte order mark UTF-8 precede il nome della prima colonna.
+        if (fields.get(0).startsWith("\uFEFF"))
+            fields.set(0, fields.get(0).substring(1));
+
+        String[] names = new String[fields.size()];
+        for (int j = 0; j < names.length; j++) {
+            names[j] = fields.get(j).trim();
+            for (int k = 0; k < j; k++) {
+                if (names[k].equals(names[j]))
+                    throw new DataSourceException("Colonna ripetuta nell'intestazione: " + names[j]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Deduce quali colonne sono continue, analizzando in parallelo i blocchi del file
+     * se qualche colonna non ha un tipo dichiarato.
+     *
+     * @param pool    i thread di analisi
+     * @param channel il canale del file
+     * @param chunks  i blocchi del file
+     * @param names   i nomi delle colonne
+     * @return per ogni colonna, {@code true} se è continua
+     * @throws IOException          se la lettura fallisce
+     * @throws DataSourceException  se una riga non è valida
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private boolean[] inferTypes(ExecutorService pool, FileChannel channel, List<long[]> chunks, String[] names)
+            throws IOException, DataSourceException, InterruptedException {
+
+        boolean[] continuous = new boolean[names.length];
+        boolean[] inferred = new boolean[names.length];
+        boolean any = false;
+        for (int j = 0; j < names.length; j++) {
+            Boolean type = declared.get(names[j]);
+            continuous[j] = (type == null) || type;
+            inferred[j] = (type == null);
+            any |= inferred[j];
+        }
+        if (!any)
+            return continuous;
+
+        List<Callable<boolean[]>> tasks = new ArrayList<>();
+        for (long[] chunk : chunks)
+            tasks.add(() -> numericColumns(map(channel, chunk), chunk[0], inferred, names.length));
+
+        for (Future<boolean[]> result : pool.invokeAll(tasks)) {
+            boolean[] numeric = get(result);
+            for (int j = 0; j < names.length; j++)
+                continuous[j] &= !inferred[j] || numeric[j];
+        }
+        return continuous;
+    }
+
+    /**
+     * Individua le colonne di un blocco i cui valori sono tutti numeri finiti.
+     *
+     * @param region  il contenuto del blocco
+     * @param offset  la posizione del blocco nel file
+     * @param checked le colonne da verificare
+     * @param columns il numero di colonne
+     * @return per ogni colonna verificata, {@code true} se tutti i suoi valori sono numerici
+     * @throws DataSourceException se una riga non ha il numero di campi atteso
+     */
+    private boolean[] numericColumns(MappedByteBuffer region, long offset, boolean[] checked, int columns)
+            throws DataSourceException {
+
+        boolean[] numeric = checked.clone();
+        Tokenizer tokenizer = new Tokenizer(region, offset);
+        List<String> fields = new ArrayList<>(columns);
+        while (tokenizer.next(fields)) {
+            tokenizer.check(fields, columns);
+            for (int j = 0; j < columns; j++) {
+                if (numeric[j] && Double.isNaN(parseNumber(fields.get(j))))
+                    numeric[j] = false;
+            }
+        }
+        return numeric;
+    }
+
+    /**
+     * Analizza un blocco del file nei buffer primitivi delle colonne.
+     *
+     * @param region     il contenuto del blocco
+     * @param offset     la posizione del blocco nel file
+     * @param names      i nomi delle colonne
+     * @param continuous per ogni colonna, {@code true} se è continua
+     * @return le colonne del blocco
+     * @throws DataSourceException se una riga non è valida
+     */
+    private DataBuilder parse(MappedByteBuffer region, long offset, String[] names, boolean[] continuous)
+            throws DataSourceException {
+        DataBuilder chunk = new DataBuilder(names, continuous);
+        Tokenizer tokenizer = new Tokenizer(region, offset);
+        List<String> fields = new ArrayList<>(names.length);
+
+        while (tokenizer.next(fields)) {
+            tokenizer.check(fields, names.length);
+            for (int j = 0; j < names.length; j++) {
+                String field = fields.get(j);
+                if (continuous[j]) {
+                    double value = parseNumber(field);
+                    if (Double.isNaN(value))
+                        throw new DataSourceException("Valore non numerico nella colonna continua "
+                                + names[j] + " alla posizione " + tokenizer.lineStart() + ": " + field);
+                    chunk.setNumber(j, value);
+                } else {
+                    chunk.setValue(j, field);
+                }
+            }
+            chunk.nextRow();
+        }
+        return chunk;
+    }
+
+    /**
+     * Suddivide il contenuto del file in blocchi che iniziano e terminano a inizio riga.
+     *
+     * @param channel il canale del file
+     * @param start   l'inizio dei dati, dopo l'intestazione
+     * @param size    la dimensione del file
+     * @return i blocchi, come coppie {@code {inizio, fine}}
+     * @throws IOException se la lettura fallisce
+     */
+    private List<long[]> split(FileChannel channel, long start, long size) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (size - start) / (threads * 4L)));
+        List<long[]> chunks = new ArrayList<>();
+        while (start < size) {
+            long end = (size - start <= chunkSize) ? size : endOfLine(channel, start + chunkSize, size);
+            chunks.add(new long[] { start, end });
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Restituisce la posizione successiva al primo {@code '\n'} a partire da quella indicata.
+     *
+     * @param channel il canale del file
+     * @param from    la posizione da cui cercare
+     * @param size    la dimensione del file
+     * @return la posizione di inizio della riga successiva, oppure {@code size}
+     * @throws IOException se la lettura fallisce
+     */
+    private static long endOfLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * Mappa in memoria un blocco del file.
+     *
+     * @param channel il canale del file
+     * @param chunk   il blocco, come coppia {@code {inizio, fine}}
+     * @return il contenuto del blocco
+     * @throws IOException se il blocco è troppo grande o la mappatura fallisce
+     */
+    private MappedByteBuffer map(FileChannel channel, long[] chunk) throws IOException {
+        long length = chunk[1] - chunk[0];
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("Riga troppo lunga alla posizione " + chunk[0]);
+        return channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], length);
+    }
+
+    /**
+     * Interpreta un campo come numero.
+     *
+     * @param field il campo
+     * @return il valore, oppure {@code NaN} se il campo non è un numero finito
+     */
+    private static double parseNumber(String field) {
+        String value = field.trim();
+        if (value.isEmpty())
+            return Double.NaN;
+
+        char last = value.charAt(value.length() - 1);
+        if (!Character.isDigit(last) && last != '.')
+            return Double.NaN;
+
+        try {
+            double number = Double.parseDouble(value);
+            return Double.isFinite(number) ? number : Double.NaN;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Restituisce il risultato di un'analisi parallela, propagandone gli errori.
+     *
+     * @param result il risultato
+     * @param <T>    il tipo del risultato
+     * @return il valore del risultato
+     * @throws IOException          se l'analisi è fallita per un errore di I/O
+     * @throws DataSourceException  se l'analisi ha trovato una riga non valida
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static <T> T get(Future<T> result) throws IOException, DataSourceException, InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof DataSourceException)
+                throw (DataSourceException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Scomposizione in righe e campi di un blocco del file.
+     */
+    private final class Tokenizer {
+
+        /** Contenuto del blocco. */
+        private final MappedByteBuffer region;
+
+        /** Posizione del blocco nel file. */
+        private final long offset;
+
+        /** Buffer di copia dei byte di un campo. */
+        private byte[] scratch = new byte[256];
+
+        /** Posizione del prossimo byte da leggere nel blocco. */
+        private int position;
+
+        /** Posizione nel blocco dell'ultima riga letta. */
+        private int start;
+
+        Tokenizer(MappedByteBuffer region, long offset) {
+            this.region = region;
+            this.offset = offset;
+        }
+
+        /**
+         * Legge la prossima riga non vuota, scomponendola in campi.
+         *
+         * @param fields la lista in cui inserire i campi
+         * @return {@code false} se il blocco è terminato
+         */
+        boolean next(List<String> fields) {
+            fields.clear();
+            int limit = region.limit();
+
+            while (position < limit) {
+                start = position;
+                int end = position;
+                while (end < limit && region.get(end) != '\n')
+                    end++;
+                position = end + 1;
+
+                if (end > start && region.get(end - 1) == '\r')
+                    end--;
+                if (end == start)
+                    continue;
+
+                split(start, end, fields);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Restituisce la posizione nel file dell'ultima riga letta.
+         *
+         * @return la posizione della riga
+         */
+        long lineStart() {
+            return offset + start;
+        }
+
+        /**
+         * Verifica che l'ultima riga letta abbia il numero di campi atteso.
+         *
+         * @param fields  i campi della riga
+         * @param columns il numero di colonne
+         * @throws DataSourceException se il numero di campi è diverso
+         */
+        void check(List<String> fields, int columns) throws DataSourceException {
+            if (fields.size() != columns)
+                throw new DataSourceException("La riga alla posizione " + lineStart() + " ha "
+                        + fields.size() + " campi invece di " + columns + ".");
+        }
+
+        /**
+         * Scompone una riga in campi.
+         *
+         * @param from   l'inizio della riga
+         * @param to     la fine della riga, esclusa
+         * @param fields la lista in cui inserire i campi
+         */
+        private void split(int from, int to, List<String> fields) {
+            int i = from;
+            while (true) {
+                int length = 0;
+                if (i < to && region.get(i) == '"') {
+                    i++;
+                    while (i < to) {
+                        byte b = region.get(i++);
+                        if (b == '"') {
+                            if (i < to && region.get(i) == '"')
+                                i++;
+                            else
+                                break;
+                        }
+                        length = append(length, b);
+                    }
+                    while (i < to && region.get(i) != delimiter)
+                        i++;
+                } else {
+                    int end = i;
+                    while (end < to && region.get(end) != delimiter)
+                        end++;
+                    ensureScratch(end - i);
+                    region.get(i, scratch, 0, end - i);
+                    length = end - i;
+                    i = end;
+                }
+
+                fields.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+                if (i >= to)
+                    return;
+                i++;
+            }
+        }
+
+        private int append(int length, byte b) {
+            ensureScratch(length + 1);
+            scratch[length] = b;
+            return length + 1;
+        }
+
+        private void ensureScratch(int length) {
+            if (scratch.length < length)
+                scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+        }
+    }
+}
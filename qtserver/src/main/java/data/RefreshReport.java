@@ -0,0 +1,122 @@
+package data;
+
+import java.util.List;
+
+/**
+ * Resoconto di un aggiornamento incrementale eseguito da {@link Data#refresh()}.
+ * <p>
+ * Gli esempi aggiunti occupano le posizioni da {@link #getFirstNew()} in poi.
+ * Se minimo o massimo di un attributo continuo sono cambiati, le distanze
+ * calcolate prima dell'aggiornamento non sono più confrontabili con quelle nuove:
+ * {@link #isRescaled()} lo segnala, ad esempio per decidere se un clustering
+ * esistente può essere esteso con {@link mining.QTMiner#insert(Data, int)} o va
+ * ricalcolato. I nuovi valori di un attributo discreto non cambiano invece le
+ * distanze esistenti.
+ * </p>
+ */
+public final class RefreshReport {
+
+    /** Posizione del primo esempio aggiunto. */
+    private final int firstNew;
+
+    /** Numero di esempi aggiunti. */
+    private final int added;
+
+    /** Attributi continui di cui sono cambiati minimo o massimo. */
+    private final List<String> rescaledAttributes;
+
+    /** Attributi discreti che hanno ricevuto nuovi valori. */
+    private final List<String> extendedAttributes;
+
+    /** Valore della colonna di modifica fino al quale sono state lette le righe. */
+    private final Object highWaterMark;
+
+    /**
+     * Costruisce il resoconto di un aggiornamento.
+     *
+     * @param firstNew           la posizione del primo esempio aggiunto
+     * @param added              il numero di esempi aggiunti
+     * @param rescaledAttributes gli attributi continui di cui sono cambiati minimo o massimo
+     * @param extendedAttributes gli attributi discreti che hanno ricevuto nuovi valori
+     * @param highWaterMark      il valore della colonna di modifica fino al quale sono state lette le righe
+     */
+    RefreshReport(int firstNew, int added, List<String> rescaledAttributes, List<String> extendedAttributes,
+                  Object highWaterMark) {
+        this.firstNew = firstNew;
+        this.added = added;
+        this.rescaledAttributes = List.copyOf(rescaledAttributes);
+        this.extendedAttributes = List.copyOf(extendedAttributes);
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Restituisce la posizione del primo esempio aggiunto, pari al numero di esempi prima dell'aggiornamento.
+     *
+     * @return la posizione del primo esempio aggiunto
+     */
+    public int getFirstNew() {
+        return firstNew;
+    }
+
+    /**
+     * Restituisce il numero di esempi aggiunti.
+     *
+     * @return il numero di esempi aggiunti
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * Indica se minimo o massimo di almeno un attributo continuo sono cambiati,
+     * cambiando la scala delle distanze degli esempi esistenti.
+     *
+     * @return {@code true} se la scala di un attributo continuo è cambiata
+     */
+    public boolean isRescaled() {
+        return !rescaledAttributes.isEmpty();
+    }
+
+    /**
+     * Restituisce i nomi degli attributi continui di cui sono cambiati minimo o massimo.
+     *
+     * @return i nomi degli attributi, vuoto se nessuna scala è cambiata
+     */
+    public List<String> getRescaledAttributes() {
+        return rescaledAttributes;
+    }
+
+    /**
+     * Restituisce i nomi degli attributi discreti che hanno ricevuto nuovi valori.
+     *
+     * @return i nomi degli attributi, vuoto se nessun dizionario è cambiato
+     */
+    public List<String> getExtendedAttributes() {
+        return extendedAttributes;
+    }
+
+    /**
+     * Restituisce il valore della colonna di modifica fino al quale sono state lette le righe.
+     *
+     * @return il valore limite, con il tipo fornito dal driver JDBC
+     */
+    public Object getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Restituisce una descrizione del resoconto.
+     *
+     * @return la descrizione del resoconto
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Esempi aggiunti: ").append(added).append(" (righe fino a ").append(highWaterMark).append(")\n");
+        if (isRescaled())
+            sb.append("Scala cambiata: ").append(String.join(", ", rescaledAttributes)).append("\n");
+        if (!extendedAttributes.isEmpty())
+            sb.append("Nuovi valori: ").append(String.join(", ", extendedAttributes)).append("\n");
+        return sb.toString();
+    }
+}
@@ -1,8 +1,10 @@
 package database;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -82,6 +84,92 @@ public class TableData {
         return transSet;
     }
 
+    /**
+     * Estrae le transazioni distinte le cui righe hanno un valore della colonna di
+     * modifica compreso nell'intervallo {@code (after, upTo]}, escludendo quelle
+     * uguali a una riga con valore non superiore ad {@code after}, già estratta in
+     * precedenza.
+     * <p>
+     * La colonna di modifica deve crescere a ogni riga aggiunta (una chiave
+     * progressiva o l'istante di inserimento): una riga aggiunta con un valore non
+     * superiore a quelli già estratti non viene più riconosciuta come nuova.
+     * </p>
+     *
+     * @param table        il nome della tabella
+     * @param schema       le colonne da estrarre
+     * @param changeColumn il nome della colonna di modifica
+     * @param after        il limite inferiore (escluso); {@code null} per estrarre le righe fino ad {@code upTo}
+     * @param upTo         il limite superiore (incluso)
+     * @return le transazioni distinte, eventualmente nessuna
+     * @throws SQLException se la query fallisce
+     */
+    public List<Example> getDistinctTransactions(String table, TableSchema schema, String changeColumn,
+                                                 Object after, Object upTo) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder sameValues = new StringBuilder();
+        for (int i = 0; i < schema.getNumberOfAttributes(); i++) {
+            String name = schema.getColumn(i).getColumnName();
+            if (i > 0) {
+                columns.append(", ");
+                sameValues.append(" AND ");
+            }
+            columns.append("n.").append(name);
+            // Confronto che considera uguali anche due NULL, come SELECT DISTINCT.
+            sameValues.append("o.").append(name).append(" <=> n.").append(name);
+        }
+
+        StringBuilder query = new StringBuilder("SELECT DISTINCT ").append(columns)
+                .append(" FROM ").append(table).append(" n WHERE n.").append(changeColumn).append(" <= ?");
+        if (after != null)
+            query.append(" AND n.").append(changeColumn).append(" > ?")
+                 .append(" AND NOT EXISTS (SELECT 1 FROM ").append(table).append(" o WHERE o.")
+                 .append(changeColumn).append(" <= ? AND ").append(sameValues).append(")");
+
+        List<Example> transactions = new ArrayList<>();
+        try (PreparedStatement statement = db.getConnection().prepareStatement(query.toString())) {
+            statement.setObject(1, upTo);
+            if (after != null) {
+                statement.setObject(2, after);
+                statement.setObject(3, after);
+            }
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Example tuple = new Example();
+                    for (int i = 0; i < schema.getNumberOfAttributes(); i++) {
+                        if (schema.getColumn(i).isNumber())
+                            tuple.add(rs.getDouble(i + 1));
+                        else
+                            tuple.add(rs.getString(i + 1));
+                    }
+                    transactions.add(tuple);
+                }
+            }
+        }
+        return transactions;
+    }
+
+    /**
+     * Restituisce il valore massimo di una colonna, con il tipo fornito dal driver JDBC.
+     * <p>
+     * A differenza di {@link #getAggregateColumnValue(String, Column, QUERY_TYPE)}
+     * il valore non viene convertito, così che chiavi e istanti restino esatti.
+     * </p>
+     *
+     * @param table  il nome della tabella
+     * @param column il nome della colonna
+     * @return il valore massimo, oppure {@code null} se la tabella è vuota
+     * @throws SQLException se la query fallisce
+     */
+    public Object getMaxValue(String table, String column) throws SQLException {
+        String query = "SELECT MAX(" + column + ") FROM " + table;
+
+        try (Statement statement = db.getConnection().createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            return rs.next() ? rs.getObject(1) : null;
+        }
+    }
+
     /**
      * Estrae i valori distinti e ordinati della colonna specificata.
      *
@@ -134,7 +222,7 @@ public class TableData {
 
             if (rs.next()) {
                 if (column.isNumber())
-                    value = rs.getFloat(1);
+                    value = rs.getDouble(1);
                 else
                     value = rs.getString(1);
             }
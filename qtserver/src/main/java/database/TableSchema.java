@@ -86,6 +86,19 @@ public class TableSchema {
      * @throws SQLException se si verificano errori durante l’accesso ai metadati
      */
     public TableSchema(DBAccess db, String tableName) throws SQLException {
+        this(db, tableName, null);
+    }
+
+    /**
+     * Costruisce lo schema della tabella escludendo una colonna, ad esempio quella
+     * usata solo per riconoscere le righe aggiunte.
+     *
+     * @param db             l’accesso al database già connesso
+     * @param tableName      il nome della tabella della quale estrarre lo schema
+     * @param excludedColumn il nome della colonna da escludere; {@code null} per non escluderne alcuna
+     * @throws SQLException se si verificano errori durante l’accesso ai metadati
+     */
+    public TableSchema(DBAccess db, String tableName, String excludedColumn) throws SQLException {
 
         final HashMap<String, String> typeMap = new HashMap<>();
         typeMap.put("BIT", "string");
@@ -104,9 +117,12 @@ public class TableSchema {
 
         while (results.next()) {
             String sqlType = results.getString("TYPE_NAME");
+            String columnName = results.getString("COLUMN_NAME");
+            if (columnName.equalsIgnoreCase(excludedColumn))
+                continue;
             if (typeMap.containsKey(sqlType)) {
                 tableSchema.add(new Column(
-                    results.getString("COLUMN_NAME"),
+                    columnName,
                     typeMap.get(sqlType)
                 ));
             }
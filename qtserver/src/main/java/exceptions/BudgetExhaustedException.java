@@ -0,0 +1,34 @@
+package exceptions;
+
+/**
+ * Eccezione controllata sollevata quando una computazione dell'algoritmo
+ * di clustering QT (Quality Threshold) esaurisce il budget assegnato,
+ * di tempo o di valutazioni di distanza, prima di aver assegnato tutte le tuple.
+ * <p>
+ * Come la cancellazione, il controllo del budget è cooperativo: l'algoritmo
+ * lo verifica a ogni nuovo centroide candidato.
+ * </p>
+ *
+ * @see mining.QTMiner#setTimeBudget(long)
+ * @see mining.QTMiner#setDistanceBudget(long)
+ */
+public class BudgetExhaustedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Costruisce l'eccezione con un messaggio di default.
+     */
+    public BudgetExhaustedException() {
+        super("Il budget della computazione dei cluster è esaurito.");
+    }
+
+    /**
+     * Costruisce l'eccezione specificando un messaggio personalizzato.
+     *
+     * @param message il messaggio descrittivo dell'errore
+     */
+    public BudgetExhaustedException(String message) {
+        super(message);
+    }
+}
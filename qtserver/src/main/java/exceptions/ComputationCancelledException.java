@@ -0,0 +1,33 @@
+package exceptions;
+
+/**
+ * Eccezione controllata sollevata quando una computazione dell'algoritmo
+ * di clustering QT (Quality Threshold) viene interrotta prima del termine
+ * a seguito di una richiesta di cancellazione.
+ * <p>
+ * La cancellazione è cooperativa: l'algoritmo verifica periodicamente
+ * la richiesta e, se presente, abbandona il calcolo sollevando questa eccezione.
+ * </p>
+ *
+ * @see mining.QTMiner#cancel()
+ */
+public class ComputationCancelledException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Costruisce l'eccezione con un messaggio di default.
+     */
+    public ComputationCancelledException() {
+        super("La computazione dei cluster è stata annullata.");
+    }
+
+    /**
+     * Costruisce l'eccezione specificando un messaggio personalizzato.
+     *
+     * @param message il messaggio descrittivo dell'errore
+     */
+    public ComputationCancelledException(String message) {
+        super(message);
+    }
+}
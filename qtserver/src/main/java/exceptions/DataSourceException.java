@@ -0,0 +1,35 @@
+package exceptions;
+
+/**
+ * Eccezione controllata sollevata quando un dataset non può essere letto
+ * dalla propria sorgente (database o file delimitato).
+ * <p>
+ * L'eventuale causa originale, ad esempio un errore SQL o di I/O,
+ * è disponibile tramite {@link #getCause()}.
+ * </p>
+ *
+ * @see data.DataSource
+ */
+public class DataSourceException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Costruisce l'eccezione specificando un messaggio personalizzato.
+     *
+     * @param message il messaggio descrittivo dell'errore
+     */
+    public DataSourceException(String message) {
+        super(message);
+    }
+
+    /**
+     * Costruisce l'eccezione specificando un messaggio personalizzato e la causa.
+     *
+     * @param message il messaggio descrittivo dell'errore
+     * @param cause   l'eccezione che ha causato l'errore
+     */
+    public DataSourceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
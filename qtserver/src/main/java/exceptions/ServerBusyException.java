@@ -0,0 +1,32 @@
+package exceptions;
+
+/**
+ * Eccezione controllata sollevata quando il server non è in grado di accettare
+ * una nuova richiesta di calcolo perché la coda dei job è piena oppure perché
+ * la memoria stimata necessaria supera il budget disponibile.
+ * <p>
+ * Il client che riceve questa condizione può ripetere la richiesta in un secondo momento.
+ * </p>
+ *
+ * @see server.ComputeScheduler
+ */
+public class ServerBusyException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Costruisce l'eccezione con un messaggio di default.
+     */
+    public ServerBusyException() {
+        super("Server occupato, riprovare più tardi.");
+    }
+
+    /**
+     * Costruisce l'eccezione specificando un messaggio personalizzato.
+     *
+     * @param message il messaggio descrittivo dell'errore
+     */
+    public ServerBusyException(String message) {
+        super(message);
+    }
+}
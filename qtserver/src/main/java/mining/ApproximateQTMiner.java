@@ -0,0 +1,482 @@
+package mining;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import data.Data;
+import data.Tuple;
+import exceptions.BudgetExhaustedException;
+import exceptions.ClusteringRadiusException;
+import exceptions.ComputationCancelledException;
+
+/**
+ * Variante approssimata dell'algoritmo QT, per l'esplorazione di dataset grandi.
+ * <p>
+ * A ogni passo {@link QTMiner} calcola la dimensione esatta del cluster candidato
+ * di ogni tupla non assegnata, con un costo quadratico nel numero di tuple rimaste.
+ * Questa variante stima invece la dimensione di ogni candidato contando le tuple
+ * entro il raggio in un campione casuale delle tuple non assegnate, e calcola il
+ * vicinato esatto solo dei candidati con le stime più alte
+ * ({@link #setTopCandidates(int)}): tra questi sceglie il più popoloso, che forma
+ * il cluster con tutte le tuple non assegnate entro il raggio, come in {@link QTMiner}.
+ * Ogni cluster prodotto rispetta quindi il raggio; può però non essere il più
+ * popoloso possibile.
+ * </p>
+ * <p>
+ * Il campione comprende inizialmente la frazione indicata delle tuple non
+ * assegnate e viene raddoppiato finché la stima del candidato migliore non ha
+ * un errore relativo atteso entro il limite indicato. Con pochi cluster grandi
+ * basta un campione piccolo; quando restano solo cluster piccoli il campione
+ * cresce fino a comprendere tutte le tuple non assegnate e il passo diventa esatto.
+ * </p>
+ * <p>
+ * Lo scostamento dall'algoritmo esatto può essere misurato con
+ * {@link #validate(Data, int)} su un sottoinsieme casuale del dataset.
+ * </p>
+ *
+ * @see QTMiner
+ */
+public class ApproximateQTMiner {
+
+    /** Frazione di default delle tuple non assegnate usata come campione iniziale. */
+    public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+    /** Errore relativo di default della stima del candidato migliore. */
+    public static final double DEFAULT_ERROR_BOUND = 0.1;
+
+    /** Numero di default di candidati di cui viene calcolato il vicinato esatto. */
+    public static final int DEFAULT_TOP_CANDIDATES = 8;
+
+    /** Insieme dei cluster prodotti dall'ultima computazione. */
+    private ClusterSet C = new ClusterSet();
+
+    /** Raggio massimo entro cui le tuple possono appartenere allo stesso cluster. */
+    private final double radius;
+
+    /** Frazione delle tuple non assegnate usata come campione iniziale. */
+    private final double sampleRate;
+
+    /** Errore relativo massimo della stima del candidato migliore. */
+    private final double errorBound;
+
+    /** Numero di candidati di cui viene calcolato il vicinato esatto. */
+    private int topCandidates = DEFAULT_TOP_CANDIDATES;
+
+    /** Generatore dei campioni. */
+    private Random random = new Random();
+
+    /** Indica se è stata richiesta l'interruzione della computazione in corso. */
+    private volatile boolean cancelled;
+
+    /** Numero di distanze valutate dalla computazione in corso. */
+    private volatile long distanceEvaluations;
+
+    /** Miner esatto della validazione in corso; {@code null} se non ce n'è una. */
+    private volatile MultiRadiusMiner exactMiner;
+
+    /**
+     * Costruisce un miner approssimato con il raggio indicato e i parametri di default.
+     *
+     * @param radius il raggio massimo; deve essere positivo
+     * @throws IllegalArgumentException se {@code radius <= 0}
+     */
+    public ApproximateQTMiner(double radius) {
+        this(radius, DEFAULT_SAMPLE_RATE, DEFAULT_ERROR_BOUND);
+    }
+
+    /**
+     * Costruisce un miner approssimato con i parametri indicati.
+     *
+     * @param radius     il raggio massimo; deve essere positivo
+     * @param sampleRate la frazione delle tuple non assegnate usata come campione iniziale,
+     *                   in {@code (0, 1]}; con {@code 1} ogni stima è esatta
+     * @param errorBound l'errore relativo atteso massimo della stima del candidato migliore,
+     *                   in {@code (0, 1)}
+     * @throws IllegalArgumentException se un parametro non è valido
+     */
+    public ApproximateQTMiner(double radius, double sampleRate, double errorBound) {
+        if (radius <= 0)
+            throw new IllegalArgumentException("Il raggio deve essere maggiore di zero.");
+        if (!(sampleRate > 0 && sampleRate <= 1))
+            throw new IllegalArgumentException("La frazione campionata deve essere compresa tra 0 (escluso) e 1.");
+        if (!(errorBound > 0 && errorBound < 1))
+            throw new IllegalArgumentException("L'errore relativo deve essere compreso tra 0 e 1 (esclusi).");
+
+        this.radius = radius;
+        this.sampleRate = sampleRate;
+        this.errorBound = errorBound;
+    }
+
+    /**
+     * Imposta il numero di candidati, tra quelli con le stime più alte, di cui
+     * viene calcolato il vicinato esatto a ogni passo.
+     *
+     * @param candidates il numero di candidati; deve essere positivo
+     * @throws IllegalArgumentException se {@code candidates <= 0}
+     */
+    public void setTopCandidates(int candidates) {
+        if (candidates <= 0)
+            throw new IllegalArgumentException("Il numero di candidati deve essere positivo.");
+        this.topCandidates = candidates;
+    }
+
+    /**
+     * Imposta il seme del generatore dei campioni, per ottenere risultati riproducibili.
+     *
+     * @param seed il seme
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Restituisce l'insieme dei cluster prodotti dall'ultima computazione.
+     *
+     * @return il {@link ClusterSet} calcolato
+     */
+    public ClusterSet getC() {
+        return C;
+    }
+
+    /**
+     * Richiede l'interruzione della computazione in corso.
+     */
+    public void cancel() {
+        cancelled = true;
+        MultiRadiusMiner miner = exactMiner;
+        if (miner != null)
+            miner.cancel();
+    }
+
+    /**
+     * Restituisce il numero di distanze valutate dalla computazione in corso o dall'ultima terminata.
+     *
+     * @return il numero di distanze valutate
+     */
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    /**
+     * Esegue l'algoritmo QT approssimato sul dataset fornito, producendo e memorizzando i cluster.
+     *
+     * @param data il dataset su cui eseguire il clustering
+     * @return il numero di cluster generati
+     * @throws ClusteringRadiusException     se l'algoritmo produce un unico cluster
+     * @throws ComputationCancelledException se la computazione viene annullata tramite {@link #cancel()}
+     */
+    public int compute(Data data) throws ClusteringRadiusException, ComputationCancelledException {
+        distanceEvaluations = 0;
+        C = cluster(data);
+        if (C.size() == 1)
+            throw new ClusteringRadiusException();
+        return C.size();
+    }
+
+    /**
+     * Misura lo scostamento dall'algoritmo esatto su un sottoinsieme casuale del dataset.
+     * <p>
+     * Sul sottoinsieme vengono eseguiti sia l'algoritmo esatto, tramite
+     * {@link MultiRadiusMiner}, sia quello approssimato con gli stessi parametri;
+     * i due clustering vengono confrontati per numero di cluster, dimensione del
+     * più grande, distanza media dal centroide e indice di Rand corretto. Il
+     * clustering corrente non cambia.
+     * </p>
+     *
+     * @param data il dataset
+     * @param size il numero di esempi del sottoinsieme; se non è minore di quelli del dataset
+     *             vengono usati tutti
+     * @return il confronto tra i due clustering
+     * @throws ComputationCancelledException se la validazione viene annullata tramite {@link #cancel()}
+     * @throws BudgetExhaustedException      se il sottoinsieme supera il budget di vicini di {@link MultiRadiusMiner}
+     * @throws IllegalArgumentException      se {@code size <= 0}
+     */
+    public ValidationReport validate(Data data, int size)
+            throws ComputationCancelledException, BudgetExhaustedException {
+        if (size <= 0)
+            throw new IllegalArgumentException("Il sottoinsieme deve contenere almeno un esempio.");
+
+        int n = data.getNumberOfExamples();
+        int m = Math.min(size, n);
+        int[] rows = random.ints(0, n).distinct().limit(m).toArray();
+        Data subset = data.subset(rows);
+
+        exactMiner = new MultiRadiusMiner(new double[] {radius}, 1);
+        ClusterSet exact;
+        long exactEvaluations;
+        try {
+            exact = exactMiner.compute(subset)[0];
+            exactEvaluations = exactMiner.getDistanceEvaluations();
+        } finally {
+            exactMiner = null;
+        }
+        if (cancelled)
+            throw new ComputationCancelledException();
+
+        // Le distanze valutate sul sottoinsieme non si sommano a quelle dell'ultima computazione.
+        long computeEvaluations = distanceEvaluations;
+        distanceEvaluations = 0;
+        ClusterSet approximate;
+        long approximateEvaluations;
+        try {
+            approximate = cluster(subset);
+        } finally {
+            approximateEvaluations = distanceEvaluations;
+            distanceEvaluations = computeEvaluations;
+        }
+
+        return new ValidationReport(m, exact.size(), approximate.size(), largest(exact), largest(approximate),
+                                    averageDistance(exact, subset), averageDistance(approximate, subset),
+                                    adjustedRandIndex(labels(exact, m), labels(approximate, m)),
+                                    exactEvaluations, approximateEvaluations);
+    }
+
+    /**
+     * Esegue l'algoritmo QT approssimato.
+     *
+     * @param data il dataset
+     * @return il set di cluster
+     * @throws ComputationCancelledException se la computazione viene annullata
+     */
+    private ClusterSet cluster(Data data) throws ComputationCancelledException {
+        int n = data.getNumberOfExamples();
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; i++)
+            tuples[i] = data.getItemSet(i);
+
+        // Tuple non assegnate: il prefisso di lunghezza sampled è il campione corrente.
+        int[] pending = new int[n];
+        for (int i = 0; i < n; i++)
+            pending[i] = i;
+        int remaining = n;
+
+        // Stime dei candidati e distanze dal centroide scelto, indicizzate per tupla.
+        int[] counts = new int[n];
+        double[] distances = new double[n];
+        boolean[] isClustered = new boolean[n];
+        int[] members = new int[n];
+        double[] memberDistances = new double[n];
+        ClusterSet clusters = new ClusterSet();
+
+        while (remaining > 0) {
+            for (int a = 0; a < remaining; a++)
+                counts[pending[a]] = 0;
+            int sampled = 0;
+            int target = Math.max(1, (int) Math.ceil(sampleRate * remaining));
+
+            while (true) {
+                // Estende il campione con un mescolamento parziale delle tuple non assegnate.
+                for (int t = sampled; t < target; t++) {
+                    int swap = t + random.nextInt(remaining - t);
+                    int tmp = pending[t];
+                    pending[t] = pending[swap];
+                    pending[swap] = tmp;
+                }
+
+                int best = 0;
+                for (int a = 0; a < remaining; a++) {
+                    if (cancelled)
+                        throw new ComputationCancelledException();
+
+                    Tuple candidate = tuples[pending[a]];
+                    int hits = counts[pending[a]];
+                    for (int b = sampled; b < target; b++) {
+                        if (candidate.getDistance(tuples[pending[b]]) <= radius)
+                            hits++;
+                    }
+                    counts[pending[a]] = hits;
+                    best = Math.max(best, hits);
+                }
+                distanceEvaluations += (long) remaining * (target - sampled);
+                sampled = target;
+
+                // Errore relativo atteso della stima: sqrt((1 - p) / hits), con p la quota stimata.
+                double share = (double) best / sampled;
+                if (sampled == remaining || 1 - share <= errorBound * errorBound * best)
+                    break;
+                target = Math.min(remaining, sampled * 2);
+            }
+
+            // Vicinato esatto dei candidati con le stime più alte.
+            PriorityQueue<Integer> top = new PriorityQueue<>((x, y) -> Integer.compare(counts[x], counts[y]));
+            for (int a = 0; a < remaining; a++) {
+                int i = pending[a];
+                if (top.size() < topCandidates) {
+                    top.add(i);
+                } else if (counts[i] > counts[top.peek()]) {
+                    top.poll();
+                    top.add(i);
+                }
+            }
+
+            int centroid = -1;
+            int size = -1;
+            for (int i : top) {
+                Tuple candidate = tuples[i];
+                int within = 0;
+                for (int b = 0; b < remaining; b++) {
+                    if (candidate.getDistance(tuples[pending[b]]) <= radius)
+                        within++;
+                }
+                distanceEvaluations += remaining;
+                if (within > size || (within == size && i < centroid)) {
+                    size = within;
+                    centroid = i;
+                }
+            }
+
+            // Membri del cluster in ordine di indice, con le distanze dal centroide.
+            int count = 0;
+            for (int b = 0; b < remaining; b++) {
+                int i = pending[b];
+                double distance = tuples[centroid].getDistance(tuples[i]);
+                if (distance <= radius) {
+                    distances[i] = distance;
+                    members[count++] = i;
+                    isClustered[i] = true;
+                }
+            }
+            distanceEvaluations += remaining;
+            Arrays.sort(members, 0, count);
+            for (int k = 0; k < count; k++)
+                memberDistances[k] = distances[members[k]];
+            clusters.add(new Cluster(tuples[centroid], members, memberDistances, count));
+
+            // Rimuove le tuple assegnate, mantenendo compatto l'elenco delle non assegnate.
+            int kept = 0;
+            for (int b = 0; b < remaining; b++) {
+                if (!isClustered[pending[b]])
+                    pending[kept++] = pending[b];
+            }
+            remaining = kept;
+        }
+        return clusters;
+    }
+
+    /**
+     * Restituisce la dimensione del cluster più grande di un set.
+     *
+     * @param clusters il set di cluster
+     * @return la dimensione del cluster più grande, {@code 0} se il set è vuoto
+     */
+    private static int largest(ClusterSet clusters) {
+        int largest = 0;
+        for (Cluster c : clusters)
+            largest = Math.max(largest, c.getSize());
+        return largest;
+    }
+
+    /**
+     * Restituisce la distanza media delle tuple dal centroide del proprio cluster.
+     *
+     * @param clusters il set di cluster
+     * @param data     il dataset a cui appartengono le tuple
+     * @return la distanza media
+     */
+    private static double averageDistance(ClusterSet clusters, Data data) {
+        double sum = 0;
+        int count = 0;
+        for (Cluster c : clusters) {
+            sum += c.getAverageDistance(data) * c.getSize();
+            count += c.getSize();
+        }
+        return (count > 0) ? sum / count : 0;
+    }
+
+    /**
+     * Restituisce, per ogni tupla, la posizione del cluster a cui appartiene.
+     *
+     * @param clusters il set di cluster
+     * @param n        il numero di tuple
+     * @return le etichette delle tuple
+     */
+    private static int[] labels(ClusterSet clusters, int n) {
+        int[] labels = new int[n];
+        int label = 0;
+        for (Cluster c : clusters) {
+            for (int k = 0; k < c.getSize(); k++)
+                labels[c.getMember(k)] = label;
+            label++;
+        }
+        return labels;
+    }
+
+    /**
+     * Calcola l'indice di Rand corretto per il caso tra due partizioni delle stesse tuple:
+     * {@code 1} se coincidono, circa {@code 0} se la loro concordanza è quella attesa per caso.
+     *
+     * @param first  le etichette della prima partizione
+     * @param second le etichette della seconda partizione
+     * @return l'indice di Rand corretto
+     */
+    private static double adjustedRandIndex(int[] first, int[] second) {
+        Map<Long, Integer> joint = new HashMap<>();
+        Map<Integer, Integer> firstSizes = new HashMap<>();
+        Map<Integer, Integer> secondSizes = new HashMap<>();
+        for (int i = 0; i < first.length; i++) {
+            joint.merge(((long) first[i] << 32) | second[i], 1, Integer::sum);
+            firstSizes.merge(first[i], 1, Integer::sum);
+            secondSizes.merge(second[i], 1, Integer::sum);
+        }
+
+        double index = 0;
+        for (int count : joint.values())
+            index += pairs(count);
+        double firstPairs = 0;
+        for (int count : firstSizes.values())
+            firstPairs += pairs(count);
+        double secondPairs = 0;
+        for (int count : secondSizes.values())
+            secondPairs += pairs(count);
+
+        double expected = firstPairs * secondPairs / pairs(first.length);
+        double maximum = (firstPairs + secondPairs) / 2;
+        return (maximum == expected) ? 1.0 : (index - expected) / (maximum - expected);
+    }
+
+    /**
+     * Restituisce il numero di coppie distinte di {@code n} elementi.
+     *
+     * @param n il numero di elementi
+     * @return il numero di coppie
+     */
+    private static double pairs(long n) {
+        return n * (n - 1) / 2.0;
+    }
+
+    /**
+     * Confronto tra l'algoritmo QT esatto e quello approssimato sullo stesso sottoinsieme.
+     *
+     * @param examples                   il numero di esempi del sottoinsieme
+     * @param exactClusters              il numero di cluster dell'algoritmo esatto
+     * @param approximateClusters        il numero di cluster dell'algoritmo approssimato
+     * @param exactLargest               la dimensione del cluster più grande dell'algoritmo esatto
+     * @param approximateLargest         la dimensione del cluster più grande dell'algoritmo approssimato
+     * @param exactAverageDistance       la distanza media dal centroide nell'algoritmo esatto
+     * @param approximateAverageDistance la distanza media dal centroide nell'algoritmo approssimato
+     * @param adjustedRandIndex          l'indice di Rand corretto tra i due clustering
+     * @param exactEvaluations           le distanze valutate dall'algoritmo esatto
+     * @param approximateEvaluations     le distanze valutate dall'algoritmo approssimato
+     */
+    public record ValidationReport(int examples, int exactClusters, int approximateClusters,
+                                   int exactLargest, int approximateLargest,
+                                   double exactAverageDistance, double approximateAverageDistance,
+                                   double adjustedRandIndex, long exactEvaluations, long approximateEvaluations) {
+
+        @Override
+        public String toString() {
+            return String.format("Esempi: %d%n"
+                                         + "Cluster: %d esatti, %d approssimati%n"
+                                         + "Cluster più grande: %d esatto, %d approssimato%n"
+                                         + "Distanza media: %.4f esatta, %.4f approssimata%n"
+                                         + "Indice di Rand corretto: %.4f%n"
+                                         + "Distanze valutate: %d esatte, %d approssimate%n",
+                                 examples, exactClusters, approximateClusters, exactLargest, approximateLargest,
+                                 exactAverageDistance, approximateAverageDistance, adjustedRandIndex,
+                                 exactEvaluations, approximateEvaluations);
+        }
+    }
+}
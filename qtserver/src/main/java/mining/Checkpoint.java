@@ -0,0 +1,175 @@
+package mining;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import data.Data;
+
+/**
+ * Stato intermedio di una computazione QT, salvato periodicamente da
+ * {@link QTMiner} per poterla riprendere dopo un riavvio del server.
+ * <p>
+ * Il checkpoint contiene i cluster già scelti e l'insieme delle tuple già
+ * assegnate, codificato come bitmap. Raggio, numero di esempi e un'impronta
+ * dei valori del dataset permettono di riconoscere un checkpoint che non
+ * appartiene alla computazione da riprendere.
+ * </p>
+ * <p>
+ * Il file viene scritto in un file temporaneo nella stessa directory, forzato
+ * su disco e poi rinominato atomicamente sul nome definitivo: dopo un arresto
+ * improvviso resta quindi sempre l'ultimo checkpoint completo.
+ * </p>
+ *
+ * @see QTMiner#setCheckpoint(String, long)
+ */
+final class Checkpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Raggio della computazione. */
+    private final double radius;
+
+    /** Numero di esempi del dataset. */
+    private final int examples;
+
+    /** Impronta dei valori del dataset. */
+    private final long fingerprint;
+
+    /** Bitmap delle tuple già assegnate a un cluster. */
+    private final long[] clustered;
+
+    /** Cluster già scelti. */
+    private final ClusterSet clusters;
+
+    /**
+     * Costruisce un checkpoint.
+     *
+     * @param radius      il raggio della computazione
+     * @param examples    il numero di esempi del dataset
+     * @param fingerprint l'impronta dei valori del dataset
+     * @param isClustered array booleano che indica quali tuple sono già assegnate
+     * @param clusters    i cluster già scelti
+     */
+    Checkpoint(double radius, int examples, long fingerprint, boolean[] isClustered, ClusterSet clusters) {
+        BitSet bits = new BitSet(isClustered.length);
+        for (int i = 0; i < isClustered.length; i++) {
+            if (isClustered[i])
+                bits.set(i);
+        }
+
+        this.radius = radius;
+        this.examples = examples;
+        this.fingerprint = fingerprint;
+        this.clustered = bits.toLongArray();
+        this.clusters = clusters;
+    }
+
+    /**
+     * Indica se il checkpoint appartiene alla computazione indicata.
+     *
+     * @param radius      il raggio della computazione
+     * @param examples    il numero di esempi del dataset
+     * @param fingerprint l'impronta dei valori del dataset
+     * @return {@code true} se raggio, numero di esempi e impronta coincidono
+     */
+    boolean matches(double radius, int examples, long fingerprint) {
+        return this.radius == radius && this.examples == examples && this.fingerprint == fingerprint;
+    }
+
+    /**
+     * Ricostruisce l'array delle tuple già assegnate.
+     *
+     * @return array booleano che indica quali tuple sono già assegnate
+     */
+    boolean[] getClustered() {
+        BitSet bits = BitSet.valueOf(clustered);
+        boolean[] isClustered = new boolean[examples];
+        for (int i = bits.nextSetBit(0); i >= 0 && i < examples; i = bits.nextSetBit(i + 1))
+            isClustered[i] = true;
+        return isClustered;
+    }
+
+    /**
+     * Restituisce i cluster già scelti.
+     *
+     * @return i cluster già scelti
+     */
+    ClusterSet getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Scrive il checkpoint sul file indicato, sostituendo atomicamente quello precedente.
+     *
+     * @param target il file del checkpoint
+     * @throws IOException se la scrittura fallisce
+     */
+    void write(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(file))) {
+                out.writeObject(this);
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        // Rende persistente anche la rinomina; non tutti i sistemi permettono di aprire una directory.
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) { }
+    }
+
+    /**
+     * Legge il checkpoint dal file indicato.
+     *
+     * @param source il file del checkpoint
+     * @return il checkpoint letto
+     * @throws IOException se la lettura fallisce o il file non contiene un checkpoint
+     */
+    static Checkpoint read(Path source) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(source.toFile())))) {
+            Object checkpoint = in.readObject();
+            if (!(checkpoint instanceof Checkpoint))
+                throw new InvalidObjectException("Il file non contiene un checkpoint.");
+            return (Checkpoint) checkpoint;
+        } catch (ClassNotFoundException e) {
+            throw new InvalidObjectException("Checkpoint non valido: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Calcola l'impronta dei valori di un dataset.
+     *
+     * @param data il dataset
+     * @return l'impronta del dataset
+     */
+    static long fingerprint(Data data) {
+        long hash = 17;
+        for (int i = 0; i < data.getNumberOfExamples(); i++) {
+            for (int j = 0; j < data.getNumberOfAttributes(); j++)
+                hash = 31 * hash + String.valueOf(data.getValue(i, j)).hashCode();
+        }
+        return hash;
+    }
+}
@@ -1,9 +1,16 @@
 package mining;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import data.Data;
 import data.Tuple;
@@ -11,10 +18,22 @@ import data.Tuple;
 /**
  * Rappresenta un singolo cluster prodotto dall’algoritmo di clustering QT (Quality Threshold).
  * <p>
- * Ogni cluster è identificato da un {@link Tuple} che funge da centroide e da un insieme
- * di indici che rappresentano le tuple del dataset appartenenti al cluster.
- * I riferimenti alle tuple sono memorizzati in un {@link HashSet} per evitare duplicati
- * e garantire inserimenti e ricerche efficienti.
+ * Ogni cluster è identificato da un {@link Tuple} che funge da centroide e dagli indici
+ * delle tuple del dataset appartenenti al cluster, mantenuti in un array ordinato e senza
+ * duplicati. Per ciascuna tupla il cluster ricorda anche la distanza dal centroide, già
+ * calcolata dall'algoritmo durante la costruzione, insieme a somma, minimo e massimo
+ * delle distanze: la rappresentazione e il riepilogo del cluster non devono quindi
+ * ricalcolare alcuna distanza.
+ * </p>
+ * <p>
+ * I cluster salvati con il formato precedente (un {@link Set} di indici senza distanze)
+ * vengono ancora letti correttamente; le loro distanze vengono calcolate una sola volta,
+ * al primo utilizzo che fornisce il dataset di riferimento.
+ * </p>
+ * <p>
+ * Un cluster letto da un {@link ClusteringFile} mappato in memoria conosce
+ * subito centroide, dimensione e statistiche delle distanze; indici e
+ * distanze delle sue tuple vengono decodificati solo al primo accesso.
  * </p>
  *
  * @see ClusterSet
@@ -22,11 +41,41 @@ import data.Tuple;
  */
 public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializable {
 
+    private static final long serialVersionUID = -6314645366062717758L;
+
+    /** Campi presenti nella forma serializzata del cluster. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("centroid", Tuple.class),
+        new ObjectStreamField("members", int[].class),
+        new ObjectStreamField("distances", double[].class)
+    };
+
+    /** Capacità iniziale degli array di un cluster vuoto. */
+    private static final int INITIAL_CAPACITY = 16;
+
     /** Centroide del cluster. */
-    private final Tuple centroid;
+    private Tuple centroid;
+
+    /** Indici delle tuple assegnate al cluster, in ordine crescente; valide le prime {@link #size} posizioni. */
+    private int[] members;
+
+    /** Distanze dal centroide delle tuple in {@link #members}, {@code null} se non ancora note. */
+    private double[] distances;
 
-    /** Indici delle tuple assegnate al cluster (senza duplicati). */
-    private final Set<Integer> clusteredData;
+    /** Numero di tuple assegnate al cluster. */
+    private int size;
+
+    /** Somma delle distanze dal centroide. */
+    private double distanceSum;
+
+    /** Distanza minima dal centroide. */
+    private double minDistance;
+
+    /** Distanza massima dal centroide. */
+    private double maxDistance;
+
+    /** Decodifica differita di indici e distanze; {@code null} se sono già disponibili. */
+    private transient volatile Supplier<Cluster> loader;
 
     /**
      * Costruisce un cluster vuoto con il centroide specificato.
@@ -35,7 +84,48 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
      */
     Cluster(Tuple centroid) {
         this.centroid = centroid;
-        this.clusteredData = new HashSet<>();
+        this.members = new int[INITIAL_CAPACITY];
+        this.distances = new double[INITIAL_CAPACITY];
+        updateStatistics();
+    }
+
+    /**
+     * Costruisce un cluster a partire dagli indici delle sue tuple e dalle relative distanze,
+     * già calcolate, dal centroide.
+     *
+     * @param centroid  la tupla che rappresenta il centroide del cluster
+     * @param members   gli indici delle tuple, in ordine crescente e senza duplicati
+     * @param distances le distanze dal centroide delle tuple in {@code members},
+     *                  oppure {@code null} se non sono note
+     * @param size      il numero di posizioni valide di {@code members} e {@code distances}
+     */
+    Cluster(Tuple centroid, int[] members, double[] distances, int size) {
+        this.centroid = centroid;
+        this.members = Arrays.copyOf(members, size);
+        this.distances = (distances != null) ? Arrays.copyOf(distances, size) : null;
+        this.size = size;
+        updateStatistics();
+    }
+
+    /**
+     * Costruisce un cluster i cui indici e distanze vengono decodificati solo al primo accesso.
+     * Le statistiche sono {@code NaN} se le distanze non sono note.
+     *
+     * @param centroid    la tupla che rappresenta il centroide del cluster
+     * @param size        il numero di tuple del cluster
+     * @param distanceSum la somma delle distanze dal centroide
+     * @param minDistance la distanza minima dal centroide
+     * @param maxDistance la distanza massima dal centroide
+     * @param loader      la decodifica del cluster completo
+     */
+    Cluster(Tuple centroid, int size, double distanceSum, double minDistance, double maxDistance,
+            Supplier<Cluster> loader) {
+        this.centroid = centroid;
+        this.size = size;
+        this.distanceSum = distanceSum;
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+        this.loader = loader;
     }
 
     /**
@@ -48,14 +138,39 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
     }
 
     /**
-     * Aggiunge una tupla al cluster tramite il suo indice.
+     * Aggiunge una tupla al cluster tramite il suo indice, insieme alla sua distanza dal centroide.
      *
-     * @param id l’indice della tupla nel dataset
+     * @param id       l’indice della tupla nel dataset
+     * @param distance la distanza della tupla dal centroide
      * @return {@code true} se l’indice è stato aggiunto,
      *         {@code false} se era già presente
+     * @throws IllegalStateException se le distanze del cluster non sono ancora note
      */
-    public boolean addData(int id) {
-        return clusteredData.add(id);
+    public boolean addData(int id, double distance) {
+        ensureMembers();
+        if (distances == null)
+            throw new IllegalStateException("Distanze del cluster non ancora calcolate.");
+
+        int pos = Arrays.binarySearch(members, 0, size, id);
+        if (pos >= 0)
+            return false;
+
+        pos = -pos - 1;
+        if (size == members.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+            members = Arrays.copyOf(members, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+        }
+        System.arraycopy(members, pos, members, pos + 1, size - pos);
+        System.arraycopy(distances, pos, distances, pos + 1, size - pos);
+        members[pos] = id;
+        distances[pos] = distance;
+        size++;
+
+        distanceSum += distance;
+        minDistance = (size == 1) ? distance : Math.min(minDistance, distance);
+        maxDistance = (size == 1) ? distance : Math.max(maxDistance, distance);
+        return true;
     }
 
     /**
@@ -65,7 +180,8 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
      * @return {@code true} se la tupla appartiene al cluster
      */
     public boolean contain(int id) {
-        return clusteredData.contains(id);
+        ensureMembers();
+        return Arrays.binarySearch(members, 0, size, id) >= 0;
     }
 
     /**
@@ -74,7 +190,16 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
      * @param id l’indice della tupla da rimuovere
      */
     public void removeTuple(int id) {
-        clusteredData.remove(id);
+        ensureMembers();
+        int pos = Arrays.binarySearch(members, 0, size, id);
+        if (pos < 0)
+            return;
+
+        System.arraycopy(members, pos + 1, members, pos, size - pos - 1);
+        if (distances != null)
+            System.arraycopy(distances, pos + 1, distances, pos, size - pos - 1);
+        size--;
+        updateStatistics();
     }
 
     /**
@@ -83,17 +208,101 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
      * @return la cardinalità del cluster
      */
     public int getSize() {
-        return clusteredData.size();
+        return size;
+    }
+
+    /**
+     * Restituisce l'indice della tupla nella posizione indicata del cluster.
+     *
+     * @param k la posizione, compresa tra 0 e {@code getSize() - 1}
+     * @return l'indice della tupla nel dataset
+     * @throws IndexOutOfBoundsException se {@code k} non è una posizione valida
+     */
+    public int getMember(int k) {
+        ensureMembers();
+        return members[Objects.checkIndex(k, size)];
+    }
+
+    /**
+     * Restituisce la distanza dal centroide della tupla nella posizione indicata del cluster.
+     *
+     * @param k    la posizione, compresa tra 0 e {@code getSize() - 1}
+     * @param data il dataset di riferimento, usato solo se le distanze non sono ancora note
+     * @return la distanza dal centroide
+     * @throws IndexOutOfBoundsException se {@code k} non è una posizione valida
+     */
+    public double getDistance(int k, Data data) {
+        ensureDistances(data);
+        return distances[Objects.checkIndex(k, size)];
+    }
+
+    /**
+     * Restituisce la distanza media delle tuple del cluster dal centroide.
+     *
+     * @param data il dataset di riferimento, usato solo se le distanze non sono ancora note
+     * @return la distanza media
+     */
+    public double getAverageDistance(Data data) {
+        ensureStatistics(data);
+        return distanceSum / size;
+    }
+
+    /**
+     * Restituisce la distanza minima di una tupla del cluster dal centroide.
+     *
+     * @param data il dataset di riferimento, usato solo se le distanze non sono ancora note
+     * @return la distanza minima
+     */
+    public double getMinDistance(Data data) {
+        ensureStatistics(data);
+        return minDistance;
     }
 
     /**
-     * Restituisce un iteratore sugli indici delle tuple contenute nel cluster.
+     * Restituisce la distanza massima di una tupla del cluster dal centroide.
+     *
+     * @param data il dataset di riferimento, usato solo se le distanze non sono ancora note
+     * @return la distanza massima
+     */
+    public double getMaxDistance(Data data) {
+        ensureStatistics(data);
+        return maxDistance;
+    }
+
+    /**
+     * Indica se le distanze dal centroide sono già note, così che
+     * {@link #getDistance(int, Data)} possa essere invocato senza dataset.
+     *
+     * @return {@code true} se le distanze sono note
+     */
+    boolean hasDistances() {
+        ensureMembers();
+        return distances != null;
+    }
+
+    /**
+     * Restituisce un iteratore sugli indici delle tuple contenute nel cluster, in ordine crescente.
      *
      * @return l’iteratore sugli indici
      */
     @Override
     public Iterator<Integer> iterator() {
-        return clusteredData.iterator();
+        ensureMembers();
+        return new Iterator<Integer>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return members[next++];
+            }
+        };
     }
 
     /**
@@ -120,7 +329,16 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder("Centroid=(");
+        return "Centroid=(" + getCentroidValues() + ") Size=" + getSize();
+    }
+
+    /**
+     * Restituisce i valori del centroide separati da uno spazio.
+     *
+     * @return i valori del centroide
+     */
+    public String getCentroidValues() {
+        StringBuilder sb = new StringBuilder();
 
         for (int i = 0; i < centroid.getLength(); i++)
             sb.append(centroid.get(i).getValue()).append(" ");
@@ -128,7 +346,6 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
         if (centroid.getLength() > 0)
             sb.setLength(sb.length() - 1);
 
-        sb.append(") Size=").append(getSize());
         return sb.toString();
     }
 
@@ -141,29 +358,174 @@ public class Cluster implements Iterable<Integer>, Comparable<Cluster>, Serializ
      */
     public String toString(Data data) {
         StringBuilder sb = new StringBuilder();
-        sb.append("Centroid=(");
+        appendHeader(sb);
 
-        for (int i = 0; i < centroid.getLength(); i++)
-            sb.append(centroid.get(i).getValue()).append(" ");
+        for (int k = 0; k < size; k++)
+            appendExample(sb, data, k);
 
-        sb.setLength(sb.length() - 1);
-        sb.append(")\nExamples:\n");
+        appendFooter(sb, data);
+        return sb.toString();
+    }
 
-        for (Integer idx : clusteredData) {
-            sb.append("[");
-            for (int j = 0; j < data.getNumberOfAttributes(); j++)
-                sb.append(data.getValue(idx, j)).append(" ");
+    /**
+     * Aggiunge l'intestazione della rappresentazione dettagliata del cluster
+     * (centroide e inizio dell'elenco degli esempi).
+     *
+     * @param sb il buffer a cui aggiungere il testo
+     */
+    void appendHeader(StringBuilder sb) {
+        sb.append("Centroid=(").append(getCentroidValues()).append(")\nExamples:\n");
+    }
 
-            sb.setLength(sb.length() - 1);
-            sb.append("] dist=")
-              .append(centroid.getDistance(data.getItemSet(idx)))
-              .append("\n");
-        }
+    /**
+     * Aggiunge la riga della rappresentazione dettagliata relativa a un esempio del cluster,
+     * con i valori della tupla e la sua distanza dal centroide.
+     *
+     * @param sb   il buffer a cui aggiungere il testo
+     * @param data il dataset da cui proviene l'esempio
+     * @param k    la posizione dell'esempio nel cluster
+     */
+    void appendExample(StringBuilder sb, Data data, int k) {
+        int idx = getMember(k);
+
+        sb.append("[");
+        for (int j = 0; j < data.getNumberOfAttributes(); j++)
+            sb.append(data.getValue(idx, j)).append(" ");
 
+        sb.setLength(sb.length() - 1);
+        sb.append("] dist=")
+          .append(getDistance(k, data))
+          .append("\n");
+    }
+
+    /**
+     * Aggiunge la chiusura della rappresentazione dettagliata del cluster (distanza media).
+     *
+     * @param sb   il buffer a cui aggiungere il testo
+     * @param data il dataset da cui provengono gli esempi
+     */
+    void appendFooter(StringBuilder sb, Data data) {
         sb.append("AvgDistance=")
-          .append(centroid.avgDistance(data, clusteredData))
+          .append(getAverageDistance(data))
           .append("\n");
+    }
 
-        return sb.toString();
+    /**
+     * Calcola le distanze dal centroide, se non sono ancora note
+     * (cluster letto da un file salvato con il formato precedente).
+     *
+     * @param data il dataset da cui provengono gli indici del cluster
+     */
+    void ensureDistances(Data data) {
+        ensureMembers();
+        if (distances != null)
+            return;
+
+        double[] computed = new double[size];
+        for (int k = 0; k < size; k++)
+            computed[k] = centroid.getDistance(data.getItemSet(members[k]));
+
+        distances = computed;
+        updateStatistics();
+    }
+
+    /**
+     * Garantisce che somma, minimo e massimo delle distanze siano noti: per un cluster
+     * non ancora decodificato sono già disponibili se il file conteneva le distanze.
+     *
+     * @param data il dataset da cui provengono gli indici del cluster
+     */
+    private void ensureStatistics(Data data) {
+        if (loader == null || Double.isNaN(distanceSum))
+            ensureDistances(data);
+    }
+
+    /**
+     * Decodifica indici e distanze del cluster, se non è ancora stato fatto.
+     */
+    private void ensureMembers() {
+        if (loader != null)
+            loadMembers();
+    }
+
+    /**
+     * Decodifica indici e distanze del cluster tramite {@link #loader}.
+     */
+    private synchronized void loadMembers() {
+        Supplier<Cluster> pending = loader;
+        if (pending == null)
+            return;
+
+        Cluster loaded = pending.get();
+        members = loaded.members;
+        distances = loaded.distances;
+        size = loaded.size;
+        distanceSum = loaded.distanceSum;
+        minDistance = loaded.minDistance;
+        maxDistance = loaded.maxDistance;
+        loader = null;
+    }
+
+    /**
+     * Ricalcola somma, minimo e massimo delle distanze dal centroide.
+     */
+    private void updateStatistics() {
+        distanceSum = 0.0;
+        minDistance = 0.0;
+        maxDistance = 0.0;
+        if (distances == null || size == 0)
+            return;
+
+        minDistance = Double.POSITIVE_INFINITY;
+        maxDistance = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < size; k++) {
+            distanceSum += distances[k];
+            minDistance = Math.min(minDistance, distances[k]);
+            maxDistance = Math.max(maxDistance, distances[k]);
+        }
+    }
+
+    /**
+     * Serializza il cluster: centroide, indici delle tuple e relative distanze.
+     *
+     * @param out lo stream di destinazione
+     * @throws IOException se la scrittura fallisce
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ensureMembers();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("centroid", centroid);
+        fields.put("members", Arrays.copyOf(members, size));
+        fields.put("distances", (distances != null) ? Arrays.copyOf(distances, size) : null);
+        out.writeFields();
+    }
+
+    /**
+     * Deserializza il cluster, riconoscendo anche il formato precedente
+     * in cui gli indici erano memorizzati in un {@link Set} ({@code clusteredData}).
+     *
+     * @param in lo stream di origine
+     * @throws IOException            se la lettura fallisce
+     * @throws ClassNotFoundException se una classe serializzata non è disponibile
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        centroid = (Tuple) fields.get("centroid", null);
+
+        if (fields.getObjectStreamClass().getField("clusteredData") != null) {
+            Set<?> legacy = (Set<?>) fields.get("clusteredData", null);
+            members = new int[legacy.size()];
+            int k = 0;
+            for (Object id : legacy)
+                members[k++] = (Integer) id;
+            Arrays.sort(members);
+            distances = null;
+        } else {
+            members = (int[]) fields.get("members", null);
+            distances = (double[]) fields.get("distances", null);
+        }
+
+        size = members.length;
+        updateStatistics();
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,10 @@
 package mining;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -23,14 +26,35 @@ import data.Data;
  */
 public class ClusterSet implements Iterable<Cluster>, Serializable {
 
-    /** Insieme dei cluster memorizzati, senza duplicati e ordinato. */
+    private static final long serialVersionUID = 5985576923061157200L;
+
+    /** Insieme dei cluster memorizzati, senza duplicati e ordinato (nell'ordine del file, se letto da un {@link ClusteringFile}). */
     private Set<Cluster> C = new TreeSet<>();
 
+    /**
+     * Indici delle tuple rimaste senza cluster perché la computazione ha esaurito
+     * il budget, in ordine crescente; {@code null} se il set è completo.
+     */
+    private int[] unassigned;
+
     /**
      * Costruisce un {@code ClusterSet} vuoto.
      */
     public ClusterSet() { }
 
+    /**
+     * Costruisce un {@code ClusterSet} con i cluster indicati, mantenendone l'ordine
+     * (ad esempio quello di un {@link ClusteringFile}, già ordinato al salvataggio).
+     * Alla prima aggiunta di un cluster il set torna a essere ordinato.
+     *
+     * @param clusters   i cluster, nell'ordine in cui devono essere restituiti
+     * @param unassigned gli indici delle tuple non assegnate; {@code null} se il set è completo
+     */
+    ClusterSet(Collection<Cluster> clusters, int[] unassigned) {
+        this.C = new LinkedHashSet<>(clusters);
+        this.unassigned = unassigned;
+    }
+
     /**
      * Aggiunge un nuovo {@link Cluster} all’insieme.
      *
@@ -40,9 +64,82 @@ public class ClusterSet implements Iterable<Cluster>, Serializable {
     public void add(Cluster c) {
         if (c == null)
             throw new NullPointerException("Impossibile aggiungere un cluster null al ClusterSet.");
+        if (!(C instanceof TreeSet))
+            C = new TreeSet<>(C);
         C.add(c);
     }
 
+    /**
+     * Ripristina l'ordinamento del set dopo che la dimensione di alcuni cluster è cambiata.
+     */
+    void resort() {
+        C = new TreeSet<>(new ArrayList<>(C));
+    }
+
+    /**
+     * Restituisce il numero di cluster presenti nel set.
+     *
+     * @return la cardinalità del set di cluster
+     */
+    public int size() {
+        return C.size();
+    }
+
+    /**
+     * Restituisce il cluster nella posizione indicata, secondo l'ordine di iterazione
+     * (lo stesso usato per numerare i cluster in {@link #toString(Data)}).
+     *
+     * @param index la posizione del cluster
+     * @return il cluster nella posizione indicata
+     * @throws IndexOutOfBoundsException se {@code index} non è compreso tra 0 e {@code size() - 1}
+     */
+    public Cluster get(int index) {
+        if (index < 0 || index >= C.size())
+            throw new IndexOutOfBoundsException("Cluster inesistente: " + index);
+
+        Iterator<Cluster> it = C.iterator();
+        for (int i = 0; i < index; i++)
+            it.next();
+        return it.next();
+    }
+
+    /**
+     * Segnala le tuple rimaste senza cluster, rendendo il set parziale.
+     *
+     * @param unassigned gli indici delle tuple non assegnate, in ordine crescente
+     */
+    void setUnassigned(int[] unassigned) {
+        this.unassigned = unassigned;
+    }
+
+    /**
+     * Indica se il set è parziale, cioè se la computazione che lo ha prodotto
+     * si è fermata prima di assegnare tutte le tuple.
+     *
+     * @return {@code true} se alcune tuple non appartengono ad alcun cluster
+     */
+    public boolean isPartial() {
+        return unassigned != null;
+    }
+
+    /**
+     * Restituisce gli indici delle tuple rimaste senza cluster.
+     *
+     * @return gli indici delle tuple non assegnate, in ordine crescente; vuoto se il set è completo
+     */
+    public int[] getUnassigned() {
+        return (unassigned != null) ? unassigned.clone() : new int[0];
+    }
+
+    /**
+     * Aggiunge la riga che segnala le tuple non assegnate di un set parziale.
+     *
+     * @param sb il builder su cui scrivere
+     */
+    void appendUnassigned(StringBuilder sb) {
+        sb.append("Clustering parziale: ").append(unassigned.length).append(" tuple non assegnate\n");
+    }
+
     /**
      * Restituisce un iteratore sui cluster presenti nel set.
      *
@@ -73,7 +170,8 @@ public class ClusterSet implements Iterable<Cluster>, Serializable {
     /**
      * Restituisce una rappresentazione dettagliata dei cluster
      * in relazione al dataset di riferimento, includendo le tuple
-     * assegnate e le relative distanze dal centroide.
+     * assegnate e le relative distanze dal centroide. Per un set parziale
+     * viene aggiunto il numero di tuple non assegnate.
      *
      * @param data il dataset usato per dettagliare il contenuto dei cluster
      * @return una stringa con descrizione dettagliata di ciascun cluster
@@ -85,6 +183,9 @@ public class ClusterSet implements Iterable<Cluster>, Serializable {
         for (Cluster cluster : this)
             sb.append(i++).append(": ").append(cluster.toString(data)).append("\n");
 
+        if (isPartial())
+            appendUnassigned(sb);
+
         return sb.toString();
     }
 }
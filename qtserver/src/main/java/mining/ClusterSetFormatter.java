@@ -0,0 +1,113 @@
+package mining;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import data.Data;
+
+/**
+ * Produce la rappresentazione dettagliata di un {@link ClusterSet} in blocchi
+ * di dimensione limitata, generati su richiesta.
+ * <p>
+ * La concatenazione dei blocchi coincide con {@link ClusterSet#toString(Data)},
+ * ma il testo non viene mai costruito per intero: ogni invocazione di
+ * {@link #next()} prosegue dal punto in cui si era fermata la precedente,
+ * cluster per cluster ed esempio per esempio. Ogni blocco termina a fine riga
+ * e supera la dimensione indicata al più della lunghezza di una riga.
+ * </p>
+ *
+ * @see ClusterSet
+ * @see Cluster
+ */
+public class ClusterSetFormatter implements Iterator<String> {
+
+    /** Set di cluster da rappresentare. */
+    private final ClusterSet clusterSet;
+
+    /** Dataset da cui provengono gli esempi dei cluster. */
+    private final Data data;
+
+    /** Iteratore sui cluster ancora da rappresentare. */
+    private final Iterator<Cluster> clusters;
+
+    /** Dimensione indicativa (in caratteri) di ciascun blocco. */
+    private final int chunkSize;
+
+    /** Cluster in corso di rappresentazione, {@code null} se nessuno. */
+    private Cluster current;
+
+    /** Posizione del prossimo esempio del cluster in corso. */
+    private int example;
+
+    /** Indice progressivo del prossimo cluster. */
+    private int index;
+
+    /** Indica se resta da produrre la riga delle tuple non assegnate di un set parziale. */
+    private boolean unassignedPending;
+
+    /**
+     * Costruisce il generatore di blocchi per il set di cluster indicato.
+     *
+     * @param clusterSet il set di cluster da rappresentare
+     * @param data       il dataset da cui provengono gli esempi
+     * @param chunkSize  la dimensione indicativa di ciascun blocco; deve essere positiva
+     * @throws IllegalArgumentException se {@code chunkSize <= 0}
+     */
+    public ClusterSetFormatter(ClusterSet clusterSet, Data data, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("La dimensione dei blocchi deve essere positiva.");
+
+        this.clusterSet = clusterSet;
+        this.data = data;
+        this.clusters = clusterSet.iterator();
+        this.chunkSize = chunkSize;
+        this.unassignedPending = clusterSet.isPartial();
+    }
+
+    /**
+     * Indica se restano parti del testo da produrre.
+     *
+     * @return {@code true} se esiste almeno un altro blocco
+     */
+    @Override
+    public boolean hasNext() {
+        return current != null || clusters.hasNext() || unassignedPending;
+    }
+
+    /**
+     * Produce il blocco successivo della rappresentazione.
+     *
+     * @return il blocco successivo
+     * @throws NoSuchElementException se il testo è già stato prodotto per intero
+     */
+    @Override
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException("Nessun altro blocco da produrre.");
+
+        StringBuilder sb = new StringBuilder();
+
+        while (sb.length() < chunkSize && hasNext()) {
+            if (current == null && !clusters.hasNext()) {
+                clusterSet.appendUnassigned(sb);
+                unassignedPending = false;
+            }
+            else if (current == null) {
+                current = clusters.next();
+                example = 0;
+                sb.append(index++).append(": ");
+                current.appendHeader(sb);
+            }
+            else if (example < current.getSize()) {
+                current.appendExample(sb, data, example++);
+            }
+            else {
+                current.appendFooter(sb, data);
+                sb.append("\n");
+                current = null;
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,1029 @@
+package mining;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.ContinuousItem;
+import data.Data;
+import data.DataColumn;
+import data.DiscreteAttribute;
+import data.DiscreteItem;
+import data.Tuple;
+
+/**
+ * Formato binario compatto con cui vengono salvati i clustering.
+ * <p>
+ * Rispetto alla serializzazione Java del {@link ClusterSet}, lo schema degli
+ * attributi viene scritto una sola volta, i centroidi occupano una riga a
+ * larghezza fissa di una tabella (un {@code double} per ogni attributo continuo,
+ * il codice del valore per ogni attributo discreto) e gli indici delle tuple di
+ * ciascun cluster, ordinati, vengono codificati come differenze successive in
+ * formato a lunghezza variabile. Tutti i valori sono big-endian:
+ * </p>
+ * <pre>
+ * file      := header, schema, [dati], cluster[clusterCount], membri[clusterCount], nonAssegnate, long crc
+ * header    := int MAGIC, short version, short flags, double radius,
+ *              int attributeCount, int clusterCount, int unassignedCount
+ * schema    := per ogni attributo: byte tipo (0 continuo, 1 discreto), string nome,
+ *              double min, double max (continuo) | int k, string[k] valori (discreto)
+ * cluster   := long offsetMembri, int size, byte distanze (0 assenti, 1 presenti),
+ *              double somma, double min, double max, centroide
+ * dati      := int numberOfExamples, per ogni attributo: byte larghezza,
+ *              valore[numberOfExamples] (double se continuo, codice di 1, 2 o 4 byte se discreto)
+ * centroide := per ogni attributo: double valore (continuo) | int codice (discreto)
+ * membri    := varint[size] differenze tra indici successivi (il primo è assoluto),
+ *              seguite da double[size] distanze se presenti
+ * nonAssegnate := varint[unassignedCount] differenze tra indici successivi
+ * string    := int lunghezza, byte[lunghezza] UTF-8
+ * </pre>
+ * <p>
+ * {@code offsetMembri} è la posizione, dall'inizio del file, dei membri del
+ * cluster; il {@code crc} è il CRC-32C di tutti i byte che lo precedono.
+ * La sezione {@code dati}, presente se l'header ha il flag corrispondente,
+ * contiene per colonne il dataset da cui è stato calcolato il clustering:
+ * il file è così autosufficiente e i suoi esempi possono essere mostrati
+ * senza accedere al database (vedi {@link #loadData()}).
+ * La scrittura avviene tramite un {@link FileChannel} con un buffer di
+ * {@value #BUFFER_SIZE} byte, aggiornando il checksum a ogni svuotamento,
+ * in un file temporaneo poi rinominato atomicamente sul nome definitivo.
+ * </p>
+ * <p>
+ * In lettura il file viene mappato in memoria ({@link MappedByteBuffer}) e
+ * all'apertura vengono decodificati solo header e schema. La tabella dei
+ * cluster, a righe di larghezza fissa, fa da indice: centroide, dimensione e
+ * statistiche delle distanze di un cluster si leggono direttamente dalla sua
+ * riga, mentre i suoi membri vengono decodificati solo al primo accesso.
+ * Il checksum non viene verificato all'apertura, perché richiederebbe di
+ * leggere l'intero file, ma solo su richiesta con {@link #verify()}.
+ * </p>
+ *
+ * @see QTMiner#salva(String)
+ * @see QTMiner#QTMiner(String)
+ */
+public final class ClusteringFile {
+
+    /** Identificativo del formato ({@code "QTCF"}), all'inizio del file. */
+    public static final int MAGIC = 0x51544346;
+
+    /** Versione corrente del formato; la versione 1 non prevede la sezione dei dati. */
+    public static final short VERSION = 2;
+
+    /** Flag dell'header: il clustering è parziale (vedi {@link ClusterSet#isPartial()}). */
+    private static final short FLAG_PARTIAL = 1;
+
+    /** Flag dell'header: il file contiene la sezione dei dati. */
+    private static final short FLAG_DATA = 2;
+
+    /** Dimensione (in byte) dell'header. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Double.BYTES + 3 * Integer.BYTES;
+
+    /** Dimensione (in byte) della parte fissa di una riga della tabella dei cluster. */
+    private static final int ROW_HEADER_SIZE = Long.BYTES + Integer.BYTES + 1 + 3 * Double.BYTES;
+
+    /** Tipo di un attributo continuo nello schema. */
+    private static final byte CONTINUOUS = 0;
+
+    /** Tipo di un attributo discreto nello schema. */
+    private static final byte DISCRETE = 1;
+
+    /** Dimensione del buffer di scrittura. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Logaritmo in base 2 della dimensione delle regioni mappate in memoria (1 GiB). */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /** Contenuto del file, mappato in memoria. */
+    private final Mapping mapping;
+
+    /** Flag dell'header. */
+    private final short flags;
+
+    /** Raggio del clustering. */
+    private final double radius;
+
+    /** Schema degli attributi dei centroidi. */
+    private final Attribute[] schema;
+
+    /** Valori ordinati di ogni attributo discreto, indicizzati per codice; {@code null} per gli attributi continui. */
+    private final String[][] values;
+
+    /** Numero di cluster. */
+    private final int clusterCount;
+
+    /** Numero di tuple non assegnate. */
+    private final int unassignedCount;
+
+    /** Numero di esempi della sezione dei dati; {@code -1} se la sezione è assente. */
+    private final int numberOfExamples;
+
+    /** Posizione della colonna di ogni attributo nella sezione dei dati. */
+    private final long[] columnOffsets;
+
+    /** Larghezza (in byte) dei valori della colonna di ogni attributo. */
+    private final byte[] columnWidths;
+
+    /** Posizione della tabella dei cluster. */
+    private final long tableOffset;
+
+    /** Dimensione (in byte) di una riga della tabella dei cluster. */
+    private final int rowSize;
+
+    /**
+     * Costruisce la rappresentazione di un file mappato in memoria, decodificandone header e schema.
+     *
+     * @param mapping il contenuto del file
+     * @throws StreamCorruptedException se header o schema non sono validi
+     */
+    private ClusteringFile(Mapping mapping) throws StreamCorruptedException {
+        this.mapping = mapping;
+        Cursor in = new Cursor(0);
+
+        if (in.getInt() != MAGIC)
+            throw new StreamCorruptedException("Il file non è nel formato dei clustering.");
+        short version = in.getShort();
+        if (version < 1 || version > VERSION)
+            throw new StreamCorruptedException("Versione del formato non supportata: " + version);
+
+        flags = in.getShort();
+        radius = in.getDouble();
+        int attributeCount = in.getInt();
+        clusterCount = in.getInt();
+        unassignedCount = in.getInt();
+        if (attributeCount < 0 || clusterCount < 0 || unassignedCount < 0)
+            throw new StreamCorruptedException("Header del file di clustering non valido.");
+
+        schema = new Attribute[attributeCount];
+        values = new String[attributeCount][];
+        for (int j = 0; j < attributeCount; j++) {
+            byte type = in.get();
+            String name = in.getString();
+            if (type == CONTINUOUS) {
+                schema[j] = new ContinuousAttribute(name, j, in.getDouble(), in.getDouble());
+            } else if (type == DISCRETE) {
+                String[] distinct = new String[in.getInt()];
+                for (int v = 0; v < distinct.length; v++)
+                    distinct[v] = in.getString();
+                DiscreteAttribute discrete = new DiscreteAttribute(name, j, distinct);
+
+                schema[j] = discrete;
+                values[j] = new String[discrete.getNumberOfDistinctValues()];
+                int v = 0;
+                for (String value : discrete)
+                    values[j][v++] = value;
+            } else {
+                throw new StreamCorruptedException("Tipo di attributo non valido: " + type);
+            }
+        }
+
+        columnOffsets = new long[attributeCount];
+        columnWidths = new byte[attributeCount];
+        if ((flags & FLAG_DATA) != 0) {
+            numberOfExamples = in.getInt();
+            if (numberOfExamples < 0)
+                throw new StreamCorruptedException("Numero di esempi non valido: " + numberOfExamples);
+
+            for (int j = 0; j < attributeCount; j++) {
+                byte width = in.get();
+                int expected = (values[j] == null) ? Double.BYTES : codeWidth(values[j].length);
+                if (width != expected)
+                    throw new StreamCorruptedException("Larghezza non valida della colonna " + j + ": " + width);
+
+                columnWidths[j] = width;
+                columnOffsets[j] = in.position;
+                in.position += (long) width * numberOfExamples;
+            }
+        } else {
+            numberOfExamples = -1;
+        }
+
+        tableOffset = in.position;
+        rowSize = rowSize(schema);
+        if (tableOffset + (long) clusterCount * rowSize > mapping.length)
+            throw new StreamCorruptedException("Tabella dei cluster troncata.");
+    }
+
+    /**
+     * Indica se il file inizia con l'identificativo del formato.
+     *
+     * @param filename il percorso del file
+     * @return {@code true} se il file è nel formato binario compatto
+     * @throws IOException se il file non può essere letto
+     */
+    public static boolean isClusteringFile(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) { }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Apre un file nel formato binario compatto mappandolo in memoria.
+     * <p>
+     * Vengono letti solo header e schema: il costo non dipende dal numero di
+     * tuple salvate. La mappatura resta valida anche se il file viene in seguito
+     * sostituito da un nuovo salvataggio.
+     * </p>
+     *
+     * @param filename il percorso del file
+     * @return il file aperto
+     * @throws IOException se il file non può essere letto o non è valido
+     */
+    public static ClusteringFile open(String filename) throws IOException {
+        Mapping mapping;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + Long.BYTES)
+                throw new StreamCorruptedException("Dimensione del file di clustering non valida: " + size);
+            mapping = new Mapping(channel, size);
+        }
+
+        try {
+            return new ClusteringFile(mapping);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new StreamCorruptedException("File di clustering non valido: " + e);
+        }
+    }
+
+    /**
+     * Verifica il checksum del file, leggendolo per intero.
+     *
+     * @throws StreamCorruptedException se il checksum non corrisponde
+     */
+    public void verify() throws StreamCorruptedException {
+        if (mapping.checksum() != mapping.getLong(mapping.length))
+            throw new StreamCorruptedException("Checksum del file di clustering non valido.");
+    }
+
+    /**
+     * Restituisce il raggio del clustering.
+     *
+     * @return il raggio
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Restituisce lo schema degli attributi dei centroidi.
+     *
+     * @return lo schema degli attributi
+     */
+    public Attribute[] getSchema() {
+        return schema.clone();
+    }
+
+    /**
+     * Restituisce il numero di cluster salvati.
+     *
+     * @return il numero di cluster
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Indica se il clustering salvato è parziale.
+     *
+     * @return {@code true} se alcune tuple non sono state assegnate
+     */
+    public boolean isPartial() {
+        return (flags & FLAG_PARTIAL) != 0;
+    }
+
+    /**
+     * Indica se il file contiene il dataset da cui è stato calcolato il clustering.
+     *
+     * @return {@code true} se il file contiene la sezione dei dati
+     */
+    public boolean hasData() {
+        return numberOfExamples >= 0;
+    }
+
+    /**
+     * Restituisce il dataset contenuto nel file, senza accedere al database.
+     * <p>
+     * Le colonne restano nel file mappato in memoria: ogni valore viene letto
+     * solo quando è richiesto.
+     * </p>
+     *
+     * @return il dataset, oppure {@code null} se il file non lo contiene
+     */
+    public Data loadData() {
+        if (!hasData())
+            return null;
+
+        DataColumn[] columns = new DataColumn[schema.length];
+        for (int j = 0; j < schema.length; j++)
+            columns[j] = new MappedColumn(columnOffsets[j], columnWidths[j], values[j]);
+        return new Data(schema.clone(), columns, numberOfExamples);
+    }
+
+    /**
+     * Costruisce il set dei cluster salvati, nell'ordine del file.
+     * <p>
+     * Ogni cluster viene letto dalla propria riga della tabella; i suoi membri
+     * e le relative distanze restano nel file finché non vengono richiesti.
+     * Per un clustering parziale vengono decodificati anche gli indici delle
+     * tuple non assegnate.
+     * </p>
+     *
+     * @return il set di cluster
+     * @throws StreamCorruptedException se la tabella dei cluster non è valida
+     */
+    public ClusterSet loadClusterSet() throws StreamCorruptedException {
+        try {
+            List<Cluster> clusters = new ArrayList<>(clusterCount);
+            for (int i = 0; i < clusterCount; i++)
+                clusters.add(cluster(i));
+
+            return new ClusterSet(clusters, isPartial() ? unassigned() : null);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | ArithmeticException e) {
+            throw new StreamCorruptedException("File di clustering non valido: " + e);
+        }
+    }
+
+    /**
+     * Legge un cluster dalla sua riga della tabella, differendo la decodifica dei membri.
+     *
+     * @param i la posizione del cluster nella tabella
+     * @return il cluster
+     */
+    private Cluster cluster(int i) {
+        Cursor in = new Cursor(tableOffset + (long) i * rowSize);
+        long offset = in.getLong();
+        int size = in.getInt();
+        boolean hasDistances = in.get() != 0;
+        double sum = in.getDouble();
+        double min = in.getDouble();
+        double max = in.getDouble();
+        if (size < 0 || offset < 0 || offset > mapping.length)
+            throw new IllegalArgumentException("riga " + i + " della tabella dei cluster");
+
+        Tuple centroid = new Tuple(schema.length);
+        for (int j = 0; j < schema.length; j++) {
+            if (values[j] == null)
+                centroid.add(new ContinuousItem(schema[j], in.getDouble()), j);
+            else
+                centroid.add(new DiscreteItem(schema[j], values[j][in.getInt()]), j);
+        }
+
+        return new Cluster(centroid, size, sum, min, max, () -> members(centroid, offset, size, hasDistances));
+    }
+
+    /**
+     * Decodifica i membri di un cluster e le relative distanze.
+     *
+     * @param centroid     il centroide del cluster
+     * @param offset       la posizione dei membri nel file
+     * @param size         il numero di membri
+     * @param hasDistances se le distanze sono presenti nel file
+     * @return il cluster con i membri decodificati
+     * @throws UncheckedIOException se i membri non sono validi
+     */
+    private Cluster members(Tuple centroid, long offset, int size, boolean hasDistances) {
+        try {
+            Cursor in = new Cursor(offset);
+            int[] members = in.getDeltas(size);
+            double[] distances = null;
+            if (hasDistances) {
+                distances = new double[size];
+                for (int k = 0; k < size; k++)
+                    distances[k] = in.getDouble();
+            }
+            return new Cluster(centroid, members, distances, size);
+        } catch (IndexOutOfBoundsException e) {
+            throw new UncheckedIOException(new StreamCorruptedException("Membri del cluster non validi: " + e));
+        }
+    }
+
+    /**
+     * Decodifica gli indici delle tuple non assegnate, che seguono i membri dell'ultimo cluster.
+     *
+     * @return gli indici delle tuple non assegnate
+     */
+    private int[] unassigned() {
+        long end = tableOffset + (long) clusterCount * rowSize;
+        if (clusterCount > 0) {
+            Cursor row = new Cursor(tableOffset + (long) (clusterCount - 1) * rowSize);
+            Cursor in = new Cursor(row.getLong());
+            int size = row.getInt();
+            boolean hasDistances = row.get() != 0;
+
+            for (int k = 0; k < size; k++)
+                in.getVarint();
+            end = in.position + (hasDistances ? (long) size * Double.BYTES : 0);
+        }
+        return new Cursor(end).getDeltas(unassignedCount);
+    }
+
+    /**
+     * Scrive su file un set di cluster, senza il dataset di riferimento.
+     *
+     * @param clusters il set di cluster da salvare
+     * @param radius   il raggio del clustering
+     * @param filename il percorso del file di destinazione
+     * @throws IOException se la scrittura fallisce
+     */
+    public static void write(ClusterSet clusters, double radius, String filename) throws IOException {
+        write(clusters, radius, null, filename);
+    }
+
+    /**
+     * Scrive su file un set di cluster e, se indicato, il dataset da cui è stato calcolato.
+     *
+     * @param clusters il set di cluster da salvare
+     * @param radius   il raggio del clustering
+     * @param data     il dataset di riferimento, incluso per intero nel file (gli indici
+     *                 dei cluster restano così validi); {@code null} per non includerlo
+     * @param filename il percorso del file di destinazione
+     * @throws IOException              se la scrittura fallisce
+     * @throws IllegalArgumentException se un valore discreto non appartiene allo schema
+     */
+    public static void write(ClusterSet clusters, double radius, Data data, String filename) throws IOException {
+        Attribute[] schema = (data != null) ? data.getAttributeSchema() : schemaOf(clusters);
+        List<Map<String, Integer>> codes = new ArrayList<>();
+        for (Attribute attribute : schema)
+            codes.add((attribute instanceof DiscreteAttribute) ? codesOf((DiscreteAttribute) attribute) : null);
+
+        int[] unassigned = clusters.getUnassigned();
+
+        // Il file esistente può essere mappato in memoria da un clustering già caricato:
+        // il nuovo contenuto viene scritto a parte e sostituito con una rinomina atomica.
+        Path target = Path.of(filename).toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.putShort((short) ((clusters.isPartial() ? FLAG_PARTIAL : 0) | (data != null ? FLAG_DATA : 0)));
+            out.putDouble(radius);
+            out.putInt(schema.length);
+            out.putInt(clusters.size());
+            out.putInt(unassigned.length);
+
+            for (Attribute attribute : schema) {
+                if (attribute instanceof ContinuousAttribute) {
+                    ContinuousAttribute continuous = (ContinuousAttribute) attribute;
+                    out.put(CONTINUOUS);
+                    out.putString(continuous.getName());
+                    out.putDouble(continuous.getMin());
+                    out.putDouble(continuous.getMax());
+                } else {
+                    DiscreteAttribute discrete = (DiscreteAttribute) attribute;
+                    out.put(DISCRETE);
+                    out.putString(discrete.getName());
+                    out.putInt(discrete.getNumberOfDistinctValues());
+                    for (String value : discrete)
+                        out.putString(value);
+                }
+            }
+
+            if (data != null) {
+                int n = data.getNumberOfExamples();
+                out.putInt(n);
+                for (int j = 0; j < schema.length; j++) {
+                    Map<String, Integer> columnCodes = codes.get(j);
+                    if (columnCodes == null) {
+                        out.put((byte) Double.BYTES);
+                        for (int i = 0; i < n; i++)
+                            out.putDouble(((Number) data.getValue(i, j)).doubleValue());
+                    } else {
+                        int width = codeWidth(columnCodes.size());
+                        out.put((byte) width);
+                        for (int i = 0; i < n; i++)
+                            out.putCode(code(columnCodes, data.getValue(i, j)), width);
+                    }
+                }
+            }
+
+            // I membri seguono la tabella dei cluster: la posizione di ciascun blocco
+            // è nota in anticipo perché la dimensione di un blocco dipende solo dal cluster.
+            long offset = out.position() + (long) clusters.size() * rowSize(schema);
+            for (Cluster cluster : clusters) {
+                out.putLong(offset);
+                out.putInt(cluster.getSize());
+                out.put((byte) (cluster.hasDistances() ? 1 : 0));
+                out.putDouble(cluster.hasDistances() ? cluster.getAverageDistance(null) * cluster.getSize() : Double.NaN);
+                out.putDouble(cluster.hasDistances() ? cluster.getMinDistance(null) : Double.NaN);
+                out.putDouble(cluster.hasDistances() ? cluster.getMaxDistance(null) : Double.NaN);
+
+                Tuple centroid = cluster.getCentroid();
+                for (int j = 0; j < schema.length; j++) {
+                    Object value = centroid.get(j).getValue();
+                    if (codes.get(j) == null)
+                        out.putDouble((Double) value);
+                    else
+                        out.putInt(code(codes.get(j), value));
+                }
+
+                offset += membersSize(cluster);
+            }
+
+            for (Cluster cluster : clusters) {
+                int previous = 0;
+                for (int k = 0; k < cluster.getSize(); k++) {
+                    int member = cluster.getMember(k);
+                    out.putVarint(member - previous);
+                    previous = member;
+                }
+                if (cluster.hasDistances()) {
+                    for (int k = 0; k < cluster.getSize(); k++)
+                        out.putDouble(cluster.getDistance(k, null));
+                }
+            }
+
+            int previous = 0;
+            for (int index : unassigned) {
+                out.putVarint(index - previous);
+                previous = index;
+            }
+
+            out.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Restituisce lo schema degli attributi dei centroidi di un set di cluster.
+     *
+     * @param clusters il set di cluster
+     * @return lo schema, vuoto se il set non contiene cluster
+     */
+    private static Attribute[] schemaOf(ClusterSet clusters) {
+        for (Cluster cluster : clusters) {
+            Tuple centroid = cluster.getCentroid();
+            Attribute[] schema = new Attribute[centroid.getLength()];
+            for (int j = 0; j < schema.length; j++)
+                schema[j] = centroid.get(j).getAttribute();
+            return schema;
+        }
+        return new Attribute[0];
+    }
+
+    /**
+     * Associa a ogni valore di un attributo discreto la sua posizione nei valori ordinati.
+     *
+     * @param attribute l'attributo discreto
+     * @return i codici dei valori
+     */
+    private static Map<String, Integer> codesOf(DiscreteAttribute attribute) {
+        Map<String, Integer> codes = new HashMap<>();
+        for (String value : attribute)
+            codes.put(value, codes.size());
+        return codes;
+    }
+
+    /**
+     * Restituisce il codice di un valore discreto.
+     *
+     * @param codes i codici dei valori dell'attributo
+     * @param value il valore
+     * @return il codice del valore
+     * @throws IllegalArgumentException se il valore non appartiene all'attributo
+     */
+    private static int code(Map<String, Integer> codes, Object value) {
+        Integer code = codes.get(String.valueOf(value));
+        if (code == null)
+            throw new IllegalArgumentException("Valore non presente nello schema: " + value);
+        return code;
+    }
+
+    /**
+     * Restituisce la larghezza (in byte) dei codici di un attributo discreto nella sezione dei dati.
+     *
+     * @param distinctValues il numero di valori distinti dell'attributo
+     * @return 1, 2 o 4
+     */
+    private static int codeWidth(int distinctValues) {
+        if (distinctValues <= 1 << Byte.SIZE)
+            return 1;
+        return (distinctValues <= 1 << Short.SIZE) ? 2 : 4;
+    }
+
+    /**
+     * Restituisce la dimensione (in byte) di una riga della tabella dei cluster.
+     *
+     * @param schema lo schema degli attributi
+     * @return la dimensione della riga
+     */
+    private static int rowSize(Attribute[] schema) {
+        int size = ROW_HEADER_SIZE;
+        for (Attribute attribute : schema)
+            size += (attribute instanceof DiscreteAttribute) ? Integer.BYTES : Double.BYTES;
+        return size;
+    }
+
+    /**
+     * Restituisce la dimensione (in byte) del blocco dei membri di un cluster.
+     *
+     * @param cluster il cluster
+     * @return la dimensione del blocco
+     */
+    private static long membersSize(Cluster cluster) {
+        long size = 0;
+        int previous = 0;
+        for (int k = 0; k < cluster.getSize(); k++) {
+            int member = cluster.getMember(k);
+            size += varintSize(member - previous);
+            previous = member;
+        }
+        if (cluster.hasDistances())
+            size += (long) cluster.getSize() * Double.BYTES;
+        return size;
+    }
+
+    /**
+     * Restituisce il numero di byte occupati da un intero non negativo in formato a lunghezza variabile.
+     *
+     * @param value il valore
+     * @return il numero di byte
+     */
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Contenuto di un file mappato in memoria, suddiviso in regioni di al più
+     * {@code 2^SEGMENT_SHIFT} byte così da superare il limite di 2 GiB di un
+     * singolo {@link MappedByteBuffer}. Le letture sono assolute e sicure tra più thread.
+     */
+    private static final class Mapping {
+
+        /** Regioni mappate, consecutive. */
+        private final MappedByteBuffer[] segments;
+
+        /** Lunghezza del contenuto, escluso il checksum finale. */
+        private final long length;
+
+        /**
+         * Mappa in sola lettura l'intero file.
+         *
+         * @param channel il canale del file
+         * @param size    la dimensione del file
+         * @throws IOException se la mappatura fallisce
+         */
+        Mapping(FileChannel channel, long size) throws IOException {
+            long segmentSize = 1L << SEGMENT_SHIFT;
+            this.length = size - Long.BYTES;
+            this.segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) >>> SEGMENT_SHIFT)];
+            for (int s = 0; s < segments.length; s++) {
+                long start = (long) s << SEGMENT_SHIFT;
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            }
+        }
+
+        byte get(long position) {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].get(offset(position));
+        }
+
+        short getShort(long position) {
+            return (short) ((get(position) << 8) | (get(position + 1) & 0xFF));
+        }
+
+        int getInt(long position) {
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int offset = offset(position);
+            return (offset + Integer.BYTES <= segment.limit()) ? segment.getInt(offset) : (int) assemble(position, Integer.BYTES);
+        }
+
+        long getLong(long position) {
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int offset = offset(position);
+            return (offset + Long.BYTES <= segment.limit()) ? segment.getLong(offset) : assemble(position, Long.BYTES);
+        }
+
+        /**
+         * Compone un valore big-endian a cavallo tra due regioni.
+         *
+         * @param position la posizione del primo byte
+         * @param bytes    il numero di byte del valore
+         * @return il valore
+         */
+        private long assemble(long position, int bytes) {
+            long value = 0;
+            for (int i = 0; i < bytes; i++)
+                value = (value << 8) | (get(position + i) & 0xFF);
+            return value;
+        }
+
+        /**
+         * Calcola il CRC-32C del contenuto.
+         *
+         * @return il checksum
+         */
+        long checksum() {
+            CRC32C crc = new CRC32C();
+            long remaining = length;
+            for (MappedByteBuffer segment : segments) {
+                int n = (int) Math.min(segment.limit(), remaining);
+                crc.update(segment.duplicate().limit(n));
+                remaining -= n;
+            }
+            return crc.getValue();
+        }
+
+        private static int offset(long position) {
+            return (int) (position & ((1L << SEGMENT_SHIFT) - 1));
+        }
+    }
+
+    /**
+     * Colonna della sezione dei dati, letta dal file mappato in memoria.
+     */
+    private final class MappedColumn implements DataColumn {
+
+        /** Posizione del primo valore. */
+        private final long offset;
+
+        /** Larghezza (in byte) di un valore. */
+        private final int width;
+
+        /** Valori dell'attributo discreto, indicizzati per codice; {@code null} se l'attributo è continuo. */
+        private final String[] values;
+
+        /**
+         * Costruisce la colonna.
+         *
+         * @param offset la posizione del primo valore
+         * @param width  la larghezza di un valore
+         * @param values i valori dell'attributo discreto; {@code null} se l'attributo è continuo
+         */
+        MappedColumn(long offset, int width, String[] values) {
+            this.offset = offset;
+            this.width = width;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(int exampleIndex) {
+            long position = offset + (long) Objects.checkIndex(exampleIndex, numberOfExamples) * width;
+            switch (width) {
+                case 1:
+                    return values[mapping.get(position) & 0xFF];
+                case 2:
+                    return values[mapping.getShort(position) & 0xFFFF];
+                case 4:
+                    return values[mapping.getInt(position)];
+                default:
+                    return Double.longBitsToDouble(mapping.getLong(position));
+            }
+        }
+    }
+
+    /**
+     * Lettura sequenziale, a partire da una posizione, del file mappato.
+     */
+    private final class Cursor {
+
+        /** Posizione del prossimo byte da leggere. */
+        private long position;
+
+        /**
+         * Costruisce un cursore nella posizione indicata.
+         *
+         * @param position la posizione iniziale
+         */
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        byte get() {
+            check(1);
+            return mapping.get(position++);
+        }
+
+        short getShort() {
+            check(Short.BYTES);
+            short value = mapping.getShort(position);
+            position += Short.BYTES;
+            return value;
+        }
+
+        int getInt() {
+            check(Integer.BYTES);
+            int value = mapping.getInt(position);
+            position += Integer.BYTES;
+            return value;
+        }
+
+        long getLong() {
+            check(Long.BYTES);
+            long value = mapping.getLong(position);
+            position += Long.BYTES;
+            return value;
+        }
+
+        double getDouble() {
+            return Double.longBitsToDouble(getLong());
+        }
+
+        int getVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        String getString() {
+            int length = getInt();
+            check(length);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = mapping.get(position + i);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Decodifica una sequenza crescente di indici codificati come differenze successive.
+         *
+         * @param count il numero di indici
+         * @return gli indici decodificati
+         */
+        int[] getDeltas(int count) {
+            int[] indexes = new int[count];
+            int previous = 0;
+            for (int k = 0; k < count; k++) {
+                previous += getVarint();
+                indexes[k] = previous;
+            }
+            return indexes;
+        }
+
+        /**
+         * Verifica che la lettura non superi la fine del contenuto.
+         *
+         * @param bytes il numero di byte da leggere
+         * @throws IndexOutOfBoundsException se la lettura supera la fine del contenuto
+         */
+        private void check(int bytes) {
+            if (bytes < 0 || position < 0 || position + bytes > mapping.length)
+                throw new IndexOutOfBoundsException("posizione " + position + ", lunghezza " + mapping.length);
+        }
+    }
+
+    /**
+     * Scrittura bufferizzata su un {@link FileChannel}, con calcolo del checksum.
+     */
+    private static final class Output {
+
+        /** Canale di destinazione. */
+        private final FileChannel channel;
+
+        /** Buffer di scrittura. */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /** Checksum dei byte scritti. */
+        private final CRC32C crc = new CRC32C();
+
+        /** Byte già trasferiti sul canale. */
+        private long written;
+
+        /**
+         * Costruisce l'output sul canale indicato.
+         *
+         * @param channel il canale di destinazione
+         */
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Restituisce la posizione corrente nel file.
+         *
+         * @return il numero di byte scritti finora
+         */
+        long position() {
+            return written + buffer.position();
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1).put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(Short.BYTES).putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES).putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES).putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES).putDouble(value);
+        }
+
+        void putCode(int code, int width) throws IOException {
+            switch (width) {
+                case 1:
+                    put((byte) code);
+                    break;
+                case 2:
+                    putShort((short) code);
+                    break;
+                default:
+                    putInt(code);
+                    break;
+            }
+        }
+
+        void putVarint(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                int n = Math.min(bytes.length - offset, ensure(1).remaining());
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        /**
+         * Svuota il buffer se non ha lo spazio richiesto.
+         *
+         * @param bytes lo spazio richiesto
+         * @return il buffer
+         * @throws IOException se la scrittura fallisce
+         */
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+            return buffer;
+        }
+
+        /**
+         * Trasferisce il contenuto del buffer sul canale, aggiornando il checksum.
+         *
+         * @throws IOException se la scrittura fallisce
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining())
+                written += channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Scrive il checksum in coda al file e svuota il buffer.
+         *
+         * @throws IOException se la scrittura fallisce
+         */
+        void finish() throws IOException {
+            flush();
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining())
+                written += channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjDoubleConsumer;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.DiscreteAttribute;
+import data.Tuple;
+
+/**
+ * Indice a griglia di tuple, usato per trovare quelle entro il raggio di clustering
+ * da una tupla senza confrontarla con tutte le altre: dall'inserimento incrementale
+ * per i centroidi di un {@link ClusterSet}, dal clustering a finestra scorrevole
+ * per le tuple della finestra.
+ * <p>
+ * La distanza tra due tuple è la somma delle distanze dei loro attributi: se due
+ * tuple distano al più {@code radius}, ogni attributo continuo (scalato in
+ * {@code [0,1]}) differisce al più di {@code radius} e, con {@code radius < 1},
+ * tutti gli attributi discreti coincidono. La griglia divide i primi
+ * {@value #MAX_GRID_DIMENSIONS} attributi continui in celle di lato {@code radius}
+ * e, con {@code radius < 1}, separa le celle per valori discreti: i centroidi entro
+ * il raggio di una tupla si trovano quindi nella sua cella o in quelle adiacenti.
+ * </p>
+ * <p>
+ * La scala degli attributi continui è quella della tupla di riferimento, la
+ * stessa usata da {@link Tuple#getDistance(Tuple)} invocato sulle tuple indicizzate.
+ * </p>
+ *
+ * @param <T> il tipo degli elementi associati alle tuple
+ * @see QTMiner#insert(data.Data, int)
+ * @see SlidingWindowMiner
+ */
+final class GridIndex<T> {
+
+    /** Numero massimo di attributi continui usati come dimensioni della griglia. */
+    static final int MAX_GRID_DIMENSIONS = 3;
+
+    /** Bit usati per la coordinata di ciascuna dimensione nella chiave di una cella. */
+    private static final int COORDINATE_BITS = 21;
+
+    /** Valore assoluto massimo di una coordinata, con margine per le celle adiacenti. */
+    private static final long COORDINATE_LIMIT = (1L << (COORDINATE_BITS - 1)) - 2;
+
+    /** Raggio di clustering. */
+    private final double radius;
+
+    /** Posizioni degli attributi continui usati come dimensioni della griglia. */
+    private final int[] gridded;
+
+    /** Attributi continui della griglia, con la scala dei centroidi. */
+    private final ContinuousAttribute[] scales;
+
+    /** Posizioni degli attributi discreti che separano le celle; vuoto se {@code radius >= 1}. */
+    private final int[] discrete;
+
+    /** Elementi di ciascuna cella, nell'ordine di inserimento. */
+    private final Map<Cell, List<Entry<T>>> cells = new HashMap<>();
+
+    /** Numero di elementi indicizzati. */
+    private int size;
+
+    /** Numero di distanze valutate dalle ricerche. */
+    private long evaluations;
+
+    /**
+     * Costruisce un indice vuoto con gli attributi e le scale di una tupla.
+     *
+     * @param reference una tupla, da cui vengono presi attributi e scale
+     * @param radius    il raggio di clustering
+     */
+    GridIndex(Tuple reference, double radius) {
+        this(attributesOf(reference), radius);
+    }
+
+    /**
+     * Costruisce un indice vuoto per tuple con gli attributi indicati.
+     *
+     * @param schema gli attributi delle tuple, con le scale da usare
+     * @param radius il raggio di clustering
+     */
+    GridIndex(Attribute[] schema, double radius) {
+        this.radius = radius;
+
+        List<Integer> continuousPositions = new ArrayList<>();
+        List<Integer> discretePositions = new ArrayList<>();
+        for (int j = 0; j < schema.length; j++) {
+            if (schema[j] instanceof ContinuousAttribute && continuousPositions.size() < MAX_GRID_DIMENSIONS)
+                continuousPositions.add(j);
+            else if (schema[j] instanceof DiscreteAttribute && radius < 1.0)
+                discretePositions.add(j);
+        }
+
+        gridded = new int[continuousPositions.size()];
+        scales = new ContinuousAttribute[gridded.length];
+        for (int k = 0; k < gridded.length; k++) {
+            gridded[k] = continuousPositions.get(k);
+            scales[k] = (ContinuousAttribute) schema[gridded[k]];
+        }
+        discrete = discretePositions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Restituisce gli attributi degli item di una tupla.
+     *
+     * @param tuple la tupla
+     * @return gli attributi, nell'ordine degli item
+     */
+    private static Attribute[] attributesOf(Tuple tuple) {
+        Attribute[] attributes = new Attribute[tuple.getLength()];
+        for (int j = 0; j < attributes.length; j++)
+            attributes[j] = tuple.get(j).getAttribute();
+        return attributes;
+    }
+
+    /**
+     * Aggiunge un elemento all'indice, nella cella della tupla associata.
+     *
+     * @param tuple la tupla dell'elemento
+     * @param value l'elemento
+     */
+    void add(Tuple tuple, T value) {
+        cells.computeIfAbsent(cellOf(tuple), c -> new ArrayList<>()).add(new Entry<>(tuple, value));
+        size++;
+    }
+
+    /**
+     * Rimuove un elemento dall'indice.
+     *
+     * @param tuple la tupla con cui l'elemento è stato aggiunto
+     * @param value l'elemento
+     * @return {@code true} se l'elemento era presente
+     */
+    boolean remove(Tuple tuple, T value) {
+        Cell cell = cellOf(tuple);
+        List<Entry<T>> entries = cells.get(cell);
+        if (entries == null)
+            return false;
+
+        for (int k = 0; k < entries.size(); k++) {
+            if (entries.get(k).value() == value) {
+                // L'ordine nella cella non conta: l'ultimo elemento prende il posto di quello rimosso.
+                entries.set(k, entries.get(entries.size() - 1));
+                entries.remove(entries.size() - 1);
+                if (entries.isEmpty())
+                    cells.remove(cell);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Restituisce il numero di elementi indicizzati.
+     *
+     * @return il numero di elementi
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Cerca l'elemento la cui tupla è più vicina a quella indicata, entro il raggio.
+     *
+     * @param tuple la tupla
+     * @return l'elemento più vicino e la sua distanza, oppure {@code null} se nessuna
+     *         tupla dista al più {@code radius}
+     */
+    Match<T> nearest(Tuple tuple) {
+        Object[] best = new Object[1];
+        double[] bestDistance = {Double.POSITIVE_INFINITY};
+        forEachWithin(tuple, (value, distance) -> {
+            if (distance < bestDistance[0]) {
+                best[0] = value;
+                bestDistance[0] = distance;
+            }
+        });
+
+        @SuppressWarnings("unchecked")
+        T value = (T) best[0];
+        return (value == null) ? null : new Match<>(value, bestDistance[0]);
+    }
+
+    /**
+     * Visita, nell'ordine delle celle, gli elementi le cui tuple distano al più
+     * {@code radius} da quella indicata.
+     *
+     * @param tuple   la tupla
+     * @param visitor riceve ogni elemento con la sua distanza
+     */
+    void forEachWithin(Tuple tuple, ObjDoubleConsumer<T> visitor) {
+        long[] base = coordinates(tuple);
+        List<Object> values = values(tuple);
+        int[] offsets = new int[gridded.length];
+
+        int neighbours = 1;
+        for (int k = 0; k < gridded.length; k++)
+            neighbours *= 3;
+
+        for (int n = 0; n < neighbours; n++) {
+            int code = n;
+            for (int k = 0; k < gridded.length; k++) {
+                offsets[k] = code % 3 - 1;
+                code /= 3;
+            }
+
+            List<Entry<T>> candidates = cells.get(new Cell(pack(base, offsets), values));
+            if (candidates == null)
+                continue;
+
+            for (Entry<T> candidate : candidates) {
+                double distance = candidate.tuple().getDistance(tuple);
+                evaluations++;
+                if (distance <= radius)
+                    visitor.accept(candidate.value(), distance);
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di distanze valutate dalle ricerche.
+     *
+     * @return il numero di distanze valutate
+     */
+    long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Restituisce la cella di una tupla.
+     *
+     * @param tuple la tupla
+     * @return la cella che la contiene
+     */
+    private Cell cellOf(Tuple tuple) {
+        return new Cell(pack(coordinates(tuple), new int[gridded.length]), values(tuple));
+    }
+
+    /**
+     * Calcola le coordinate di una tupla nella griglia.
+     *
+     * @param tuple la tupla
+     * @return le coordinate, una per dimensione
+     */
+    private long[] coordinates(Tuple tuple) {
+        long[] coordinates = new long[gridded.length];
+        for (int k = 0; k < gridded.length; k++) {
+            double scaled = scales[k].getScaledValue((Double) tuple.get(gridded[k]).getValue());
+            // Una coordinata limitata resta adiacente a quelle vicine: la ricerca resta esatta.
+            long coordinate = (long) Math.floor(scaled / radius);
+            coordinates[k] = Math.max(-COORDINATE_LIMIT, Math.min(COORDINATE_LIMIT, coordinate));
+        }
+        return coordinates;
+    }
+
+    /**
+     * Codifica in un solo {@code long} le coordinate di una cella.
+     *
+     * @param base    le coordinate di partenza
+     * @param offsets lo spostamento in ogni dimensione
+     * @return la chiave delle coordinate
+     */
+    private static long pack(long[] base, int[] offsets) {
+        long key = 0;
+        for (int k = 0; k < base.length; k++) {
+            long coordinate = base[k] + offsets[k] + (1L << (COORDINATE_BITS - 1));
+            key |= coordinate << (k * COORDINATE_BITS);
+        }
+        return key;
+    }
+
+    /**
+     * Restituisce i valori discreti che separano le celle.
+     *
+     * @param tuple la tupla
+     * @return i valori degli attributi discreti dell'indice
+     */
+    private List<Object> values(Tuple tuple) {
+        if (discrete.length == 0)
+            return List.of();
+
+        Object[] values = new Object[discrete.length];
+        for (int k = 0; k < discrete.length; k++)
+            values[k] = tuple.get(discrete[k]).getValue();
+        return List.of(values);
+    }
+
+    /**
+     * Cella della griglia.
+     *
+     * @param coordinates le coordinate codificate della cella
+     * @param values      i valori discreti della cella
+     */
+    private record Cell(long coordinates, List<Object> values) { }
+
+    /**
+     * Elemento indicizzato.
+     *
+     * @param tuple la tupla dell'elemento
+     * @param value l'elemento
+     * @param <T>   il tipo dell'elemento
+     */
+    private record Entry<T>(Tuple tuple, T value) { }
+
+    /**
+     * Esito di una ricerca.
+     *
+     * @param value    l'elemento più vicino
+     * @param distance la distanza della sua tupla da quella cercata
+     * @param <T>      il tipo dell'elemento
+     */
+    record Match<T>(T value, double distance) { }
+}
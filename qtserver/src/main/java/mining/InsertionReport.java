@@ -0,0 +1,211 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resoconto di un inserimento incrementale eseguito da {@link QTMiner#insert(data.Data, int)}.
+ * <p>
+ * Oltre al numero di tuple inserite nei cluster esistenti o raggruppate in nuovi
+ * cluster, il resoconto stima quanto il clustering si sia allontanato da quello
+ * che una computazione completa produrrebbe, e suggerisce di ricalcolarlo quando:
+ * </p>
+ * <ul>
+ *     <li>le tuple inserite dall'ultima computazione completa superano il
+ *         {@value #MAX_GROWTH_PERCENT}% di quelle raggruppate allora;</li>
+ *     <li>la distanza media delle tuple dal proprio centroide è cresciuta di oltre il
+ *         {@value #MAX_DISTANCE_DRIFT_PERCENT}% rispetto all'ultima computazione completa;</li>
+ *     <li>un nuovo cluster è più popoloso del più piccolo dei cluster esistenti: l'algoritmo
+ *         QT, che sceglie sempre il candidato più popoloso, lo avrebbe formato prima;</li>
+ *     <li>minimo o massimo di un attributo continuo del dataset sono cambiati, e con
+ *         essi la scala delle distanze.</li>
+ * </ul>
+ */
+public final class InsertionReport {
+
+    /** Percentuale di tuple inserite oltre la quale viene suggerito il ricalcolo. */
+    public static final int MAX_GROWTH_PERCENT = 25;
+
+    /** Percentuale di crescita della distanza media oltre la quale viene suggerito il ricalcolo. */
+    public static final int MAX_DISTANCE_DRIFT_PERCENT = 10;
+
+    /** Numero di tuple da inserire. */
+    private final int inserted;
+
+    /** Numero di tuple entrate in un cluster esistente. */
+    private final int joined;
+
+    /** Numero di nuovi cluster. */
+    private final int newClusters;
+
+    /** Dimensione del più popoloso dei nuovi cluster. */
+    private final int largestNewCluster;
+
+    /** Dimensione del più piccolo dei cluster esistenti prima dell'inserimento; {@code 0} se non ce n'erano. */
+    private final int smallestExistingCluster;
+
+    /** Tuple inserite dall'ultima computazione completa, in rapporto a quelle raggruppate allora. */
+    private final double growth;
+
+    /** Distanza media dal centroide all'ultima computazione completa. */
+    private final double baselineDistance;
+
+    /** Distanza media dal centroide dopo l'inserimento. */
+    private final double averageDistance;
+
+    /** Indica se la scala di un attributo continuo è cambiata. */
+    private final boolean rescaled;
+
+    /** Numero di distanze valutate dall'inserimento. */
+    private final long distanceEvaluations;
+
+    /**
+     * Costruisce il resoconto di un inserimento.
+     *
+     * @param inserted                il numero di tuple da inserire
+     * @param joined                  il numero di tuple entrate in un cluster esistente
+     * @param newClusters             il numero di nuovi cluster
+     * @param largestNewCluster       la dimensione del più popoloso dei nuovi cluster
+     * @param smallestExistingCluster la dimensione del più piccolo dei cluster esistenti
+     * @param growth                  le tuple inserite dall'ultima computazione completa, in rapporto a quelle di allora
+     * @param baselineDistance        la distanza media dal centroide all'ultima computazione completa
+     * @param averageDistance         la distanza media dal centroide dopo l'inserimento
+     * @param rescaled                {@code true} se la scala di un attributo continuo è cambiata
+     * @param distanceEvaluations     il numero di distanze valutate
+     */
+    InsertionReport(int inserted, int joined, int newClusters, int largestNewCluster, int smallestExistingCluster,
+                    double growth, double baselineDistance, double averageDistance, boolean rescaled,
+                    long distanceEvaluations) {
+        this.inserted = inserted;
+        this.joined = joined;
+        this.newClusters = newClusters;
+        this.largestNewCluster = largestNewCluster;
+        this.smallestExistingCluster = smallestExistingCluster;
+        this.growth = growth;
+        this.baselineDistance = baselineDistance;
+        this.averageDistance = averageDistance;
+        this.rescaled = rescaled;
+        this.distanceEvaluations = distanceEvaluations;
+    }
+
+    /**
+     * Restituisce il numero di tuple da inserire, comprese quelle che un clustering
+     * parziale aveva lasciato senza cluster.
+     *
+     * @return il numero di tuple inserite
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Restituisce il numero di tuple entrate in un cluster esistente.
+     *
+     * @return il numero di tuple entrate in un cluster esistente
+     */
+    public int getJoined() {
+        return joined;
+    }
+
+    /**
+     * Restituisce il numero di nuovi cluster formati dalle tuple rimaste.
+     *
+     * @return il numero di nuovi cluster
+     */
+    public int getNewClusters() {
+        return newClusters;
+    }
+
+    /**
+     * Restituisce la crescita del dataset dall'ultima computazione completa.
+     *
+     * @return le tuple inserite da allora, in rapporto a quelle raggruppate allora
+     */
+    public double getGrowth() {
+        return growth;
+    }
+
+    /**
+     * Restituisce la distanza media delle tuple dal proprio centroide all'ultima computazione completa.
+     *
+     * @return la distanza media di riferimento
+     */
+    public double getBaselineDistance() {
+        return baselineDistance;
+    }
+
+    /**
+     * Restituisce la distanza media delle tuple dal proprio centroide dopo l'inserimento.
+     *
+     * @return la distanza media
+     */
+    public double getAverageDistance() {
+        return averageDistance;
+    }
+
+    /**
+     * Indica se minimo o massimo di un attributo continuo sono cambiati rispetto ai centroidi.
+     *
+     * @return {@code true} se la scala delle distanze è cambiata
+     */
+    public boolean isRescaled() {
+        return rescaled;
+    }
+
+    /**
+     * Restituisce il numero di distanze valutate dall'inserimento.
+     *
+     * @return il numero di distanze valutate
+     */
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    /**
+     * Restituisce i motivi per cui viene suggerito un ricalcolo completo.
+     *
+     * @return i motivi, vuoto se il clustering incrementale è ancora affidabile
+     */
+    public List<String> getRecomputeReasons() {
+        List<String> reasons = new ArrayList<>();
+        if (growth * 100 > MAX_GROWTH_PERCENT)
+            reasons.add(String.format("tuple inserite pari al %.0f%% di quelle raggruppate", growth * 100));
+        if (baselineDistance > 0 && (averageDistance / baselineDistance - 1) * 100 > MAX_DISTANCE_DRIFT_PERCENT)
+            reasons.add(String.format("distanza media cresciuta da %.4f a %.4f", baselineDistance, averageDistance));
+        if (smallestExistingCluster > 0 && largestNewCluster > smallestExistingCluster)
+            reasons.add("nuovo cluster di " + largestNewCluster + " tuple, più popoloso di un cluster esistente di "
+                    + smallestExistingCluster);
+        if (rescaled)
+            reasons.add("scala di un attributo continuo cambiata");
+        return reasons;
+    }
+
+    /**
+     * Indica se è consigliabile ricalcolare il clustering da zero.
+     *
+     * @return {@code true} se almeno un indicatore di deriva supera la sua soglia
+     */
+    public boolean isRecomputeSuggested() {
+        return !getRecomputeReasons().isEmpty();
+    }
+
+    /**
+     * Restituisce una descrizione del resoconto, con gli eventuali motivi per ricalcolare.
+     *
+     * @return la descrizione del resoconto
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Tuple inserite: ").append(inserted)
+          .append(" (").append(joined).append(" in cluster esistenti, ")
+          .append(inserted - joined).append(" in ").append(newClusters).append(" nuovi cluster)\n");
+
+        List<String> reasons = getRecomputeReasons();
+        if (reasons.isEmpty())
+            sb.append("Ricalcolo non necessario\n");
+        else
+            sb.append("Ricalcolo consigliato: ").append(String.join("; ", reasons)).append("\n");
+        return sb.toString();
+    }
+}
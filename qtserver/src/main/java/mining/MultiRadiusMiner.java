@@ -0,0 +1,494 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import data.Data;
+import data.Tuple;
+import exceptions.BudgetExhaustedException;
+import exceptions.ComputationCancelledException;
+
+/**
+ * Esegue l'algoritmo QT sullo stesso dataset con più raggi, condividendo il
+ * calcolo delle distanze.
+ * <p>
+ * Le distanze tra tutte le coppie di tuple vengono calcolate una sola volta,
+ * conservando per ogni tupla le vicine entro il raggio massimo in una lista
+ * ordinata per distanza. Per ogni raggio la dimensione del cluster candidato
+ * di una tupla è il numero di vicine non ancora assegnate nel prefisso della
+ * sua lista: quando una tupla viene assegnata, i conteggi delle sue vicine
+ * diminuiscono di uno, senza ricalcolare alcuna distanza. I raggi vengono poi
+ * elaborati in parallelo, ciascuno con i propri conteggi.
+ * </p>
+ * <p>
+ * Per ogni raggio il risultato coincide con quello di {@link QTMiner#compute(Data)}:
+ * a parità di dimensione viene scelto il candidato con il centroide di indice
+ * minore. A differenza di {@link QTMiner#compute(Data)}, un raggio che produce
+ * un unico cluster non è un errore.
+ * </p>
+ * <p>
+ * Le liste dei vicini occupano circa {@value #BYTES_PER_NEIGHBOUR} byte per
+ * coppia di tuple entro il raggio massimo: il loro numero è limitato da un
+ * budget ({@link #setNeighbourBudget(long)}), per default un quarto della memoria
+ * massima della JVM, superato il quale la computazione si ferma.
+ * </p>
+ *
+ * @see QTMiner
+ */
+public class MultiRadiusMiner {
+
+    /** Byte occupati da ogni vicino nelle liste: indice e distanza, durante e dopo la costruzione. */
+    public static final int BYTES_PER_NEIGHBOUR = 2 * (Integer.BYTES + Double.BYTES);
+
+    /** Righe consecutive elaborate da ogni blocco del calcolo delle distanze. */
+    private static final int ROWS_PER_TASK = 256;
+
+    /** Raggi di clustering, nell'ordine richiesto. */
+    private final double[] radii;
+
+    /** Numero di thread usati per il calcolo. */
+    private final int threads;
+
+    /** Numero massimo di vicini memorizzati; {@code 0} se illimitato. */
+    private long neighbourBudget = Runtime.getRuntime().maxMemory() / 4 / BYTES_PER_NEIGHBOUR;
+
+    /** Indica se è stata richiesta l'interruzione della computazione in corso. */
+    private volatile boolean cancelled;
+
+    /** Numero di distanze valutate dalla computazione in corso. */
+    private final AtomicLong distanceEvaluations = new AtomicLong();
+
+    /** Numero di vicini memorizzati dalla computazione in corso. */
+    private final AtomicLong neighbours = new AtomicLong();
+
+    /**
+     * Costruisce un miner per i raggi indicati, con un thread di calcolo per core.
+     *
+     * @param radii i raggi di clustering; devono essere positivi
+     * @throws IllegalArgumentException se non ci sono raggi o uno di essi non è positivo
+     */
+    public MultiRadiusMiner(double[] radii) {
+        this(radii, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Costruisce un miner per i raggi indicati, con il numero di thread specificato.
+     *
+     * @param radii   i raggi di clustering; devono essere positivi
+     * @param threads il numero di thread di calcolo; deve essere positivo
+     * @throws IllegalArgumentException se non ci sono raggi, uno di essi non è positivo
+     *                                  o se {@code threads <= 0}
+     */
+    public MultiRadiusMiner(double[] radii, int threads) {
+        if (radii.length == 0)
+            throw new IllegalArgumentException("Nessun raggio indicato.");
+        for (double radius : radii) {
+            if (!(radius > 0) || Double.isInfinite(radius))
+                throw new IllegalArgumentException("Il raggio deve essere maggiore di zero: " + radius);
+        }
+        if (threads <= 0)
+            throw new IllegalArgumentException("Il numero di thread deve essere positivo.");
+
+        this.radii = radii.clone();
+        this.threads = threads;
+    }
+
+    /**
+     * Imposta il numero massimo di vicini memorizzati.
+     *
+     * @param neighbours il numero massimo di vicini; {@code 0} per nessun limite
+     * @throws IllegalArgumentException se {@code neighbours < 0}
+     */
+    public void setNeighbourBudget(long neighbours) {
+        if (neighbours < 0)
+            throw new IllegalArgumentException("Il budget di vicini non può essere negativo.");
+        this.neighbourBudget = neighbours;
+    }
+
+    /**
+     * Richiede l'interruzione della computazione in corso.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Restituisce i raggi di clustering, nell'ordine richiesto.
+     *
+     * @return i raggi
+     */
+    public double[] getRadii() {
+        return radii.clone();
+    }
+
+    /**
+     * Restituisce il numero di distanze valutate dalla computazione in corso o dall'ultima terminata.
+     *
+     * @return il numero di distanze valutate
+     */
+    public long getDistanceEvaluations() {
+        return distanceEvaluations.get();
+    }
+
+    /**
+     * Stima la memoria (in byte) necessaria per eseguire {@link #compute(Data)}.
+     * <p>
+     * Oltre alle liste dei vicini, nel caso peggiore tutte le coppie di tuple o il
+     * budget di vicini se minore, la stima considera le tuple e, per ogni raggio
+     * elaborato contemporaneamente, conteggi, tuple assegnate e set di cluster.
+     * </p>
+     *
+     * @param data il dataset su cui verrebbe eseguito il clustering
+     * @return la memoria stimata in byte
+     */
+    public long estimateMemory(Data data) {
+        long n = data.getNumberOfExamples();
+        long pairs = n * Math.max(0, n - 1);
+        if (neighbourBudget > 0)
+            pairs = Math.min(pairs, neighbourBudget);
+
+        long perRadius = QTMiner.estimateMemory(data) + n * Integer.BYTES;
+        return pairs * BYTES_PER_NEIGHBOUR + Math.min(threads, radii.length) * perRadius;
+    }
+
+    /**
+     * Esegue l'algoritmo QT sul dataset con ciascuno dei raggi.
+     *
+     * @param data il dataset su cui eseguire il clustering
+     * @return un set di cluster per ogni raggio, nell'ordine dei raggi
+     * @throws ComputationCancelledException se la computazione viene annullata tramite {@link #cancel()}
+     * @throws BudgetExhaustedException      se le coppie entro il raggio massimo superano il budget di vicini
+     */
+    public ClusterSet[] compute(Data data) throws ComputationCancelledException, BudgetExhaustedException {
+        distanceEvaluations.set(0);
+        neighbours.set(0);
+
+        int n = data.getNumberOfExamples();
+        Tuple[] tuples = new Tuple[n];
+        for (int i = 0; i < n; i++)
+            tuples[i] = data.getItemSet(i);
+
+        double maxRadius = 0;
+        for (double radius : radii)
+            maxRadius = Math.max(maxRadius, radius);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Neighbours lists = neighbours(pool, tuples, maxRadius);
+
+            List<Callable<ClusterSet>> tasks = new ArrayList<>();
+            for (double radius : radii)
+                tasks.add(() -> cluster(tuples, lists, radius));
+
+            List<Future<ClusterSet>> results = pool.invokeAll(tasks);
+            ClusterSet[] clusterSets = new ClusterSet[radii.length];
+            for (int r = 0; r < radii.length; r++)
+                clusterSets[r] = get(results.get(r));
+            return clusterSets;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ComputationCancelledException("Computazione interrotta.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Calcola, per ogni tupla, le vicine entro il raggio massimo, ordinate per distanza.
+     * <p>
+     * Ogni coppia viene valutata una sola volta: i blocchi paralleli raccolgono per
+     * ogni riga le vicine di indice maggiore, poi ogni coppia viene riportata in
+     * entrambe le liste.
+     * </p>
+     *
+     * @param pool      i thread di calcolo
+     * @param tuples    le tuple del dataset
+     * @param maxRadius il raggio massimo
+     * @return le liste dei vicini
+     * @throws ComputationCancelledException se la computazione viene annullata
+     * @throws BudgetExhaustedException      se i vicini superano il budget
+     * @throws InterruptedException          se il thread viene interrotto durante l'attesa
+     */
+    private Neighbours neighbours(ExecutorService pool, Tuple[] tuples, double maxRadius)
+            throws ComputationCancelledException, BudgetExhaustedException, InterruptedException {
+        int n = tuples.length;
+        int[][] upperIndexes = new int[n][];
+        double[][] upperDistances = new double[n][];
+        int[] upperSizes = new int[n];
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int first = 0; first < n; first += ROWS_PER_TASK) {
+            int from = first;
+            int to = Math.min(n, first + ROWS_PER_TASK);
+            tasks.add(() -> {
+                int[] indexes = new int[16];
+                double[] distances = new double[16];
+                for (int i = from; i < to; i++) {
+                    if (cancelled)
+                        throw new ComputationCancelledException();
+
+                    int size = 0;
+                    for (int j = i + 1; j < n; j++) {
+                        double distance = tuples[i].getDistance(tuples[j]);
+                        if (distance <= maxRadius) {
+                            if (size == indexes.length) {
+                                indexes = Arrays.copyOf(indexes, size * 2);
+                                distances = Arrays.copyOf(distances, size * 2);
+                            }
+                            indexes[size] = j;
+                            distances[size] = distance;
+                            size++;
+                        }
+                    }
+                    distanceEvaluations.addAndGet(n - 1 - i);
+
+                    // Ogni coppia compare in due liste.
+                    long stored = neighbours.addAndGet(2L * size);
+                    if (neighbourBudget > 0 && stored > neighbourBudget)
+                        throw new BudgetExhaustedException("Budget di vicini esaurito (" + neighbourBudget
+                                + "): ridurre il raggio massimo.");
+
+                    upperIndexes[i] = Arrays.copyOf(indexes, size);
+                    upperDistances[i] = Arrays.copyOf(distances, size);
+                    upperSizes[i] = size;
+                }
+                return null;
+            });
+        }
+        for (Future<Void> result : pool.invokeAll(tasks))
+            get(result);
+
+        int[] sizes = upperSizes.clone();
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < upperSizes[i]; k++)
+                sizes[upperIndexes[i][k]]++;
+        }
+
+        Neighbours lists = new Neighbours(n);
+        for (int i = 0; i < n; i++) {
+            lists.indexes[i] = new int[sizes[i]];
+            lists.distances[i] = new double[sizes[i]];
+        }
+        int[] filled = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < upperSizes[i]; k++) {
+                int j = upperIndexes[i][k];
+                double distance = upperDistances[i][k];
+                lists.indexes[i][filled[i]] = j;
+                lists.distances[i][filled[i]++] = distance;
+                lists.indexes[j][filled[j]] = i;
+                lists.distances[j][filled[j]++] = distance;
+            }
+            upperIndexes[i] = null;
+            upperDistances[i] = null;
+        }
+
+        List<Callable<Void>> sorts = new ArrayList<>();
+        for (int first = 0; first < n; first += ROWS_PER_TASK) {
+            int from = first;
+            int to = Math.min(n, first + ROWS_PER_TASK);
+            sorts.add(() -> {
+                for (int i = from; i < to; i++)
+                    lists.sort(i);
+                return null;
+            });
+        }
+        for (Future<Void> result : pool.invokeAll(sorts))
+            get(result);
+
+        return lists;
+    }
+
+    /**
+     * Esegue l'algoritmo QT con un raggio, usando le liste dei vicini.
+     * <p>
+     * I candidati sono estratti da una coda per dimensione decrescente e indice
+     * crescente. Le dimensioni possono solo diminuire: un candidato estratto con
+     * una dimensione non più attuale viene rimesso nella coda con quella corrente.
+     * </p>
+     *
+     * @param tuples le tuple del dataset
+     * @param lists  le liste dei vicini entro il raggio massimo
+     * @param radius il raggio
+     * @return il set di cluster
+     * @throws ComputationCancelledException se la computazione viene annullata
+     */
+    private ClusterSet cluster(Tuple[] tuples, Neighbours lists, double radius)
+            throws ComputationCancelledException {
+        int n = tuples.length;
+        int[] reach = new int[n];
+        int[] sizes = new int[n];
+        PriorityQueue<Long> candidates = new PriorityQueue<>(Math.max(1, n));
+        for (int i = 0; i < n; i++) {
+            reach[i] = lists.reach(i, radius);
+            sizes[i] = reach[i] + 1;
+            candidates.add(candidate(sizes[i], i));
+        }
+
+        boolean[] isClustered = new boolean[n];
+        int[] members = new int[n];
+        double[] distances = new double[n];
+        long[] order = new long[n];
+        ClusterSet clusters = new ClusterSet();
+
+        int remaining = n;
+        while (remaining > 0) {
+            if (cancelled)
+                throw new ComputationCancelledException();
+
+            long top = candidates.poll();
+            int centroid = (int) top;
+            int size = Integer.MAX_VALUE - (int) (top >>> 32);
+            if (isClustered[centroid])
+                continue;
+            if (size != sizes[centroid]) {
+                candidates.add(candidate(sizes[centroid], centroid));
+                continue;
+            }
+
+            // Membri in ordine di indice, ciascuno con la propria posizione nella lista del centroide.
+            int count = 0;
+            order[count++] = ((long) centroid << 32) | 0xFFFFFFFFL;
+            for (int k = 0; k < reach[centroid]; k++) {
+                int j = lists.indexes[centroid][k];
+                if (!isClustered[j])
+                    order[count++] = ((long) j << 32) | k;
+            }
+            Arrays.sort(order, 0, count);
+
+            for (int m = 0; m < count; m++) {
+                int j = (int) (order[m] >>> 32);
+                int k = (int) order[m];
+                members[m] = j;
+                distances[m] = (k == -1) ? 0.0 : lists.distances[centroid][k];
+                isClustered[j] = true;
+            }
+            for (int m = 0; m < count; m++) {
+                int j = members[m];
+                for (int k = 0; k < reach[j]; k++) {
+                    int other = lists.indexes[j][k];
+                    if (!isClustered[other])
+                        sizes[other]--;
+                }
+            }
+
+            clusters.add(new Cluster(tuples[centroid], members, distances, count));
+            remaining -= count;
+        }
+        return clusters;
+    }
+
+    /**
+     * Codifica un candidato in modo che l'ordine naturale dei codici sia quello
+     * dell'algoritmo QT: dimensione decrescente, poi indice crescente.
+     *
+     * @param size  la dimensione del candidato
+     * @param index l'indice del centroide
+     * @return il codice del candidato
+     */
+    private static long candidate(int size, int index) {
+        return ((long) (Integer.MAX_VALUE - size) << 32) | index;
+    }
+
+    /**
+     * Restituisce il risultato di un blocco di calcolo, rilanciandone le eccezioni.
+     *
+     * @param result il risultato del blocco
+     * @param <T>    il tipo del risultato
+     * @return il risultato
+     * @throws ComputationCancelledException se il blocco è stato annullato
+     * @throws BudgetExhaustedException      se il blocco ha esaurito il budget
+     * @throws InterruptedException          se il thread viene interrotto durante l'attesa
+     */
+    private static <T> T get(Future<T> result)
+            throws ComputationCancelledException, BudgetExhaustedException, InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ComputationCancelledException)
+                throw (ComputationCancelledException) cause;
+            if (cause instanceof BudgetExhaustedException)
+                throw (BudgetExhaustedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Liste dei vicini di ogni tupla, ordinate per distanza crescente e, a parità, per indice.
+     */
+    private static final class Neighbours {
+
+        /** Indici delle vicine di ogni tupla. */
+        final int[][] indexes;
+
+        /** Distanze delle vicine di ogni tupla. */
+        final double[][] distances;
+
+        Neighbours(int n) {
+            indexes = new int[n][];
+            distances = new double[n][];
+        }
+
+        /**
+         * Ordina la lista di una tupla per distanza.
+         *
+         * @param i la tupla
+         */
+        void sort(int i) {
+            int size = indexes[i].length;
+            Integer[] positions = new Integer[size];
+            for (int k = 0; k < size; k++)
+                positions[k] = k;
+
+            int[] oldIndexes = indexes[i];
+            double[] oldDistances = distances[i];
+            Arrays.sort(positions, (a, b) -> {
+                int byDistance = Double.compare(oldDistances[a], oldDistances[b]);
+                return (byDistance != 0) ? byDistance : Integer.compare(oldIndexes[a], oldIndexes[b]);
+            });
+
+            int[] sortedIndexes = new int[size];
+            double[] sortedDistances = new double[size];
+            for (int k = 0; k < size; k++) {
+                sortedIndexes[k] = oldIndexes[positions[k]];
+                sortedDistances[k] = oldDistances[positions[k]];
+            }
+            indexes[i] = sortedIndexes;
+            distances[i] = sortedDistances;
+        }
+
+        /**
+         * Restituisce il numero di vicine di una tupla entro il raggio indicato.
+         *
+         * @param i      la tupla
+         * @param radius il raggio
+         * @return la lunghezza del prefisso della lista entro il raggio
+         */
+        int reach(int i, double radius) {
+            double[] sorted = distances[i];
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] <= radius)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
+}
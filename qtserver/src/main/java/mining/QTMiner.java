@@ -1,16 +1,22 @@
 package mining;
 
+import data.Attribute;
+import data.ContinuousAttribute;
 import data.Data;
 import data.Tuple;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.io.IOException;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import exceptions.BudgetExhaustedException;
 import exceptions.ClusteringRadiusException;
+import exceptions.ComputationCancelledException;
 
 /**
  * La classe {@code QTMiner} implementa l'algoritmo di clustering
@@ -22,6 +28,24 @@ import exceptions.ClusteringRadiusException;
  * quindi seleziona quello più popoloso. Tale procedura viene
  * ripetuta finché tutte le tuple risultano assegnate.
  * </p>
+ * <p>
+ * La computazione può essere annullata da un altro thread con {@link #cancel()}
+ * e limitata da un budget di tempo ({@link #setTimeBudget(long)}) o di valutazioni
+ * di distanza ({@link #setDistanceBudget(long)}). Quando il budget si esaurisce,
+ * i cluster già scelti vengono restituiti come {@link ClusterSet} parziale e le
+ * tuple rimaste vengono segnalate come non assegnate (vedi {@link ClusterSet#isPartial()}).
+ * Poiché il candidato in costruzione al momento dell'esaurimento viene scartato,
+ * i cluster di un risultato parziale coincidono con i primi cluster che la
+ * computazione completa avrebbe prodotto.
+ * </p>
+ * <p>
+ * Le computazioni lunghe possono salvare periodicamente il proprio stato
+ * ({@link #setCheckpoint(String, long)}) e riprendere da esso dopo un riavvio.
+ * </p>
+ * <p>
+ * Le tuple aggiunte al dataset dopo la computazione possono essere inserite nel
+ * clustering esistente con {@link #insert(Data, int)}, senza ricalcolarlo.
+ * </p>
  *
  * @see Data
  * @see Tuple
@@ -36,6 +60,45 @@ public class QTMiner {
     /** Raggio massimo entro cui le tuple possono appartenere allo stesso cluster. */
     private double radius;
 
+    /** Indica se è stata richiesta l'interruzione della computazione in corso. */
+    private volatile boolean cancelled;
+
+    /** Numero di tuple già assegnate a un cluster dalla computazione in corso. */
+    private volatile int clusteredCount;
+
+    /** Numero di cluster già prodotti dalla computazione in corso. */
+    private volatile int clusterCount;
+
+    /** Budget di tempo (in millisecondi) di {@link #compute(Data)}; {@code 0} se illimitato. */
+    private long timeBudget;
+
+    /** Budget di valutazioni di distanza di {@link #compute(Data)}; {@code 0} se illimitato. */
+    private long distanceBudget;
+
+    /** Istante (in nanosecondi) oltre il quale la computazione in corso si ferma; {@code 0} se illimitata. */
+    private long deadline;
+
+    /** Numero di distanze valutate dalla computazione in corso. */
+    private volatile long distanceEvaluations;
+
+    /** File del checkpoint della computazione; {@code null} se i checkpoint sono disattivati. */
+    private Path checkpointFile;
+
+    /** Intervallo minimo (in millisecondi) tra due checkpoint. */
+    private long checkpointInterval;
+
+    /** Dataset incluso nel file da cui è stato letto il clustering; {@code null} se assente. */
+    private Data snapshot;
+
+    /** Tuple raggruppate dall'ultima computazione completa; {@code 0} se non ancora rilevate. */
+    private int baselineExamples;
+
+    /** Distanza media delle tuple dal proprio centroide dopo l'ultima computazione completa. */
+    private double baselineDistance;
+
+    /** Tuple inserite con {@link #insert(Data, int)} dall'ultima computazione completa. */
+    private int insertedSinceCompute;
+
     /**
      * Costruisce un nuovo {@code QTMiner} specificando il raggio di clustering.
      *
@@ -51,9 +114,16 @@ public class QTMiner {
     }
 
     /**
-     * Costruisce un {@code QTMiner} leggendo un {@link ClusterSet} serializzato da file.
+     * Costruisce un {@code QTMiner} leggendo un {@link ClusterSet} salvato su file.
+     * <p>
+     * Sono accettati sia i file nel formato binario compatto di {@link ClusteringFile},
+     * da cui viene letto anche il raggio, sia quelli salvati con la serializzazione
+     * Java dalle versioni precedenti. I primi vengono mappati in memoria: i membri
+     * di ciascun cluster vengono decodificati solo quando sono richiesti. Se il file
+     * include il dataset di riferimento, questo è disponibile con {@link #getSnapshot()}.
+     * </p>
      *
-     * @param filename il percorso del file da cui leggere l’oggetto serializzato
+     * @param filename il percorso del file da cui leggere il clustering
      * @throws FileNotFoundException    se il file non esiste
      * @throws IOException              se avviene un errore durante la lettura
      * @throws ClassNotFoundException   se l’oggetto nel file non è compatibile
@@ -61,6 +131,17 @@ public class QTMiner {
     public QTMiner(String filename)
             throws FileNotFoundException, IOException, ClassNotFoundException {
 
+        if (!Files.exists(Path.of(filename)))
+            throw new FileNotFoundException(filename);
+
+        if (ClusteringFile.isClusteringFile(filename)) {
+            ClusteringFile file = ClusteringFile.open(filename);
+            this.C = file.loadClusterSet();
+            this.radius = file.getRadius();
+            this.snapshot = file.loadData();
+            return;
+        }
+
         try (ObjectInputStream in =
                      new ObjectInputStream(new FileInputStream(filename))) {
             this.C = (ClusterSet) in.readObject();
@@ -68,17 +149,37 @@ public class QTMiner {
     }
 
     /**
-     * Serializza e salva su file il {@link ClusterSet} corrente.
+     * Salva su file il {@link ClusterSet} corrente nel formato binario compatto di {@link ClusteringFile}.
      *
      * @param filename il percorso del file di destinazione
      * @throws FileNotFoundException se il file non può essere creato
      * @throws IOException           se avviene un errore in scrittura
      */
     public void salva(String filename) throws FileNotFoundException, IOException {
-        try (ObjectOutputStream out =
-                     new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(C);
-        }
+        ClusteringFile.write(C, radius, filename);
+    }
+
+    /**
+     * Salva su file il {@link ClusterSet} corrente insieme al dataset da cui è stato calcolato,
+     * così che il file possa essere mostrato senza accedere al database.
+     *
+     * @param filename il percorso del file di destinazione
+     * @param data     il dataset su cui è stato eseguito il clustering
+     * @throws FileNotFoundException se il file non può essere creato
+     * @throws IOException           se avviene un errore in scrittura
+     */
+    public void salva(String filename, Data data) throws FileNotFoundException, IOException {
+        ClusteringFile.write(C, radius, data, filename);
+    }
+
+    /**
+     * Restituisce il dataset incluso nel file da cui è stato letto il clustering.
+     *
+     * @return il dataset, oppure {@code null} se il file non lo include
+     *         o il miner non è stato letto da file
+     */
+    public Data getSnapshot() {
+        return snapshot;
     }
 
     /**
@@ -90,36 +191,482 @@ public class QTMiner {
         return C;
     }
 
+    /**
+     * Richiede l'interruzione cooperativa della computazione in corso.
+     * <p>
+     * La richiesta viene verificata dall'algoritmo a ogni nuovo centroide
+     * candidato; il metodo {@link #compute(Data)} termina quindi sollevando
+     * {@link ComputationCancelledException}.
+     * </p>
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Indica se è stata richiesta l'interruzione della computazione.
+     *
+     * @return {@code true} se {@link #cancel()} è stato invocato
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Imposta il tempo massimo di esecuzione delle prossime invocazioni di {@link #compute(Data)}.
+     *
+     * @param millis il budget in millisecondi; {@code 0} lo rimuove
+     * @throws IllegalArgumentException se {@code millis < 0}
+     */
+    public void setTimeBudget(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("Il budget di tempo non può essere negativo.");
+        this.timeBudget = millis;
+    }
+
+    /**
+     * Imposta il numero massimo di distanze valutate dalle prossime invocazioni di
+     * {@link #compute(Data)}. Il budget viene verificato a ogni nuovo centroide
+     * candidato, quindi può essere superato al più di una scansione del dataset.
+     *
+     * @param evaluations il budget di valutazioni; {@code 0} lo rimuove
+     * @throws IllegalArgumentException se {@code evaluations < 0}
+     */
+    public void setDistanceBudget(long evaluations) {
+        if (evaluations < 0)
+            throw new IllegalArgumentException("Il budget di valutazioni non può essere negativo.");
+        this.distanceBudget = evaluations;
+    }
+
+    /**
+     * Attiva il salvataggio periodico dello stato delle prossime invocazioni di
+     * {@link #compute(Data)}, e la ripresa da un checkpoint precedente.
+     * <p>
+     * Se all'avvio della computazione il file esiste e appartiene allo stesso
+     * dataset e allo stesso raggio, i cluster già scelti non vengono ricalcolati.
+     * Durante la computazione, dopo ogni nuovo cluster, il checkpoint viene
+     * aggiornato se dall'ultimo salvataggio è trascorso almeno l'intervallo
+     * indicato; viene inoltre salvato quando il budget si esaurisce ed eliminato
+     * quando la computazione termina.
+     * </p>
+     *
+     * @param filename il file del checkpoint; {@code null} disattiva i checkpoint
+     * @param interval l'intervallo minimo (in millisecondi) tra due salvataggi
+     * @throws IllegalArgumentException se {@code interval < 0}
+     */
+    public void setCheckpoint(String filename, long interval) {
+        if (interval < 0)
+            throw new IllegalArgumentException("L'intervallo dei checkpoint non può essere negativo.");
+        this.checkpointFile = (filename != null) ? Path.of(filename) : null;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Restituisce il numero di distanze valutate dalla computazione.
+     * Può essere invocato da altri thread durante {@link #compute(Data)} per seguirne l'avanzamento.
+     *
+     * @return il numero di distanze valutate
+     */
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    /**
+     * Indica se l'ultima computazione si è fermata per esaurimento del budget.
+     *
+     * @return {@code true} se il set di cluster è parziale
+     */
+    public boolean isPartial() {
+        return C.isPartial();
+    }
+
+    /**
+     * Restituisce il numero di tuple già assegnate a un cluster.
+     * Può essere invocato da altri thread durante {@link #compute(Data)} per seguirne l'avanzamento.
+     *
+     * @return il numero di tuple già assegnate
+     */
+    public int getClusteredCount() {
+        return clusteredCount;
+    }
+
+    /**
+     * Restituisce il numero di cluster già prodotti.
+     * Può essere invocato da altri thread durante {@link #compute(Data)} per seguirne l'avanzamento.
+     *
+     * @return il numero di cluster già prodotti
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Stima la memoria (in byte) necessaria per eseguire {@link #compute(Data)} sul dataset indicato.
+     * <p>
+     * La stima considera l'array delle tuple assegnate e, per ciascuna tupla,
+     * indice e distanza nel cluster candidato corrente, nel miglior candidato
+     * e nel {@link ClusterSet} finale.
+     * </p>
+     *
+     * @param data il dataset su cui verrebbe eseguito il clustering
+     * @return la memoria stimata in byte
+     */
+    public static long estimateMemory(Data data) {
+        final long bytesPerIndex = Integer.BYTES + Double.BYTES;
+        long n = data.getNumberOfExamples();
+        return n + 3 * n * bytesPerIndex;
+    }
+
     /**
      * Esegue l’algoritmo QT sul dataset fornito, producendo e memorizzando i cluster.
+     * <p>
+     * Se il budget impostato si esaurisce, la computazione termina normalmente
+     * con un {@link ClusterSet} parziale.
+     * </p>
      *
      * @param data il dataset su cui eseguire il clustering
      * @return il numero di cluster generati
-     * @throws ClusteringRadiusException se l’algoritmo produce un unico cluster
+     * @throws ClusteringRadiusException     se l’algoritmo completo produce un unico cluster
+     * @throws ComputationCancelledException se la computazione viene annullata tramite {@link #cancel()}
      */
-    public int compute(Data data) throws ClusteringRadiusException {
+    public int compute(Data data) throws ClusteringRadiusException, ComputationCancelledException {
         int numclusters = 0;
         boolean[] isClustered = new boolean[data.getNumberOfExamples()];
         Arrays.fill(isClustered, false);
 
+        distanceEvaluations = 0;
+        deadline = (timeBudget > 0) ? System.nanoTime() + timeBudget * 1_000_000 : 0;
+        baselineExamples = 0;
+        insertedSinceCompute = 0;
+
         int countClustered = 0;
+        long fingerprint = 0;
+        if (checkpointFile != null) {
+            fingerprint = Checkpoint.fingerprint(data);
+            Checkpoint checkpoint = readCheckpoint(data, fingerprint);
+            if (checkpoint != null) {
+                C = checkpoint.getClusters();
+                C.setUnassigned(null);
+                isClustered = checkpoint.getClustered();
+                for (Cluster c : C)
+                    countClustered += c.getSize();
+                numclusters = C.size();
+                clusteredCount = countClustered;
+                clusterCount = numclusters;
+            }
+        }
+        long lastCheckpoint = System.currentTimeMillis();
+
         while (countClustered != data.getNumberOfExamples()) {
-            Cluster c = buildCandidateCluster(data, isClustered);
+            Cluster c;
+            try {
+                c = buildCandidateCluster(data, isClustered);
+            } catch (BudgetExhaustedException e) {
+                if (checkpointFile != null)
+                    writeCheckpoint(data, fingerprint, isClustered);
+                C.setUnassigned(unassigned(isClustered, data.getNumberOfExamples() - countClustered));
+                return numclusters;
+            }
             C.add(c);
 
             numclusters++;
-            for (Integer idx : c)
-                isClustered[idx] = true;
+            for (int k = 0; k < c.getSize(); k++)
+                isClustered[c.getMember(k)] = true;
 
             countClustered += c.getSize();
+            clusteredCount = countClustered;
+            clusterCount = numclusters;
+
+            if (checkpointFile != null && System.currentTimeMillis() - lastCheckpoint >= checkpointInterval
+                    && countClustered != data.getNumberOfExamples()) {
+                writeCheckpoint(data, fingerprint, isClustered);
+                lastCheckpoint = System.currentTimeMillis();
+            }
         }
 
+        if (checkpointFile != null)
+            deleteCheckpoint();
+
         if (numclusters == 1)
             throw new ClusteringRadiusException();
 
         return numclusters;
     }
 
+    /**
+     * Inserisce nel clustering corrente le tuple aggiunte al dataset, senza ricalcolarlo.
+     * <p>
+     * Il dataset deve contenere nelle prime {@code firstNew} posizioni le tuple già
+     * raggruppate, seguite da quelle nuove. Ogni tupla nuova, come ogni tupla che un
+     * clustering parziale aveva lasciato senza cluster, entra nel cluster il cui
+     * centroide è più vicino, se dista al più il raggio; i centroidi vengono cercati
+     * con un indice a griglia ({@link GridIndex}), così che il costo di ogni
+     * inserimento non cresca con il numero di cluster. Le tuple rimaste vengono poi
+     * raggruppate tra loro con l'algoritmo QT, formando nuovi cluster.
+     * </p>
+     * <p>
+     * I centroidi esistenti non cambiano: il clustering ottenuto può quindi
+     * differire da quello di una computazione completa sul dataset esteso. Il
+     * resoconto restituito indica quando la differenza suggerisce di ricalcolarlo.
+     * </p>
+     *
+     * @param data     il dataset esteso con le tuple nuove
+     * @param firstNew l'indice della prima tupla nuova
+     * @return il resoconto dell'inserimento
+     * @throws IllegalArgumentException      se {@code firstNew} non è compreso tra 0 e il numero di tuple
+     * @throws ComputationCancelledException se l'inserimento viene annullato tramite {@link #cancel()};
+     *                                       le tuple non ancora raggruppate restano non assegnate
+     */
+    public InsertionReport insert(Data data, int firstNew) throws ComputationCancelledException {
+        int n = data.getNumberOfExamples();
+        if (firstNew < 0 || firstNew > n)
+            throw new IllegalArgumentException("Indice della prima tupla nuova non valido: " + firstNew);
+
+        distanceEvaluations = 0;
+        if (baselineExamples == 0) {
+            baselineExamples = C.getUnassigned().length;
+            for (Cluster c : C)
+                baselineExamples += c.getSize();
+            baselineDistance = averageDistance(data);
+        }
+
+        int[] unassigned = C.getUnassigned();
+        int[] pending = new int[unassigned.length + n - firstNew];
+        System.arraycopy(unassigned, 0, pending, 0, unassigned.length);
+        for (int i = firstNew; i < n; i++)
+            pending[unassigned.length + i - firstNew] = i;
+
+        int[] leftover = new int[pending.length];
+        int count = 0;
+        int joined = 0;
+        int smallestExisting = 0;
+        boolean rescaled = false;
+
+        if (C.size() > 0) {
+            Tuple reference = C.iterator().next().getCentroid();
+            rescaled = rescaled(data, reference);
+
+            GridIndex<Cluster> index = new GridIndex<>(reference, radius);
+            for (Cluster c : C) {
+                c.ensureDistances(data);
+                index.add(c.getCentroid(), c);
+                smallestExisting = (smallestExisting == 0) ? c.getSize() : Math.min(smallestExisting, c.getSize());
+            }
+
+            for (int i : pending) {
+                GridIndex.Match<Cluster> match = index.nearest(data.getItemSet(i));
+                if (match != null) {
+                    match.value().addData(i, match.distance());
+                    joined++;
+                } else {
+                    leftover[count++] = i;
+                }
+            }
+            distanceEvaluations += index.getEvaluations();
+            C.resort();
+        } else {
+            leftover = pending;
+            count = pending.length;
+        }
+
+        List<Cluster> created;
+        try {
+            created = clusterAmong(data, leftover, count);
+        } catch (ComputationCancelledException e) {
+            C.setUnassigned(Arrays.copyOf(leftover, count));
+            throw e;
+        }
+
+        int largestNew = 0;
+        for (Cluster c : created) {
+            C.add(c);
+            largestNew = Math.max(largestNew, c.getSize());
+        }
+        C.setUnassigned(null);
+
+        insertedSinceCompute += n - firstNew;
+        clusteredCount = n;
+        clusterCount = C.size();
+
+        double growth = (baselineExamples > 0) ? (double) insertedSinceCompute / baselineExamples : 0.0;
+        return new InsertionReport(pending.length, joined, created.size(), largestNew, smallestExisting,
+                                   growth, baselineDistance, averageDistance(data), rescaled, distanceEvaluations);
+    }
+
+    /**
+     * Raggruppa con l'algoritmo QT le tuple indicate, considerando solo le distanze tra di esse.
+     *
+     * @param data    il dataset di riferimento
+     * @param pending gli indici delle tuple da raggruppare, in ordine crescente
+     * @param count   il numero di posizioni valide di {@code pending}
+     * @return i cluster formati, nell'ordine in cui sono stati scelti
+     * @throws ComputationCancelledException se la computazione viene annullata tramite {@link #cancel()}
+     */
+    private List<Cluster> clusterAmong(Data data, int[] pending, int count) throws ComputationCancelledException {
+        Tuple[] tuples = new Tuple[count];
+        for (int k = 0; k < count; k++)
+            tuples[k] = data.getItemSet(pending[k]);
+
+        boolean[] taken = new boolean[count];
+        int[] candidateMembers = new int[count];
+        double[] candidateDistances = new double[count];
+        int[] bestMembers = new int[count];
+        double[] bestDistances = new double[count];
+        List<Cluster> clusters = new ArrayList<>();
+
+        int remaining = count;
+        while (remaining > 0) {
+            int bestCentroid = -1;
+            int maxSize = -1;
+
+            for (int a = 0; a < count; a++) {
+                if (cancelled)
+                    throw new ComputationCancelledException();
+                if (taken[a])
+                    continue;
+
+                int size = 0;
+                for (int b = 0; b < count; b++) {
+                    if (!taken[b]) {
+                        double distance = tuples[a].getDistance(tuples[b]);
+                        if (distance <= radius) {
+                            candidateMembers[size] = b;
+                            candidateDistances[size] = distance;
+                            size++;
+                        }
+                    }
+                }
+                distanceEvaluations += remaining;
+
+                if (size > maxSize) {
+                    int[] members = bestMembers;
+                    bestMembers = candidateMembers;
+                    candidateMembers = members;
+
+                    double[] distances = bestDistances;
+                    bestDistances = candidateDistances;
+                    candidateDistances = distances;
+
+                    bestCentroid = a;
+                    maxSize = size;
+                }
+            }
+
+            int[] members = new int[maxSize];
+            for (int k = 0; k < maxSize; k++) {
+                taken[bestMembers[k]] = true;
+                members[k] = pending[bestMembers[k]];
+            }
+            clusters.add(new Cluster(tuples[bestCentroid], members, bestDistances, maxSize));
+            remaining -= maxSize;
+        }
+        return clusters;
+    }
+
+    /**
+     * Calcola la distanza media delle tuple raggruppate dal proprio centroide.
+     *
+     * @param data il dataset di riferimento
+     * @return la distanza media, {@code 0} se non ci sono cluster
+     */
+    private double averageDistance(Data data) {
+        double sum = 0.0;
+        long size = 0;
+        for (Cluster c : C) {
+            sum += c.getAverageDistance(data) * c.getSize();
+            size += c.getSize();
+        }
+        return (size > 0) ? sum / size : 0.0;
+    }
+
+    /**
+     * Verifica se minimo o massimo di un attributo continuo del dataset differiscono
+     * da quelli con cui sono stati scalati i centroidi.
+     *
+     * @param data      il dataset di riferimento
+     * @param reference un centroide del clustering
+     * @return {@code true} se la scala di almeno un attributo continuo è cambiata
+     */
+    private static boolean rescaled(Data data, Tuple reference) {
+        Attribute[] schema = data.getAttributeSchema();
+        for (int j = 0; j < schema.length && j < reference.getLength(); j++) {
+            Attribute centroidAttribute = reference.get(j).getAttribute();
+            if (schema[j] instanceof ContinuousAttribute && centroidAttribute instanceof ContinuousAttribute) {
+                ContinuousAttribute current = (ContinuousAttribute) schema[j];
+                ContinuousAttribute original = (ContinuousAttribute) centroidAttribute;
+                if (current.getMin() != original.getMin() || current.getMax() != original.getMax())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Legge il checkpoint configurato, se esiste e appartiene alla computazione indicata.
+     *
+     * @param data        il dataset della computazione
+     * @param fingerprint l'impronta del dataset
+     * @return il checkpoint da cui riprendere, oppure {@code null} se la computazione riparte da zero
+     */
+    private Checkpoint readCheckpoint(Data data, long fingerprint) {
+        if (!Files.exists(checkpointFile))
+            return null;
+
+        try {
+            Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+            if (checkpoint.matches(radius, data.getNumberOfExamples(), fingerprint))
+                return checkpoint;
+            System.err.println("Checkpoint " + checkpointFile + " ignorato: appartiene a un'altra computazione.");
+        } catch (IOException e) {
+            System.err.println("Checkpoint " + checkpointFile + " non leggibile: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Scrive il checkpoint della computazione in corso. Un errore di scrittura
+     * non interrompe la computazione: viene solo segnalato.
+     *
+     * @param data        il dataset della computazione
+     * @param fingerprint l'impronta del dataset
+     * @param isClustered array booleano che indica quali tuple sono già assegnate
+     */
+    private void writeCheckpoint(Data data, long fingerprint, boolean[] isClustered) {
+        try {
+            new Checkpoint(radius, data.getNumberOfExamples(), fingerprint, isClustered, C).write(checkpointFile);
+        } catch (IOException e) {
+            System.err.println("Checkpoint " + checkpointFile + " non scritto: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina il checkpoint di una computazione terminata.
+     */
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            System.err.println("Checkpoint " + checkpointFile + " non eliminato: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restituisce gli indici delle tuple non ancora assegnate a un cluster.
+     *
+     * @param isClustered array booleano che indica quali tuple sono già assegnate
+     * @param count       il numero di tuple non assegnate
+     * @return gli indici delle tuple non assegnate, in ordine crescente
+     */
+    private static int[] unassigned(boolean[] isClustered, int count) {
+        int[] indexes = new int[count];
+        int k = 0;
+        for (int i = 0; i < isClustered.length; i++) {
+            if (!isClustered[i])
+                indexes[k++] = i;
+        }
+        return indexes;
+    }
+
     /**
      * Costruisce e restituisce il cluster candidato più popoloso per il
      * prossimo passo dell’algoritmo, scegliendo come centro la prima tupla
@@ -128,32 +675,75 @@ public class QTMiner {
      * @param data        il dataset di riferimento
      * @param isClustered array booleano che indica quali tuple sono già assegnate
      * @return il cluster candidato con la cardinalità massima
+     * @throws ComputationCancelledException se la computazione viene annullata tramite {@link #cancel()}
+     * @throws BudgetExhaustedException      se il budget della computazione si esaurisce
      */
-    public Cluster buildCandidateCluster(Data data, boolean[] isClustered) {
-        Cluster best = null;
+    public Cluster buildCandidateCluster(Data data, boolean[] isClustered)
+            throws ComputationCancelledException, BudgetExhaustedException {
+        int n = data.getNumberOfExamples();
+
+        // Il candidato corrente e il migliore trovato finora usano due coppie di
+        // array riutilizzate: il cluster viene creato solo per il candidato scelto,
+        // insieme alle distanze già calcolate dei suoi membri.
+        int[] candidateMembers = new int[n];
+        double[] candidateDistances = new double[n];
+        int[] bestMembers = new int[n];
+        double[] bestDistances = new double[n];
+        Tuple bestCentroid = null;
         int maxSize = -1;
 
-        for (int i = 0; i < data.getNumberOfExamples(); i++) {
+        for (int i = 0; i < n; i++) {
+            if (cancelled)
+                throw new ComputationCancelledException();
+
             if (!isClustered[i]) {
+                checkBudget();
+
                 Tuple centroid = data.getItemSet(i);
-                Cluster candidate = new Cluster(centroid);
+                int size = 0;
+                int evaluated = 0;
 
-                for (int j = 0; j < data.getNumberOfExamples(); j++) {
+                for (int j = 0; j < n; j++) {
                     if (!isClustered[j]) {
                         Tuple tuple = data.getItemSet(j);
                         double distance = centroid.getDistance(tuple);
-                        if (distance <= radius)
-                            candidate.addData(j);
+                        evaluated++;
+                        if (distance <= radius) {
+                            candidateMembers[size] = j;
+                            candidateDistances[size] = distance;
+                            size++;
+                        }
                     }
                 }
+                distanceEvaluations += evaluated;
+
+                if (size > maxSize) {
+                    int[] members = bestMembers;
+                    bestMembers = candidateMembers;
+                    candidateMembers = members;
+
+                    double[] distances = bestDistances;
+                    bestDistances = candidateDistances;
+                    candidateDistances = distances;
 
-                if (candidate.getSize() > maxSize) {
-                    best = candidate;
-                    maxSize = candidate.getSize();
+                    bestCentroid = centroid;
+                    maxSize = size;
                 }
             }
         }
 
-        return best;
+        return (bestCentroid == null) ? null : new Cluster(bestCentroid, bestMembers, bestDistances, maxSize);
+    }
+
+    /**
+     * Verifica che la computazione in corso non abbia esaurito il budget di tempo o di valutazioni.
+     *
+     * @throws BudgetExhaustedException se uno dei budget impostati è esaurito
+     */
+    private void checkBudget() throws BudgetExhaustedException {
+        if (deadline != 0 && System.nanoTime() - deadline >= 0)
+            throw new BudgetExhaustedException("Budget di tempo esaurito (" + timeBudget + " ms).");
+        if (distanceBudget > 0 && distanceEvaluations >= distanceBudget)
+            throw new BudgetExhaustedException("Budget di valutazioni esaurito (" + distanceBudget + ").");
     }
 }
@@ -0,0 +1,428 @@
+package mining;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import data.Data;
+import data.Tuple;
+import exceptions.BudgetExhaustedException;
+import exceptions.ComputationCancelledException;
+
+/**
+ * Stima, senza eseguire l'algoritmo QT sull'intero dataset, l'effetto di diversi
+ * raggi di clustering e suggerisce quale usare.
+ * <p>
+ * La stima procede in due passi, con un costo che non dipende dalla dimensione
+ * del dataset:
+ * </p>
+ * <ol>
+ *     <li>vengono calcolate le distanze di un numero fisso di coppie di esempi
+ *         scelte a caso; se i raggi non sono indicati, vengono presi dai quantili
+ *         di questa distribuzione, fino alla mediana;</li>
+ *     <li>l'algoritmo QT viene eseguito con tutti i raggi, tramite
+ *         {@link MultiRadiusMiner}, su alcuni campioni casuali di esempi e sulla
+ *         prima metà di ciascuno. Il centroide del cluster più grande viene
+ *         confrontato con altri esempi scelti a caso, la cui quota entro il raggio
+ *         è riportata all'intero dataset: contare i membri nel campione stesso
+ *         sovrastimerebbe la dimensione, perché il centroide è scelto proprio dove
+ *         il campione è più denso. Il numero di cluster viene estrapolato
+ *         dalla sua crescita complessiva tra le metà e i campioni interi, che è nulla quando
+ *         i cluster coprono già tutto lo spazio e proporzionale agli esempi quando
+ *         restano isolati.</li>
+ * </ol>
+ * <p>
+ * Gli intervalli di confidenza (circa al 95%) derivano dalla variabilità tra i
+ * campioni e non comprendono l'incertezza sulla crescita del numero di cluster.
+ * Se il dataset non è più grande di un campione, il clustering viene eseguito
+ * una sola volta su tutti gli esempi e le stime sono esatte.
+ * </p>
+ * <p>
+ * Il raggio suggerito è il più piccolo che produce più di un cluster lasciando
+ * isolati al più il {@value #MAX_SINGLETON_PERCENT}% degli esempi del campione.
+ * </p>
+ *
+ * @see MultiRadiusMiner
+ */
+public class RadiusAdvisor {
+
+    /** Numero di coppie di esempi di cui viene calcolata la distanza, per default. */
+    public static final int DEFAULT_PAIRS = 20_000;
+
+    /** Numero di esempi di ciascun campione, per default. */
+    public static final int DEFAULT_SAMPLE_SIZE = 800;
+
+    /** Numero di campioni, per default. */
+    public static final int DEFAULT_REPETITIONS = 5;
+
+    /** Percentuale massima di esempi isolati con il raggio suggerito. */
+    public static final int MAX_SINGLETON_PERCENT = 10;
+
+    /** Quantile della distribuzione delle distanze fino al quale vengono scelti i raggi. */
+    private static final double MAX_QUANTILE = 0.5;
+
+    /** Quantili della distribuzione t di Student al 97,5% per 1-10 gradi di libertà. */
+    private static final double[] T_QUANTILES = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228
+    };
+
+    /** Numero di coppie di esempi di cui viene calcolata la distanza. */
+    private final int pairs;
+
+    /** Numero di esempi di ciascun campione. */
+    private final int sampleSize;
+
+    /** Numero di campioni. */
+    private final int repetitions;
+
+    /** Generatore dei campioni. */
+    private final Random random;
+
+    /** Indica se è stata richiesta l'interruzione della stima in corso. */
+    private volatile boolean cancelled;
+
+    /** Miner del campione in elaborazione. */
+    private volatile MultiRadiusMiner current;
+
+    /**
+     * Costruisce uno stimatore con i parametri di default.
+     */
+    public RadiusAdvisor() {
+        this(DEFAULT_PAIRS, DEFAULT_SAMPLE_SIZE, DEFAULT_REPETITIONS, System.nanoTime());
+    }
+
+    /**
+     * Costruisce uno stimatore con i parametri indicati.
+     *
+     * @param pairs       il numero di coppie di esempi di cui calcolare la distanza
+     * @param sampleSize  il numero di esempi di ciascun campione; almeno 2
+     * @param repetitions il numero di campioni; almeno 2, per stimare la variabilità
+     * @param seed        il seme del generatore dei campioni
+     * @throws IllegalArgumentException se un parametro non è valido
+     */
+    public RadiusAdvisor(int pairs, int sampleSize, int repetitions, long seed) {
+        if (pairs <= 0)
+            throw new IllegalArgumentException("Il numero di coppie deve essere positivo.");
+        if (sampleSize < 2)
+            throw new IllegalArgumentException("Un campione deve contenere almeno due esempi.");
+        if (repetitions < 2)
+            throw new IllegalArgumentException("Servono almeno due campioni.");
+
+        this.pairs = pairs;
+        this.sampleSize = sampleSize;
+        this.repetitions = repetitions;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Richiede l'interruzione della stima in corso.
+     */
+    public void cancel() {
+        cancelled = true;
+        MultiRadiusMiner miner = current;
+        if (miner != null)
+            miner.cancel();
+    }
+
+    /**
+     * Stima la memoria (in byte) necessaria per una stima, indipendente dalla dimensione del dataset.
+     *
+     * @return la memoria stimata in byte
+     */
+    public long estimateMemory() {
+        long m = sampleSize;
+        return m * (m - 1) * MultiRadiusMiner.BYTES_PER_NEIGHBOUR + (long) pairs * Double.BYTES;
+    }
+
+    /**
+     * Stima l'effetto di {@code steps} raggi presi dai quantili della distribuzione
+     * delle distanze, fino alla mediana.
+     *
+     * @param data  il dataset
+     * @param steps il numero di raggi da valutare; i raggi coincidenti vengono valutati una sola volta
+     * @return le stime e il raggio suggerito
+     * @throws ComputationCancelledException se la stima viene annullata tramite {@link #cancel()}
+     * @throws BudgetExhaustedException      se un campione supera il budget di vicini di {@link MultiRadiusMiner}
+     * @throws IllegalArgumentException      se {@code steps <= 0}, se il dataset ha meno di due esempi
+     *                                       o se tutte le distanze campionate sono nulle
+     */
+    public Advice advise(Data data, int steps) throws ComputationCancelledException, BudgetExhaustedException {
+        if (steps <= 0)
+            throw new IllegalArgumentException("Il numero di raggi deve essere positivo.");
+
+        double[] distances = sampleDistances(data);
+        double[] radii = new double[steps];
+        int count = 0;
+        for (int k = 1; k <= steps; k++) {
+            int position = (int) Math.ceil(MAX_QUANTILE * k / steps * distances.length) - 1;
+            double radius = distances[Math.max(0, position)];
+            if (radius > 0 && (count == 0 || radius > radii[count - 1]))
+                radii[count++] = radius;
+        }
+        if (count == 0)
+            throw new IllegalArgumentException("Le distanze campionate sono tutte nulle.");
+
+        return advise(data, Arrays.copyOf(radii, count), distances);
+    }
+
+    /**
+     * Stima l'effetto dei raggi indicati.
+     *
+     * @param data  il dataset
+     * @param radii i raggi da valutare; devono essere positivi
+     * @return le stime, nell'ordine dei raggi, e il raggio suggerito
+     * @throws ComputationCancelledException se la stima viene annullata tramite {@link #cancel()}
+     * @throws BudgetExhaustedException      se un campione supera il budget di vicini di {@link MultiRadiusMiner}
+     * @throws IllegalArgumentException      se un raggio non è valido o se il dataset ha meno di due esempi
+     */
+    public Advice advise(Data data, double[] radii) throws ComputationCancelledException, BudgetExhaustedException {
+        return advise(data, radii, sampleDistances(data));
+    }
+
+    /**
+     * Esegue l'algoritmo QT sui campioni e raccoglie le stime.
+     *
+     * @param data      il dataset
+     * @param radii     i raggi da valutare
+     * @param distances le distanze campionate, in ordine crescente
+     * @return le stime e il raggio suggerito
+     * @throws ComputationCancelledException se la stima viene annullata
+     * @throws BudgetExhaustedException      se un campione supera il budget di vicini
+     */
+    private Advice advise(Data data, double[] radii, double[] distances)
+            throws ComputationCancelledException, BudgetExhaustedException {
+        int n = data.getNumberOfExamples();
+        int m = Math.min(sampleSize, n);
+        int samples = (m == n) ? 1 : repetitions;
+        long evaluations = distances.length;
+
+        double[][] clusters = new double[radii.length][samples];
+        long[] halfClusters = new long[radii.length];
+        long[] fullClusters = new long[radii.length];
+        double[][] largest = new double[radii.length][samples];
+        double[][] singletons = new double[radii.length][samples];
+
+        for (int s = 0; s < samples; s++) {
+            int[] rows = (m == n) ? IntStream.range(0, n).toArray()
+                                  : random.ints(0, n).distinct().limit(m).toArray();
+
+            ClusterSet[] full = cluster(data.subset(rows), radii);
+            evaluations += current.getDistanceEvaluations();
+            ClusterSet[] half = null;
+            if (m < n) {
+                half = cluster(data.subset(Arrays.copyOf(rows, m / 2)), radii);
+                evaluations += current.getDistanceEvaluations();
+            }
+
+            // Esempi indipendenti dal campione, su cui misurare il cluster più grande.
+            Tuple[] holdout = new Tuple[(m < n) ? m : 0];
+            for (int k = 0; k < holdout.length; k++)
+                holdout[k] = data.getItemSet(random.nextInt(n));
+
+            for (int r = 0; r < radii.length; r++) {
+                Cluster largestCluster = null;
+                int isolated = 0;
+                for (Cluster cluster : full[r]) {
+                    if (largestCluster == null || cluster.getSize() > largestCluster.getSize())
+                        largestCluster = cluster;
+                    if (cluster.getSize() == 1)
+                        isolated++;
+                }
+
+                double largestShare = (double) largestCluster.getSize() / m;
+                if (holdout.length > 0) {
+                    int within = 0;
+                    for (Tuple tuple : holdout) {
+                        if (tuple.getDistance(largestCluster.getCentroid()) <= radii[r])
+                            within++;
+                    }
+                    largestShare = (double) within / holdout.length;
+                    evaluations += holdout.length;
+                }
+
+                clusters[r][s] = full[r].size();
+                fullClusters[r] += full[r].size();
+                if (half != null)
+                    halfClusters[r] += half[r].size();
+                largest[r][s] = largestShare * n;
+                singletons[r][s] = (double) isolated / m;
+            }
+        }
+        current = null;
+
+        // La crescita è stimata sul totale dei campioni: su uno solo, con pochi cluster, è troppo instabile.
+        if (m < n) {
+            for (int r = 0; r < radii.length; r++) {
+                double growth = Math.log((double) fullClusters[r] / halfClusters[r]) / Math.log((double) m / (m / 2));
+                double scale = Math.pow((double) n / m, Math.max(0, Math.min(1, growth)));
+                for (int s = 0; s < samples; s++)
+                    clusters[r][s] = Math.min(n, clusters[r][s] * scale);
+            }
+        }
+
+        List<Estimate> estimates = new ArrayList<>();
+        double suggested = Double.NaN;
+        for (int r = 0; r < radii.length; r++) {
+            double[] c = interval(clusters[r], 1, n);
+            double[] l = interval(largest[r], 1, n);
+            double singletonShare = mean(singletons[r]);
+            int within = Arrays.binarySearch(distances, Math.nextUp(radii[r]));
+            double pairShare = (double) ((within >= 0) ? within : -within - 1) / distances.length;
+
+            estimates.add(new Estimate(radii[r], pairShare, c[0], c[1], c[2], l[0], l[1], l[2], singletonShare));
+            if (c[1] >= 2 && singletonShare * 100 <= MAX_SINGLETON_PERCENT && !(suggested <= radii[r]))
+                suggested = radii[r];
+        }
+
+        return new Advice(n, m, samples, evaluations, suggested, estimates);
+    }
+
+    /**
+     * Calcola le distanze di coppie di esempi scelte a caso, oppure di tutte le
+     * coppie se non sono più di quelle richieste.
+     *
+     * @param data il dataset
+     * @return le distanze, in ordine crescente
+     * @throws ComputationCancelledException se la stima viene annullata
+     * @throws IllegalArgumentException      se il dataset ha meno di due esempi
+     */
+    private double[] sampleDistances(Data data) throws ComputationCancelledException {
+        int n = data.getNumberOfExamples();
+        if (n < 2)
+            throw new IllegalArgumentException("Servono almeno due esempi per stimare il raggio.");
+
+        double[] distances;
+        if ((long) n * (n - 1) / 2 <= pairs) {
+            distances = new double[n * (n - 1) / 2];
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++)
+                    distances[k++] = data.getItemSet(i).getDistance(data.getItemSet(j));
+            }
+        } else {
+            distances = new double[pairs];
+            for (int k = 0; k < pairs; k++) {
+                if (cancelled)
+                    throw new ComputationCancelledException();
+
+                int i = random.nextInt(n);
+                int j = random.nextInt(n - 1);
+                if (j >= i)
+                    j++;
+                distances[k] = data.getItemSet(i).getDistance(data.getItemSet(j));
+            }
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    /**
+     * Esegue l'algoritmo QT su un campione con tutti i raggi.
+     *
+     * @param sample il campione
+     * @param radii  i raggi
+     * @return un set di cluster per ogni raggio
+     * @throws ComputationCancelledException se la stima viene annullata
+     * @throws BudgetExhaustedException      se il campione supera il budget di vicini
+     */
+    private ClusterSet[] cluster(Data sample, double[] radii)
+            throws ComputationCancelledException, BudgetExhaustedException {
+        current = new MultiRadiusMiner(radii, 1);
+        if (cancelled)
+            throw new ComputationCancelledException();
+        return current.compute(sample);
+    }
+
+    /**
+     * Restituisce la media di un insieme di stime.
+     *
+     * @param values le stime
+     * @return la media
+     */
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values)
+            sum += v;
+        return sum / values.length;
+    }
+
+    /**
+     * Restituisce la media di un insieme di stime con il relativo intervallo di
+     * confidenza, limitati all'intervallo ammesso.
+     *
+     * @param values le stime, una per campione
+     * @param min    il valore minimo ammesso
+     * @param max    il valore massimo ammesso
+     * @return estremo inferiore, media ed estremo superiore
+     */
+    private static double[] interval(double[] values, double min, double max) {
+        double mean = mean(values);
+        double margin = 0;
+        if (values.length > 1) {
+            double squares = 0;
+            for (double v : values)
+                squares += (v - mean) * (v - mean);
+            int df = values.length - 1;
+            // Oltre 10 gradi di libertà il quantile è approssimato.
+            double t = (df <= T_QUANTILES.length) ? T_QUANTILES[df - 1] : 1.96 + 2.4 / df;
+            margin = t * Math.sqrt(squares / df / values.length);
+        }
+        return new double[] {
+                Math.max(min, mean - margin), Math.max(min, Math.min(max, mean)), Math.min(max, mean + margin)
+        };
+    }
+
+    /**
+     * Stima dell'effetto di un raggio sull'intero dataset.
+     *
+     * @param radius         il raggio
+     * @param pairShare      la quota delle coppie di esempi a distanza non superiore al raggio
+     * @param clustersLow    l'estremo inferiore del numero di cluster
+     * @param clusters       il numero di cluster stimato
+     * @param clustersHigh   l'estremo superiore del numero di cluster
+     * @param largestLow     l'estremo inferiore della dimensione del cluster più grande
+     * @param largest        la dimensione stimata del cluster più grande
+     * @param largestHigh    l'estremo superiore della dimensione del cluster più grande
+     * @param singletonShare la quota media di esempi isolati nei campioni
+     */
+    public record Estimate(double radius, double pairShare, double clustersLow, double clusters, double clustersHigh,
+                           double largestLow, double largest, double largestHigh, double singletonShare) {
+
+        @Override
+        public String toString() {
+            return String.format("Radius=%.4f Coppie entro il raggio=%.1f%% Cluster=%.0f [%.0f, %.0f]"
+                                         + " MaxSize=%.0f [%.0f, %.0f] Isolati=%.1f%%",
+                                 radius, pairShare * 100, clusters, clustersLow, clustersHigh,
+                                 largest, largestLow, largestHigh, singletonShare * 100);
+        }
+    }
+
+    /**
+     * Risultato di una stima.
+     *
+     * @param examples            il numero di esempi del dataset
+     * @param sampleSize          il numero di esempi di ciascun campione
+     * @param samples             il numero di campioni
+     * @param distanceEvaluations il numero di distanze calcolate
+     * @param suggestedRadius     il raggio suggerito, oppure {@code NaN} se nessun raggio soddisfa il criterio
+     * @param estimates           le stime, una per raggio
+     */
+    public record Advice(int examples, int sampleSize, int samples, long distanceEvaluations,
+                         double suggestedRadius, List<Estimate> estimates) {
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Esempi: ").append(examples).append(", campioni: ").append(samples).append(" da ")
+              .append(sampleSize).append(", distanze calcolate: ").append(distanceEvaluations).append("\n");
+            for (Estimate e : estimates)
+                sb.append(e).append("\n");
+            sb.append("Raggio suggerito: ")
+              .append(Double.isNaN(suggestedRadius) ? "nessuno" : String.format("%.4f", suggestedRadius))
+              .append("\n");
+            return sb.toString();
+        }
+    }
+}
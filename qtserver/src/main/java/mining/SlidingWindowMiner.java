@@ -0,0 +1,522 @@
+package mining;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.ContinuousItem;
+import data.DiscreteItem;
+import data.Tuple;
+
+/**
+ * Clustering QT mantenuto su una finestra scorrevole di tuple ordinate nel tempo,
+ * ad esempio le ultime righe di una tabella in sola aggiunta.
+ * <p>
+ * La finestra contiene al più {@code maxRows} tuple, tutte più recenti di
+ * {@code maxAge} millisecondi rispetto alla più recente; le tuple più vecchie
+ * escono dalla finestra man mano che ne arrivano di nuove. Il raggio ha lo stesso
+ * significato di {@link QTMiner}, con le scale degli attributi continui fissate
+ * dallo schema indicato alla costruzione.
+ * </p>
+ * <p>
+ * Il clustering viene aggiornato per differenza, con un costo proporzionale alle
+ * tuple entrate e uscite e non alla dimensione della finestra:
+ * </p>
+ * <ul>
+ *     <li>una tupla nuova entra nel cluster con il centroide più vicino entro il
+ *         raggio, cercato con un {@link GridIndex}; altrimenti resta in attesa;</li>
+ *     <li>una tupla uscita lascia il proprio cluster; se era il centroide, il
+ *         cluster si scioglie e le tuple rimaste tornano in attesa;</li>
+ *     <li>per ogni tupla in attesa viene mantenuto il numero di tuple in attesa
+ *         entro il raggio, aggiornato solo quando una tupla vicina entra o esce
+ *         dall'attesa; alla pubblicazione le tuple in attesa vengono raggruppate
+ *         con l'algoritmo QT riusando questi conteggi.</li>
+ * </ul>
+ * <p>
+ * Come per {@link QTMiner#insert(data.Data, int)}, i cluster esistenti non vengono
+ * ricalcolati: il risultato può differire da una computazione completa sulla
+ * finestra. I riepiloghi dei cluster possono essere pubblicati a intervalli
+ * regolari con {@link #publishEvery(long, Consumer)}.
+ * </p>
+ * <p>
+ * I metodi della classe sono sincronizzati: le tuple possono arrivare da un thread
+ * mentre i riepiloghi vengono pubblicati da un altro.
+ * </p>
+ */
+public final class SlidingWindowMiner implements AutoCloseable {
+
+    /** Schema delle tuple, con le scale degli attributi continui. */
+    private final Attribute[] schema;
+
+    /** Raggio di clustering. */
+    private final double radius;
+
+    /** Numero massimo di tuple nella finestra; {@code 0} se illimitato. */
+    private final int maxRows;
+
+    /** Età massima (in millisecondi) delle tuple nella finestra; {@code 0} se illimitata. */
+    private final long maxAge;
+
+    /** Tuple della finestra, dalla meno recente. */
+    private final ArrayDeque<Point> window = new ArrayDeque<>();
+
+    /** Centroidi dei cluster. */
+    private final GridIndex<WindowCluster> centroids;
+
+    /** Tuple in attesa di un cluster. */
+    private final GridIndex<Point> pending;
+
+    /** Tuple in attesa, nell'ordine di arrivo in attesa. */
+    private final Set<Point> waiting = new LinkedHashSet<>();
+
+    /** Cluster della finestra, nell'ordine di formazione. */
+    private final Set<WindowCluster> clusters = new LinkedHashSet<>();
+
+    /** Numero di tuple ricevute. */
+    private long sequence;
+
+    /** Istante della tupla più recente. */
+    private long newest = Long.MIN_VALUE;
+
+    /** Numero di riepiloghi pubblicati. */
+    private long published;
+
+    /** Tuple entrate nella finestra dall'ultimo riepilogo. */
+    private int inserted;
+
+    /** Tuple uscite dalla finestra dall'ultimo riepilogo. */
+    private int expired;
+
+    /** Cluster sciolti dall'ultimo riepilogo, per l'uscita del centroide. */
+    private int dissolved;
+
+    /** Thread che pubblica i riepiloghi; {@code null} se la pubblicazione non è attiva. */
+    private ScheduledExecutorService publisher;
+
+    /**
+     * Costruisce un clustering a finestra scorrevole.
+     *
+     * @param schema  lo schema delle tuple; le scale degli attributi continui restano fissate
+     * @param radius  il raggio massimo; deve essere positivo
+     * @param maxRows il numero massimo di tuple nella finestra, {@code 0} se illimitato
+     * @param maxAge  l'età massima (in millisecondi) delle tuple nella finestra, {@code 0} se illimitata
+     * @throws IllegalArgumentException se il raggio non è positivo, se i limiti sono negativi
+     *                                  o se la finestra non ha alcun limite
+     */
+    public SlidingWindowMiner(Attribute[] schema, double radius, int maxRows, long maxAge) {
+        if (radius <= 0)
+            throw new IllegalArgumentException("Il raggio deve essere maggiore di zero.");
+        if (maxRows < 0 || maxAge < 0 || (maxRows == 0 && maxAge == 0))
+            throw new IllegalArgumentException("La finestra deve avere un numero massimo di tuple o un'età massima.");
+
+        this.schema = schema.clone();
+        this.radius = radius;
+        this.maxRows = maxRows;
+        this.maxAge = maxAge;
+        this.centroids = new GridIndex<>(this.schema, radius);
+        this.pending = new GridIndex<>(this.schema, radius);
+    }
+
+    /**
+     * Aggiunge alla finestra una tupla, facendo uscire quelle che superano i limiti.
+     * I valori della tupla vengono riportati allo schema della finestra.
+     *
+     * @param tuple     la tupla, con gli attributi nell'ordine dello schema
+     * @param timestamp l'istante (in millisecondi) della tupla; non può precedere quello della tupla più recente
+     * @throws IllegalArgumentException se la tupla non corrisponde allo schema o l'istante è precedente
+     */
+    public synchronized void add(Tuple tuple, long timestamp) {
+        if (timestamp < newest)
+            throw new IllegalArgumentException("Istante precedente a quello della tupla più recente: " + timestamp);
+
+        Point point = new Point(rebase(tuple), timestamp, sequence++);
+        newest = timestamp;
+        window.addLast(point);
+        inserted++;
+        expireOutside();
+
+        GridIndex.Match<WindowCluster> match = centroids.nearest(point.tuple);
+        if (match != null)
+            match.value().join(point, match.distance());
+        else
+            enqueue(point);
+    }
+
+    /**
+     * Fa uscire dalla finestra le tuple più vecchie di {@code maxAge} rispetto
+     * all'istante indicato, anche in assenza di tuple nuove.
+     *
+     * @param now l'istante corrente (in millisecondi)
+     */
+    public synchronized void expire(long now) {
+        newest = Math.max(newest, now);
+        expireOutside();
+    }
+
+    /**
+     * Restituisce il numero di tuple nella finestra.
+     *
+     * @return il numero di tuple
+     */
+    public synchronized int getWindowSize() {
+        return window.size();
+    }
+
+    /**
+     * Restituisce il numero di distanze valutate dalla costruzione.
+     *
+     * @return il numero di distanze valutate
+     */
+    public synchronized long getDistanceEvaluations() {
+        return centroids.getEvaluations() + pending.getEvaluations();
+    }
+
+    /**
+     * Raggruppa le tuple in attesa e restituisce il riepilogo dei cluster della finestra.
+     *
+     * @return il riepilogo
+     */
+    public synchronized Snapshot publish() {
+        recluster();
+
+        List<WindowCluster> ordered = new ArrayList<>(clusters);
+        ordered.sort(Comparator.comparingInt((WindowCluster c) -> c.members.size())
+                               .thenComparingLong(c -> c.centroid.sequence));
+
+        List<ClusterSummary> summaries = new ArrayList<>(ordered.size());
+        for (WindowCluster c : ordered)
+            summaries.add(new ClusterSummary(values(c.centroid.tuple), c.members.size(),
+                                             c.distanceSum / c.members.size()));
+
+        long oldest = window.isEmpty() ? newest : window.peekFirst().timestamp;
+        Snapshot snapshot = new Snapshot(++published, window.size(), oldest, newest,
+                                         inserted, expired, dissolved, List.copyOf(summaries));
+        inserted = 0;
+        expired = 0;
+        dissolved = 0;
+        return snapshot;
+    }
+
+    /**
+     * Avvia la pubblicazione periodica dei riepiloghi su un thread dedicato.
+     *
+     * @param period     l'intervallo (in millisecondi) tra due pubblicazioni; deve essere positivo
+     * @param subscriber riceve ogni riepilogo
+     * @throws IllegalArgumentException se {@code period <= 0}
+     * @throws IllegalStateException    se la pubblicazione è già attiva
+     */
+    public synchronized void publishEvery(long period, Consumer<Snapshot> subscriber) {
+        if (period <= 0)
+            throw new IllegalArgumentException("L'intervallo di pubblicazione deve essere positivo.");
+        if (publisher != null)
+            throw new IllegalStateException("Pubblicazione già attiva.");
+
+        publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "qt-window-publisher");
+            t.setDaemon(true);
+            return t;
+        });
+        publisher.scheduleAtFixedRate(() -> {
+            try {
+                subscriber.accept(publish());
+            } catch (RuntimeException e) {
+                System.err.println("Pubblicazione del riepilogo non riuscita: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Interrompe la pubblicazione periodica, se attiva.
+     */
+    @Override
+    public synchronized void close() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+    }
+
+    /**
+     * Fa uscire le tuple che superano il numero massimo o l'età massima.
+     */
+    private void expireOutside() {
+        while (!window.isEmpty()
+                && ((maxRows > 0 && window.size() > maxRows)
+                    || (maxAge > 0 && window.peekFirst().timestamp <= newest - maxAge))) {
+            Point point = window.removeFirst();
+            expired++;
+
+            WindowCluster cluster = point.cluster;
+            if (cluster == null)
+                dequeue(point);
+            else if (cluster.centroid == point)
+                dissolve(cluster);
+            else
+                cluster.leave(point);
+        }
+    }
+
+    /**
+     * Scioglie un cluster il cui centroide è uscito dalla finestra, rimettendo in
+     * attesa le tuple rimaste.
+     *
+     * @param cluster il cluster
+     */
+    private void dissolve(WindowCluster cluster) {
+        centroids.remove(cluster.centroid.tuple, cluster);
+        clusters.remove(cluster);
+        dissolved++;
+
+        for (Point member : cluster.members) {
+            member.cluster = null;
+            if (member != cluster.centroid)
+                enqueue(member);
+        }
+    }
+
+    /**
+     * Mette in attesa una tupla, aggiornando i conteggi dei vicini in attesa.
+     *
+     * @param point la tupla
+     */
+    private void enqueue(Point point) {
+        point.neighbours = 0;
+        pending.forEachWithin(point.tuple, (other, distance) -> {
+            other.neighbours++;
+            point.neighbours++;
+        });
+        pending.add(point.tuple, point);
+        waiting.add(point);
+    }
+
+    /**
+     * Toglie una tupla dall'attesa, aggiornando i conteggi dei vicini in attesa.
+     *
+     * @param point la tupla
+     */
+    private void dequeue(Point point) {
+        waiting.remove(point);
+        pending.remove(point.tuple, point);
+        pending.forEachWithin(point.tuple, (other, distance) -> other.neighbours--);
+    }
+
+    /**
+     * Raggruppa le tuple in attesa con l'algoritmo QT: sceglie ogni volta come
+     * centroide la tupla con più vicini in attesa e forma il cluster con essi.
+     * <p>
+     * Durante il raggruppamento i conteggi possono solo diminuire: una tupla estratta
+     * dalla coda con un conteggio non più attuale vi viene rimessa con quello corrente,
+     * senza riordinare la coda a ogni aggiornamento.
+     * </p>
+     */
+    private void recluster() {
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Math.max(1, waiting.size()));
+        for (Point point : waiting)
+            candidates.add(new Candidate(point, point.neighbours));
+
+        List<Point> members = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            Point centroid = candidate.point();
+            if (!waiting.contains(centroid))
+                continue;
+            if (candidate.neighbours() != centroid.neighbours) {
+                candidates.add(new Candidate(centroid, centroid.neighbours));
+                continue;
+            }
+
+            members.clear();
+            distances.clear();
+            pending.forEachWithin(centroid.tuple, (other, distance) -> {
+                members.add(other);
+                distances.add(distance);
+            });
+
+            WindowCluster cluster = new WindowCluster(centroid);
+            for (int k = 0; k < members.size(); k++) {
+                dequeue(members.get(k));
+                cluster.join(members.get(k), distances.get(k));
+            }
+            centroids.add(centroid.tuple, cluster);
+            clusters.add(cluster);
+        }
+    }
+
+    /**
+     * Ricostruisce una tupla con gli attributi dello schema della finestra.
+     *
+     * @param tuple la tupla
+     * @return la tupla con gli stessi valori e gli attributi della finestra
+     * @throws IllegalArgumentException se la tupla non corrisponde allo schema
+     */
+    private Tuple rebase(Tuple tuple) {
+        if (tuple.getLength() != schema.length)
+            throw new IllegalArgumentException("La tupla non corrisponde allo schema della finestra.");
+
+        Tuple rebased = new Tuple(schema.length);
+        for (int j = 0; j < schema.length; j++) {
+            Object value = tuple.get(j).getValue();
+            if (schema[j] instanceof ContinuousAttribute) {
+                if (!(value instanceof Number))
+                    throw new IllegalArgumentException("Valore non numerico per l'attributo " + schema[j].getName());
+                rebased.add(new ContinuousItem(schema[j], ((Number) value).doubleValue()), j);
+            } else {
+                rebased.add(new DiscreteItem(schema[j], value.toString()), j);
+            }
+        }
+        return rebased;
+    }
+
+    /**
+     * Restituisce i valori di una tupla separati da uno spazio.
+     *
+     * @param tuple la tupla
+     * @return i valori della tupla
+     */
+    private static String values(Tuple tuple) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < tuple.getLength(); j++) {
+            if (j > 0)
+                sb.append(" ");
+            sb.append(tuple.get(j).getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tupla della finestra.
+     */
+    private static final class Point {
+
+        /** Valori della tupla, con lo schema della finestra. */
+        final Tuple tuple;
+
+        /** Istante della tupla. */
+        final long timestamp;
+
+        /** Posizione della tupla nell'ordine di arrivo. */
+        final long sequence;
+
+        /** Cluster della tupla; {@code null} se è in attesa. */
+        WindowCluster cluster;
+
+        /** Distanza dal centroide del cluster. */
+        double distance;
+
+        /** Numero di altre tuple in attesa entro il raggio, se la tupla è in attesa. */
+        int neighbours;
+
+        Point(Tuple tuple, long timestamp, long sequence) {
+            this.tuple = tuple;
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Cluster della finestra.
+     */
+    private static final class WindowCluster {
+
+        /** Centroide del cluster, a sua volta membro. */
+        final Point centroid;
+
+        /** Tuple del cluster. */
+        final Set<Point> members = new HashSet<>();
+
+        /** Somma delle distanze dal centroide. */
+        double distanceSum;
+
+        WindowCluster(Point centroid) {
+            this.centroid = centroid;
+        }
+
+        void join(Point point, double distance) {
+            point.cluster = this;
+            point.distance = distance;
+            members.add(point);
+            distanceSum += distance;
+        }
+
+        void leave(Point point) {
+            members.remove(point);
+            distanceSum -= point.distance;
+            point.cluster = null;
+        }
+    }
+
+    /**
+     * Tupla in attesa nella coda del raggruppamento, con il conteggio dei vicini
+     * al momento dell'inserimento nella coda.
+     *
+     * @param point      la tupla
+     * @param neighbours il numero di vicini in attesa
+     */
+    private record Candidate(Point point, int neighbours) implements Comparable<Candidate> {
+
+        /** Prima le tuple con più vicini, a parità la meno recente, come in {@link QTMiner}. */
+        @Override
+        public int compareTo(Candidate other) {
+            if (neighbours != other.neighbours)
+                return Integer.compare(other.neighbours, neighbours);
+            return Long.compare(point.sequence, other.point.sequence);
+        }
+    }
+
+    /**
+     * Riepilogo di un cluster della finestra.
+     *
+     * @param centroid        i valori del centroide separati da uno spazio
+     * @param size            il numero di tuple del cluster
+     * @param averageDistance la distanza media delle tuple dal centroide
+     */
+    public record ClusterSummary(String centroid, int size, double averageDistance) {
+
+        @Override
+        public String toString() {
+            return "Centroid=(" + centroid + ") Size=" + size + String.format(" AvgDistance=%.4f", averageDistance);
+        }
+    }
+
+    /**
+     * Riepilogo dei cluster della finestra in un istante.
+     *
+     * @param sequence   il numero progressivo del riepilogo
+     * @param windowSize il numero di tuple nella finestra
+     * @param oldest     l'istante della tupla meno recente
+     * @param newest     l'istante della tupla più recente
+     * @param inserted   le tuple entrate nella finestra dal riepilogo precedente
+     * @param expired    le tuple uscite dalla finestra dal riepilogo precedente
+     * @param dissolved  i cluster sciolti dal riepilogo precedente
+     * @param clusters   i cluster, dal meno popoloso
+     */
+    public record Snapshot(long sequence, int windowSize, long oldest, long newest,
+                           int inserted, int expired, int dissolved, List<ClusterSummary> clusters) {
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Finestra #").append(sequence).append(": ").append(windowSize).append(" tuple [")
+              .append(oldest).append(", ").append(newest).append("], +").append(inserted)
+              .append(" -").append(expired).append(", cluster sciolti: ").append(dissolved).append("\n");
+
+            int i = 0;
+            for (ClusterSummary c : clusters)
+                sb.append(i++).append(": ").append(c).append("\n");
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool di {@link ByteBuffer} diretti di dimensione fissa.
+ * <p>
+ * L'allocazione di buffer diretti è costosa e la loro memoria non viene
+ * recuperata rapidamente dal garbage collector: il pool li riutilizza
+ * tra le diverse connessioni, mantenendone al più un numero prefissato.
+ * </p>
+ *
+ * @see NioServer
+ */
+public class BufferPool {
+
+    /** Capacità (in byte) di ciascun buffer del pool. */
+    private final int bufferSize;
+
+    /** Numero massimo di buffer mantenuti nel pool. */
+    private final int maxPooled;
+
+    /** Buffer disponibili. */
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    /** Numero di buffer attualmente disponibili nel pool. */
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    /**
+     * Costruisce un pool di buffer diretti.
+     *
+     * @param bufferSize la capacità di ciascun buffer; deve essere positiva
+     * @param maxPooled  il numero massimo di buffer mantenuti nel pool
+     * @throws IllegalArgumentException se {@code bufferSize <= 0} o {@code maxPooled < 0}
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled < 0)
+            throw new IllegalArgumentException("Parametri del pool di buffer non validi.");
+
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Restituisce la capacità di ciascun buffer del pool.
+     *
+     * @return la capacità in byte
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Preleva un buffer dal pool, allocandone uno nuovo se il pool è vuoto.
+     *
+     * @return un buffer diretto vuoto, con limite pari alla capacità
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(bufferSize);
+
+        freeCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Restituisce un buffer al pool. Se il pool è pieno il buffer viene scartato.
+     *
+     * @param buffer il buffer da restituire, ottenuto da {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (freeCount.incrementAndGet() <= maxPooled)
+            free.offer(buffer);
+        else
+            freeCount.decrementAndGet();
+    }
+}
@@ -0,0 +1,923 @@
+package server;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import data.Data;
+import exceptions.ServerBusyException;
+import mining.Cluster;
+import mining.ClusterSet;
+import mining.ClusterSetFormatter;
+import mining.QTMiner;
+import mining.RadiusAdvisor;
+
+/**
+ * Stato e logica applicativa della sessione di un singolo client,
+ * indipendenti dal protocollo di trasporto.
+ * <p>
+ * Una sessione ricorda il dataset caricato, l'ultimo clustering calcolato
+ * e i parametri necessari al salvataggio su file.
+ * </p>
+ *
+ * <h2>Esecuzione delle richieste</h2>
+ * <p>
+ * Ogni richiesta viene prima preparata con {@link #prepare(Request)}, nell'ordine
+ * di arrivo, e poi eseguita. La preparazione non si blocca mai: stabilisce da quale
+ * stato della sessione dipende la richiesta e quale stato produrrà, rappresentando
+ * entrambi con dei {@link CompletableFuture}. L'esecuzione può invece bloccarsi
+ * (accesso al database, clustering) e, con il protocollo multiplexato, avvenire
+ * in parallelo a quella di altre richieste della stessa sessione: una richiesta
+ * attende solo il completamento di quelle, precedenti, di cui usa il risultato.
+ * Ad esempio, dopo "carica A, calcola r1, carica B, calcola r2" i due caricamenti
+ * procedono in parallelo e ciascun calcolo usa la tabella caricata prima di esso.
+ * Una richiesta fallita lascia invariato lo stato della sessione.
+ * </p>
+ *
+ * <h2>Comandi supportati</h2>
+ * <ol>
+ *     <li><b>0</b> → Carica tabella dal DB <i>(in: String tableName)</i></li>
+ *     <li><b>1</b> → Computa cluster dal DB <i>(in: Double radius)</i></li>
+ *     <li><b>2</b> → Salva su file il cluster generato</li>
+ *     <li><b>3</b> → Carica cluster da file <i>(in: String name, Double radius)</i></li>
+ *     <li><b>4</b> → Riepilogo dei cluster correnti</li>
+ *     <li><b>5</b> → Pagina degli esempi di un cluster <i>(in: Integer cluster, Integer offset, Integer limit)</i></li>
+ *     <li><b>6</b> → Riepilogo dei cluster più popolosi <i>(in: Integer k)</i></li>
+ *     <li><b>7</b> → Imposta la compressione delle risposte <i>(in: Integer level)</i></li>
+ *     <li><b>8</b> → Avvia un job di clustering asincrono <i>(in: Double radius)</i></li>
+ *     <li><b>9</b> → Stato e avanzamento di un job <i>(in: Long jobId)</i></li>
+ *     <li><b>10</b> → Pagina dei risultati di un job <i>(in: Long jobId, Integer offset, Integer limit)</i></li>
+ *     <li><b>11</b> → Annulla un job <i>(in: Long jobId)</i></li>
+ *     <li><b>12</b> → Inizia l'invio di un dataset dal client <i>(in: String name, byte[] schema)</i></li>
+ *     <li><b>13</b> → Invia un blocco di esempi <i>(in: byte[] batch)</i></li>
+ *     <li><b>14</b> → Conclude l'invio del dataset</li>
+ *     <li><b>15</b> → Riepilogo del clustering con più raggi <i>(in: String radii)</i></li>
+ *     <li><b>16</b> → Stima e suggerimento del raggio <i>(in: Integer steps)</i></li>
+ * </ol>
+ *
+ * @see ServerOneClient
+ * @see NioServer
+ */
+public class ClientSession {
+
+    /** Dimensione indicativa (in caratteri) dei blocchi in cui viene prodotta la rappresentazione dei cluster. */
+    static final int CHUNK_SIZE = 32 * 1024;
+
+    /** Numero massimo di esempi restituiti da una singola richiesta di pagina (comando 5). */
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /** Numero massimo di raggi valutati da una singola richiesta (comandi 15 e 16). */
+    static final int MAX_RADII = 16;
+
+    /** Numero massimo di richieste di una connessione multiplexata eseguite contemporaneamente. */
+    static final int MAX_CONCURRENT_REQUESTS = 8;
+
+    /** Contatore dei dataset ricevuti dai client o letti da file, usato per distinguerli nella coalescenza. */
+    private static final AtomicLong INGESTED = new AtomicLong();
+
+    /** Identificativo del client, usato per la ripartizione equa del calcolo. */
+    private final String clientId;
+
+    /** Livello di coalescenza condiviso tra tutti i client del server. */
+    private final ComputeCoalescer coalescer;
+
+    /** Registro dei job di clustering asincroni condiviso tra tutti i client del server. */
+    private final JobRegistry jobs;
+
+    /** Provenienza dei dataset condivisa tra tutti i client del server. */
+    private final DatasetStore datasets;
+
+    /** Dataset prodotto dall'ultima richiesta preparata che carica una tabella (comandi 0, 3, 10 e 14). */
+    private CompletableFuture<Dataset> dataset = CompletableFuture.completedFuture(null);
+
+    /** Clustering prodotto dall'ultima richiesta preparata che ne calcola o carica uno (comandi 1, 3 e 10). */
+    private CompletableFuture<Clustering> clustering = CompletableFuture.completedFuture(null);
+
+    /** Invio di un dataset in corso dopo l'ultima richiesta preparata dei comandi 12, 13 e 14. */
+    private CompletableFuture<Ingestion> ingestion = CompletableFuture.completedFuture(null);
+
+    /** Compressore delle risposte della connessione, {@code null} se il trasporto non la supporta. */
+    private FrameCompressor compressor;
+
+    /**
+     * Costruisce una nuova sessione.
+     *
+     * @param clientId  l'identificativo del client
+     * @param coalescer il livello di coalescenza delle computazioni condiviso dal server
+     * @param jobs      il registro dei job di clustering asincroni condiviso dal server
+     * @param datasets  la provenienza dei dataset condivisa dal server
+     */
+    public ClientSession(String clientId, ComputeCoalescer coalescer, JobRegistry jobs, DatasetStore datasets) {
+        this.clientId = clientId;
+        this.coalescer = coalescer;
+        this.jobs = jobs;
+        this.datasets = datasets;
+    }
+
+    /**
+     * Associa alla sessione il compressore delle risposte della connessione,
+     * abilitando il comando {@link Command#SET_COMPRESSION}.
+     *
+     * @param compressor il compressore usato dal trasporto
+     */
+    public void setCompressor(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Esegue la richiesta ricevuta dal client, dopo aver atteso le richieste
+     * precedenti da cui dipende.
+     *
+     * @param request la richiesta da eseguire
+     * @return la risposta da inviare al client
+     */
+    public Response handle(Request request) {
+        return prepare(request).get();
+    }
+
+    /**
+     * Prepara l'esecuzione della richiesta ricevuta dal client.
+     * <p>
+     * Deve essere invocato nell'ordine di arrivo delle richieste e da un solo
+     * thread alla volta; non si blocca. L'esecuzione restituita può invece
+     * bloccarsi e può essere eseguita da un thread qualsiasi, anche in parallelo
+     * a quella di altre richieste della sessione.
+     * </p>
+     *
+     * @param request la richiesta da eseguire
+     * @return l'esecuzione della richiesta, che produce la risposta da inviare al client
+     */
+    public Supplier<Response> prepare(Request request) {
+        CompletableFuture<Dataset> currentDataset = dataset;
+        CompletableFuture<Clustering> currentClustering = clustering;
+        CompletableFuture<Ingestion> currentIngestion = ingestion;
+
+        switch (request.getCommand()) {
+            case LOAD_TABLE: {
+                String tableName = request.getString(0);
+                CompletableFuture<Dataset> nextDataset = new CompletableFuture<>();
+                dataset = nextDataset;
+                return () -> loadFromDb(tableName, currentDataset, nextDataset);
+            }
+            case COMPUTE_FROM_DB: {
+                double radius = request.getDouble(0);
+                CompletableFuture<Clustering> nextClustering = new CompletableFuture<>();
+                clustering = nextClustering;
+                return () -> computeFromDb(radius, currentDataset, currentClustering, nextClustering);
+            }
+            case SAVE_TO_FILE:
+                return () -> saveToFile(currentClustering);
+            case COMPUTE_FROM_FILE: {
+                String tableName = request.getString(0);
+                double radius = request.getDouble(1);
+                CompletableFuture<Dataset> nextDataset = new CompletableFuture<>();
+                CompletableFuture<Clustering> nextClustering = new CompletableFuture<>();
+                dataset = nextDataset;
+                clustering = nextClustering;
+                return () -> computeFromFile(tableName, radius, currentDataset, nextDataset,
+                                             currentClustering, nextClustering);
+            }
+            case CLUSTER_SUMMARY:
+                return () -> clusterSummary(currentClustering);
+            case CLUSTER_MEMBERS: {
+                int clusterIndex = request.getInt(0);
+                int offset = request.getInt(1);
+                int limit = request.getInt(2);
+                return () -> clusterMembers(currentClustering, clusterIndex, offset, limit);
+            }
+            case TOP_CLUSTERS: {
+                int k = request.getInt(0);
+                return () -> topClusters(currentClustering, k);
+            }
+            case SET_COMPRESSION: {
+                // Il livello vale per le risposte preparate da qui in poi.
+                Response response = setCompression(request.getInt(0));
+                return () -> response;
+            }
+            case SUBMIT_JOB: {
+                double radius = request.getDouble(0);
+                return () -> submitJob(currentDataset, radius);
+            }
+            case JOB_STATUS: {
+                long id = request.getLong(0);
+                return () -> jobStatus(id);
+            }
+            case JOB_RESULT: {
+                long id = request.getLong(0);
+                int offset = request.getInt(1);
+                int limit = request.getInt(2);
+                CompletableFuture<Dataset> nextDataset = new CompletableFuture<>();
+                CompletableFuture<Clustering> nextClustering = new CompletableFuture<>();
+                dataset = nextDataset;
+                clustering = nextClustering;
+                return () -> jobResult(id, offset, limit, currentDataset, nextDataset,
+                                       currentClustering, nextClustering);
+            }
+            case CANCEL_JOB: {
+                long id = request.getLong(0);
+                return () -> cancelJob(id);
+            }
+            case BEGIN_INGEST: {
+                String name = request.getString(0);
+                byte[] schema = request.getBytes(1);
+                CompletableFuture<Ingestion> nextIngestion = new CompletableFuture<>();
+                ingestion = nextIngestion;
+                return () -> beginIngest(name, schema, currentIngestion, nextIngestion);
+            }
+            case INGEST_BATCH: {
+                // Ogni blocco attende il precedente: gli esempi restano nell'ordine di invio.
+                byte[] batch = request.getBytes(0);
+                CompletableFuture<Ingestion> nextIngestion = new CompletableFuture<>();
+                ingestion = nextIngestion;
+                return () -> ingestBatch(batch, currentIngestion, nextIngestion);
+            }
+            case END_INGEST: {
+                CompletableFuture<Ingestion> nextIngestion = new CompletableFuture<>();
+                CompletableFuture<Dataset> nextDataset = new CompletableFuture<>();
+                ingestion = nextIngestion;
+                dataset = nextDataset;
+                return () -> endIngest(currentIngestion, nextIngestion, currentDataset, nextDataset);
+            }
+            case COMPUTE_RADII: {
+                String radii = request.getString(0);
+                return () -> computeRadii(radii, currentDataset);
+            }
+            case SUGGEST_RADIUS: {
+                int steps = request.getInt(0);
+                return () -> suggestRadius(steps, currentDataset);
+            }
+            default: {
+                Response response = Response.error("Comando non riconosciuto: " + request.getCommand().getCode());
+                return () -> response;
+            }
+        }
+    }
+
+    /**
+     * Comando 0 — Carica una tabella dal database e ne restituisce la rappresentazione testuale.
+     *
+     * @param tableName il nome della tabella
+     * @param previous  il dataset corrente, che resta tale se il caricamento fallisce
+     * @param next      il dataset prodotto dalla richiesta
+     * @return la risposta da inviare al client
+     */
+    private Response loadFromDb(String tableName, CompletableFuture<Dataset> previous,
+                                CompletableFuture<Dataset> next) {
+        log("Caricamento tabella dal database...");
+        Dataset loaded = null;
+        try {
+            loaded = new Dataset(tableName, datasets.load(tableName));
+
+            log("Tabella caricata: " + tableName);
+            return Response.ok(loaded.data().toString());
+        } catch (Exception e) {
+            return Response.error("Impossibile caricare la tabella: " + e.getMessage());
+        } finally {
+            settle(next, loaded, previous);
+        }
+    }
+
+    /**
+     * Comando 1 — Esegue clustering QT direttamente dal database.
+     * <p>
+     * Richieste identiche (stessa tabella e stesso raggio) provenienti da client
+     * diversi vengono unificate tramite {@link ComputeCoalescer}.
+     * </p>
+     *
+     * @param radius   il raggio di clustering
+     * @param source   il dataset su cui calcolare il clustering
+     * @param previous il clustering corrente, che resta tale se il calcolo fallisce
+     * @param next     il clustering prodotto dalla richiesta
+     * @return la risposta da inviare al client
+     */
+    private Response computeFromDb(double radius, CompletableFuture<Dataset> source,
+                                   CompletableFuture<Clustering> previous, CompletableFuture<Clustering> next) {
+        log("Computazione cluster da DB...");
+        Clustering computed = null;
+        try {
+            Dataset current = source.join();
+            if (current == null)
+                return Response.error("Dataset non caricato. Esegui prima l'opzione 0.");
+
+            // Unendosi a una computazione in corso, i cluster si riferiscono al dataset di chi l'ha avviata.
+            ComputeCoalescer.Result result = coalescer.compute(clientId, current.sharedKey(), radius, current.data());
+            QTMiner miner = result.miner();
+            computed = new Clustering(current.tableName(), radius, result.data(), miner);
+            if (miner.isPartial())
+                log("Budget di tempo esaurito: clustering parziale con "
+                        + miner.getC().getUnassigned().length + " tuple non assegnate");
+
+            return Response.streamed(new ClusterSetFormatter(miner.getC(), result.data(), CHUNK_SIZE),
+                                     miner.getC().size());
+        } catch (ServerBusyException e) {
+            return Response.busy(e.getMessage());
+        } catch (Exception e) {
+            return Response.error("Errore durante la computazione: " + e.getMessage());
+        } finally {
+            settle(next, computed, previous);
+        }
+    }
+
+    /**
+     * Comando 2 — Salva il cluster corrente su file, insieme al dataset da cui è stato calcolato.
+     *
+     * @param source il clustering da salvare
+     * @return la risposta da inviare al client
+     */
+    private Response saveToFile(CompletableFuture<Clustering> source) {
+        log("Salvataggio cluster su file...");
+        try {
+            Clustering current = source.join();
+            if (current == null)
+                return Response.error("Nessun cluster da salvare.");
+
+            current.miner().salva(fileName(current.tableName(), current.radius()), current.data());
+            return Response.ok();
+        } catch (Exception e) {
+            return Response.error("Errore durante il salvataggio: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comando 3 — Carica cluster da file e lo restituisce al client (senza ricalcolo).
+     * <p>
+     * Se il file include il dataset di riferimento, il database non viene interrogato;
+     * altrimenti (file salvati dalle versioni precedenti) la tabella viene caricata di nuovo.
+     * </p>
+     *
+     * @param name               il nome della tabella
+     * @param radius             il raggio usato per il clustering salvato
+     * @param previousDataset    il dataset corrente, che resta tale se la tabella non può essere caricata
+     * @param nextDataset        il dataset prodotto dalla richiesta
+     * @param previousClustering il clustering corrente, che resta tale se il caricamento fallisce
+     * @param nextClustering     il clustering prodotto dalla richiesta
+     * @return la risposta da inviare al client
+     */
+    private Response computeFromFile(String name, double radius,
+                                     CompletableFuture<Dataset> previousDataset, CompletableFuture<Dataset> nextDataset,
+                                     CompletableFuture<Clustering> previousClustering,
+                                     CompletableFuture<Clustering> nextClustering) {
+        log("Caricamento cluster da file...");
+        Dataset loaded = null;
+        Clustering restored = null;
+        try {
+            QTMiner miner = new QTMiner(fileName(name, radius));
+            Data snapshot = miner.getSnapshot();
+            // Il dataset incluso nel file può differire dalla tabella omonima: non deve condividerne i calcoli.
+            loaded = (snapshot != null)
+                    ? new Dataset(name, snapshot, name + "#" + INGESTED.incrementAndGet())
+                    : new Dataset(name, datasets.load(name));
+            restored = new Clustering(name, radius, loaded.data(), miner);
+
+            return Response.streamed(new ClusterSetFormatter(miner.getC(), loaded.data(), CHUNK_SIZE));
+        } catch (FileNotFoundException e) {
+            return Response.error("File non trovato.");
+        } catch (Exception e) {
+            return Response.error("Errore durante il caricamento: " + e.getMessage());
+        } finally {
+            settle(nextDataset, loaded, previousDataset);
+            settle(nextClustering, restored, previousClustering);
+        }
+    }
+
+    /**
+     * Comando 4 — Restituisce il riepilogo di tutti i cluster correnti, senza i loro esempi.
+     * <p>
+     * Il payload è composto dal numero {@code n} di cluster seguito, per ciascuno,
+     * da indice, valori del centroide, dimensione e distanza media, minima e massima.
+     * </p>
+     *
+     * @param source il clustering di cui restituire il riepilogo
+     * @return la risposta da inviare al client
+     */
+    private Response clusterSummary(CompletableFuture<Clustering> source) {
+        try {
+            Clustering current = source.join();
+            if (current == null)
+                return Response.error("Nessun cluster disponibile. Esegui prima l'opzione 1 o 3.");
+
+            ClusterSet clusters = current.miner().getC();
+            List<Object> payload = new ArrayList<>();
+            payload.add(clusters.size());
+
+            int index = 0;
+            for (Cluster cluster : clusters)
+                addSummary(payload, index++, cluster, current.data());
+
+            return Response.ok(payload.toArray());
+        } catch (Exception e) {
+            return Response.error("Errore durante la lettura dei cluster: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comando 5 — Restituisce una pagina degli esempi di un cluster.
+     * <p>
+     * Il payload è composto dalla dimensione del cluster e dal numero {@code m}
+     * di esempi restituiti, seguiti, per ciascuno, da indice nel dataset,
+     * valori e distanza dal centroide.
+     * </p>
+     *
+     * @param source       il clustering a cui appartiene il cluster
+     * @param clusterIndex la posizione del cluster (come nel riepilogo)
+     * @param offset       il numero di esempi da saltare
+     * @param limit        il numero massimo di esempi da restituire, al più {@value #MAX_PAGE_SIZE}
+     * @return la risposta da inviare al client
+     */
+    private Response clusterMembers(CompletableFuture<Clustering> source, int clusterIndex, int offset, int limit) {
+        try {
+            Clustering current = source.join();
+            if (current == null)
+                return Response.error("Nessun cluster disponibile. Esegui prima l'opzione 1 o 3.");
+
+            ClusterSet clusters = current.miner().getC();
+            Data data = current.data();
+            if (clusterIndex < 0 || clusterIndex >= clusters.size())
+                return Response.error("Cluster inesistente: " + clusterIndex);
+            if (offset < 0 || limit <= 0)
+                return Response.error("Parametri di paginazione non validi.");
+
+            Cluster cluster = clusters.get(clusterIndex);
+            int count = Math.max(0, Math.min(Math.min(limit, MAX_PAGE_SIZE), cluster.getSize() - offset));
+
+            List<Object> payload = new ArrayList<>();
+            payload.add(cluster.getSize());
+            payload.add(count);
+
+            for (int k = offset; k < offset + count; k++) {
+                int idx = cluster.getMember(k);
+                StringBuilder values = new StringBuilder();
+                for (int j = 0; j < data.getNumberOfAttributes(); j++) {
+                    if (j > 0)
+                        values.append(" ");
+                    values.append(data.getValue(idx, j));
+                }
+
+                payload.add(idx);
+                payload.add(values.toString());
+                payload.add(cluster.getDistance(k, data));
+            }
+
+            return Response.ok(payload.toArray());
+        } catch (Exception e) {
+            return Response.error("Errore durante la lettura dei cluster: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comando 6 — Restituisce il riepilogo dei {@code k} cluster più popolosi,
+     * dal più grande al più piccolo, nello stesso formato del comando 4.
+     *
+     * @param source il clustering da cui scegliere i cluster
+     * @param k      il numero di cluster richiesti
+     * @return la risposta da inviare al client
+     */
+    private Response topClusters(CompletableFuture<Clustering> source, int k) {
+        try {
+            Clustering current = source.join();
+            if (current == null)
+                return Response.error("Nessun cluster disponibile. Esegui prima l'opzione 1 o 3.");
+            if (k <= 0)
+                return Response.error("Il numero di cluster richiesti deve essere positivo.");
+
+            // L'ordinamento dei cluster è per dimensione crescente: i più popolosi sono in fondo.
+            ClusterSet clusters = current.miner().getC();
+            int first = Math.max(0, clusters.size() - k);
+            List<Cluster> largest = new ArrayList<>();
+
+            Iterator<Cluster> it = clusters.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Cluster cluster = it.next();
+                if (i >= first)
+                    largest.add(cluster);
+            }
+
+            List<Object> payload = new ArrayList<>();
+            payload.add(largest.size());
+            for (int i = largest.size() - 1; i >= 0; i--)
+                addSummary(payload, first + i, largest.get(i), current.data());
+
+            return Response.ok(payload.toArray());
+        } catch (Exception e) {
+            return Response.error("Errore durante la lettura dei cluster: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comando 7 — Imposta il livello di compressione delle risposte successive.
+     *
+     * @param level il livello richiesto; {@code 0} disattiva la compressione
+     * @return la risposta da inviare al client, con il livello effettivamente adottato
+     */
+    private Response setCompression(int level) {
+        if (compressor == null)
+            return Response.error("Compressione non supportata da questa connessione.");
+
+        int adopted = compressor.setLevel(level);
+        log("Compressione delle risposte impostata al livello " + adopted);
+        return Response.ok(adopted);
+    }
+
+    /**
+     * Comando 8 — Avvia un job di clustering asincrono sulla tabella caricata e ne
+     * restituisce subito l'identificativo, senza attendere la fine del calcolo.
+     *
+     * @param source il dataset su cui eseguire il clustering
+     * @param radius il raggio di clustering
+     * @return la risposta da inviare al client, con l'identificativo del job
+     */
+    private Response submitJob(CompletableFuture<Dataset> source, double radius) {
+        Dataset current = source.join();
+        if (current == null)
+            return Response.error("Dataset non caricato. Esegui prima l'opzione 0.");
+        if (radius <= 0)
+            return Response.error("Il raggio deve essere maggiore di zero.");
+
+        try {
+            ClusteringJob job = jobs.submit(clientId, current.tableName(), current.sharedKey(), radius, current.data());
+            log("Job " + job.getId() + " avviato su " + current.tableName() + " con raggio " + radius);
+            return Response.ok(job.getId());
+        } catch (ServerBusyException e) {
+            return Response.busy(e.getMessage());
+        }
+    }
+
+    /**
+     * Comando 9 — Restituisce stato e avanzamento di un job: stato, tuple già assegnate,
+     * tuple totali, cluster prodotti finora ed eventuale messaggio di errore.
+     *
+     * @param id l'identificativo del job
+     * @return la risposta da inviare al client
+     */
+    private Response jobStatus(long id) {
+        ClusteringJob job = jobs.get(clientId, id);
+        if (job == null)
+            return Response.error("Job inesistente: " + id);
+
+        QTMiner miner = job.getMiner();
+        return Response.ok(job.getState().name(), miner.getClusteredCount(),
+                           job.getData().getNumberOfExamples(), miner.getClusterCount(), job.getMessage());
+    }
+
+    /**
+     * Comando 10 — Restituisce una pagina dei cluster prodotti da un job terminato,
+     * nello stesso formato del comando 4 preceduto dal numero totale di cluster.
+     * <p>
+     * I risultati del job diventano il clustering corrente della sessione, così che
+     * i comandi 2, 4, 5 e 6 possano essere usati su di essi.
+     * </p>
+     *
+     * @param id                 l'identificativo del job
+     * @param offset             il numero di cluster da saltare
+     * @param limit              il numero massimo di cluster da restituire, al più {@value #MAX_PAGE_SIZE}
+     * @param previousDataset    il dataset corrente, che resta tale se la richiesta fallisce
+     * @param nextDataset        il dataset prodotto dalla richiesta
+     * @param previousClustering il clustering corrente, che resta tale se la richiesta fallisce
+     * @param nextClustering     il clustering prodotto dalla richiesta
+     * @return la risposta da inviare al client
+     */
+    private Response jobResult(long id, int offset, int limit,
+                               CompletableFuture<Dataset> previousDataset, CompletableFuture<Dataset> nextDataset,
+                               CompletableFuture<Clustering> previousClustering,
+                               CompletableFuture<Clustering> nextClustering) {
+        Dataset loaded = null;
+        Clustering restored = null;
+        try {
+            ClusteringJob job = jobs.get(clientId, id);
+            if (job == null)
+                return Response.error("Job inesistente: " + id);
+            if (job.getState() != ClusteringJob.State.DONE) {
+                String reason = job.getMessage().isEmpty() ? "" : " (" + job.getMessage() + ")";
+                return Response.error("Job " + id + " non completato: " + job.getState() + reason);
+            }
+            if (offset < 0 || limit <= 0)
+                return Response.error("Parametri di paginazione non validi.");
+
+            loaded = new Dataset(job.getTableName(), job.getData(), job.getSharedKey());
+            restored = new Clustering(job.getTableName(), job.getRadius(), job.getData(), job.getMiner());
+
+            ClusterSet clusters = restored.miner().getC();
+            int count = Math.max(0, Math.min(Math.min(limit, MAX_PAGE_SIZE), clusters.size() - offset));
+
+            List<Object> payload = new ArrayList<>();
+            payload.add(clusters.size());
+            payload.add(count);
+
+            Iterator<Cluster> it = clusters.iterator();
+            for (int i = 0; count > 0 && i < offset + count; i++) {
+                Cluster cluster = it.next();
+                if (i >= offset)
+                    addSummary(payload, i, cluster, restored.data());
+            }
+
+            return Response.ok(payload.toArray());
+        } catch (Exception e) {
+            // Se la lettura fallisce, la sessione conserva dataset e clustering precedenti.
+            loaded = null;
+            restored = null;
+            return Response.error("Errore durante la lettura dei risultati: " + e.getMessage());
+        } finally {
+            settle(nextDataset, loaded, previousDataset);
+            settle(nextClustering, restored, previousClustering);
+        }
+    }
+
+    /**
+     * Comando 11 — Richiede l'annullamento cooperativo di un job e ne restituisce lo stato.
+     *
+     * @param id l'identificativo del job
+     * @return la risposta da inviare al client
+     */
+    private Response cancelJob(long id) {
+        ClusteringJob job = jobs.get(clientId, id);
+        if (job == null)
+            return Response.error("Job inesistente: " + id);
+
+        job.cancel();
+        log("Annullamento richiesto per il job " + id);
+        return Response.ok(job.getState().name());
+    }
+
+    /**
+     * Comando 12 — Inizia l'invio di un dataset dal client, con lo schema dichiarato.
+     * <p>
+     * Un invio già in corso viene abbandonato. Il formato dello schema è descritto in {@link Ingestion}.
+     * </p>
+     *
+     * @param name     il nome del dataset
+     * @param schema   lo schema codificato
+     * @param previous l'invio corrente, che resta tale se lo schema non è valido
+     * @param next     l'invio prodotto dalla richiesta
+     * @return la risposta da inviare al client
+     */
+    private Response beginIngest(String name, byte[] schema, CompletableFuture<Ingestion> previous,
+                                 CompletableFuture<Ingestion> next) {
+        Ingestion started = null;
+        try {
+            started = Ingestion.begin(name, schema);
+            log("Ricezione del dataset " + name + " avviata");
+            return Response.ok();
+        } catch (Exception e) {
+            return Response.error("Impossibile iniziare l'invio: " + e.getMessage());
+        } finally {
+            settle(next, started, previous);
+        }
+    }
+
+    /**
+     * Comando 13 — Aggiunge un blocco di esempi al dataset in corso di invio
+     * e restituisce il numero di esempi ricevuti finora.
+     *
+     * @param batch    il blocco codificato
+     * @param previous l'invio corrente
+     * @param next     l'invio dopo la richiesta, lo stesso di {@code previous}
+     * @return la risposta da inviare al client
+     */
+    private Response ingestBatch(byte[] batch, CompletableFuture<Ingestion> previous,
+                                 CompletableFuture<Ingestion> next) {
+        Ingestion current = previous.join();
+        try {
+            if (current == null)
+                return Response.error("Nessun invio in corso. Esegui prima l'opzione 12.");
+
+            current.append(batch);
+            return Response.ok(current.getReceived());
+        } catch (Exception e) {
+            return Response.error("Blocco non valido: " + e.getMessage());
+        } finally {
+            next.complete(current);
+        }
+    }
+
+    /**
+     * Comando 14 — Conclude l'invio del dataset, che diventa il dataset caricato
+     * della sessione, e restituisce il numero di esempi distinti ricevuti.
+     * <p>
+     * L'invio termina anche se il dataset non può essere costruito; in tal caso
+     * il dataset caricato resta invariato.
+     * </p>
+     *
+     * @param previousIngestion l'invio corrente
+     * @param nextIngestion     l'invio dopo la richiesta, sempre nessuno
+     * @param previousDataset   il dataset corrente, che resta tale se la richiesta fallisce
+     * @param nextDataset       il dataset prodotto dalla richiesta
+     * @return la risposta da inviare al client
+     */
+    private Response endIngest(CompletableFuture<Ingestion> previousIngestion, CompletableFuture<Ingestion> nextIngestion,
+                               CompletableFuture<Dataset> previousDataset, CompletableFuture<Dataset> nextDataset) {
+        Dataset loaded = null;
+        try {
+            Ingestion current = previousIngestion.join();
+            if (current == null)
+                return Response.error("Nessun invio in corso. Esegui prima l'opzione 12.");
+
+            Data data = current.finish();
+            // Un dataset ricevuto non è condiviso: non va unificato con tabelle omonime o altri invii.
+            loaded = new Dataset(current.getName(), data, current.getName() + "#" + INGESTED.incrementAndGet());
+            log("Dataset " + current.getName() + " ricevuto: " + data.getNumberOfExamples() + " esempi distinti su "
+                    + current.getReceived());
+            return Response.ok(data.getNumberOfExamples());
+        } catch (Exception e) {
+            return Response.error("Impossibile costruire il dataset: " + e.getMessage());
+        } finally {
+            nextIngestion.complete(null);
+            settle(nextDataset, loaded, previousDataset);
+        }
+    }
+
+    /**
+     * Comando 15 — Esegue il clustering QT del dataset caricato con più raggi e
+     * restituisce, per ciascuno: raggio, numero di cluster, dimensione del cluster
+     * più grande e distanza media delle tuple dal proprio centroide.
+     * <p>
+     * Le distanze vengono calcolate una sola volta per tutti i raggi (vedi
+     * {@link mining.MultiRadiusMiner}). Il clustering corrente della sessione non
+     * cambia: il comando serve a confrontare i raggi prima di sceglierne uno.
+     * </p>
+     *
+     * @param radii  i raggi, separati da spazi o virgole
+     * @param source il dataset su cui eseguire il clustering
+     * @return la risposta da inviare al client
+     */
+    private Response computeRadii(String radii, CompletableFuture<Dataset> source) {
+        Dataset current = source.join();
+        if (current == null)
+            return Response.error("Dataset non caricato. Esegui prima l'opzione 0.");
+
+        String[] tokens = radii.trim().split("[\\s,]+");
+        if (tokens.length == 0 || tokens[0].isEmpty())
+            return Response.error("Nessun raggio indicato.");
+        if (tokens.length > MAX_RADII)
+            return Response.error("Sono ammessi al massimo " + MAX_RADII + " raggi.");
+
+        double[] values = new double[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            try {
+                values[i] = Double.parseDouble(tokens[i]);
+            } catch (NumberFormatException e) {
+                return Response.error("Raggio non valido: " + tokens[i]);
+            }
+            if (!(values[i] > 0) || Double.isInfinite(values[i]))
+                return Response.error("Il raggio deve essere maggiore di zero: " + tokens[i]);
+        }
+
+        log("Computazione cluster con " + values.length + " raggi su " + current.tableName() + "...");
+        try {
+            ClusterSet[] results = coalescer.computeRadii(clientId, values, current.data());
+
+            List<Object> payload = new ArrayList<>();
+            payload.add(values.length);
+            for (int r = 0; r < values.length; r++) {
+                int largest = 0;
+                double distanceSum = 0;
+                for (Cluster cluster : results[r]) {
+                    largest = Math.max(largest, cluster.getSize());
+                    distanceSum += cluster.getAverageDistance(current.data()) * cluster.getSize();
+                }
+                payload.add(values[r]);
+                payload.add(results[r].size());
+                payload.add(largest);
+                payload.add(distanceSum / current.data().getNumberOfExamples());
+            }
+            return Response.ok(payload.toArray());
+        } catch (ServerBusyException e) {
+            return Response.busy(e.getMessage());
+        } catch (Exception e) {
+            return Response.error("Errore durante la computazione: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comando 16 — Stima, su campioni del dataset caricato, l'effetto di {@code steps}
+     * raggi presi dalla distribuzione delle distanze e suggerisce quale usare.
+     * <p>
+     * La risposta contiene il raggio suggerito ({@code NaN} se nessuno) e il numero
+     * di raggi valutati, poi per ciascuno: raggio, numero di cluster e dimensione
+     * del cluster più grande, ciascuno con stima, estremo inferiore ed estremo
+     * superiore dell'intervallo di confidenza. Il costo non dipende dalla
+     * dimensione del dataset (vedi {@link RadiusAdvisor}).
+     * </p>
+     *
+     * @param steps  il numero di raggi da valutare
+     * @param source il dataset
+     * @return la risposta da inviare al client
+     */
+    private Response suggestRadius(int steps, CompletableFuture<Dataset> source) {
+        Dataset current = source.join();
+        if (current == null)
+            return Response.error("Dataset non caricato. Esegui prima l'opzione 0.");
+        if (steps <= 0 || steps > MAX_RADII)
+            return Response.error("Il numero di raggi deve essere compreso tra 1 e " + MAX_RADII + ".");
+
+        log("Stima del raggio su " + current.tableName() + "...");
+        try {
+            RadiusAdvisor.Advice advice = coalescer.suggestRadius(clientId, steps, current.data());
+
+            List<Object> payload = new ArrayList<>();
+            payload.add(advice.suggestedRadius());
+            payload.add(advice.estimates().size());
+            for (RadiusAdvisor.Estimate estimate : advice.estimates()) {
+                payload.add(estimate.radius());
+                payload.add(estimate.clusters());
+                payload.add(estimate.clustersLow());
+                payload.add(estimate.clustersHigh());
+                payload.add(estimate.largest());
+                payload.add(estimate.largestLow());
+                payload.add(estimate.largestHigh());
+            }
+            return Response.ok(payload.toArray());
+        } catch (ServerBusyException e) {
+            return Response.busy(e.getMessage());
+        } catch (Exception e) {
+            return Response.error("Errore durante la stima: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aggiunge al payload il riepilogo di un cluster: indice, valori del centroide,
+     * dimensione e distanza media, minima e massima dal centroide.
+     *
+     * @param payload il payload in costruzione
+     * @param index   la posizione del cluster
+     * @param cluster il cluster
+     * @param data    il dataset a cui appartengono gli esempi del cluster
+     */
+    private void addSummary(List<Object> payload, int index, Cluster cluster, Data data) {
+        payload.add(index);
+        payload.add(cluster.getCentroidValues());
+        payload.add(cluster.getSize());
+        payload.add(cluster.getAverageDistance(data));
+        payload.add(cluster.getMinDistance(data));
+        payload.add(cluster.getMaxDistance(data));
+    }
+
+    /**
+     * Restituisce il nome del file in cui viene salvato un clustering.
+     *
+     * @param tableName il nome della tabella
+     * @param radius    il raggio di clustering
+     * @return il nome del file
+     */
+    private static String fileName(String tableName, double radius) {
+        return tableName + "_" + radius + ".dmp";
+    }
+
+    /**
+     * Completa lo stato prodotto da una richiesta: con il valore indicato se la
+     * richiesta ha avuto successo, altrimenti con lo stato che la precedeva.
+     *
+     * @param next     lo stato prodotto dalla richiesta
+     * @param value    il nuovo valore, oppure {@code null} se la richiesta è fallita
+     * @param previous lo stato precedente alla richiesta
+     * @param <T>      il tipo dello stato
+     */
+    private static <T> void settle(CompletableFuture<T> next, T value, CompletableFuture<T> previous) {
+        if (value != null)
+            next.complete(value);
+        else
+            previous.thenAccept(next::complete);
+    }
+
+    /**
+     * Stampa un log informativo lato server.
+     *
+     * @param msg il messaggio da mostrare su stdout
+     */
+    private void log(String msg) {
+        System.out.println("[SERVER] " + msg);
+    }
+
+    /**
+     * Dataset caricato nella sessione.
+     *
+     * @param tableName il nome della tabella da cui proviene
+     * @param data      il dataset
+     * @param sharedKey la chiave con cui le computazioni sul dataset vengono unificate tra client
+     */
+    private record Dataset(String tableName, Data data, String sharedKey) {
+
+        /**
+         * Costruisce un dataset letto da una tabella, unificato con quelli della stessa tabella.
+         *
+         * @param tableName il nome della tabella da cui proviene
+         * @param data      il dataset
+         */
+        Dataset(String tableName, Data data) {
+            this(tableName, data, tableName);
+        }
+    }
+
+    /**
+     * Clustering corrente della sessione.
+     *
+     * @param tableName il nome della tabella da cui proviene il dataset
+     * @param radius    il raggio di clustering
+     * @param data      il dataset a cui appartengono gli esempi dei cluster
+     * @param miner     il miner che contiene i cluster
+     */
+    private record Clustering(String tableName, double radius, Data data, QTMiner miner) { }
+}
@@ -0,0 +1,243 @@
+package server;
+
+import data.Data;
+import exceptions.ComputationCancelledException;
+import mining.QTMiner;
+
+/**
+ * Job di clustering asincrono, eseguito dal {@link ComputeScheduler}
+ * indipendentemente dalla connessione del client che lo ha avviato.
+ * <p>
+ * Il client ottiene l'identificativo del job al momento della sottomissione
+ * e può in seguito, anche da una nuova connessione, interrogarne lo stato
+ * e l'avanzamento, recuperarne i risultati o annullarlo.
+ * </p>
+ *
+ * @see JobRegistry
+ */
+public class ClusteringJob implements Runnable {
+
+    /** Stati di un job. */
+    public enum State {
+        /** In attesa di un thread di calcolo. */
+        QUEUED,
+        /** In esecuzione. */
+        RUNNING,
+        /** Terminato con successo. */
+        DONE,
+        /** Terminato con errore. */
+        FAILED,
+        /** Annullato dal client. */
+        CANCELLED
+    }
+
+    /** Identificativo del job. */
+    private final long id;
+
+    /** Client che ha avviato il job. */
+    private final String clientId;
+
+    /** Nome della tabella da cui proviene il dataset. */
+    private final String tableName;
+
+    /** Chiave con cui le computazioni sul dataset vengono unificate tra client. */
+    private final String sharedKey;
+
+    /** Raggio di clustering. */
+    private final double radius;
+
+    /** Dataset su cui eseguire il clustering. */
+    private final Data data;
+
+    /** Miner che esegue il clustering. */
+    private final QTMiner miner;
+
+    /** Stato corrente del job. */
+    private volatile State state = State.QUEUED;
+
+    /** Messaggio di errore, se il job è terminato con errore. */
+    private volatile String message = "";
+
+    /** Istante (in millisecondi) dell'ultimo accesso al job o della sua terminazione. */
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * Costruisce un nuovo job.
+     *
+     * @param id        l'identificativo del job
+     * @param clientId  il client che avvia il job
+     * @param tableName il nome della tabella da cui proviene il dataset
+     * @param sharedKey la chiave con cui le computazioni sul dataset vengono unificate tra client
+     * @param radius    il raggio di clustering
+     * @param data      il dataset su cui eseguire il clustering
+     */
+    ClusteringJob(long id, String clientId, String tableName, String sharedKey, double radius, Data data) {
+        this.id = id;
+        this.clientId = clientId;
+        this.tableName = tableName;
+        this.sharedKey = sharedKey;
+        this.radius = radius;
+        this.data = data;
+        this.miner = new QTMiner(radius);
+    }
+
+    /**
+     * Attiva i checkpoint periodici del clustering, così che un job interrotto da
+     * un riavvio del server riprenda dall'ultimo checkpoint quando viene avviato di nuovo.
+     *
+     * @param filename il file del checkpoint
+     * @param interval l'intervallo minimo (in millisecondi) tra due checkpoint
+     * @see QTMiner#setCheckpoint(String, long)
+     */
+    void setCheckpoint(String filename, long interval) {
+        miner.setCheckpoint(filename, interval);
+    }
+
+    /**
+     * Esegue il clustering e ne registra l'esito.
+     */
+    @Override
+    public void run() {
+        if (miner.isCancelled()) {
+            finish(State.CANCELLED, "");
+            return;
+        }
+
+        state = State.RUNNING;
+        try {
+            miner.compute(data);
+            finish(State.DONE, "");
+        } catch (ComputationCancelledException e) {
+            finish(State.CANCELLED, "");
+        } catch (Exception e) {
+            finish(State.FAILED, (e.getMessage() != null) ? e.getMessage() : e.toString());
+        }
+    }
+
+    /**
+     * Richiede l'annullamento cooperativo del job; non ha effetto se il job è già terminato.
+     */
+    public void cancel() {
+        miner.cancel();
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Registra la terminazione del job.
+     *
+     * @param state   lo stato finale
+     * @param message l'eventuale messaggio di errore
+     */
+    private void finish(State state, String message) {
+        this.message = message;
+        this.lastAccess = System.currentTimeMillis();
+        this.state = state;
+    }
+
+    /**
+     * Indica se il job è terminato, con qualunque esito.
+     *
+     * @return {@code true} se il job è terminato
+     */
+    public boolean isFinished() {
+        State current = state;
+        return current == State.DONE || current == State.FAILED || current == State.CANCELLED;
+    }
+
+    /**
+     * Aggiorna l'istante dell'ultimo accesso, rinviando la rimozione del job dal registro.
+     */
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * Restituisce l'identificativo del job.
+     *
+     * @return l'identificativo
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Restituisce il client che ha avviato il job.
+     *
+     * @return l'identificativo del client
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Restituisce il nome della tabella da cui proviene il dataset.
+     *
+     * @return il nome della tabella
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Restituisce la chiave con cui le computazioni sul dataset vengono unificate tra client.
+     *
+     * @return la chiave del dataset
+     */
+    public String getSharedKey() {
+        return sharedKey;
+    }
+
+    /**
+     * Restituisce il raggio di clustering.
+     *
+     * @return il raggio
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Restituisce il dataset del job.
+     *
+     * @return il dataset
+     */
+    public Data getData() {
+        return data;
+    }
+
+    /**
+     * Restituisce il miner del job, che contiene i cluster calcolati a job terminato.
+     *
+     * @return il miner
+     */
+    public QTMiner getMiner() {
+        return miner;
+    }
+
+    /**
+     * Restituisce lo stato corrente del job.
+     *
+     * @return lo stato
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Restituisce il messaggio di errore del job.
+     *
+     * @return il messaggio, vuoto se il job non è terminato con errore
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Restituisce l'istante dell'ultimo accesso al job o della sua terminazione.
+     *
+     * @return l'istante in millisecondi
+     */
+    long getLastAccess() {
+        return lastAccess;
+    }
+}
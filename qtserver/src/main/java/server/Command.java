@@ -0,0 +1,128 @@
+package server;
+
+/**
+ * Enumerazione dei comandi che un client può inviare al server.
+ * <p>
+ * Ogni comando è identificato dal codice numerico usato nel protocollo
+ * e dalla sequenza dei tipi dei parametri che il client invia subito dopo
+ * il codice. La stessa descrizione viene usata sia dal protocollo basato
+ * su serializzazione Java ({@link ServerOneClient}) sia dal protocollo
+ * a frame ({@link FrameCodec}).
+ * </p>
+ *
+ * @see Request
+ * @see ClientSession
+ */
+public enum Command {
+
+    /** Comando 0 — Carica tabella dal DB <i>(in: String tableName)</i>. */
+    LOAD_TABLE(0, String.class),
+
+    /** Comando 1 — Computa cluster dal DB <i>(in: Double radius)</i>. */
+    COMPUTE_FROM_DB(1, Double.class),
+
+    /** Comando 2 — Salva su file il cluster generato. */
+    SAVE_TO_FILE(2),
+
+    /** Comando 3 — Carica cluster da file <i>(in: String name, Double radius)</i>. */
+    COMPUTE_FROM_FILE(3, String.class, Double.class),
+
+    /** Comando 4 — Riepilogo dei cluster correnti (centroide, dimensione, distanza media). */
+    CLUSTER_SUMMARY(4),
+
+    /** Comando 5 — Pagina degli esempi di un cluster <i>(in: Integer cluster, Integer offset, Integer limit)</i>. */
+    CLUSTER_MEMBERS(5, Integer.class, Integer.class, Integer.class),
+
+    /** Comando 6 — Riepilogo dei cluster più popolosi <i>(in: Integer k)</i>. */
+    TOP_CLUSTERS(6, Integer.class),
+
+    /** Comando 7 — Imposta la compressione delle risposte del protocollo binario <i>(in: Integer level)</i>. */
+    SET_COMPRESSION(7, Integer.class),
+
+    /** Comando 8 — Avvia un job di clustering asincrono sulla tabella caricata <i>(in: Double radius)</i>. */
+    SUBMIT_JOB(8, Double.class),
+
+    /** Comando 9 — Stato e avanzamento di un job <i>(in: Long jobId)</i>. */
+    JOB_STATUS(9, Long.class),
+
+    /** Comando 10 — Pagina dei risultati di un job <i>(in: Long jobId, Integer offset, Integer limit)</i>. */
+    JOB_RESULT(10, Long.class, Integer.class, Integer.class),
+
+    /** Comando 11 — Annulla un job <i>(in: Long jobId)</i>. */
+    CANCEL_JOB(11, Long.class),
+
+    /** Comando 12 — Inizia l'invio di un dataset dal client <i>(in: String name, byte[] schema)</i>. */
+    BEGIN_INGEST(12, String.class, byte[].class),
+
+    /** Comando 13 — Invia un blocco di esempi del dataset in corso di invio <i>(in: byte[] batch)</i>. */
+    INGEST_BATCH(13, byte[].class),
+
+    /** Comando 14 — Conclude l'invio del dataset, che diventa quello caricato nella sessione. */
+    END_INGEST(14),
+
+    /** Comando 15 — Riepilogo del clustering con più raggi <i>(in: String radii)</i>. */
+    COMPUTE_RADII(15, String.class),
+
+    /** Comando 16 — Stima l'effetto di più raggi su campioni e suggerisce quale usare <i>(in: Integer steps)</i>. */
+    SUGGEST_RADIUS(16, Integer.class);
+
+    /** Codice numerico del comando nel protocollo. */
+    private final int code;
+
+    /** Tipi dei parametri del comando, nell'ordine in cui vengono inviati. */
+    private final Class<?>[] argumentTypes;
+
+    /**
+     * Costruisce un comando con il codice e i tipi dei parametri specificati.
+     *
+     * @param code          il codice numerico del comando
+     * @param argumentTypes i tipi dei parametri
+     */
+    Command(int code, Class<?>... argumentTypes) {
+        this.code = code;
+        this.argumentTypes = argumentTypes;
+    }
+
+    /**
+     * Restituisce il codice numerico del comando.
+     *
+     * @return il codice del comando
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Restituisce il numero di parametri del comando.
+     *
+     * @return il numero di parametri
+     */
+    public int getArgumentCount() {
+        return argumentTypes.length;
+    }
+
+    /**
+     * Restituisce il tipo del parametro nella posizione indicata.
+     *
+     * @param i la posizione del parametro
+     * @return il tipo del parametro
+     * @throws ArrayIndexOutOfBoundsException se {@code i} non è una posizione valida
+     */
+    public Class<?> getArgumentType(int i) {
+        return argumentTypes[i];
+    }
+
+    /**
+     * Restituisce il comando associato al codice numerico indicato.
+     *
+     * @param code il codice numerico
+     * @return il comando corrispondente, oppure {@code null} se il codice non è riconosciuto
+     */
+    public static Command fromCode(int code) {
+        for (Command c : values()) {
+            if (c.code == code)
+                return c;
+        }
+        return null;
+    }
+}
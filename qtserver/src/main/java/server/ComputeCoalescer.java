@@ -0,0 +1,374 @@
+package server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import data.Data;
+import exceptions.BudgetExhaustedException;
+import exceptions.ClusteringRadiusException;
+import exceptions.ComputationCancelledException;
+import exceptions.ServerBusyException;
+import mining.ClusterSet;
+import mining.MultiRadiusMiner;
+import mining.QTMiner;
+import mining.RadiusAdvisor;
+
+/**
+ * Livello di coalescenza ("single-flight") posto davanti a {@link QTMiner#compute(Data)}.
+ * <p>
+ * Quando più client richiedono contemporaneamente il clustering della stessa
+ * tabella con lo stesso raggio, viene eseguita un'unica computazione condivisa:
+ * le richieste successive alla prima si agganciano a quella in corso e ricevono
+ * tutte lo stesso {@link mining.ClusterSet}.
+ * </p>
+ * <p>
+ * La computazione condivisa viene sottomessa al {@link ComputeScheduler} ed
+ * eseguita su un thread di calcolo, indipendente dai thread dei client in attesa.
+ * L'interruzione di un singolo client in attesa lo sgancia dalla computazione
+ * senza terminarla; solo quando l'ultimo client in attesa si sgancia,
+ * la computazione viene annullata.
+ * </p>
+ * <p>
+ * Se è configurato un budget di tempo, ogni computazione che lo supera si ferma
+ * e restituisce un set di cluster parziale (vedi {@link QTMiner#setTimeBudget(long)}):
+ * un raggio troppo piccolo su una tabella molto grande non può così occupare
+ * indefinitamente un thread di calcolo.
+ * </p>
+ * <p>
+ * Il clustering con più raggi ({@link #computeRadii(String, double[], Data)})
+ * e la stima del raggio ({@link #suggestRadius(String, int, Data)}) passano
+ * dallo stesso scheduler ma non vengono unificati tra client: richieste identiche
+ * sono rare e ciascuna restituisce solo un riepilogo.
+ * </p>
+ *
+ * @see QTMiner
+ * @see ServerOneClient
+ */
+public class ComputeCoalescer {
+
+    /** Computazioni attualmente in corso, indicizzate per tabella e raggio. */
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    /** Scheduler su cui vengono eseguite le computazioni condivise. */
+    private final ComputeScheduler scheduler;
+
+    /** Budget di tempo (in millisecondi) di ogni computazione; {@code 0} se illimitato. */
+    private final long timeBudget;
+
+    /**
+     * Costruisce un {@code ComputeCoalescer} che esegue le computazioni
+     * tramite lo scheduler specificato, senza limiti di tempo.
+     *
+     * @param scheduler lo scheduler dei job di calcolo
+     */
+    public ComputeCoalescer(ComputeScheduler scheduler) {
+        this(scheduler, 0);
+    }
+
+    /**
+     * Costruisce un {@code ComputeCoalescer} che esegue le computazioni
+     * tramite lo scheduler specificato, con il budget di tempo indicato.
+     *
+     * @param scheduler  lo scheduler dei job di calcolo
+     * @param timeBudget il budget di tempo (in millisecondi) di ogni computazione; {@code 0} se illimitato
+     * @throws IllegalArgumentException se {@code timeBudget < 0}
+     */
+    public ComputeCoalescer(ComputeScheduler scheduler, long timeBudget) {
+        if (timeBudget < 0)
+            throw new IllegalArgumentException("Il budget di tempo non può essere negativo.");
+
+        this.scheduler = scheduler;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Esegue il clustering QT della tabella indicata con il raggio specificato,
+     * riutilizzando un'eventuale computazione identica già in corso.
+     * <p>
+     * Il dataset fornito viene usato solo se la richiesta avvia una nuova
+     * computazione; in caso contrario il thread chiamante attende il risultato
+     * di quella già in corso, che può essere stata avviata su un'altra lettura
+     * della stessa tabella. Per questo il risultato comprende il dataset da cui
+     * i cluster sono stati effettivamente calcolati, a cui si riferiscono gli
+     * indici dei loro esempi.
+     * </p>
+     *
+     * @param clientId  l'identificativo del client, usato per la ripartizione equa del calcolo
+     * @param tableName il nome della tabella da cui proviene il dataset
+     * @param radius    il raggio di clustering
+     * @param data      il dataset su cui eseguire il clustering
+     * @return il miner che contiene il set di cluster calcolato, insieme al dataset usato
+     * @throws ClusteringRadiusException     se l'algoritmo produce un unico cluster
+     * @throws ComputationCancelledException se la computazione condivisa è stata annullata
+     * @throws ServerBusyException           se lo scheduler non può accettare una nuova computazione
+     * @throws InterruptedException          se il thread chiamante viene interrotto durante l'attesa
+     */
+    public Result compute(String clientId, String tableName, double radius, Data data)
+            throws ClusteringRadiusException, ComputationCancelledException,
+                   ServerBusyException, InterruptedException {
+
+        String key = tableName + "_" + radius;
+
+        while (true) {
+            Flight flight = inFlight.computeIfAbsent(key, k -> new Flight(k, clientId, newMiner(radius), data));
+
+            if (flight.attach())
+                return flight.await();
+
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Esegue il clustering QT del dataset con ciascuno dei raggi indicati,
+     * tramite un unico {@link MultiRadiusMiner} eseguito sullo scheduler.
+     * <p>
+     * Il miner usa un solo thread, come una computazione con un unico raggio:
+     * il risparmio viene dal calcolo delle distanze condiviso tra i raggi.
+     * Se il thread chiamante viene interrotto, la computazione viene annullata.
+     * </p>
+     *
+     * @param clientId l'identificativo del client, usato per la ripartizione equa del calcolo
+     * @param radii    i raggi di clustering
+     * @param data     il dataset su cui eseguire il clustering
+     * @return un set di cluster per ogni raggio, nell'ordine dei raggi
+     * @throws BudgetExhaustedException      se le coppie entro il raggio massimo superano il budget di vicini
+     * @throws ComputationCancelledException se la computazione è stata annullata
+     * @throws ServerBusyException           se lo scheduler non può accettare una nuova computazione
+     * @throws InterruptedException          se il thread chiamante viene interrotto durante l'attesa
+     */
+    public ClusterSet[] computeRadii(String clientId, double[] radii, Data data)
+            throws BudgetExhaustedException, ComputationCancelledException,
+                   ServerBusyException, InterruptedException {
+
+        MultiRadiusMiner miner = new MultiRadiusMiner(radii, 1);
+        return runScheduled(clientId, miner.estimateMemory(data), () -> miner.compute(data), miner::cancel);
+    }
+
+    /**
+     * Stima l'effetto di {@code steps} raggi sul dataset e suggerisce quale usare,
+     * tramite un {@link RadiusAdvisor} eseguito sullo scheduler.
+     * Se il thread chiamante viene interrotto, la stima viene annullata.
+     *
+     * @param clientId l'identificativo del client, usato per la ripartizione equa del calcolo
+     * @param steps    il numero di raggi da valutare
+     * @param data     il dataset
+     * @return le stime e il raggio suggerito
+     * @throws BudgetExhaustedException      se un campione supera il budget di vicini
+     * @throws ComputationCancelledException se la stima è stata annullata
+     * @throws ServerBusyException           se lo scheduler non può accettare una nuova computazione
+     * @throws InterruptedException          se il thread chiamante viene interrotto durante l'attesa
+     */
+    public RadiusAdvisor.Advice suggestRadius(String clientId, int steps, Data data)
+            throws BudgetExhaustedException, ComputationCancelledException,
+                   ServerBusyException, InterruptedException {
+
+        RadiusAdvisor advisor = new RadiusAdvisor();
+        return runScheduled(clientId, advisor.estimateMemory(), () -> advisor.advise(data, steps), advisor::cancel);
+    }
+
+    /**
+     * Esegue un'operazione sullo scheduler, non unificata con altre, e ne attende il risultato.
+     *
+     * @param clientId        l'identificativo del client, usato per la ripartizione equa del calcolo
+     * @param estimatedMemory la memoria stimata (in byte) necessaria all'operazione
+     * @param task            l'operazione
+     * @param cancel          l'annullamento dell'operazione, invocato se il thread chiamante viene interrotto
+     * @param <T>             il tipo del risultato
+     * @return il risultato dell'operazione
+     * @throws BudgetExhaustedException      se l'operazione esaurisce il proprio budget
+     * @throws ComputationCancelledException se l'operazione è stata annullata
+     * @throws ServerBusyException           se lo scheduler non può accettare l'operazione
+     * @throws InterruptedException          se il thread chiamante viene interrotto durante l'attesa
+     */
+    private <T> T runScheduled(String clientId, long estimatedMemory, Callable<T> task, Runnable cancel)
+            throws BudgetExhaustedException, ComputationCancelledException,
+                   ServerBusyException, InterruptedException {
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        scheduler.submit(clientId, estimatedMemory, () -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            cancel.run();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BudgetExhaustedException)
+                throw (BudgetExhaustedException) cause;
+            if (cause instanceof ComputationCancelledException)
+                throw (ComputationCancelledException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Crea il miner di una nuova computazione, con il budget di tempo configurato.
+     *
+     * @param radius il raggio di clustering
+     * @return il miner
+     */
+    private QTMiner newMiner(double radius) {
+        QTMiner miner = new QTMiner(radius);
+        miner.setTimeBudget(timeBudget);
+        return miner;
+    }
+
+    /**
+     * Restituisce il numero di computazioni condivise attualmente in corso.
+     *
+     * @return il numero di computazioni in corso
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Risultato di una computazione condivisa.
+     *
+     * @param miner il miner che contiene il set di cluster calcolato
+     * @param data  il dataset da cui i cluster sono stati calcolati
+     */
+    public record Result(QTMiner miner, Data data) { }
+
+    /**
+     * Computazione condivisa tra tutti i client che hanno richiesto
+     * la stessa tabella con lo stesso raggio.
+     */
+    private class Flight implements Runnable {
+
+        /** Chiave della computazione nella mappa {@link #inFlight}. */
+        private final String key;
+
+        /** Client che ha avviato la computazione. */
+        private final String clientId;
+
+        /** Miner che esegue effettivamente il clustering. */
+        private final QTMiner miner;
+
+        /** Dataset su cui eseguire il clustering. */
+        private final Data data;
+
+        /** Risultato della computazione, condiviso tra tutti i client in attesa. */
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+
+        /** Numero di client attualmente in attesa del risultato. */
+        private int waiters;
+
+        /** Indica se la computazione è già stata sottomessa allo scheduler. */
+        private boolean started;
+
+        /** Indica se la computazione è stata abbandonata da tutti i client. */
+        private boolean abandoned;
+
+        /**
+         * Costruisce una nuova computazione condivisa.
+         *
+         * @param key      la chiave della computazione
+         * @param clientId il client che avvia la computazione
+         * @param miner    il miner da utilizzare
+         * @param data     il dataset su cui eseguire il clustering
+         */
+        Flight(String key, String clientId, QTMiner miner, Data data) {
+            this.key = key;
+            this.clientId = clientId;
+            this.miner = miner;
+            this.data = data;
+        }
+
+        /**
+         * Aggancia un nuovo client in attesa, avviando la computazione se necessario.
+         *
+         * @return {@code true} se l'aggancio è riuscito, {@code false} se la
+         *         computazione è già stata abbandonata
+         * @throws ServerBusyException se lo scheduler rifiuta l'avvio della computazione
+         */
+        synchronized boolean attach() throws ServerBusyException {
+            if (abandoned)
+                return false;
+
+            if (!started) {
+                try {
+                    scheduler.submit(clientId, QTMiner.estimateMemory(data), this);
+                } catch (ServerBusyException e) {
+                    abandoned = true;
+                    inFlight.remove(key, this);
+                    throw e;
+                }
+                started = true;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * Sgancia un client in attesa; se era l'ultimo e la computazione
+         * non è terminata, la annulla.
+         */
+        synchronized void detach() {
+            waiters--;
+            if (waiters == 0 && !result.isDone()) {
+                abandoned = true;
+                miner.cancel();
+                inFlight.remove(key, this);
+            }
+        }
+
+        /**
+         * Attende il risultato della computazione condivisa.
+         *
+         * @return il miner che contiene il set di cluster calcolato, insieme al dataset usato
+         * @throws ClusteringRadiusException     se l'algoritmo produce un unico cluster
+         * @throws ComputationCancelledException se la computazione è stata annullata
+         * @throws InterruptedException          se il thread chiamante viene interrotto
+         */
+        Result await()
+                throws ClusteringRadiusException, ComputationCancelledException, InterruptedException {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                detach();
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ClusteringRadiusException)
+                    throw (ClusteringRadiusException) cause;
+                if (cause instanceof ComputationCancelledException)
+                    throw (ComputationCancelledException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        /**
+         * Esegue il clustering e pubblica il risultato a tutti i client in attesa.
+         */
+        @Override
+        public void run() {
+            try {
+                miner.compute(data);
+                result.complete(new Result(miner, data));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                inFlight.remove(key, this);
+            }
+        }
+    }
+}
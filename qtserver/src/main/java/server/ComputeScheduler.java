@@ -0,0 +1,208 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import exceptions.ServerBusyException;
+
+/**
+ * Scheduler dei job di calcolo (clustering QT) con controllo di ammissione.
+ * <p>
+ * I job vengono eseguiti da un insieme fisso di thread di calcolo, dimensionato
+ * di default sul numero di core disponibili, separato dai thread che gestiscono
+ * l'I/O con i client. I job in attesa sono mantenuti in code distinte per client
+ * e serviti a turno (round-robin), così che un singolo client non possa
+ * monopolizzare i thread di calcolo.
+ * </p>
+ * <p>
+ * Un nuovo job viene rifiutato con {@link ServerBusyException} se:
+ * </p>
+ * <ul>
+ *     <li>il numero di job in coda ha raggiunto la capacità massima</li>
+ *     <li>la memoria stimata dei job ammessi supererebbe il budget configurato</li>
+ * </ul>
+ * <p>
+ * Un job la cui stima supera da sola l'intero budget viene ammesso solo quando
+ * nessun altro job è in coda o in esecuzione.
+ * </p>
+ *
+ * @see ComputeCoalescer
+ */
+public class ComputeScheduler {
+
+    /** Numero massimo di job in attesa di esecuzione. */
+    private final int queueCapacity;
+
+    /** Budget di memoria (in byte) condiviso dai job ammessi. */
+    private final long memoryBudget;
+
+    /** Code dei job in attesa, una per client. */
+    private final Map<String, ArrayDeque<Job>> queues = new HashMap<>();
+
+    /** Client con almeno un job in attesa, nell'ordine in cui verranno serviti. */
+    private final ArrayDeque<String> turns = new ArrayDeque<>();
+
+    /** Thread di calcolo. */
+    private final Thread[] workers;
+
+    /** Numero di job attualmente in attesa. */
+    private int queued;
+
+    /** Memoria stimata (in byte) riservata dai job in coda o in esecuzione. */
+    private long reservedMemory;
+
+    /**
+     * Costruisce uno scheduler con un thread di calcolo per core,
+     * una coda di quattro job per core e un budget di memoria pari
+     * alla metà dell'heap massimo della JVM.
+     */
+    public ComputeScheduler() {
+        this(Runtime.getRuntime().availableProcessors(),
+             4 * Runtime.getRuntime().availableProcessors(),
+             Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Costruisce uno scheduler con i parametri specificati e avvia i thread di calcolo.
+     *
+     * @param workers       il numero di thread di calcolo; deve essere positivo
+     * @param queueCapacity il numero massimo di job in attesa; deve essere positivo
+     * @param memoryBudget  il budget di memoria (in byte); deve essere positivo
+     * @throws IllegalArgumentException se uno dei parametri non è positivo
+     */
+    public ComputeScheduler(int workers, int queueCapacity, long memoryBudget) {
+        if (workers <= 0 || queueCapacity <= 0 || memoryBudget <= 0)
+            throw new IllegalArgumentException("I parametri dello scheduler devono essere positivi.");
+
+        this.queueCapacity = queueCapacity;
+        this.memoryBudget = memoryBudget;
+        this.workers = new Thread[workers];
+
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Thread(this::workLoop, "qt-compute-" + (i + 1));
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Sottomette un job di calcolo per conto del client indicato.
+     *
+     * @param clientId        l'identificativo del client che richiede il job
+     * @param estimatedMemory la memoria stimata (in byte) necessaria al job
+     * @param task            il job da eseguire
+     * @throws ServerBusyException se la coda è piena o il budget di memoria è esaurito
+     */
+    public synchronized void submit(String clientId, long estimatedMemory, Runnable task)
+            throws ServerBusyException {
+
+        if (queued >= queueCapacity)
+            throw new ServerBusyException("Coda di calcolo piena, riprovare più tardi.");
+
+        if (reservedMemory > 0 && reservedMemory + estimatedMemory > memoryBudget)
+            throw new ServerBusyException("Memoria insufficiente per un nuovo calcolo, riprovare più tardi.");
+
+        ArrayDeque<Job> queue = queues.computeIfAbsent(clientId, k -> new ArrayDeque<>());
+        if (queue.isEmpty())
+            turns.add(clientId);
+
+        queue.add(new Job(estimatedMemory, task));
+        queued++;
+        reservedMemory += estimatedMemory;
+        notifyAll();
+    }
+
+    /**
+     * Restituisce il numero di job in attesa di esecuzione.
+     *
+     * @return il numero di job in coda
+     */
+    public synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    /**
+     * Restituisce la memoria stimata riservata dai job in coda o in esecuzione.
+     *
+     * @return la memoria riservata (in byte)
+     */
+    public synchronized long getReservedMemory() {
+        return reservedMemory;
+    }
+
+    /**
+     * Preleva il prossimo job da eseguire, servendo i client a turno.
+     *
+     * @return il prossimo job
+     * @throws InterruptedException se il thread di calcolo viene interrotto durante l'attesa
+     */
+    private synchronized Job take() throws InterruptedException {
+        while (turns.isEmpty())
+            wait();
+
+        String clientId = turns.poll();
+        ArrayDeque<Job> queue = queues.get(clientId);
+        Job job = queue.poll();
+        queued--;
+
+        if (queue.isEmpty())
+            queues.remove(clientId);
+        else
+            turns.add(clientId);
+
+        return job;
+    }
+
+    /**
+     * Rilascia la memoria riservata da un job terminato.
+     *
+     * @param job il job terminato
+     */
+    private synchronized void release(Job job) {
+        reservedMemory -= job.estimatedMemory;
+    }
+
+    /**
+     * Ciclo eseguito da ciascun thread di calcolo.
+     */
+    private void workLoop() {
+        try {
+            while (true) {
+                Job job = take();
+                try {
+                    job.task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("[SERVER] Errore nel job di calcolo: " + e.getMessage());
+                } finally {
+                    release(job);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Job di calcolo in attesa di esecuzione.
+     */
+    private static class Job {
+
+        /** Memoria stimata (in byte) necessaria al job. */
+        private final long estimatedMemory;
+
+        /** Operazione da eseguire. */
+        private final Runnable task;
+
+        /**
+         * Costruisce un job.
+         *
+         * @param estimatedMemory la memoria stimata
+         * @param task            l'operazione da eseguire
+         */
+        Job(long estimatedMemory, Runnable task) {
+            this.estimatedMemory = estimatedMemory;
+            this.task = task;
+        }
+    }
+}
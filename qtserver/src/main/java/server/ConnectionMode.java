@@ -0,0 +1,29 @@
+package server;
+
+/**
+ * Enumerazione delle modalità con cui {@link MultiServer} serve le connessioni dei client.
+ * <p>
+ * In entrambe le modalità il clustering viene eseguito dai thread di calcolo
+ * (platform thread, in numero limitato) del {@link ComputeScheduler}; la modalità
+ * determina soltanto il tipo di thread su cui gira ciascuna sessione client.
+ * </p>
+ *
+ * <ul>
+ *   <li>{@code PLATFORM} — ogni sessione è servita da un thread di sistema dedicato</li>
+ *   <li>{@code VIRTUAL} — ogni sessione è servita da un virtual thread, adatto a
+ *       molte connessioni per lo più inattive</li>
+ *   <li>{@code NIO} — tutte le sessioni sono servite da pochi event loop non bloccanti
+ *       ({@link NioServer}) con il protocollo binario a frame</li>
+ * </ul>
+ */
+public enum ConnectionMode {
+
+    /** Un thread di sistema (platform thread) per ciascuna connessione. */
+    PLATFORM,
+
+    /** Un virtual thread per ciascuna connessione. */
+    VIRTUAL,
+
+    /** Pochi event loop non bloccanti per tutte le connessioni, con protocollo a frame. */
+    NIO
+}
@@ -0,0 +1,127 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import data.Data;
+import data.DataSnapshot;
+import data.DatabaseSource;
+import data.DelimitedFileSource;
+import exceptions.DataSourceException;
+import exceptions.EmptyDatasetException;
+
+/**
+ * Provenienza dei dataset caricati dalle sessioni, condivisa da tutte le connessioni.
+ * <p>
+ * Senza una directory delle copie, ogni tabella viene letta dal database.
+ * Con una directory configurata, la prima lettura di una tabella ne salva una
+ * copia per colonne ({@link DataSnapshot}) nella sottodirectory con il nome della
+ * tabella; le letture successive, anche dopo un riavvio del server o da altri
+ * processi sullo stesso host, mappano in memoria la copia senza interrogare il
+ * database. Una copia non viene mai aggiornata: per rileggere una tabella
+ * modificata occorre eliminarne la sottodirectory.
+ * </p>
+ *
+ * @see DataSnapshot
+ */
+public class DatasetStore {
+
+    /** Directory delle copie dei dataset; {@code null} se le copie sono disattivate. */
+    private final String snapshotDir;
+
+    /** Directory dei file delimitati; {@code null} se le tabelle si leggono solo dal database. */
+    private final String fileDir;
+
+    /**
+     * Costruisce un archivio che legge sempre le tabelle dal database.
+     */
+    public DatasetStore() {
+        this(null);
+    }
+
+    /**
+     * Costruisce un archivio con la directory delle copie specificata.
+     *
+     * @param snapshotDir la directory delle copie; {@code null} le disattiva
+     */
+    public DatasetStore(String snapshotDir) {
+        this(snapshotDir, null);
+    }
+
+    /**
+     * Costruisce un archivio con la directory delle copie e quella dei file delimitati specificate.
+     *
+     * @param snapshotDir la directory delle copie; {@code null} le disattiva
+     * @param fileDir     la directory dei file delimitati; {@code null} li disattiva
+     */
+    public DatasetStore(String snapshotDir, String fileDir) {
+        this.snapshotDir = snapshotDir;
+        this.fileDir = fileDir;
+    }
+
+    /**
+     * Restituisce il dataset di una tabella, dal suo file delimitato o dalla sua copia se presenti.
+     *
+     * @param tableName il nome della tabella
+     * @return il dataset
+     * @throws DataSourceException   se non è possibile leggere la tabella
+     * @throws EmptyDatasetException se la tabella non contiene alcuna riga
+     */
+    public Data load(String tableName) throws DataSourceException, EmptyDatasetException {
+        // Solo i nomi semplici identificano un file o una sottodirectory.
+        boolean simple = tableName.matches("[\\w$]+");
+
+        DelimitedFileSource file = simple ? fileSource(tableName) : null;
+        if (file != null) {
+            Data data = file.load();
+            System.out.println("[SERVER] Tabella " + tableName + " caricata dal file in " + fileDir);
+            return data;
+        }
+
+        DatabaseSource database = new DatabaseSource(tableName);
+        if (snapshotDir == null || !simple)
+            return database.load();
+
+        Path directory = Path.of(snapshotDir, tableName);
+        if (DataSnapshot.exists(directory)) {
+            try {
+                Data data = DataSnapshot.load(directory);
+                System.out.println("[SERVER] Tabella " + tableName + " caricata dalla copia in " + directory);
+                return data;
+            } catch (IOException e) {
+                System.err.println("[SERVER] Copia della tabella " + tableName + " non leggibile, uso il database: " + e.getMessage());
+            }
+        }
+
+        Data data = database.load();
+        try {
+            if (DataSnapshot.write(data, directory))
+                System.out.println("[SERVER] Copia della tabella " + tableName + " salvata in " + directory);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("[SERVER] Impossibile salvare la copia della tabella " + tableName + ": " + e.getMessage());
+        }
+        return data;
+    }
+
+    /**
+     * Restituisce la sorgente del file delimitato di una tabella.
+     *
+     * @param tableName il nome della tabella
+     * @return la sorgente, oppure {@code null} se la tabella non ha un file delimitato
+     */
+    private DelimitedFileSource fileSource(String tableName) {
+        if (fileDir == null)
+            return null;
+
+        Path csv = Path.of(fileDir, tableName + ".csv");
+        if (Files.isRegularFile(csv))
+            return new DelimitedFileSource(csv, ',');
+
+        Path tsv = Path.of(fileDir, tableName + ".tsv");
+        if (Files.isRegularFile(tsv))
+            return new DelimitedFileSource(tsv, '\t');
+
+        return null;
+    }
+}
@@ -0,0 +1,309 @@
+package server;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codifica e decodifica dei messaggi del protocollo binario a frame.
+ * <p>
+ * All'apertura della connessione client e server si scambiano un messaggio
+ * di saluto che identifica il protocollo e ne negozia la versione: il client
+ * invia la versione più alta che supporta, il server risponde con la versione
+ * scelta, oppure con {@code 0} se nessuna versione è compatibile.
+ * Successivamente ogni messaggio viaggia in un frame preceduto dalla sua lunghezza:
+ * </p>
+ * <pre>
+ * saluto    := int MAGIC, int version
+ * frame     := int length, byte[length] body
+ * richiesta := byte command, parametri (nell'ordine e con i tipi previsti da {@link Command})
+ * risposta  := byte status, int count, item[count]
+ * item      := byte tag, valore
+ * </pre>
+ * <p>
+ * Dalla versione 2 le risposte che includono la rappresentazione dei cluster
+ * vengono inviate a blocchi: al frame {@code OK} seguono zero o più frame
+ * {@code CHUNK}, ciascuno con un solo elemento stringa, e infine un frame
+ * {@code END} senza elementi. Un frame {@code ERROR} ricevuto al posto di un
+ * blocco interrompe l'invio.
+ * </p>
+ * <p>
+ * Dalla versione 3 il client può chiedere la compressione delle risposte
+ * (vedi {@link FrameCompressor}).
+ * </p>
+ * <p>
+ * Dalla versione 4 la connessione è multiplexata: ogni richiesta è preceduta da
+ * un identificativo scelto dal client, che il server riporta in tutti i frame
+ * della risposta corrispondente, subito dopo la lunghezza. Il client può così
+ * inviare più richieste senza attenderne le risposte, che arrivano nell'ordine
+ * in cui vengono completate; i frame di risposte inviate a blocchi possono
+ * alternarsi a quelli di altre risposte.
+ * </p>
+ * <pre>
+ * richiesta := int requestId, byte command, parametri
+ * risposta  := int requestId, byte status, int count, item[count]
+ * </pre>
+ * <p>
+ * I parametri delle richieste non sono marcati: il loro tipo è implicito nel comando.
+ * I parametri {@code byte[]} (comandi 12 e 13) sono preceduti dalla loro lunghezza
+ * e il loro contenuto è descritto da {@link Ingestion}.
+ * Gli elementi delle risposte sono invece preceduti da un tag ({@code 'I'} int,
+ * {@code 'L'} long, {@code 'D'} double, {@code 'S'} stringa), così che il client
+ * possa decodificarli senza conoscere il comando. Le risposte {@code ERROR} e
+ * {@code BUSY} contengono un solo elemento, il messaggio. Le stringhe sono
+ * codificate in UTF-8 e precedute dalla loro lunghezza in byte.
+ * </p>
+ *
+ * @see Request
+ * @see Response
+ */
+public final class FrameCodec {
+
+    /** Identificativo del protocollo binario ({@code "QTMB"}), inviato all'inizio del saluto. */
+    public static final int MAGIC = 0x51544D42;
+
+    /** Versione più recente del protocollo binario supportata dal server. */
+    public static final int PROTOCOL_VERSION = 4;
+
+    /** Prima versione del protocollo che supporta l'invio a blocchi dei risultati. */
+    public static final int STREAMING_VERSION = 2;
+
+    /** Prima versione del protocollo che supporta la compressione delle risposte. */
+    public static final int COMPRESSION_VERSION = 3;
+
+    /** Prima versione del protocollo che multiplexa le richieste tramite identificativo. */
+    public static final int MULTIPLEX_VERSION = 4;
+
+    /** Dimensione (in byte) del messaggio di saluto. */
+    public static final int HELLO_SIZE = 2 * Integer.BYTES;
+
+    /** Dimensione massima (in byte) del corpo di un frame di richiesta. */
+    public static final int MAX_REQUEST_SIZE = 1 << 20;
+
+    /** Tag di un elemento intero. */
+    static final byte TAG_INT = 'I';
+
+    /** Tag di un elemento long. */
+    static final byte TAG_LONG = 'L';
+
+    /** Tag di un elemento reale. */
+    static final byte TAG_DOUBLE = 'D';
+
+    /** Tag di un elemento stringa. */
+    static final byte TAG_STRING = 'S';
+
+    /** Esito di un frame che contiene un blocco di testo di una risposta inviata a blocchi. */
+    static final byte STATUS_CHUNK = 3;
+
+    /** Esito del frame che chiude una risposta inviata a blocchi. */
+    static final byte STATUS_END = 4;
+
+    /** Dimensione dei buffer usati per le parti non testuali di un frame di risposta. */
+    private static final int SEGMENT_SIZE = 256;
+
+    /**
+     * Costruttore privato per impedire l'istanza della classe di utilità.
+     */
+    private FrameCodec() { }
+
+    /**
+     * Interpreta il saluto del client e sceglie la versione del protocollo da usare.
+     *
+     * @param hello il saluto del client, posizionato sul primo byte
+     * @return la versione scelta, oppure {@code 0} se la versione del client non è supportata
+     * @throws ProtocolException se il saluto non identifica il protocollo binario
+     */
+    public static int negotiateVersion(ByteBuffer hello) throws ProtocolException {
+        if (hello.getInt() != MAGIC)
+            throw new ProtocolException("Protocollo non riconosciuto.");
+
+        int clientVersion = hello.getInt();
+        return (clientVersion >= 1) ? Math.min(clientVersion, PROTOCOL_VERSION) : 0;
+    }
+
+    /**
+     * Codifica il saluto di risposta del server.
+     *
+     * @param version la versione scelta, oppure {@code 0} se nessuna versione è compatibile
+     * @return il saluto, pronto per la scrittura
+     */
+    public static ByteBuffer encodeHello(int version) {
+        return ByteBuffer.allocate(HELLO_SIZE).putInt(MAGIC).putInt(version).flip();
+    }
+
+    /**
+     * Legge l'identificativo che precede una richiesta del protocollo multiplexato.
+     *
+     * @param body il corpo del frame, posizionato sul primo byte
+     * @return l'identificativo della richiesta
+     * @throws ProtocolException se il frame è troppo corto per contenere l'identificativo
+     */
+    public static int decodeRequestId(ByteBuffer body) throws ProtocolException {
+        if (body.remaining() < Integer.BYTES)
+            throw new ProtocolException("Identificativo di richiesta mancante.");
+        return body.getInt();
+    }
+
+    /**
+     * Decodifica il corpo di un frame di richiesta.
+     *
+     * @param body il corpo del frame, posizionato sul primo byte
+     * @return la richiesta decodificata
+     * @throws ProtocolException se il comando non è riconosciuto o i parametri non sono validi
+     */
+    public static Request decodeRequest(ByteBuffer body) throws ProtocolException {
+        try {
+            int code = body.get();
+            Command command = Command.fromCode(code);
+            if (command == null)
+                throw new ProtocolException("Comando non riconosciuto: " + code);
+
+            Object[] arguments = new Object[command.getArgumentCount()];
+            for (int i = 0; i < arguments.length; i++)
+                arguments[i] = readValue(body, command.getArgumentType(i));
+
+            if (body.hasRemaining())
+                throw new ProtocolException("Parametri non validi.");
+
+            return new Request(command, arguments);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new ProtocolException("Parametri non validi.");
+        }
+    }
+
+    /**
+     * Codifica una risposta in un frame completo di lunghezza.
+     * <p>
+     * Il frame viene restituito come sequenza di buffer da inviare con una
+     * scrittura "gathering": le stringhe non vengono copiate in un unico buffer
+     * ma inviate direttamente dal proprio array di byte.
+     * </p>
+     *
+     * @param response la risposta da codificare
+     * @return i buffer che compongono il frame, pronti per la scrittura
+     */
+    public static ByteBuffer[] encodeResponse(Response response) {
+        Object[] items = (response.getStatus() == Response.Status.OK)
+                ? response.getPayload()
+                : new Object[] { response.getMessage() };
+
+        return encodeFrame((byte) response.getStatus().ordinal(), items);
+    }
+
+    /**
+     * Codifica un blocco di testo di una risposta inviata a blocchi.
+     *
+     * @param text il blocco di testo
+     * @return i buffer che compongono il frame, pronti per la scrittura
+     */
+    public static ByteBuffer[] encodeChunk(String text) {
+        return encodeFrame(STATUS_CHUNK, new Object[] { text });
+    }
+
+    /**
+     * Codifica il frame che chiude una risposta inviata a blocchi.
+     *
+     * @return i buffer che compongono il frame, pronti per la scrittura
+     */
+    public static ByteBuffer[] encodeEnd() {
+        return encodeFrame(STATUS_END, new Object[0]);
+    }
+
+    /**
+     * Marca un frame di risposta con l'identificativo della richiesta a cui appartiene.
+     * <p>
+     * L'identificativo viene inserito subito dopo la lunghezza, che viene aggiornata;
+     * i buffer del frame originale non vengono copiati né modificati. Il frame può
+     * essere già compresso da {@link FrameCompressor}.
+     * </p>
+     *
+     * @param requestId l'identificativo della richiesta
+     * @param frame     i buffer che compongono il frame
+     * @return i buffer che compongono il frame marcato, pronti per la scrittura
+     */
+    public static ByteBuffer[] tag(int requestId, ByteBuffer[] frame) {
+        ByteBuffer head = frame[0].duplicate();
+        int length = head.getInt(head.position());
+        head.position(head.position() + Integer.BYTES);
+
+        ByteBuffer[] tagged = new ByteBuffer[frame.length + 1];
+        tagged[0] = ByteBuffer.allocate(2 * Integer.BYTES).putInt(length + Integer.BYTES).putInt(requestId).flip();
+        tagged[1] = head;
+        System.arraycopy(frame, 1, tagged, 2, frame.length - 1);
+        return tagged;
+    }
+
+    /**
+     * Codifica un frame di risposta con l'esito e gli elementi indicati.
+     *
+     * @param status l'esito del frame
+     * @param items  gli elementi del frame
+     * @return i buffer che compongono il frame, pronti per la scrittura
+     */
+    private static ByteBuffer[] encodeFrame(byte status, Object[] items) {
+        List<ByteBuffer> parts = new ArrayList<>();
+        ByteBuffer segment = ByteBuffer.allocate(SEGMENT_SIZE);
+        segment.putInt(0);
+        segment.put(status);
+        segment.putInt(items.length);
+
+        for (Object item : items) {
+            if (segment.remaining() < 1 + Long.BYTES + Integer.BYTES) {
+                parts.add(segment.flip());
+                segment = ByteBuffer.allocate(SEGMENT_SIZE);
+            }
+
+            if (item instanceof Integer) {
+                segment.put(TAG_INT).putInt((Integer) item);
+            } else if (item instanceof Long) {
+                segment.put(TAG_LONG).putLong((Long) item);
+            } else if (item instanceof Double) {
+                segment.put(TAG_DOUBLE).putDouble((Double) item);
+            } else {
+                byte[] bytes = String.valueOf(item).getBytes(StandardCharsets.UTF_8);
+                segment.put(TAG_STRING).putInt(bytes.length);
+                parts.add(segment.flip());
+                parts.add(ByteBuffer.wrap(bytes));
+                segment = ByteBuffer.allocate(SEGMENT_SIZE);
+            }
+        }
+
+        if (segment.position() > 0)
+            parts.add(segment.flip());
+
+        long length = -Integer.BYTES;
+        for (ByteBuffer part : parts)
+            length += part.remaining();
+        parts.get(0).putInt(0, (int) length);
+
+        return parts.toArray(new ByteBuffer[0]);
+    }
+
+    /**
+     * Legge dal buffer un valore del tipo indicato.
+     *
+     * @param body il buffer da cui leggere
+     * @param type il tipo del valore
+     * @return il valore letto
+     * @throws ProtocolException se la lunghezza di una stringa o di un array non è valida
+     */
+    private static Object readValue(ByteBuffer body, Class<?> type) throws ProtocolException {
+        if (type == Integer.class)
+            return body.getInt();
+        if (type == Long.class)
+            return body.getLong();
+        if (type == Double.class)
+            return body.getDouble();
+
+        int length = body.getInt();
+        if (length < 0 || length > body.remaining())
+            throw new ProtocolException("Lunghezza parametro non valida.");
+
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return (type == byte[].class) ? bytes : new String(bytes, StandardCharsets.UTF_8);
+    }
+}
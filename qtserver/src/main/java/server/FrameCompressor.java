@@ -0,0 +1,219 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Compressione dei frame di risposta del protocollo binario, negoziata dal client.
+ * <p>
+ * Dalla versione 3 del protocollo il client può chiedere, con il comando
+ * {@link Command#SET_COMPRESSION}, che le risposte vengano compresse con
+ * {@link Deflater} al livello indicato. Ogni frame viene compresso in modo
+ * indipendente; i frame più piccoli di {@value #THRESHOLD} byte, e quelli
+ * che compressi non risulterebbero più piccoli, vengono inviati invariati.
+ * Un frame compresso ha la forma:
+ * </p>
+ * <pre>
+ * frame := int length, byte (status | 0x80), int rawLength, byte[] deflate(count, item[count])
+ * </pre>
+ * <p>
+ * Ogni istanza appartiene a una singola connessione. Poiché con il protocollo
+ * multiplexato le risposte di una connessione possono essere prodotte da più
+ * thread contemporaneamente, i metodi che usano il {@link Deflater} o i contatori
+ * della connessione sono sincronizzati. Le risorse native del {@link Deflater}
+ * vengono rilasciate da {@link #close()}, alla chiusura della connessione. Oltre
+ * ai contatori della connessione, la classe mantiene i totali dell'intero server.
+ * </p>
+ *
+ * @see FrameCodec
+ */
+public class FrameCompressor {
+
+    /** Bit dell'esito che segnala un frame compresso. */
+    public static final int COMPRESSED_FLAG = 0x80;
+
+    /** Dimensione minima (in byte) del corpo di un frame perché venga compresso. */
+    public static final int THRESHOLD = 1024;
+
+    /** Frame compressi dall'avvio del server. */
+    private static final AtomicLong totalFrames = new AtomicLong();
+
+    /** Byte dei frame compressi, prima della compressione, dall'avvio del server. */
+    private static final AtomicLong totalRawBytes = new AtomicLong();
+
+    /** Byte dei frame compressi, dopo la compressione, dall'avvio del server. */
+    private static final AtomicLong totalCompressedBytes = new AtomicLong();
+
+    /** Tempo (in nanosecondi) speso a comprimere dall'avvio del server. */
+    private static final AtomicLong totalNanos = new AtomicLong();
+
+    /** Compressore riutilizzato per tutti i frame della connessione. */
+    private final Deflater deflater = new Deflater();
+
+    /** Livello di compressione corrente; {@code 0} se la compressione è disattivata. */
+    private int level;
+
+    /** Indica se il compressore è stato chiuso e il {@link Deflater} rilasciato. */
+    private boolean closed;
+
+    /** Frame compressi sulla connessione. */
+    private long frames;
+
+    /** Byte dei frame compressi sulla connessione, prima della compressione. */
+    private long rawBytes;
+
+    /** Byte dei frame compressi sulla connessione, dopo la compressione. */
+    private long compressedBytes;
+
+    /** Tempo (in nanosecondi) speso a comprimere sulla connessione. */
+    private long nanos;
+
+    /**
+     * Imposta il livello di compressione delle risposte successive.
+     *
+     * @param level il livello richiesto dal client; {@code 0} disattiva la compressione
+     * @return il livello effettivamente adottato, compreso tra 0 e {@link Deflater#BEST_COMPRESSION}
+     */
+    public synchronized int setLevel(int level) {
+        if (closed)
+            return 0;
+
+        this.level = Math.max(0, Math.min(level, Deflater.BEST_COMPRESSION));
+        if (this.level > 0)
+            deflater.setLevel(this.level);
+        return this.level;
+    }
+
+    /**
+     * Comprime il frame indicato, se la compressione è attiva e conveniente.
+     * <p>
+     * I buffer del frame originale non vengono modificati, così che possa
+     * essere inviato invariato quando la compressione non viene applicata.
+     * </p>
+     *
+     * @param frame i buffer che compongono il frame, come prodotti da {@link FrameCodec}
+     * @return il frame compresso, oppure {@code frame} se la compressione non viene applicata
+     */
+    public synchronized ByteBuffer[] compress(ByteBuffer[] frame) {
+        if (level == 0)
+            return frame;
+
+        long length = -Integer.BYTES;
+        for (ByteBuffer part : frame)
+            length += part.remaining();
+        if (length < THRESHOLD || length > Integer.MAX_VALUE)
+            return frame;
+
+        long start = System.nanoTime();
+        ByteBuffer head = frame[0].duplicate();
+        head.position(head.position() + Integer.BYTES);
+        byte status = head.get();
+        int rawLength = (int) length - 1;
+
+        byte[] out = new byte[Math.max(64, rawLength / 4)];
+        int produced = 0;
+
+        deflater.reset();
+        for (int i = 0; i < frame.length; i++) {
+            deflater.setInput((i == 0) ? head : frame[i].duplicate());
+            while (!deflater.needsInput()) {
+                if (produced == out.length)
+                    out = Arrays.copyOf(out, out.length * 2);
+                produced += deflater.deflate(out, produced, out.length - produced);
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (produced == out.length)
+                out = Arrays.copyOf(out, out.length * 2);
+            produced += deflater.deflate(out, produced, out.length - produced);
+        }
+
+        if (produced + Integer.BYTES >= rawLength)
+            return frame;
+
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + 1);
+        header.putInt(1 + Integer.BYTES + produced);
+        header.put((byte) (status | COMPRESSED_FLAG));
+        header.putInt(rawLength);
+
+        count(rawLength, produced, System.nanoTime() - start);
+        return new ByteBuffer[] { header.flip(), ByteBuffer.wrap(out, 0, produced) };
+    }
+
+    /**
+     * Rilascia le risorse native del {@link Deflater}. Le risposte prodotte in
+     * seguito, ad esempio da richieste ancora in esecuzione, non vengono compresse.
+     */
+    public synchronized void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        level = 0;
+        deflater.end();
+    }
+
+    /**
+     * Aggiorna i contatori della connessione e del server.
+     *
+     * @param raw        i byte del frame prima della compressione
+     * @param compressed i byte del frame dopo la compressione
+     * @param elapsed    il tempo speso a comprimere, in nanosecondi
+     */
+    private void count(long raw, long compressed, long elapsed) {
+        frames++;
+        rawBytes += raw;
+        compressedBytes += compressed;
+        nanos += elapsed;
+
+        totalFrames.incrementAndGet();
+        totalRawBytes.addAndGet(raw);
+        totalCompressedBytes.addAndGet(compressed);
+        totalNanos.addAndGet(elapsed);
+    }
+
+    /**
+     * Indica se sulla connessione è stato compresso almeno un frame.
+     *
+     * @return {@code true} se esiste almeno un frame compresso
+     */
+    public synchronized boolean hasStatistics() {
+        return frames > 0;
+    }
+
+    /**
+     * Restituisce un riepilogo della compressione sulla connessione.
+     *
+     * @return frame compressi, byte prima e dopo, rapporto di compressione e tempo speso
+     */
+    public synchronized String getStatistics() {
+        return describe(frames, rawBytes, compressedBytes, nanos);
+    }
+
+    /**
+     * Restituisce un riepilogo della compressione su tutte le connessioni del server.
+     *
+     * @return frame compressi, byte prima e dopo, rapporto di compressione e tempo speso
+     */
+    public static String getGlobalStatistics() {
+        return describe(totalFrames.get(), totalRawBytes.get(), totalCompressedBytes.get(), totalNanos.get());
+    }
+
+    /**
+     * Formatta un riepilogo della compressione.
+     *
+     * @param frames     i frame compressi
+     * @param raw        i byte prima della compressione
+     * @param compressed i byte dopo la compressione
+     * @param nanos      il tempo speso, in nanosecondi
+     * @return il riepilogo
+     */
+    private static String describe(long frames, long raw, long compressed, long nanos) {
+        double ratio = (compressed > 0) ? (double) raw / compressed : 1.0;
+        return String.format("%d frame, %d -> %d byte (rapporto %.1fx), %.1f ms",
+                frames, raw, compressed, ratio, nanos / 1e6);
+    }
+}
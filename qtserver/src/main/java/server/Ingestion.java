@@ -0,0 +1,197 @@
+package server;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import data.Data;
+import data.DataBuilder;
+import exceptions.DataSourceException;
+import exceptions.EmptyDatasetException;
+
+/**
+ * Dataset inviato dal client con i comandi 12, 13 e 14, in corso di ricezione.
+ * <p>
+ * Lo schema viene dichiarato all'inizio dell'invio; gli esempi arrivano poi in
+ * blocchi binari per colonne, accumulati in un {@link DataBuilder} senza passare
+ * dal database. Un blocco non valido viene scartato per intero, lasciando invariati
+ * gli esempi già ricevuti.
+ * </p>
+ * <pre>
+ * schema := int count, colonna[count]
+ * colonna := string name, byte type ('C' continua, 'D' discreta)
+ * blocco := int rows, valori di ogni colonna nell'ordine dello schema
+ * valori := double[rows] per una colonna continua, string[rows] per una discreta
+ * string := int length, byte[length] UTF-8
+ * </pre>
+ * <p>
+ * Con il protocollo a frame ogni blocco deve stare in una richiesta di al più
+ * {@link FrameCodec#MAX_REQUEST_SIZE} byte.
+ * </p>
+ *
+ * @see ClientSession
+ */
+final class Ingestion {
+
+    /** Tipo di una colonna continua nello schema. */
+    static final byte TYPE_CONTINUOUS = 'C';
+
+    /** Tipo di una colonna discreta nello schema. */
+    static final byte TYPE_DISCRETE = 'D';
+
+    /** Nome del dataset. */
+    private final String name;
+
+    /** Esempi ricevuti finora. */
+    private final DataBuilder builder;
+
+    /**
+     * Costruisce un invio con il nome e lo schema indicati.
+     *
+     * @param name    il nome del dataset
+     * @param builder il costruttore degli esempi, con lo schema dichiarato
+     */
+    private Ingestion(String name, DataBuilder builder) {
+        this.name = name;
+        this.builder = builder;
+    }
+
+    /**
+     * Inizia un invio, decodificando lo schema dichiarato dal client.
+     *
+     * @param name   il nome del dataset; deve essere un nome semplice, usato per i file dei clustering salvati
+     * @param schema lo schema codificato
+     * @return l'invio
+     * @throws ProtocolException se il nome o lo schema non sono validi
+     */
+    static Ingestion begin(String name, byte[] schema) throws ProtocolException {
+        if (!name.matches("[\\w$]+"))
+            throw new ProtocolException("Nome del dataset non valido: " + name);
+
+        try {
+            ByteBuffer body = ByteBuffer.wrap(schema);
+            int count = body.getInt();
+            if (count <= 0 || count > body.remaining())
+                throw new ProtocolException("Numero di colonne non valido: " + count);
+
+            String[] names = new String[count];
+            boolean[] continuous = new boolean[count];
+            for (int j = 0; j < count; j++) {
+                names[j] = readString(body);
+                byte type = body.get();
+                if (type != TYPE_CONTINUOUS && type != TYPE_DISCRETE)
+                    throw new ProtocolException("Tipo non valido per la colonna " + names[j] + ": " + type);
+                continuous[j] = (type == TYPE_CONTINUOUS);
+                for (int k = 0; k < j; k++) {
+                    if (names[k].equals(names[j]))
+                        throw new ProtocolException("Colonna ripetuta nello schema: " + names[j]);
+                }
+            }
+            if (body.hasRemaining())
+                throw new ProtocolException("Schema non valido.");
+
+            return new Ingestion(name, new DataBuilder(names, continuous));
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Schema troncato.");
+        }
+    }
+
+    /**
+     * Restituisce il nome del dataset.
+     *
+     * @return il nome del dataset
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Restituisce il numero di esempi ricevuti finora, duplicati compresi.
+     *
+     * @return il numero di esempi
+     */
+    int getReceived() {
+        return builder.getNumberOfRows();
+    }
+
+    /**
+     * Aggiunge gli esempi di un blocco, che viene prima decodificato e verificato per intero.
+     *
+     * @param batch il blocco codificato
+     * @return il numero di esempi del blocco
+     * @throws ProtocolException se il blocco non è valido
+     */
+    int append(byte[] batch) throws ProtocolException {
+        int columns = builder.getNumberOfColumns();
+        double[][] numbers = new double[columns][];
+        String[][] values = new String[columns][];
+        int rows;
+
+        try {
+            ByteBuffer body = ByteBuffer.wrap(batch);
+            rows = body.getInt();
+            // Ogni valore occupa almeno 4 byte: un conteggio maggiore non può essere valido.
+            if (rows < 0 || (long) rows * columns * Integer.BYTES > body.remaining())
+                throw new ProtocolException("Numero di esempi non valido: " + rows);
+
+            for (int j = 0; j < columns; j++) {
+                if (builder.isContinuous(j)) {
+                    numbers[j] = new double[rows];
+                    for (int i = 0; i < rows; i++) {
+                        numbers[j][i] = body.getDouble();
+                        if (!Double.isFinite(numbers[j][i]))
+                            throw new ProtocolException("Valore non finito nella colonna " + (j + 1) + ".");
+                    }
+                } else {
+                    values[j] = new String[rows];
+                    for (int i = 0; i < rows; i++)
+                        values[j][i] = readString(body);
+                }
+            }
+            if (body.hasRemaining())
+                throw new ProtocolException("Blocco non valido.");
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Blocco troncato.");
+        }
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (numbers[j] != null)
+                    builder.setNumber(j, numbers[j][i]);
+                else
+                    builder.setValue(j, values[j][i]);
+            }
+            builder.nextRow();
+        }
+        return rows;
+    }
+
+    /**
+     * Conclude l'invio e costruisce il dataset degli esempi ricevuti.
+     *
+     * @return il dataset, senza esempi duplicati
+     * @throws DataSourceException   se una colonna continua non ha almeno due valori distinti
+     * @throws EmptyDatasetException se non è stato ricevuto alcun esempio
+     */
+    Data finish() throws DataSourceException, EmptyDatasetException {
+        return builder.build();
+    }
+
+    /**
+     * Legge una stringa preceduta dalla sua lunghezza in byte.
+     *
+     * @param body il buffer da cui leggere
+     * @return la stringa letta
+     * @throws ProtocolException se la lunghezza non è valida
+     */
+    private static String readString(ByteBuffer body) throws ProtocolException {
+        int length = body.getInt();
+        if (length < 0 || length > body.remaining())
+            throw new ProtocolException("Lunghezza stringa non valida.");
+
+        String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+}
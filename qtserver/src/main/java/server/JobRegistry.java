@@ -0,0 +1,166 @@
+package server;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import data.Data;
+import exceptions.ServerBusyException;
+import mining.QTMiner;
+
+/**
+ * Registro dei {@link ClusteringJob} asincroni, condiviso da tutte le connessioni.
+ * <p>
+ * I job restano nel registro anche dopo la disconnessione del client che li ha
+ * avviati, così che i risultati possano essere recuperati da una nuova connessione.
+ * Un job terminato viene rimosso quando nessuno vi accede per un tempo pari al TTL
+ * configurato; i job in coda o in esecuzione non vengono mai rimossi.
+ * </p>
+ * <p>
+ * Se è configurata una directory dei checkpoint, ogni job salva periodicamente
+ * il proprio stato in un file che dipende solo da tabella e raggio. Dopo un
+ * riavvio del server, un job avviato di nuovo sulla stessa tabella con lo
+ * stesso raggio riprende dall'ultimo checkpoint invece di ripartire da zero.
+ * I job sui dataset inviati dai client o letti da file di cluster non salvano
+ * checkpoint: il loro nome non identifica il dataset, che non sopravvive a un riavvio.
+ * </p>
+ *
+ * @see ClusteringJob
+ * @see ComputeScheduler
+ */
+public class JobRegistry {
+
+    /** TTL di default (in millisecondi) dei job terminati: 30 minuti. */
+    public static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(30);
+
+    /** Intervallo minimo (in millisecondi) tra due checkpoint di un job: 1 minuto. */
+    public static final long CHECKPOINT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /** Job registrati, indicizzati per identificativo. */
+    private final ConcurrentHashMap<Long, ClusteringJob> jobs = new ConcurrentHashMap<>();
+
+    /** Generatore degli identificativi dei job. */
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /** Scheduler su cui vengono eseguiti i job. */
+    private final ComputeScheduler scheduler;
+
+    /** TTL (in millisecondi) dei job terminati. */
+    private final long ttl;
+
+    /** Directory dei checkpoint dei job; {@code null} se i checkpoint sono disattivati. */
+    private final String checkpointDir;
+
+    /**
+     * Costruisce un registro con il TTL di default, senza checkpoint.
+     *
+     * @param scheduler lo scheduler dei job di calcolo
+     */
+    public JobRegistry(ComputeScheduler scheduler) {
+        this(scheduler, DEFAULT_TTL, null);
+    }
+
+    /**
+     * Costruisce un registro con il TTL di default e la directory dei checkpoint specificata.
+     *
+     * @param scheduler     lo scheduler dei job di calcolo
+     * @param checkpointDir la directory dei checkpoint; {@code null} li disattiva
+     */
+    public JobRegistry(ComputeScheduler scheduler, String checkpointDir) {
+        this(scheduler, DEFAULT_TTL, checkpointDir);
+    }
+
+    /**
+     * Costruisce un registro con il TTL e la directory dei checkpoint specificati
+     * e avvia la pulizia periodica dei job scaduti.
+     *
+     * @param scheduler     lo scheduler dei job di calcolo
+     * @param ttl           il TTL (in millisecondi) dei job terminati; deve essere positivo
+     * @param checkpointDir la directory dei checkpoint; {@code null} li disattiva
+     * @throws IllegalArgumentException se {@code ttl <= 0}
+     */
+    public JobRegistry(ComputeScheduler scheduler, long ttl, String checkpointDir) {
+        if (ttl <= 0)
+            throw new IllegalArgumentException("Il TTL dei job deve essere positivo.");
+
+        this.scheduler = scheduler;
+        this.ttl = ttl;
+        this.checkpointDir = checkpointDir;
+
+        ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "qt-job-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, ttl / 4);
+        cleaner.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registra e sottomette allo scheduler un nuovo job di clustering.
+     *
+     * @param clientId  il client che avvia il job
+     * @param tableName il nome della tabella da cui proviene il dataset
+     * @param sharedKey la chiave con cui le computazioni sul dataset vengono unificate tra client
+     * @param radius    il raggio di clustering
+     * @param data      il dataset su cui eseguire il clustering
+     * @return il job creato
+     * @throws ServerBusyException se lo scheduler non può accettare il job
+     */
+    public ClusteringJob submit(String clientId, String tableName, String sharedKey, double radius, Data data)
+            throws ServerBusyException {
+
+        ClusteringJob job = new ClusteringJob(nextId.getAndIncrement(), clientId, tableName, sharedKey, radius, data);
+        // Solo le tabelle sono identificate dal nome, e quindi riprendibili dopo un riavvio.
+        if (checkpointDir != null && sharedKey.equals(tableName))
+            job.setCheckpoint(Path.of(checkpointDir, tableName + "_" + radius + ".ckpt").toString(), CHECKPOINT_INTERVAL);
+        scheduler.submit(clientId, QTMiner.estimateMemory(data), job);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /**
+     * Restituisce il job con l'identificativo indicato, se appartiene al client.
+     *
+     * @param clientId il client che richiede il job
+     * @param id       l'identificativo del job
+     * @return il job, oppure {@code null} se non esiste o appartiene a un altro client
+     */
+    public ClusteringJob get(String clientId, long id) {
+        ClusteringJob job = jobs.get(id);
+        if (job == null || !job.getClientId().equals(clientId))
+            return null;
+
+        job.touch();
+        return job;
+    }
+
+    /**
+     * Restituisce il numero di job presenti nel registro.
+     *
+     * @return il numero di job
+     */
+    public int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Rimuove i job terminati a cui nessuno accede da più del TTL.
+     */
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<ClusteringJob> it = jobs.values().iterator();
+
+        while (it.hasNext()) {
+            ClusteringJob job = it.next();
+            if (job.isFinished() && now - job.getLastAccess() > ttl) {
+                it.remove();
+                System.out.println("[SERVER] Job " + job.getId() + " scaduto e rimosso dal registro.");
+            }
+        }
+    }
+}
@@ -6,12 +6,21 @@ import java.net.ServerSocket;
 
 /**
  * Server multi-thread che accetta più connessioni client
- * e, per ciascuna, avvia un thread dedicato {@link ServerOneClient}.
+ * e, per ciascuna, avvia un thread dedicato che esegue {@link ServerOneClient}.
  * <p>
  * Il server rimane in ascolto sulla porta specificata e,
  * per ogni nuova connessione, delega la gestione della comunicazione
  * a un thread separato, così da permettere l’interazione
- * concorrente con più client.
+ * concorrente con più client. Il clustering vero e proprio viene
+ * eseguito da un {@link ComputeScheduler} con un numero limitato
+ * di thread di calcolo.
+ * </p>
+ * <p>
+ * Il tipo di thread usato per le sessioni dipende dalla {@link ConnectionMode}:
+ * in modalità {@link ConnectionMode#VIRTUAL} ogni sessione gira su un virtual
+ * thread, così che migliaia di connessioni inattive occupino poca memoria;
+ * in modalità {@link ConnectionMode#NIO} le connessioni sono invece servite
+ * dal front end non bloccante {@link NioServer}.
  * </p>
  */
 public class MultiServer {
@@ -19,34 +28,137 @@ public class MultiServer {
     /** Porta su cui il server rimane in ascolto. */
     private final int port;
 
+    /** Modalità con cui vengono servite le connessioni. */
+    private final ConnectionMode mode;
+
+    /** Scheduler dei job di calcolo, separato dai thread di I/O dei client. */
+    private final ComputeScheduler scheduler = new ComputeScheduler();
+
+    /** Livello di coalescenza delle computazioni, condiviso tra tutti i client. */
+    private final ComputeCoalescer coalescer;
+
+    /** Registro dei job di clustering asincroni, condiviso tra tutti i client. */
+    private final JobRegistry jobs;
+
+    /** Provenienza dei dataset, condivisa tra tutti i client. */
+    private final DatasetStore datasets;
+
     /**
-     * Costruisce un {@code MultiServer} sulla porta specificata.
+     * Costruisce un {@code MultiServer} sulla porta specificata,
+     * servendo ogni connessione con un thread di sistema dedicato.
      *
      * @param port il numero di porta su cui mettersi in ascolto
      */
     public MultiServer(int port) {
+        this(port, ConnectionMode.PLATFORM);
+    }
+
+    /**
+     * Costruisce un {@code MultiServer} sulla porta e con la modalità di connessione specificate.
+     *
+     * @param port il numero di porta su cui mettersi in ascolto
+     * @param mode la modalità con cui servire le connessioni
+     */
+    public MultiServer(int port, ConnectionMode mode) {
+        this(port, mode, 0);
+    }
+
+    /**
+     * Costruisce un {@code MultiServer} sulla porta, con la modalità di connessione
+     * e con il budget di tempo del clustering specificati.
+     * <p>
+     * Il budget limita le computazioni richieste con il comando 1, che superato
+     * restituiscono un clustering parziale; i job asincroni non sono limitati,
+     * perché possono essere annullati dal client.
+     * </p>
+     *
+     * @param port       il numero di porta su cui mettersi in ascolto
+     * @param mode       la modalità con cui servire le connessioni
+     * @param timeBudget il budget di tempo (in millisecondi) di ogni clustering; {@code 0} se illimitato
+     */
+    public MultiServer(int port, ConnectionMode mode, long timeBudget) {
+        this(port, mode, timeBudget, null);
+    }
+
+    /**
+     * Costruisce un {@code MultiServer} sulla porta, con la modalità di connessione,
+     * con il budget di tempo del clustering e con la directory dei checkpoint specificati.
+     *
+     * @param port          il numero di porta su cui mettersi in ascolto
+     * @param mode          la modalità con cui servire le connessioni
+     * @param timeBudget    il budget di tempo (in millisecondi) di ogni clustering; {@code 0} se illimitato
+     * @param checkpointDir la directory dei checkpoint dei job asincroni; {@code null} li disattiva
+     */
+    public MultiServer(int port, ConnectionMode mode, long timeBudget, String checkpointDir) {
+        this(port, mode, timeBudget, checkpointDir, null);
+    }
+
+    /**
+     * Costruisce un {@code MultiServer} sulla porta, con la modalità di connessione,
+     * con il budget di tempo del clustering, con la directory dei checkpoint e con
+     * la directory delle copie dei dataset specificati.
+     *
+     * @param port          il numero di porta su cui mettersi in ascolto
+     * @param mode          la modalità con cui servire le connessioni
+     * @param timeBudget    il budget di tempo (in millisecondi) di ogni clustering; {@code 0} se illimitato
+     * @param checkpointDir la directory dei checkpoint dei job asincroni; {@code null} li disattiva
+     * @param snapshotDir   la directory delle copie per colonne dei dataset; {@code null} le disattiva
+     * @see DatasetStore
+     */
+    public MultiServer(int port, ConnectionMode mode, long timeBudget, String checkpointDir, String snapshotDir) {
+        this(port, mode, timeBudget, checkpointDir, snapshotDir, null);
+    }
+
+    /**
+     * Costruisce un {@code MultiServer} sulla porta, con la modalità di connessione,
+     * con il budget di tempo del clustering, con la directory dei checkpoint, con
+     * la directory delle copie dei dataset e con la directory dei file delimitati specificati.
+     *
+     * @param port          il numero di porta su cui mettersi in ascolto
+     * @param mode          la modalità con cui servire le connessioni
+     * @param timeBudget    il budget di tempo (in millisecondi) di ogni clustering; {@code 0} se illimitato
+     * @param checkpointDir la directory dei checkpoint dei job asincroni; {@code null} li disattiva
+     * @param snapshotDir   la directory delle copie per colonne dei dataset; {@code null} le disattiva
+     * @param fileDir       la directory dei file CSV/TSV letti al posto delle tabelle; {@code null} li disattiva
+     * @see DatasetStore
+     */
+    public MultiServer(int port, ConnectionMode mode, long timeBudget, String checkpointDir, String snapshotDir,
+                       String fileDir) {
         this.port = port;
+        this.mode = mode;
+        this.coalescer = new ComputeCoalescer(scheduler, timeBudget);
+        this.jobs = new JobRegistry(scheduler, checkpointDir);
+        this.datasets = new DatasetStore(snapshotDir, fileDir);
     }
 
     /**
      * Avvia il server e rimane in ascolto di nuove connessioni.
      * <p>
-     * Per ogni client che si collega viene istanziato e avviato
-     * un nuovo thread {@link ServerOneClient}.
+     * Per ogni client che si collega viene istanziato un {@link ServerOneClient},
+     * eseguito su un nuovo thread del tipo previsto dalla modalità di connessione.
      * </p>
      */
     public void start() {
 
+        if (mode == ConnectionMode.NIO) {
+            new NioServer(port, coalescer, jobs, datasets).start();
+            return;
+        }
+
+        Thread.Builder sessionThreads = (mode == ConnectionMode.VIRTUAL)
+                ? Thread.ofVirtual().name("qt-client-", 1)
+                : Thread.ofPlatform().name("qt-client-", 1);
+
         try (ServerSocket serverSocket = new ServerSocket(port)) {
 
-            System.out.println("Server in ascolto sulla porta: " + port);
+            System.out.println("Server in ascolto sulla porta: " + port + " (modalità " + mode + ")");
 
             while (true) {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     System.out.println("Nuova connessione da: " + clientSocket.getInetAddress());
 
-                    new ServerOneClient(clientSocket).start();
+                    sessionThreads.start(new ServerOneClient(clientSocket, coalescer, jobs, datasets));
                 }
                 catch (IOException e) {
                     System.err.println("Errore nella gestione del client: " + e.getMessage());
@@ -63,13 +175,25 @@ public class MultiServer {
      * <p>
      * Se fornito un parametro, viene interpretato come porta;
      * in caso contrario viene usata la porta di default 8080.
+     * Un secondo parametro opzionale ({@code platform}, {@code virtual} o {@code nio})
+     * seleziona la modalità di connessione; il default è {@code platform}.
+     * Un terzo parametro opzionale indica il budget di tempo, in secondi, di ogni
+     * clustering richiesto con il comando 1; il default è {@code 0} (nessun limite).
+     * Un quarto parametro opzionale indica la directory in cui i job asincroni
+     * salvano i propri checkpoint; se assente, i checkpoint sono disattivati.
+     * Un quinto parametro opzionale indica la directory delle copie per colonne
+     * delle tabelle caricate; se assente, le tabelle vengono sempre lette dal database.
+     * Un sesto parametro opzionale indica la directory dei file {@code .csv} e
+     * {@code .tsv} da leggere al posto delle tabelle con lo stesso nome.
      * </p>
      *
-     * @param args porta su cui avviare il server
+     * @param args porta, modalità di connessione, budget di tempo, directory dei checkpoint,
+     *             directory delle copie dei dataset e directory dei file delimitati
      */
     public static void main(String[] args) {
 
         int port = 8080;
+        ConnectionMode mode = ConnectionMode.PLATFORM;
 
         if (args.length > 0) {
             try {
@@ -80,6 +204,29 @@ public class MultiServer {
             }
         }
 
-        new MultiServer(port).start();
+        if (args.length > 1) {
+            try {
+                mode = ConnectionMode.valueOf(args[1].toUpperCase());
+            }
+            catch (IllegalArgumentException e) {
+                System.err.println("Modalità non valida, uso quella di default: " + mode);
+            }
+        }
+
+        long timeBudget = 0;
+        if (args.length > 2) {
+            try {
+                timeBudget = Math.max(0, Long.parseLong(args[2])) * 1000;
+            }
+            catch (NumberFormatException e) {
+                System.err.println("Budget di tempo non valido, nessun limite al clustering.");
+            }
+        }
+
+        String checkpointDir = (args.length > 3) ? args[3] : null;
+        String snapshotDir = (args.length > 4) ? args[4] : null;
+        String fileDir = (args.length > 5) ? args[5] : null;
+
+        new MultiServer(port, mode, timeBudget, checkpointDir, snapshotDir, fileDir).start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,611 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Front end non bloccante del server, basato su {@link Selector}.
+ * <p>
+ * Un piccolo numero di event loop serve tutte le connessioni: ciascun loop,
+ * dopo aver negoziato la versione del protocollo con il saluto iniziale,
+ * legge i frame di richiesta (vedi {@link FrameCodec}) in buffer diretti
+ * presi da un {@link BufferPool} e invia le risposte con scritture "gathering".
+ * L'esecuzione delle richieste, che può bloccarsi sull'accesso al database
+ * o sull'attesa del clustering, è delegata a un pool di worker; il clustering
+ * vero e proprio gira sui thread di calcolo del {@link ComputeScheduler}.
+ * </p>
+ * <p>
+ * Le richieste di una stessa connessione vengono preparate nell'ordine di arrivo
+ * (vedi {@link ClientSession#prepare(Request)}). Fino alla versione 3 del protocollo
+ * vengono poi eseguite una alla volta e le risposte vengono inviate nello stesso
+ * ordine; dalla versione 4 (multiplexata) fino a
+ * {@value ClientSession#MAX_CONCURRENT_REQUESTS} richieste vengono eseguite in
+ * parallelo e ogni risposta viene inviata, marcata con l'identificativo della
+ * richiesta, appena è pronta. Se un client accumula troppe richieste in attesa,
+ * la lettura dalla sua connessione viene sospesa finché la coda non si svuota.
+ * </p>
+ * <p>
+ * Le risposte inviate a blocchi vengono generate dal worker un blocco alla
+ * volta: il worker si ferma quando la connessione ha già
+ * {@value #MAX_QUEUED_CHUNKS} blocchi in attesa di scrittura e riprende solo
+ * quando il client li ha ricevuti, così che un client lento non costringa il
+ * server a mantenere in memoria l'intera risposta.
+ * </p>
+ *
+ * @see ConnectionMode#NIO
+ * @see ClientSession
+ */
+public class NioServer {
+
+    /** Capacità dei buffer diretti usati per leggere i frame di richiesta. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Numero massimo di buffer diretti mantenuti nel pool. */
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    /** Numero massimo di richieste in attesa per connessione prima di sospenderne la lettura. */
+    private static final int MAX_PENDING_REQUESTS = 16;
+
+    /** Numero massimo di blocchi di una risposta in attesa di scrittura per connessione. */
+    private static final int MAX_QUEUED_CHUNKS = 4;
+
+    /** Porta su cui il server rimane in ascolto. */
+    private final int port;
+
+    /** Livello di coalescenza delle computazioni, condiviso tra tutti i client. */
+    private final ComputeCoalescer coalescer;
+
+    /** Registro dei job di clustering asincroni, condiviso tra tutti i client. */
+    private final JobRegistry jobs;
+
+    /** Provenienza dei dataset, condivisa tra tutti i client. */
+    private final DatasetStore datasets;
+
+    /** Event loop che servono le connessioni. */
+    private final EventLoop[] loops;
+
+    /** Pool dei buffer diretti di lettura. */
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    /** Worker che eseguono le richieste dei client fuori dagli event loop. */
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Costruisce un {@code NioServer} con un event loop ogni due core.
+     *
+     * @param port      il numero di porta su cui mettersi in ascolto
+     * @param coalescer il livello di coalescenza delle computazioni
+     * @param jobs      il registro dei job di clustering asincroni
+     * @param datasets  la provenienza dei dataset
+     */
+    public NioServer(int port, ComputeCoalescer coalescer, JobRegistry jobs, DatasetStore datasets) {
+        this(port, coalescer, jobs, datasets, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Costruisce un {@code NioServer} con il numero di event loop specificato.
+     *
+     * @param port      il numero di porta su cui mettersi in ascolto
+     * @param coalescer il livello di coalescenza delle computazioni
+     * @param jobs      il registro dei job di clustering asincroni
+     * @param datasets  la provenienza dei dataset
+     * @param loopCount il numero di event loop; deve essere positivo
+     * @throws IllegalArgumentException se {@code loopCount <= 0}
+     */
+    public NioServer(int port, ComputeCoalescer coalescer, JobRegistry jobs, DatasetStore datasets, int loopCount) {
+        if (loopCount <= 0)
+            throw new IllegalArgumentException("Il numero di event loop deve essere positivo.");
+
+        this.port = port;
+        this.coalescer = coalescer;
+        this.jobs = jobs;
+        this.datasets = datasets;
+        this.loops = new EventLoop[loopCount];
+    }
+
+    /**
+     * Avvia gli event loop e accetta nuove connessioni, assegnandole ai loop a turno.
+     */
+    public void start() {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(Selector.open());
+                Thread t = new Thread(loops[i], "qt-nio-" + (i + 1));
+                t.setDaemon(true);
+                t.start();
+            }
+
+            System.out.println("Server NIO in ascolto sulla porta: " + port
+                    + " (" + loops.length + " event loop)");
+
+            int next = 0;
+            while (true) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    System.out.println("Nuova connessione da: " + channel.getRemoteAddress());
+
+                    loops[next].register(channel);
+                    next = (next + 1) % loops.length;
+                }
+                catch (IOException e) {
+                    System.err.println("Errore nella gestione del client: " + e.getMessage());
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Errore nell'apertura della porta " + port + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Event loop che gestisce l'I/O di un sottoinsieme delle connessioni.
+     */
+    private class EventLoop implements Runnable {
+
+        /** Selector delle connessioni assegnate al loop. */
+        private final Selector selector;
+
+        /** Operazioni da eseguire sul thread del loop. */
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Costruisce un event loop.
+         *
+         * @param selector il selector del loop
+         */
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        /**
+         * Assegna una nuova connessione al loop.
+         *
+         * @param channel il canale della connessione accettata
+         */
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    channel.configureBlocking(false);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(this, channel, key));
+                } catch (IOException e) {
+                    System.err.println("[SERVER] Registrazione connessione fallita: " + e.getMessage());
+                    try { channel.close(); } catch (IOException ignored) {}
+                }
+            });
+        }
+
+        /**
+         * Esegue l'operazione indicata sul thread del loop.
+         *
+         * @param task l'operazione da eseguire
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Ciclo principale del loop: attende eventi di I/O e li smista alle connessioni.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null)
+                        task.run();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable())
+                                connection.onReadable();
+                            if (key.isValid() && key.isWritable())
+                                connection.onWritable();
+                        } catch (IOException e) {
+                            System.err.println("[SERVER] Errore I/O: " + e.getMessage());
+                            connection.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("[SERVER] Errore nell'event loop: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stato di una singola connessione servita da un event loop.
+     * <p>
+     * Tutti i metodi, salvo dove indicato, vengono eseguiti sul thread del loop.
+     * </p>
+     */
+    private class Connection {
+
+        /** Event loop a cui è assegnata la connessione. */
+        private final EventLoop loop;
+
+        /** Canale della connessione. */
+        private final SocketChannel channel;
+
+        /** Chiave di registrazione del canale nel selector del loop. */
+        private final SelectionKey key;
+
+        /** Sessione applicativa del client. */
+        private final ClientSession session;
+
+        /** Buffer per il saluto del client, {@code null} dopo la negoziazione del protocollo. */
+        private ByteBuffer hello = ByteBuffer.allocate(FrameCodec.HELLO_SIZE);
+
+        /** Buffer per la lunghezza del frame in lettura. */
+        private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+
+        /** Buffer per il corpo del frame in lettura, {@code null} se si sta leggendo la lunghezza. */
+        private ByteBuffer body;
+
+        /** Indica se {@link #body} proviene dal pool di buffer. */
+        private boolean pooledBody;
+
+        /** Richieste preparate e in attesa di esecuzione. */
+        private final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+
+        /** Numero di richieste attualmente in esecuzione sui worker. */
+        private int running;
+
+        /** Esecuzioni in corso sui worker, annullate alla chiusura della connessione. */
+        private final Map<PendingRequest, Future<?>> inFlight = new IdentityHashMap<>();
+
+        /** Frame di risposta in attesa di essere scritti. */
+        private final ArrayDeque<OutboundFrame> outbound = new ArrayDeque<>();
+
+        /** Permessi per i blocchi di risposta in attesa di scrittura, acquisiti dal worker. */
+        private final Semaphore chunkPermits = new Semaphore(MAX_QUEUED_CHUNKS);
+
+        /** Versione del protocollo negoziata con il client. */
+        private volatile int version;
+
+        /** Compressore delle risposte, {@code null} se la versione negoziata non lo prevede; usato dai worker. */
+        private volatile FrameCompressor compressor;
+
+        /** Indica se la connessione è stata chiusa; letto anche dai worker. */
+        private volatile boolean closed;
+
+        /**
+         * Costruisce lo stato di una connessione.
+         *
+         * @param loop    l'event loop a cui è assegnata
+         * @param channel il canale della connessione
+         * @param key     la chiave di registrazione nel selector
+         * @throws IOException se non è possibile determinare l'indirizzo remoto
+         */
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+
+            String clientId = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            this.session = new ClientSession(clientId, coalescer, jobs, datasets);
+        }
+
+        /**
+         * Legge dal canale i frame disponibili, fermandosi quando le richieste
+         * in attesa raggiungono {@link #MAX_PENDING_REQUESTS}.
+         *
+         * @throws IOException se la lettura fallisce
+         */
+        void onReadable() throws IOException {
+            while (!closed) {
+                ByteBuffer target = (hello != null) ? hello : (body == null) ? header : body;
+                int n = channel.read(target);
+                if (n < 0) {
+                    close();
+                    return;
+                }
+                if (target.hasRemaining())
+                    return;
+
+                if (hello != null)
+                    negotiate();
+                else if (body == null)
+                    beginBody();
+                else
+                    completeFrame();
+
+                // Con troppe richieste in attesa la lettura riprende solo quando processNext riattiva OP_READ.
+                if (pending.size() >= MAX_PENDING_REQUESTS)
+                    return;
+            }
+        }
+
+        /**
+         * Interpreta il saluto del client e risponde con la versione del protocollo scelta.
+         * Se nessuna versione è compatibile, la connessione viene chiusa.
+         *
+         * @throws IOException se il saluto non è valido o la risposta non può essere inviata
+         */
+        private void negotiate() throws IOException {
+            version = FrameCodec.negotiateVersion(hello.flip());
+            hello = null;
+
+            outbound.add(new OutboundFrame(new ByteBuffer[] { FrameCodec.encodeHello(version) }, false));
+            onWritable();
+
+            if (version == 0) {
+                System.err.println("[SERVER] Versione del protocollo binario non supportata.");
+                close();
+            } else if (version >= FrameCodec.COMPRESSION_VERSION) {
+                compressor = new FrameCompressor();
+                session.setCompressor(compressor);
+            }
+        }
+
+        /**
+         * Interpreta la lunghezza del frame appena letta e prepara il buffer del corpo.
+         *
+         * @throws ProtocolException se la lunghezza non è valida
+         */
+        private void beginBody() throws ProtocolException {
+            int length = header.flip().getInt();
+            header.clear();
+
+            if (length <= 0 || length > FrameCodec.MAX_REQUEST_SIZE)
+                throw new ProtocolException("Lunghezza frame non valida: " + length);
+
+            pooledBody = length <= bufferPool.getBufferSize();
+            body = pooledBody ? bufferPool.acquire() : ByteBuffer.allocate(length);
+            body.limit(length);
+        }
+
+        /**
+         * Decodifica il frame appena letto, ne prepara l'esecuzione e lo accoda.
+         *
+         * @throws ProtocolException se un frame multiplexato non contiene l'identificativo della richiesta
+         */
+        private void completeFrame() throws ProtocolException {
+            body.flip();
+            int requestId = (version >= FrameCodec.MULTIPLEX_VERSION) ? FrameCodec.decodeRequestId(body) : 0;
+            Supplier<Response> task;
+            try {
+                task = session.prepare(FrameCodec.decodeRequest(body));
+            } catch (ProtocolException e) {
+                Response error = Response.error(e.getMessage());
+                task = () -> error;
+            }
+            releaseBody();
+
+            pending.add(new PendingRequest(requestId, task));
+            if (pending.size() >= MAX_PENDING_REQUESTS)
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+
+            processNext();
+        }
+
+        /**
+         * Affida ai worker le richieste in attesa, finché il limite di richieste
+         * in esecuzione della connessione lo consente.
+         */
+        private void processNext() {
+            int limit = (version >= FrameCodec.MULTIPLEX_VERSION) ? ClientSession.MAX_CONCURRENT_REQUESTS : 1;
+
+            while (running < limit && !pending.isEmpty()) {
+                PendingRequest request = pending.poll();
+                running++;
+
+                Future<?> execution = workers.submit(() -> {
+                    try {
+                        Response response;
+                        try {
+                            response = request.task().get();
+                        } catch (RuntimeException e) {
+                            response = Response.error("Errore interno: " + e.getMessage());
+                        }
+                        send(request.id(), response);
+                    } catch (RuntimeException e) {
+                        System.err.println("[SERVER] Errore nell'invio della risposta: " + e.getMessage());
+                    } finally {
+                        // Anche se la richiesta fallisce, il suo posto va liberato.
+                        loop.execute(() -> onResponseSent(request));
+                    }
+                });
+                inFlight.put(request, execution);
+            }
+
+            if (!closed && pending.size() < MAX_PENDING_REQUESTS)
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+
+        /**
+         * Accoda i frame della risposta prodotta da un worker.
+         * <p>
+         * Eseguito sul worker: se la risposta prevede un testo a blocchi, ogni
+         * blocco viene generato solo dopo aver ottenuto un permesso, che viene
+         * restituito quando il blocco è stato scritto per intero sul canale.
+         * </p>
+         *
+         * @param requestId l'identificativo della richiesta, usato dal protocollo multiplexato
+         * @param response  la risposta da inviare
+         */
+        private void send(int requestId, Response response) {
+            Iterator<String> stream = response.getStream();
+            if (stream == null) {
+                enqueue(prepare(requestId, FrameCodec.encodeResponse(response)), false);
+                return;
+            }
+
+            if (version < FrameCodec.STREAMING_VERSION) {
+                enqueue(prepare(requestId, FrameCodec.encodeResponse(Response.ok(response.collect()))), false);
+                return;
+            }
+
+            enqueue(prepare(requestId, FrameCodec.encodeResponse(response)), false);
+            try {
+                while (stream.hasNext()) {
+                    chunkPermits.acquire();
+                    if (closed)
+                        return;
+                    enqueue(prepare(requestId, FrameCodec.encodeChunk(stream.next())), true);
+                }
+                enqueue(prepare(requestId, FrameCodec.encodeEnd()), false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                enqueue(prepare(requestId, FrameCodec.encodeResponse(
+                        Response.error("Invio dei risultati interrotto: " + e.getMessage()))), false);
+            }
+        }
+
+        /**
+         * Comprime il frame indicato, se richiesto dal client, e lo marca con
+         * l'identificativo della richiesta se il protocollo è multiplexato.
+         * Eseguito sul worker.
+         *
+         * @param requestId l'identificativo della richiesta
+         * @param frame     i buffer che compongono il frame
+         * @return il frame da scrivere
+         */
+        private ByteBuffer[] prepare(int requestId, ByteBuffer[] frame) {
+            FrameCompressor current = compressor;
+            if (current != null)
+                frame = current.compress(frame);
+            return (version >= FrameCodec.MULTIPLEX_VERSION) ? FrameCodec.tag(requestId, frame) : frame;
+        }
+
+        /**
+         * Affida al loop un frame di risposta da scrivere.
+         * Può essere invocato da qualunque thread.
+         *
+         * @param parts i buffer che compongono il frame
+         * @param chunk indica se il frame occupa un permesso di {@link #chunkPermits}
+         */
+        private void enqueue(ByteBuffer[] parts, boolean chunk) {
+            loop.execute(() -> {
+                if (closed)
+                    return;
+
+                outbound.add(new OutboundFrame(parts, chunk));
+                try {
+                    onWritable();
+                } catch (IOException e) {
+                    System.err.println("[SERVER] Errore I/O: " + e.getMessage());
+                    close();
+                }
+            });
+        }
+
+        /**
+         * Segnala che una risposta è stata accodata e passa alle richieste successive.
+         *
+         * @param request la richiesta la cui esecuzione è terminata
+         */
+        private void onResponseSent(PendingRequest request) {
+            inFlight.remove(request);
+            running--;
+            if (!closed)
+                processNext();
+        }
+
+        /**
+         * Scrive sul canale i frame di risposta in attesa, finché il canale li accetta.
+         *
+         * @throws IOException se la scrittura fallisce
+         */
+        void onWritable() throws IOException {
+            while (!outbound.isEmpty()) {
+                OutboundFrame frame = outbound.peek();
+                channel.write(frame.parts());
+
+                for (ByteBuffer part : frame.parts()) {
+                    if (part.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                outbound.poll();
+                if (frame.chunk())
+                    chunkPermits.release();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Restituisce al pool il buffer del corpo del frame, se necessario.
+         */
+        private void releaseBody() {
+            if (body != null && pooledBody)
+                bufferPool.release(body);
+            body = null;
+        }
+
+        /**
+         * Chiude la connessione e rilascia le risorse associate.
+         */
+        void close() {
+            if (closed)
+                return;
+
+            closed = true;
+            // Interrompe le esecuzioni in corso: i client in attesa di una computazione condivisa se ne sganciano.
+            for (Future<?> execution : inFlight.values())
+                execution.cancel(true);
+            inFlight.clear();
+            releaseBody();
+            outbound.clear();
+            chunkPermits.release(MAX_QUEUED_CHUNKS);
+            key.cancel();
+            try {
+                System.out.println("[SERVER] Connessione chiusa con " + channel.getRemoteAddress());
+                channel.close();
+            } catch (IOException ignored) {}
+
+            FrameCompressor current = compressor;
+            if (current != null) {
+                current.close();
+                if (current.hasStatistics()) {
+                    System.out.println("[SERVER] Compressione della connessione: " + current.getStatistics());
+                    System.out.println("[SERVER] Compressione del server: " + FrameCompressor.getGlobalStatistics());
+                }
+            }
+        }
+    }
+
+    /**
+     * Frame di risposta in attesa di scrittura.
+     *
+     * @param parts i buffer che compongono il frame
+     * @param chunk indica se il frame è un blocco di una risposta inviata a blocchi
+     */
+    private record OutboundFrame(ByteBuffer[] parts, boolean chunk) { }
+
+    /**
+     * Richiesta preparata e in attesa di esecuzione.
+     *
+     * @param id   l'identificativo della richiesta, usato dal protocollo multiplexato
+     * @param task l'esecuzione della richiesta
+     */
+    private record PendingRequest(int id, Supplier<Response> task) { }
+}
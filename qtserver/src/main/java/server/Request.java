@@ -0,0 +1,97 @@
+package server;
+
+/**
+ * Rappresenta una richiesta inviata da un client: un {@link Command}
+ * accompagnato dai relativi parametri, già decodificati dal protocollo
+ * di trasporto.
+ *
+ * @see Command
+ * @see ClientSession#handle(Request)
+ */
+public class Request {
+
+    /** Comando richiesto. */
+    private final Command command;
+
+    /** Parametri del comando, nell'ordine previsto da {@link Command}. */
+    private final Object[] arguments;
+
+    /**
+     * Costruisce una richiesta.
+     *
+     * @param command   il comando richiesto
+     * @param arguments i parametri del comando
+     * @throws IllegalArgumentException se il numero o il tipo dei parametri non corrisponde al comando
+     */
+    public Request(Command command, Object... arguments) {
+        if (arguments.length != command.getArgumentCount())
+            throw new IllegalArgumentException("Numero di parametri non valido per il comando " + command + ".");
+
+        for (int i = 0; i < arguments.length; i++) {
+            if (!command.getArgumentType(i).isInstance(arguments[i]))
+                throw new IllegalArgumentException("Parametri non validi per il comando " + command + ".");
+        }
+
+        this.command = command;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Restituisce il comando richiesto.
+     *
+     * @return il comando
+     */
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * Restituisce il parametro di tipo stringa nella posizione indicata.
+     *
+     * @param i la posizione del parametro
+     * @return il valore del parametro
+     */
+    public String getString(int i) {
+        return (String) arguments[i];
+    }
+
+    /**
+     * Restituisce il parametro di tipo reale nella posizione indicata.
+     *
+     * @param i la posizione del parametro
+     * @return il valore del parametro
+     */
+    public double getDouble(int i) {
+        return (Double) arguments[i];
+    }
+
+    /**
+     * Restituisce il parametro di tipo intero nella posizione indicata.
+     *
+     * @param i la posizione del parametro
+     * @return il valore del parametro
+     */
+    public int getInt(int i) {
+        return (Integer) arguments[i];
+    }
+
+    /**
+     * Restituisce il parametro di tipo long nella posizione indicata.
+     *
+     * @param i la posizione del parametro
+     * @return il valore del parametro
+     */
+    public long getLong(int i) {
+        return (Long) arguments[i];
+    }
+
+    /**
+     * Restituisce il parametro di tipo array di byte nella posizione indicata.
+     *
+     * @param i la posizione del parametro
+     * @return il valore del parametro
+     */
+    public byte[] getBytes(int i) {
+        return (byte[]) arguments[i];
+    }
+}
@@ -0,0 +1,161 @@
+package server;
+
+import java.util.Iterator;
+
+/**
+ * Rappresenta la risposta del server a una {@link Request}, indipendente
+ * dal protocollo di trasporto con cui verrà inviata al client.
+ * <p>
+ * Una risposta {@code OK} può essere accompagnata da un testo prodotto
+ * a blocchi su richiesta (ad esempio la rappresentazione dei cluster):
+ * i protocolli che lo supportano lo inviano in frame separati man mano
+ * che viene generato, gli altri lo ricevono concatenato in coda al payload.
+ * </p>
+ *
+ * <ul>
+ *     <li><b>OK</b> → seguito dagli eventuali oggetti aggiuntivi (payload)</li>
+ *     <li><b>ERROR</b> → accompagnato da un messaggio di errore</li>
+ *     <li><b>BUSY</b> → il server è sovraccarico, la richiesta può essere ripetuta più tardi</li>
+ * </ul>
+ */
+public class Response {
+
+    /**
+     * Esito di una richiesta.
+     */
+    public enum Status {
+
+        /** Richiesta eseguita con successo. */
+        OK,
+
+        /** Errore applicativo o operativo. */
+        ERROR,
+
+        /** Server sovraccarico. */
+        BUSY
+    }
+
+    /** Esito della richiesta. */
+    private final Status status;
+
+    /** Messaggio associato a un esito {@code ERROR} o {@code BUSY}. */
+    private final String message;
+
+    /** Oggetti restituiti al client in caso di esito {@code OK}. */
+    private final Object[] payload;
+
+    /** Testo prodotto a blocchi che segue il payload, {@code null} se assente. */
+    private final Iterator<String> stream;
+
+    /**
+     * Costruisce una risposta.
+     *
+     * @param status  l'esito della richiesta
+     * @param message il messaggio associato all'esito
+     * @param payload gli oggetti restituiti al client
+     * @param stream  il testo prodotto a blocchi, oppure {@code null}
+     */
+    private Response(Status status, String message, Object[] payload, Iterator<String> stream) {
+        this.status = status;
+        this.message = message;
+        this.payload = payload;
+        this.stream = stream;
+    }
+
+    /**
+     * Crea una risposta di successo con gli eventuali oggetti aggiuntivi.
+     *
+     * @param payload gli oggetti da inviare dopo il messaggio "OK"
+     * @return la risposta di successo
+     */
+    public static Response ok(Object... payload) {
+        return new Response(Status.OK, null, payload, null);
+    }
+
+    /**
+     * Crea una risposta di successo seguita da un testo prodotto a blocchi.
+     *
+     * @param stream  i blocchi del testo, generati su richiesta
+     * @param payload gli oggetti da inviare dopo il messaggio "OK" e prima del testo
+     * @return la risposta di successo
+     */
+    public static Response streamed(Iterator<String> stream, Object... payload) {
+        return new Response(Status.OK, null, payload, stream);
+    }
+
+    /**
+     * Crea una risposta di errore.
+     *
+     * @param message il messaggio di errore
+     * @return la risposta di errore
+     */
+    public static Response error(String message) {
+        return new Response(Status.ERROR, message, new Object[0], null);
+    }
+
+    /**
+     * Crea una risposta di server sovraccarico.
+     *
+     * @param message il messaggio che invita a ripetere la richiesta
+     * @return la risposta di server sovraccarico
+     */
+    public static Response busy(String message) {
+        return new Response(Status.BUSY, message, new Object[0], null);
+    }
+
+    /**
+     * Restituisce l'esito della richiesta.
+     *
+     * @return l'esito
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Restituisce il messaggio associato a un esito {@code ERROR} o {@code BUSY}.
+     *
+     * @return il messaggio, oppure {@code null} in caso di esito {@code OK}
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Restituisce gli oggetti restituiti al client in caso di esito {@code OK}.
+     *
+     * @return il payload della risposta
+     */
+    public Object[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Restituisce il testo prodotto a blocchi che segue il payload.
+     *
+     * @return l'iteratore sui blocchi, oppure {@code null} se la risposta non ne prevede
+     */
+    public Iterator<String> getStream() {
+        return stream;
+    }
+
+    /**
+     * Restituisce il payload seguito dall'intero testo prodotto a blocchi,
+     * per i protocolli che non supportano l'invio a blocchi.
+     *
+     * @return il payload completo; coincide con {@link #getPayload()} se non c'è testo a blocchi
+     */
+    public Object[] collect() {
+        if (stream == null)
+            return payload;
+
+        StringBuilder sb = new StringBuilder();
+        while (stream.hasNext())
+            sb.append(stream.next());
+
+        Object[] all = new Object[payload.length + 1];
+        System.arraycopy(payload, 0, all, 0, payload.length);
+        all[payload.length] = sb.toString();
+        return all;
+    }
+}
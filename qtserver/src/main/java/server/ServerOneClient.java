@@ -1,81 +1,144 @@
 package server;
 
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.EOFException;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-
-import mining.QTMiner;
-import data.Data;
+import java.io.InputStream;
 
 /**
  * Gestisce una singola connessione con un client tramite socket TCP.
  * <p>
- * Ogni istanza di questa classe viene eseguita in un thread separato,
+ * Ogni istanza di questa classe viene eseguita in un thread separato
+ * (platform o virtual thread, in base alla {@link ConnectionMode} del server),
  * permettendo al server di servire più client contemporaneamente.
+ * I comandi ricevuti vengono eseguiti da una {@link ClientSession}.
+ * </p>
+ *
+ * <h2>Negoziazione del protocollo</h2>
+ * <p>
+ * Il protocollo viene riconosciuto dai primi byte inviati dal client:
+ * </p>
+ * <ul>
+ *     <li>l'intestazione di un {@link ObjectOutputStream} seleziona il protocollo
+ *         storico basato su serializzazione Java</li>
+ *     <li>il saluto {@link FrameCodec#MAGIC} seleziona il protocollo binario a frame,
+ *         letto e scritto tramite {@link DataInputStream} e {@link DataOutputStream}</li>
+ * </ul>
+ *
+ * <p>
+ * Con il protocollo binario multiplexato (versione 4) il thread della connessione
+ * si limita a leggere e preparare le richieste: la loro esecuzione è affidata a
+ * virtual thread, fino a {@value ClientSession#MAX_CONCURRENT_REQUESTS} alla volta,
+ * e ogni frame di risposta viene scritto, marcato con l'identificativo della
+ * richiesta, appena è pronto.
  * </p>
  *
  * <h2>Protocollo di risposta</h2>
  * <ul>
  *     <li><b>OK</b> → seguito dagli eventuali oggetti aggiuntivi richiesti</li>
  *     <li><b>ERROR: messaggio</b> → in caso di errore applicativo o operativo</li>
+ *     <li><b>BUSY: messaggio</b> → il server è sovraccarico, la richiesta può essere ripetuta più tardi</li>
  * </ul>
  *
- * <h2>Comandi supportati</h2> 
+ * <h2>Comandi supportati</h2>
  * <ol>
  *     <li><b>0</b> → Carica tabella dal DB <i>(in: String tableName)</i></li>
  *     <li><b>1</b> → Computa cluster dal DB <i>(in: Double radius)</i></li>
  *     <li><b>2</b> → Salva su file il cluster generato</li>
  *     <li><b>3</b> → Carica cluster da file <i>(in: String name, Double radius)</i></li>
+ *     <li><b>4</b> → Riepilogo dei cluster correnti</li>
+ *     <li><b>5</b> → Pagina degli esempi di un cluster <i>(in: Integer cluster, Integer offset, Integer limit)</i></li>
+ *     <li><b>6</b> → Riepilogo dei cluster più popolosi <i>(in: Integer k)</i></li>
+ *     <li><b>7</b> → Imposta la compressione delle risposte <i>(in: Integer level)</i></li>
+ *     <li><b>8</b> → Avvia un job di clustering asincrono <i>(in: Double radius)</i></li>
+ *     <li><b>9</b> → Stato e avanzamento di un job <i>(in: Long jobId)</i></li>
+ *     <li><b>10</b> → Pagina dei risultati di un job <i>(in: Long jobId, Integer offset, Integer limit)</i></li>
+ *     <li><b>11</b> → Annulla un job <i>(in: Long jobId)</i></li>
+ *     <li><b>12</b> → Inizia l'invio di un dataset dal client <i>(in: String name, byte[] schema)</i></li>
+ *     <li><b>13</b> → Invia un blocco di esempi <i>(in: byte[] batch)</i></li>
+ *     <li><b>14</b> → Conclude l'invio del dataset</li>
+ *     <li><b>15</b> → Riepilogo del clustering con più raggi <i>(in: String radii)</i></li>
+ *     <li><b>16</b> → Stima e suggerimento del raggio <i>(in: Integer steps)</i></li>
  * </ol>
  */
-public class ServerOneClient extends Thread {
+public class ServerOneClient implements Runnable {
+
+    /** Primi due byte dell'intestazione di un {@link ObjectOutputStream}. */
+    private static final int OBJECT_STREAM_MAGIC = 0xACED;
 
     private final Socket socket;
     private ObjectInputStream in;
     private ObjectOutputStream out;
 
-    /** Dataset attualmente caricato (comando 0 o 3). */
-    private Data data;
+    /** Stream di input del protocollo binario. */
+    private DataInputStream binaryIn;
+
+    /** Stream di output del protocollo binario. */
+    private DataOutputStream binaryOut;
+
+    /** Compressore delle risposte binarie, {@code null} se la versione negoziata non lo prevede. */
+    private FrameCompressor compressor;
 
-    /** Oggetto QTMiner utilizzato per il clustering. */
-    private QTMiner kmeans;
+    /** Versione del protocollo binario negoziata con il client. */
+    private int version;
 
-    /** Ultimo nome tabella usato (necessario per il salvataggio su file). */
-    private String lastTableName;
+    /** Esecutore delle richieste multiplexate, {@code null} se il protocollo non lo prevede. */
+    private ExecutorService requestExecutor;
 
-    /** Ultimo raggio usato (necessario per il salvataggio su file). */
-    private Double lastRadius;
+    /** Sessione applicativa del client servito da questa connessione. */
+    private final ClientSession session;
 
     /**
      * Costruisce un nuovo gestore per la connessione con un singolo client.
+     * <p>
+     * Gli stream di input/output vengono creati all'avvio del thread, così che
+     * l'attesa dell'intestazione dello stream del client non blocchi il thread
+     * che accetta le connessioni.
+     * </p>
      *
-     * @param socket la socket associata al client già accettato da {@link MultiServer}
-     * @throws IOException se fallisce la creazione degli stream di input/output
+     * @param socket    la socket associata al client già accettato da {@link MultiServer}
+     * @param coalescer il livello di coalescenza delle computazioni condiviso dal server
+     * @param jobs      il registro dei job di clustering asincroni condiviso dal server
+     * @param datasets  la provenienza dei dataset condivisa dal server
      */
-    public ServerOneClient(Socket socket) throws IOException {
+    public ServerOneClient(Socket socket, ComputeCoalescer coalescer, JobRegistry jobs, DatasetStore datasets) {
         this.socket = socket;
-        this.out = new ObjectOutputStream(socket.getOutputStream());
-        this.in  = new ObjectInputStream(socket.getInputStream());
-        log("Thread creato per " + socket.getInetAddress());
+        this.session = new ClientSession(socket.getInetAddress().getHostAddress(), coalescer, jobs, datasets);
     }
 
     /**
-     * Ciclo principale del thread: ascolta i comandi del client e li inoltra ai metodi dedicati.
+     * Ciclo principale del thread: riconosce il protocollo usato dal client,
+     * ne ascolta i comandi e li inoltra alla sessione.
      */
     @Override
     public void run() {
         try {
-            while (!socket.isClosed()) {
-                Object cmdObj = in.readObject();
-                if (!(cmdObj instanceof Integer)) {
-                    sendError("Comando non valido (atteso Integer).");
-                    continue;
-                }
-                handleCommand((Integer) cmdObj);
-            }
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            input.mark(2);
+            int first = input.read();
+            int second = input.read();
+            input.reset();
+
+            if (first < 0 || second < 0)
+                throw new EOFException();
+
+            if (((first << 8) | second) == OBJECT_STREAM_MAGIC)
+                runLegacy(input);
+            else
+                runBinary(input);
         } catch (EOFException e) {
             log("Connessione chiusa dal client.");
         } catch (IOException | ClassNotFoundException e) {
@@ -86,123 +149,214 @@ public class ServerOneClient extends Thread {
     }
 
     /**
-     * Dispatch del comando ricevuto dal client.
+     * Serve il client con il protocollo storico basato su serializzazione Java.
      *
-     * @param cmd il codice del comando inviato dal client
+     * @param input lo stream di input della socket, posizionato sull'intestazione dello stream
+     * @throws IOException            se fallisce la comunicazione
+     * @throws ClassNotFoundException se un oggetto ricevuto non è deserializzabile
      */
-    private void handleCommand(int cmd) {
-        switch (cmd) {
-            case 0: handleLoadFromDb();      break;
-            case 1: handleComputeFromDb();   break;
-            case 2: handleSaveToFile();      break;
-            case 3: handleComputeFromFile(); break;
-            default:
-                sendError("Comando non riconosciuto: " + cmd);
+    private void runLegacy(InputStream input) throws IOException, ClassNotFoundException {
+        out = new ObjectOutputStream(socket.getOutputStream());
+        in  = new ObjectInputStream(input);
+        log("Sessione avviata per " + socket.getInetAddress() + " su " + Thread.currentThread());
+
+        while (!socket.isClosed()) {
+            Object cmdObj = in.readObject();
+            if (!(cmdObj instanceof Integer)) {
+                sendError("Comando non valido (atteso Integer).");
+                continue;
+            }
+            handleCommand((Integer) cmdObj);
         }
     }
 
     /**
-     * Comando 0 — Carica una tabella dal database e invia al client la sua rappresentazione testuale.
+     * Serve il client con il protocollo binario a frame descritto in {@link FrameCodec}.
+     *
+     * @param input lo stream di input della socket, posizionato sul saluto del client
+     * @throws IOException se fallisce la comunicazione o il client non rispetta il protocollo
      */
-    private void handleLoadFromDb() {
-        log("Caricamento tabella dal database...");
-        try {
-            Object tnameObj = in.readObject();
-            if (!(tnameObj instanceof String)) {
-                sendError("Nome tabella non valido.");
-                return;
+    private void runBinary(InputStream input) throws IOException {
+        binaryIn  = new DataInputStream(input);
+        binaryOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        byte[] hello = new byte[FrameCodec.HELLO_SIZE];
+        binaryIn.readFully(hello);
+        version = FrameCodec.negotiateVersion(ByteBuffer.wrap(hello));
+        writeBinary(new ByteBuffer[] { FrameCodec.encodeHello(version) });
+
+        if (version == 0) {
+            logErr("Versione del protocollo binario non supportata.");
+            return;
+        }
+        log("Sessione binaria v" + version + " avviata per " + socket.getInetAddress()
+                + " su " + Thread.currentThread());
+
+        if (version >= FrameCodec.COMPRESSION_VERSION) {
+            compressor = new FrameCompressor();
+            session.setCompressor(compressor);
+        }
+
+        boolean multiplexed = version >= FrameCodec.MULTIPLEX_VERSION;
+        Semaphore permits = new Semaphore(ClientSession.MAX_CONCURRENT_REQUESTS);
+        if (multiplexed)
+            requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+        while (!socket.isClosed()) {
+            int length = binaryIn.readInt();
+            if (length <= 0 || length > FrameCodec.MAX_REQUEST_SIZE)
+                throw new ProtocolException("Lunghezza frame non valida: " + length);
+
+            byte[] bytes = new byte[length];
+            binaryIn.readFully(bytes);
+            ByteBuffer body = ByteBuffer.wrap(bytes);
+            int requestId = multiplexed ? FrameCodec.decodeRequestId(body) : 0;
+
+            Supplier<Response> task;
+            try {
+                task = session.prepare(FrameCodec.decodeRequest(body));
+            } catch (ProtocolException e) {
+                Response error = Response.error(e.getMessage());
+                task = () -> error;
             }
 
-            lastTableName = (String) tnameObj;
-            data = new Data(lastTableName);
+            if (!multiplexed) {
+                sendBinary(requestId, task.get());
+                continue;
+            }
 
-            sendOK(data.toString());
-            log("Tabella caricata: " + lastTableName);
-        } catch (Exception e) {
-            sendError("Impossibile caricare la tabella: " + e.getMessage());
+            permits.acquireUninterruptibly();
+            Supplier<Response> request = task;
+            requestExecutor.execute(() -> {
+                try {
+                    sendBinary(requestId, request.get());
+                } catch (IOException e) {
+                    logErr("Invio risposta " + requestId + " fallito: " + e.getMessage());
+                } finally {
+                    permits.release();
+                }
+            });
         }
     }
 
     /**
-     * Comando 1 — Esegue clustering QT direttamente dal database.
+     * Invia sullo stream binario la risposta prodotta dalla sessione.
+     * <p>
+     * Se la risposta prevede un testo a blocchi e la versione negoziata lo
+     * consente, ogni blocco viene scritto e inviato appena prodotto, così che
+     * il server non debba mai mantenere in memoria il testo completo.
+     * </p>
+     *
+     * @param requestId l'identificativo della richiesta, usato dal protocollo multiplexato
+     * @param response  la risposta da inviare
+     * @throws IOException se la scrittura fallisce
      */
-    private void handleComputeFromDb() {
-        log("Computazione cluster da DB...");
-        try {
-            Object rObj = in.readObject();
-            if (!(rObj instanceof Double)) {
-                sendError("Raggio non valido.");
-                return;
-            }
-
-            lastRadius = (Double) rObj;
-            if (data == null) {
-                sendError("Dataset non caricato. Esegui prima l'opzione 0.");
-                return;
-            }
+    private void sendBinary(int requestId, Response response) throws IOException {
+        Iterator<String> stream = response.getStream();
+        if (stream == null) {
+            writeFrame(requestId, FrameCodec.encodeResponse(response));
+            return;
+        }
 
-            kmeans = new QTMiner(lastRadius);
-            int num = kmeans.compute(data);
+        if (version < FrameCodec.STREAMING_VERSION) {
+            writeFrame(requestId, FrameCodec.encodeResponse(Response.ok(response.collect())));
+            return;
+        }
 
-            sendOK(num, kmeans.getC().toString(data));
-        } catch (Exception e) {
-            sendError("Errore durante la computazione: " + e.getMessage());
+        writeFrame(requestId, FrameCodec.encodeResponse(response));
+        try {
+            while (stream.hasNext())
+                writeFrame(requestId, FrameCodec.encodeChunk(stream.next()));
+        } catch (RuntimeException e) {
+            writeFrame(requestId, FrameCodec.encodeResponse(
+                    Response.error("Invio dei risultati interrotto: " + e.getMessage())));
+            return;
         }
+        writeFrame(requestId, FrameCodec.encodeEnd());
     }
 
     /**
-     * Comando 2 — Salva il cluster corrente su file.
+     * Scrive sullo stream binario un frame di risposta, compresso se richiesto dal
+     * client e marcato con l'identificativo della richiesta se il protocollo è multiplexato.
+     *
+     * @param requestId l'identificativo della richiesta
+     * @param frame     i buffer che compongono il frame
+     * @throws IOException se la scrittura fallisce
      */
-    private void handleSaveToFile() {
-        log("Salvataggio cluster su file...");
-        try {
-            if (kmeans == null) {
-                sendError("Nessun cluster da salvare.");
-                return;
-            }
-            if (lastTableName == null || lastRadius == null) {
-                sendError("Impossibile determinare il nome del file.");
-                return;
-            }
+    private void writeFrame(int requestId, ByteBuffer[] frame) throws IOException {
+        if (compressor != null)
+            frame = compressor.compress(frame);
+        if (version >= FrameCodec.MULTIPLEX_VERSION)
+            frame = FrameCodec.tag(requestId, frame);
+        writeBinary(frame);
+    }
 
-            String filename = lastTableName + "_" + lastRadius + ".dmp";
-            kmeans.salva(filename);
-            sendOK();
-        } catch (Exception e) {
-            sendError("Errore durante il salvataggio: " + e.getMessage());
+    /**
+     * Scrive sullo stream binario i buffer indicati e svuota lo stream.
+     * <p>
+     * La scrittura di un frame è atomica rispetto a quelle degli altri thread
+     * che inviano risposte multiplexate sulla stessa connessione.
+     * </p>
+     *
+     * @param parts i buffer (con array accessibile) da scrivere in ordine
+     * @throws IOException se la scrittura fallisce
+     */
+    private void writeBinary(ByteBuffer[] parts) throws IOException {
+        synchronized (binaryOut) {
+            for (ByteBuffer part : parts)
+                binaryOut.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+            binaryOut.flush();
         }
     }
 
     /**
-     * Comando 3 — Carica cluster da file e lo restituisce al client (senza ricalcolo).
+     * Legge i parametri del comando ricevuto dal client e lo inoltra alla sessione.
+     *
+     * @param cmd il codice del comando inviato dal client
+     * @throws IOException            se fallisce la lettura dei parametri
+     * @throws ClassNotFoundException se un parametro non è deserializzabile
      */
-    private void handleComputeFromFile() {
-        log("Caricamento cluster da file...");
-        try {
-            Object nameObj = in.readObject();
-            Object rObj = in.readObject();
-            if (!(nameObj instanceof String) || !(rObj instanceof Double)) {
-                sendError("Parametri non validi.");
-                return;
-            }
+    private void handleCommand(int cmd) throws IOException, ClassNotFoundException {
+        Command command = Command.fromCode(cmd);
+        if (command == null) {
+            sendError("Comando non riconosciuto: " + cmd);
+            return;
+        }
+
+        Object[] arguments = new Object[command.getArgumentCount()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = in.readObject();
 
-            lastTableName = (String) nameObj;
-            lastRadius = (Double) rObj;
-            String filename = lastTableName + "_" + lastRadius + ".dmp";
+        Request request;
+        try {
+            request = new Request(command, arguments);
+        } catch (IllegalArgumentException e) {
+            sendError("Parametri non validi.");
+            return;
+        }
 
-            data = new Data(lastTableName);
-            kmeans = new QTMiner(filename);
+        send(session.handle(request));
+    }
 
-            sendOK(kmeans.getC().toString(data));
-        } catch (FileNotFoundException e) {
-            sendError("File non trovato.");
-        } catch (Exception e) {
-            sendError("Errore durante il caricamento: " + e.getMessage());
+    /**
+     * Invia al client la risposta prodotta dalla sessione.
+     *
+     * @param response la risposta da inviare
+     */
+    private void send(Response response) {
+        switch (response.getStatus()) {
+            case OK:    sendOK(response.collect());         break;
+            case BUSY:  sendBusy(response.getMessage());    break;
+            default:    sendError(response.getMessage());
         }
     }
 
     /**
      * Invia al client un messaggio di successo con eventuali payload aggiuntivi.
+     * <p>
+     * Dopo l'invio lo stream viene azzerato, così che la tabella degli oggetti
+     * già trasmessi non cresca indefinitamente durante una sessione lunga.
+     * </p>
      *
      * @param payload gli oggetti da inviare dopo il messaggio "OK"
      */
@@ -212,6 +366,7 @@ public class ServerOneClient extends Thread {
             for (Object o : payload) {
                 out.writeObject(o);
             }
+            out.reset();
             out.flush();
         } catch (IOException e) {
             logErr("Invio OK fallito: " + e.getMessage());
@@ -226,12 +381,28 @@ public class ServerOneClient extends Thread {
     private void sendError(String message) {
         try {
             out.writeObject("ERROR: " + message);
+            out.reset();
             out.flush();
         } catch (IOException e) {
             logErr("Invio ERROR fallito: " + e.getMessage());
         }
     }
 
+    /**
+     * Invia al client la segnalazione di server sovraccarico.
+     *
+     * @param message il messaggio che invita a ripetere la richiesta
+     */
+    private void sendBusy(String message) {
+        try {
+            out.writeObject("BUSY: " + message);
+            out.reset();
+            out.flush();
+        } catch (IOException e) {
+            logErr("Invio BUSY fallito: " + e.getMessage());
+        }
+    }
+
     /**
      * Stampa un log informativo lato server.
      *
@@ -254,9 +425,21 @@ public class ServerOneClient extends Thread {
      * Chiude socket e stream associati a questa connessione client.
      */
     private void closeResources() {
+        if (requestExecutor != null)
+            requestExecutor.shutdownNow();
         try { if (in != null)  in.close(); }  catch (IOException ignored) {}
         try { if (out != null) out.close(); } catch (IOException ignored) {}
+        try { if (binaryIn != null)  binaryIn.close(); }  catch (IOException ignored) {}
+        try { if (binaryOut != null) binaryOut.close(); } catch (IOException ignored) {}
         try { if (!socket.isClosed()) socket.close(); } catch (IOException ignored) {}
         log("Connessione chiusa con " + socket.getInetAddress());
+
+        if (compressor != null) {
+            compressor.close();
+            if (compressor.hasStatistics()) {
+                log("Compressione della connessione: " + compressor.getStatistics());
+                log("Compressione del server: " + FrameCompressor.getGlobalStatistics());
+            }
+        }
     }
-}
\ No newline at end of file
+}